@@ -0,0 +1,27 @@
+package com.pole.sippin;
+
+import android.util.Log;
+
+import org.zoolu.tools.Logger;
+
+/** Logger that forwards the log records of the SIP stack to android.util.Log. */
+public class AndroidLogger implements Logger {
+
+    /** Sets an AndroidLogger as the logger of the SIP stack, with all levels enabled
+     * (as Android filters the records by itself). */
+    public static void install() {
+        org.zoolu.tools.Log.setLogger(new AndroidLogger());
+        org.zoolu.tools.Log.setLevel(org.zoolu.tools.Log.VERBOSE);
+    }
+
+    @Override
+    public boolean isLoggable(String tag, int level) {
+        return Log.isLoggable(tag, level);
+    }
+
+    @Override
+    public void log(int level, String tag, String msg, Throwable t) {
+        if (t != null) msg = msg + '\n' + Log.getStackTraceString(t);
+        Log.println(level, tag, msg);
+    }
+}
@@ -0,0 +1,36 @@
+package com.pole.sippin;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.zoolu.tools.Preferences;
+
+/** Preferences of the SIP stack read from the "SipStack" SharedPreferences. */
+public class AndroidPreferences extends Preferences {
+
+    private final SharedPreferences prefs;
+
+    public AndroidPreferences(Context context) {
+        prefs = context.getSharedPreferences("SipStack", Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String getString(String key, String default_value) {
+        return prefs.getString(key, default_value);
+    }
+
+    @Override
+    public int getInt(String key, int default_value) {
+        return prefs.getInt(key, default_value);
+    }
+
+    @Override
+    public long getLong(String key, long default_value) {
+        return prefs.getLong(key, default_value);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean default_value) {
+        return prefs.getBoolean(key, default_value);
+    }
+}
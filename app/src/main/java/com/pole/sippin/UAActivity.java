@@ -86,8 +86,10 @@ public class UAActivity extends AppCompatActivity implements UserAgentListener {
         callButton.setOnClickListener(v -> call(numberTextView.getText().toString()));
         hangUpButton.setOnClickListener(v -> hangUp());
 
-        sip_provider = new SipProvider(getApplicationContext());
-        ua_profile = new UserAgentProfile(getApplicationContext());
+        AndroidLogger.install();
+        AndroidPreferences prefs = new AndroidPreferences(getApplicationContext());
+        sip_provider = new SipProvider(prefs);
+        ua_profile = new UserAgentProfile(prefs);
 
         ua = new UserAgent(sip_provider, ua_profile,this);
         changeStatus(UA_IDLE);
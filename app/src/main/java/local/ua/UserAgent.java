@@ -36,8 +36,8 @@ import org.zoolu.sip.address.SipURL;
 import org.zoolu.sip.call.*;
 import org.zoolu.sip.message.Message;
 import org.zoolu.sip.provider.SipKeepAlive;
+import org.zoolu.sip.provider.SipKeepAliveListener;
 import org.zoolu.sip.provider.SipProvider;
-import org.zoolu.sip.provider.SipStack;
 import org.zoolu.tools.Timer;
 import org.zoolu.tools.TimerListener;
 
@@ -53,7 +53,7 @@ import java.util.*;
  * As media applications it can also use external audio/video tools.
  * Currently only support for RAT (Robust Audio Tool) and VIC has been implemented.
  */
-public class UserAgent extends CallListenerAdapter implements CallWatcherListener, RegistrationClientListener, TimerListener {
+public class UserAgent extends CallListenerAdapter implements CallWatcherListener, RegistrationClientListener, SipKeepAliveListener, TimerListener {
 
     private static final String TAG = "Sip:UserAgent";
 
@@ -247,10 +247,11 @@ public class UserAgent extends CallListenerAdapter implements CallWatcherListene
             SipURL target_url = (sip_provider.hasOutboundProxy()) ? sip_provider.getOutboundProxy() : rc.getTarget().getAddress();
             String target_host=target_url.getHost();
             int target_port=target_url.getPort();
-            if (target_port<0) target_port=SipStack.default_port;
+            if (target_port<0) target_port=sip_provider.getConfig().default_port;
+            String target_proto=(target_url.hasTransport()) ? target_url.getTransport() : null;
             SocketAddress target_soaddr=new SocketAddress(target_host,target_port);
             if (keep_alive!=null && keep_alive.isRunning()) keep_alive.halt();
-            keep_alive=new SipKeepAlive(sip_provider,target_soaddr,null, keepalive_time);
+            keep_alive=new SipKeepAlive(sip_provider,target_proto,target_soaddr,null,keepalive_time,this);
         }
     }
 
@@ -490,6 +491,16 @@ public class UserAgent extends CallListenerAdapter implements CallWatcherListene
     }
 
 
+    // ********************* Keep-alive callbacks ********************
+
+    /** From SipKeepAliveListener. When the flow toward the registrar (or outbound proxy) fails:
+     * the contact is registered again, through a new flow (RFC 5626). */
+    public void onKeepAliveFailure(SipKeepAlive keep_alive, Exception error)
+    {  Log.v(TAG, "Keep-alive failure: "+error);
+        if (keep_alive==this.keep_alive && keep_alive.isRunning() && rc!=null) rc.register();
+    }
+
+
     // ************************ Call callbacks ***********************
 
     /** From CallWatcherListener. When the CallWatcher receives a new invite request that creates a new Call. */
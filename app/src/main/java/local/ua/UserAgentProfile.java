@@ -1,16 +1,14 @@
 package local.ua;
 
 
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.net.rtp.AudioCodec;
 import android.util.Log;
 import local.media.MediaDesc;
 import org.zoolu.sip.address.NameAddress;
 import org.zoolu.sip.address.SipURL;
 import org.zoolu.sip.provider.SipProvider;
-import org.zoolu.sip.provider.SipStack;
 import org.zoolu.tools.Configurable;
+import org.zoolu.tools.Preferences;
 
 import java.util.Vector;
 
@@ -145,9 +143,9 @@ public class UserAgentProfile implements Configurable {
     // ************************** costructors *************************
 
     /** Constructs a void UserAgentProfile */
-    public UserAgentProfile(Context context) {
+    public UserAgentProfile(Preferences prefs) {
 
-        readAll(context);
+        readAll(prefs);
 
         setUnconfiguredAttributes(null);
     }
@@ -194,15 +192,13 @@ public class UserAgentProfile implements Configurable {
         if (auth_user==null && user!=null) auth_user=user;
         if (ua_address==null && sip_provider!=null)
         {  ua_address=sip_provider.getViaAddress();
-            if (sip_provider.getPort()!=SipStack.default_port) ua_address+=":"+sip_provider.getPort();
+            if (sip_provider.getPort()!=sip_provider.getConfig().default_port) ua_address+=":"+sip_provider.getPort();
         }
     }
 
     // *********************** protected methods **********************
 
-    public void readAll(Context context) {
-
-        SharedPreferences prefs = context.getSharedPreferences("SipStack", Context.MODE_PRIVATE);
+    public void readAll(Preferences prefs) {
 
         display_name = prefs.getString("display_name", display_name);
         user = prefs.getString("user", user);
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zoolu.sip.address.NameAddress;
+import org.zoolu.sip.address.SipURL;
+import java.util.concurrent.TimeUnit;
+
+
+/** SipURL and NameAddress parsing and comparison.
+  * <p> SipURL (that parses its string once) is compared with LegacySipURL (that scans the string
+  * at each access): each benchmark reads the components that routing reads for each message. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class AddressBenchmark
+{
+    @Param({ "sip:bob@example.com", "sip:alice@192.168.1.34:5060;transport=udp", "sip:198.51.100.10;lr;ftag=9fxced76sl", "sips:+15551230001@example.com:5061;user=phone;transport=tcp" })
+    String url;
+
+    String name_address;
+
+    SipURL sip_url;
+
+    SipURL other_url;
+
+    LegacySipURL legacy_url;
+
+
+    @Setup
+    public void setup()
+    {  name_address="\"Alice Smith\" <"+url+">;tag=9fxced76sl";
+        sip_url=new SipURL(url);
+        other_url=new SipURL(url);
+        legacy_url=new LegacySipURL(url);
+    }
+
+
+    /** Parses a SipURL and reads its routing components. */
+    @Benchmark
+    public void parseSipURL(Blackhole bh)
+    {  SipURL u=new SipURL(url);
+        bh.consume(u.getUserName());
+        bh.consume(u.getHost());
+        bh.consume(u.getPort());
+        bh.consume(u.getParameter("transport"));
+        bh.consume(u.hasLr());
+    }
+
+    /** As parseSipURL(), with the old string-scanning implementation. */
+    @Benchmark
+    public void parseLegacySipURL(Blackhole bh)
+    {  LegacySipURL u=new LegacySipURL(url);
+        bh.consume(u.getUserName());
+        bh.consume(u.getHost());
+        bh.consume(u.getPort());
+        bh.consume(u.getParameter("transport"));
+        bh.consume(u.hasLr());
+    }
+
+    /** Reads the components of an already parsed SipURL (repeated accesses). */
+    @Benchmark
+    public void readSipURL(Blackhole bh)
+    {  bh.consume(sip_url.getHost());
+        bh.consume(sip_url.getPort());
+        bh.consume(sip_url.getParameter("transport"));
+    }
+
+    /** As readSipURL(), with the old implementation (that re-parses the URL at each access). */
+    @Benchmark
+    public void readLegacySipURL(Blackhole bh)
+    {  bh.consume(legacy_url.getHost());
+        bh.consume(legacy_url.getPort());
+        bh.consume(legacy_url.getParameter("transport"));
+    }
+
+    /** Compares two equal SipURLs (RFC 3261 comparison). */
+    @Benchmark
+    public boolean equalsSipURL()
+    {  return sip_url.equals(other_url);
+    }
+
+    /** Parses a NameAddress and reads its URL host. */
+    @Benchmark
+    public String parseNameAddress()
+    {  return new NameAddress(name_address).getAddress().getHost();
+    }
+}
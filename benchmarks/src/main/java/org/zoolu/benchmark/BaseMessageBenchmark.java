@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.sip.address.NameAddress;
+import org.zoolu.sip.header.ContactHeader;
+import org.zoolu.sip.header.MaxForwardsHeader;
+import org.zoolu.sip.header.ViaHeader;
+import org.zoolu.sip.message.Message;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+
+/** Header mutation of a received message, as done by proxies and by the SipProvider
+  * (Via received/rport handling), and encoding of the result. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class BaseMessageBenchmark
+{
+    byte[] data;
+
+    ViaHeader via;
+
+    ContactHeader contact;
+
+    ByteBuffer buffer=ByteBuffer.allocate(65535);
+
+
+    @Setup
+    public void setup()
+    {  data=Corpus.getBytes("invite.sip");
+        via=new ViaHeader("SIP/2.0/UDP 203.0.113.1:5060;branch=z9hG4bK776asdhds");
+        contact=new ContactHeader(new NameAddress("<sip:alice@203.0.113.45:40312;transport=udp>"));
+    }
+
+
+    /** Copies a received message (the base of all the other mutations). */
+    @Benchmark
+    public Message copy()
+    {  return new Message(new Message(data,0,data.length));
+    }
+
+    /** Adds a top Via and decrements Max-Forwards, as a proxy does when forwarding a request. */
+    @Benchmark
+    public Message addVia()
+    {  Message msg=new Message(data,0,data.length);
+        msg.addViaHeader(via);
+        MaxForwardsHeader mfh=msg.getMaxForwardsHeader();
+        mfh.decrement();
+        msg.setMaxForwardsHeader(mfh);
+        return msg;
+    }
+
+    /** Replaces the top Via with a modified one, as the SipProvider does for received/rport. */
+    @Benchmark
+    public Message rewriteVia()
+    {  Message msg=new Message(data,0,data.length);
+        ViaHeader vh=msg.getViaHeader();
+        vh.setReceived("203.0.113.45");
+        vh.setRport(40312);
+        msg.removeViaHeader();
+        msg.addViaHeader(vh);
+        return msg;
+    }
+
+    /** Replaces the Contact header. */
+    @Benchmark
+    public Message setContact()
+    {  Message msg=new Message(data,0,data.length);
+        msg.setContactHeader(contact);
+        return msg;
+    }
+
+    /** Removes the top Via and encodes the message into a buffer, as done for forwarding a response. */
+    @Benchmark
+    public int removeViaAndEncode()
+    {  Message msg=new Message(data,0,data.length);
+        msg.removeViaHeader();
+        buffer.clear();
+        msg.writeTo(buffer);
+        return buffer.position();
+    }
+
+    /** Encodes a modified message as a String. */
+    @Benchmark
+    public String rewriteViaToString()
+    {  return rewriteVia().toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+
+/** Corpus of captured SIP messages, used as benchmark fixtures.
+  * <p> Messages are read from the <i>corpus/</i> resources, one message for each file,
+  * with CRLF line terminators and exact Content-Length.
+  */
+public class Corpus
+{
+    /** Charset of the messages */
+    static final Charset UTF8=Charset.forName("UTF-8");
+
+
+    /** Gets the bytes of message <i>name</i>. */
+    public static byte[] getBytes(String name)
+    {  InputStream is=Corpus.class.getResourceAsStream("/corpus/"+name);
+        if (is==null) throw new IllegalArgumentException("no corpus message "+name);
+        try
+        {  ByteArrayOutputStream os=new ByteArrayOutputStream();
+            byte[] buf=new byte[4096];
+            int len;
+            while ((len=is.read(buf))>0) os.write(buf,0,len);
+            is.close();
+            return os.toByteArray();
+        }
+        catch (IOException e)
+        {  throw new IllegalStateException(e);
+        }
+    }
+
+    /** Gets message <i>name</i>. */
+    public static String get(String name)
+    {  return new String(getBytes(name),UTF8);
+    }
+
+    /** Gets the names of all messages. */
+    public static String[] getNames()
+    {  return get("index.txt").trim().split("\\s+");
+    }
+
+    /** Gets the body of message <i>name</i>. */
+    public static String getBody(String name)
+    {  String msg=get(name);
+        return msg.substring(msg.indexOf("\r\n\r\n")+4);
+    }
+}
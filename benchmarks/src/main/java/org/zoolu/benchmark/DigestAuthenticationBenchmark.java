@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.sip.authentication.DigestAuthentication;
+import org.zoolu.sip.authentication.DigestAuthenticator;
+import org.zoolu.sip.header.AuthorizationHeader;
+import org.zoolu.sip.header.WwwAuthenticateHeader;
+import org.zoolu.sip.message.Message;
+import java.util.concurrent.TimeUnit;
+
+
+/** Digest authentication (RFC 2617) of a REGISTER, on the client side (computing the response
+  * to a challenge) and on the server side (checking the response of an Authorization header,
+  * and authenticating the whole request with a DigestAuthenticator). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class DigestAuthenticationBenchmark
+{
+    WwwAuthenticateHeader challenge;
+
+    AuthorizationHeader authorization;
+
+    DigestAuthenticator authenticator;
+
+    WwwAuthenticateHeader server_challenge;
+
+    Message register;
+
+    int nc;
+
+
+    @Setup
+    public void setup()
+    {  Message msg=new Message(Corpus.get("unauthorized.sip"));
+        challenge=msg.getWwwAuthenticateHeader();
+        msg=new Message(Corpus.get("register_auth.sip"));
+        authorization=msg.getAuthorizationHeader();
+        authenticator=new DigestAuthenticator("example.com",(username,realm)->DigestAuthentication.getHA1(username,realm,"secret"));
+        server_challenge=authenticator.getChallenge(false);
+        register=new Message(Corpus.get("register.sip"));
+        nc=0;
+    }
+
+
+    /** Computes the response to a challenge, with qop=auth. */
+    @Benchmark
+    public String getResponse()
+    {  return new DigestAuthentication("REGISTER","sip:example.com",challenge,"auth","0a4f113b",1,null,"alice","secret").getResponse();
+    }
+
+    /** Builds the Authorization header answering a challenge. */
+    @Benchmark
+    public AuthorizationHeader getAuthorizationHeader()
+    {  return new DigestAuthentication("REGISTER","sip:example.com",challenge,"auth","0a4f113b",1,null,"alice","secret").getAuthorizationHeader();
+    }
+
+    /** Checks the response of a received Authorization header. */
+    @Benchmark
+    public boolean checkResponse()
+    {  return new DigestAuthentication("REGISTER",authorization,null,"secret").checkResponse();
+    }
+
+    /** Authenticates a REGISTER with a DigestAuthenticator (H(A1) cache, nonce HMAC, and nonce-count tracking),
+      * including the computation of its Authorization header on the client side, since each request needs a new nc. */
+    @Benchmark
+    public int authenticate()
+    {  // a nonce is stale after 65535 uses
+        if (++nc==65536)
+        {  server_challenge=authenticator.getChallenge(false);
+            nc=1;
+        }
+        String uri=register.getRequestLine().getAddress().toString();
+        register.setAuthorizationHeader(new DigestAuthentication("REGISTER",uri,server_challenge,"auth","0a4f113b",nc,null,"alice","secret").getAuthorizationHeader());
+        return authenticator.authenticate(register);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.sip.provider.SipProvider;
+import org.zoolu.tools.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/** Generation of branches, tags, and Call-IDs by 16 concurrent threads,
+  * with the IdGenerator and with the legacy shared java.util.Random. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Threads(16)
+@Fork(1)
+public class IdGeneratorBenchmark
+{
+    /** Picks a branch. */
+    @Benchmark
+    public String pickBranch()
+    {  return SipProvider.pickBranch();
+    }
+
+    /** Picks a tag. */
+    @Benchmark
+    public String pickTag()
+    {  return SipProvider.pickTag();
+    }
+
+    /** Picks a Call-ID. */
+    @Benchmark
+    public String pickCallId()
+    {  return SipProvider.pickCallId("192.168.1.34");
+    }
+
+    /** Picks a branch as the stack did before IdGenerator. */
+    @Benchmark
+    public String pickLegacyBranch()
+    {  return "z9hG4bK"+Random.nextHexString(8);
+    }
+
+    /** Picks a tag as the stack did before IdGenerator. */
+    @Benchmark
+    public String pickLegacyTag()
+    {  return Random.nextNumString(12);
+    }
+
+    /** Picks a Call-ID as the stack did before IdGenerator. */
+    @Benchmark
+    public String pickLegacyCallId()
+    {  return Random.nextNumString(12)+"@"+"192.168.1.34";
+    }
+}
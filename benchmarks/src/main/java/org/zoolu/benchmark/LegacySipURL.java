@@ -21,7 +21,7 @@
  * Luca Veltri (luca.veltri@unipr.it)
  */
 
-package org.zoolu.sip.address;
+package org.zoolu.benchmark;
 
 
 import org.zoolu.sip.provider.SipParser;
@@ -29,12 +29,13 @@ import org.zoolu.tools.Parser;
 import java.util.Vector;
 
 
-/** Class <i>SipURL</i> implements SIP and SIPS URLs.
+/** Class <i>LegacySipURL</i> is SipURL as it was before caching its parsed components:
+  * each getter scans the URL string again. It is kept only as the baseline of AddressBenchmark.
   * <P> A SIP URL is a string of the form of:
   * <BR><BLOCKQUOTE><PRE>&nbsp&nbsp sip:[user@]hostname[:port][;parameters] </PRE></BLOCKQUOTE>
   * <P> If <i>port</i> number is ommitted, -1 is returned
   */
-public class SipURL
+public class LegacySipURL
 {
 
    /** SIP scheme */
@@ -64,15 +65,15 @@ public class SipURL
 
 
 
-   /** Creates a new SipURL. */
-   public SipURL(SipURL u)
+   /** Creates a new LegacySipURL. */
+   public LegacySipURL(LegacySipURL u)
    {  url=u.url;
       secure=u.secure;
    }
 
-   /** Creates a new SipURL.
+   /** Creates a new LegacySipURL.
      * @param url hostname or the complete SIP (or SIPS) URL. */
-   public SipURL(String url)
+   public LegacySipURL(String url)
    {  if (url.startsWith(SIP_SCHEME+":")) this.url=url;
       else
       if(url.startsWith(SIPS_SCHEME+":"))
@@ -82,22 +83,22 @@ public class SipURL
       else this.url=SIP_SCHEME+":"+url;
    }
 
-   /** Creates a new SipURL. */
-   public SipURL(String username, String hostname)
+   /** Creates a new LegacySipURL. */
+   public LegacySipURL(String username, String hostname)
    {  init(username,hostname,-1);
    }
 
-   /** Creates a new SipURL. */
-   public SipURL(String hostname, int portnumber)
+   /** Creates a new LegacySipURL. */
+   public LegacySipURL(String hostname, int portnumber)
    {  init(null,hostname,portnumber);
    }
 
-   /** Creates a new SipURL. */
-   public SipURL(String username, String hostname, int portnumber) {
+   /** Creates a new LegacySipURL. */
+   public LegacySipURL(String username, String hostname, int portnumber) {
       init(username,hostname,portnumber);
    }
 
-   /** Inits the SipURL. */
+   /** Inits the LegacySipURL. */
    private void init(String username, String hostname, int portnumber) {
       StringBuffer sb = new StringBuffer(getScheme());
       sb.append(':');
@@ -109,13 +110,13 @@ public class SipURL
 
    /** Creates and returns a copy of the URL. */
    public Object clone()
-   {  return new SipURL(this);
+   {  return new LegacySipURL(this);
    }
 
    /** Indicates whether some other Object is "equal to" this URL. */
    public boolean equals(Object obj)
    {  try
-      {  return equals((SipURL)obj);
+      {  return equals((LegacySipURL)obj);
       }
       catch (Exception e)
       {  return false;  
@@ -123,7 +124,7 @@ public class SipURL
    }
 
    /** Whether two SipURLs are equals. */
-   public boolean equals(SipURL sip_url)
+   public boolean equals(LegacySipURL sip_url)
    {  return url.equals(sip_url.url);
    }
 
@@ -132,7 +133,7 @@ public class SipURL
    {  return ((secure)? SIPS_SCHEME : SIP_SCHEME);
    }
 
-   /** Gets user rtpmap of SipURL (Returns null if user rtpmap does not exist). */
+   /** Gets user rtpmap of LegacySipURL (Returns null if user rtpmap does not exist). */
    public String getUserName()
    {  int begin=getScheme().length()+1; // skip "sip:"
       int end=url.indexOf('@',begin);
@@ -140,7 +141,7 @@ public class SipURL
          else return url.substring(begin,end);
    }
 
-   /** Gets host of SipURL. */
+   /** Gets host of LegacySipURL. */
    public String getHost()
    {  char[] host_terminators={':',';','?'};
       Parser par=new Parser(url);
@@ -153,7 +154,7 @@ public class SipURL
          else return url.substring(begin,end);
    }
 
-   /** Gets port of SipURL; returns -1 if port is not specidfied. */
+   /** Gets port of LegacySipURL; returns -1 if port is not specidfied. */
    public int getPort()
    {  char[] port_terminators={';','?'};
       Parser par=new Parser(url,getScheme().length()+1); // skip "sip:"
@@ -168,12 +169,12 @@ public class SipURL
       }
    }
 
-   /** Gets boolean value to indicate if SipURL has user rtpmap. */
+   /** Gets boolean value to indicate if LegacySipURL has user rtpmap. */
    public boolean hasUserName()
    {  return getUserName()!=null;
    }
 
-   /** Gets boolean value to indicate if SipURL has port. */
+   /** Gets boolean value to indicate if LegacySipURL has port. */
    public boolean hasPort()
    {  return getPort()>=0;
    }
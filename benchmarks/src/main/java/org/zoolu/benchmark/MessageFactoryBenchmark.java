@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.sip.address.NameAddress;
+import org.zoolu.sip.address.SipURL;
+import org.zoolu.sip.message.BaseMessageFactory;
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.message.MessageFactory;
+import org.zoolu.sip.provider.SipProvider;
+import org.zoolu.sip.provider.Transport;
+import org.zoolu.sip.provider.UdpTransport;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/** Creation of requests and responses by BaseMessageFactory and MessageFactory,
+  * including the pick of the Call-ID, tags, and branch. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class MessageFactoryBenchmark
+{
+    SipProvider sip_provider;
+
+    SipURL request_uri;
+
+    NameAddress to;
+
+    NameAddress from;
+
+    NameAddress contact;
+
+    String sdp;
+
+    Message invite;
+
+
+    @Setup
+    public void setup() throws IOException
+    {  sip_provider=new SipProvider("192.168.1.34",5060,new Transport[]{  new UdpTransport(0)  },null);
+        request_uri=new SipURL("sip:bob@example.com");
+        to=new NameAddress(request_uri);
+        from=new NameAddress("\"Alice\" <sip:alice@example.com>");
+        contact=new NameAddress("<sip:alice@192.168.1.34:5060;transport=udp>");
+        sdp=Corpus.getBody("invite.sip");
+        invite=new Message(Corpus.getBytes("invite.sip"),0,Corpus.getBytes("invite.sip").length);
+    }
+
+    @TearDown
+    public void tearDown()
+    {  sip_provider.halt();
+    }
+
+
+    /** Creates an INVITE with an SDP offer. */
+    @Benchmark
+    public Message createInvite()
+    {  return BaseMessageFactory.createInviteRequest(sip_provider,request_uri,to,from,contact,sdp);
+    }
+
+    /** Creates a REGISTER. */
+    @Benchmark
+    public Message createRegister()
+    {  return BaseMessageFactory.createRegisterRequest(sip_provider,request_uri,from,from,contact);
+    }
+
+    /** Creates a MESSAGE. */
+    @Benchmark
+    public Message createMessage()
+    {  return MessageFactory.createMessageRequest(sip_provider,to,from,null,"text/plain","hello");
+    }
+
+    /** Creates a 180 response to a received INVITE. */
+    @Benchmark
+    public Message createRinging()
+    {  return BaseMessageFactory.createResponse(sip_provider,invite,180,null,"8321234356",contact,null,null);
+    }
+
+    /** Creates a 200 response with an SDP answer to a received INVITE. */
+    @Benchmark
+    public Message createOk()
+    {  return BaseMessageFactory.createResponse(sip_provider,invite,200,null,"8321234356",contact,"application/sdp",sdp);
+    }
+
+    /** Creates a CANCEL of an INVITE. */
+    @Benchmark
+    public Message createCancel()
+    {  return BaseMessageFactory.createCancelRequest(invite);
+    }
+}
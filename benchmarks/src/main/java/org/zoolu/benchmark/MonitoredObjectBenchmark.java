@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.sip.message.Message;
+import org.zoolu.tools.MonitoredObject;
+import java.util.concurrent.TimeUnit;
+
+
+/** Message allocation throughput with and without the live-object tracking of MonitoredObject. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class MonitoredObjectBenchmark
+{
+    @Param({ "false", "true" })
+    boolean tracking;
+
+    byte[] data;
+
+
+    @Setup
+    public void setup()
+    {  MonitoredObject.setEnabled(tracking);
+        data=Corpus.getBytes("invite.sip");
+    }
+
+    @TearDown
+    public void tearDown()
+    {  MonitoredObject.setEnabled(false);
+    }
+
+
+    /** Creates a message from received bytes. */
+    @Benchmark
+    public Message newMessage()
+    {  return new Message(data,0,data.length);
+    }
+
+    /** As newMessage(), with 4 threads allocating concurrently. */
+    @Benchmark
+    @Threads(4)
+    public Message newMessageContended()
+    {  return new Message(data,0,data.length);
+    }
+}
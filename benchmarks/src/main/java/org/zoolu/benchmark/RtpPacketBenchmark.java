@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import local.net.RtpPacket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.concurrent.TimeUnit;
+
+
+/** RTP header access, as done for each sent and received media packet (50 packets per second per stream). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class RtpPacketBenchmark
+{
+    RtpPacket packet;
+
+    byte[] payload=new byte[160];
+
+    int seqn=0;
+
+
+    @Setup
+    public void setup()
+    {  packet=new RtpPacket(new byte[172],0);
+        packet.setHeader(8,0x1234abcdL);
+        packet.setPayload(payload,payload.length);
+    }
+
+
+    /** Reads the header fields of a received packet. */
+    @Benchmark
+    public void readHeader(Blackhole bh)
+    {  bh.consume(packet.getVersion());
+        bh.consume(packet.getPayloadType());
+        bh.consume(packet.getSequenceNumber());
+        bh.consume(packet.getTimestamp());
+        bh.consume(packet.getSscr());
+        bh.consume(packet.hasMarker());
+        bh.consume(packet.getPayloadLength());
+    }
+
+    /** Writes the header fields of a packet to be sent. */
+    @Benchmark
+    public RtpPacket writeHeader()
+    {  seqn++;
+        packet.setSequenceNumber(seqn&0xffff);
+        packet.setTimestamp(seqn*160L);
+        packet.setMarker(false);
+        return packet;
+    }
+
+    /** Copies the payload into a packet (as the senders do). */
+    @Benchmark
+    public RtpPacket setPayload()
+    {  packet.setPayload(payload,payload.length);
+        return packet;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.sdp.OfferAnswerModel;
+import org.zoolu.sdp.SessionDescriptor;
+import java.util.concurrent.TimeUnit;
+
+
+/** SDP parsing, encoding, and offer/answer products (RFC 3264). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class SdpBenchmark
+{
+    String offer_text;
+
+    SessionDescriptor local_sdp;
+
+    SessionDescriptor offer_sdp;
+
+
+    @Setup
+    public void setup()
+    {  offer_text=Corpus.getBody("invite.sip");
+        local_sdp=new SessionDescriptor(Corpus.getBody("ok_invite.sip"));
+        offer_sdp=new SessionDescriptor(offer_text);
+    }
+
+
+    /** Parses an SDP offer. */
+    @Benchmark
+    public SessionDescriptor parse()
+    {  return new SessionDescriptor(offer_text);
+    }
+
+    /** Encodes an SDP. */
+    @Benchmark
+    public String encode()
+    {  return offer_sdp.toString();
+    }
+
+    /** Computes the answer to an offer, from the local capabilities. */
+    @Benchmark
+    public SessionDescriptor product()
+    {  return OfferAnswerModel.makeSessionDescriptorProduct(local_sdp,offer_sdp);
+    }
+
+    /** Parses a received offer and computes the answer, as done for each incoming call. */
+    @Benchmark
+    public String parseAndAnswer()
+    {  return OfferAnswerModel.makeSessionDescriptorProduct(local_sdp,new SessionDescriptor(offer_text)).toString();
+    }
+}
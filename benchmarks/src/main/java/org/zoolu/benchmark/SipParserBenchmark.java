@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zoolu.sip.header.SipHeaders;
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.provider.SipParser;
+import org.zoolu.sip.provider.SipStreamFramer;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/** Parsing of received messages: framing, header lookup, and the ids used for dispatching.
+  * Messages are parsed both from Strings and from the received bytes. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class SipParserBenchmark
+{
+    @Param({ "invite.sip", "ok_invite.sip", "register_auth.sip", "bye.sip" })
+    String name;
+
+    String text;
+
+    byte[] data;
+
+    SipStreamFramer framer;
+
+
+    @Setup
+    public void setup()
+    {  text=Corpus.get(name);
+        data=Corpus.getBytes(name);
+        framer=new SipStreamFramer(65536,65536);
+    }
+
+
+    /** Frames the message from a stream buffer (Content-Length lookup only). */
+    @Benchmark
+    public Message frameBytes() throws IOException
+    {  framer.push(data,0,data.length);
+        return framer.next();
+    }
+
+    /** Frames the message from a String (as done for messages that are not received as bytes). */
+    @Benchmark
+    public Message frameString()
+    {  return new SipParser(text).getSipMessage();
+    }
+
+    /** Reads the headers that every received message needs (as the SipProvider and transactions do). */
+    @Benchmark
+    public void parseBytes(Blackhole bh)
+    {  readHeaders(new Message(data,0,data.length),bh);
+    }
+
+    /** As parseBytes(), for a message created from a String. */
+    @Benchmark
+    public void parseString(Blackhole bh)
+    {  readHeaders(new Message(text),bh);
+    }
+
+    /** Computes the transaction and dialog ids used for dispatching a received message. */
+    @Benchmark
+    public void dispatchIds(Blackhole bh)
+    {  Message msg=new Message(data,0,data.length);
+        bh.consume(msg.isRequest()? msg.getTransactionServerId() : msg.getTransactionClientId());
+        bh.consume(msg.getDialogId());
+    }
+
+    /** Looks up and parses a single header with SipParser. */
+    @Benchmark
+    public Object parseViaHeader()
+    {  return new SipParser(text).getHeader(SipHeaders.Via);
+    }
+
+
+    private static void readHeaders(Message msg, Blackhole bh)
+    {  bh.consume(msg.getFirstLine());
+        bh.consume(msg.getViaHeader().getBranch());
+        bh.consume(msg.getFromHeader().getTag());
+        bh.consume(msg.getToHeader().getNameAddress());
+        bh.consume(msg.getCallIdHeader().getCallId());
+        bh.consume(msg.getCSeqHeader().getSequenceNumber());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.benchmark;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.zoolu.tools.Timer;
+import org.zoolu.tools.TimerListener;
+import java.util.concurrent.TimeUnit;
+
+
+/** Timer start and cancel, as done by every transaction (retransmission and transaction timeouts
+  * are started for each request, and almost always halted before they expire). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class TimerBenchmark
+{
+    TimerListener listener=new TimerListener()
+    {  public void onTimeout(Timer t) {}
+    };
+
+
+    @State(Scope.Thread)
+    public static class ThreadTimer
+    {  Timer timer;
+
+        @Setup
+        public void setup(TimerBenchmark bench)
+        {  timer=new Timer(32000,"Transaction",bench.listener);
+        }
+
+        @TearDown
+        public void tearDown()
+        {  timer.halt();
+        }
+    }
+
+
+    /** Creates, starts, and halts a new Timer. */
+    @Benchmark
+    public Timer newStartHalt()
+    {  Timer t=new Timer(32000,"Transaction",listener);
+        t.start();
+        t.halt();
+        return t;
+    }
+
+    /** Restarts and halts the same Timer. */
+    @Benchmark
+    public Timer restartHalt(ThreadTimer state)
+    {  state.timer.start();
+        state.timer.halt();
+        return state.timer;
+    }
+
+    /** As newStartHalt(), with 4 threads starting and halting timers concurrently. */
+    @Benchmark
+    @Threads(4)
+    public Timer newStartHaltContended()
+    {  return newStartHalt();
+    }
+}
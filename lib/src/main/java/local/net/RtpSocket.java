@@ -25,6 +25,8 @@ package local.net;
 
 //import java.net.*;
 import org.zoolu.net.*;
+import org.zoolu.tools.Counter;
+import org.zoolu.tools.Metrics;
 import org.zoolu.tools.Random;
 import java.io.IOException;
 
@@ -36,6 +38,18 @@ import java.io.IOException;
  */
 public class RtpSocket
 {
+    /** Number of received RTP packets */
+    static final Counter received_packets=Metrics.counter("rtp.in.packets");
+
+    /** Number of RTP packets detected as lost (from the gaps in the received sequence numbers) */
+    static final Counter lost_packets=Metrics.counter("rtp.in.lost");
+
+    /** Number of sent RTP packets */
+    static final Counter sent_packets=Metrics.counter("rtp.out.packets");
+
+    /** Max gap of sequence numbers counted as loss; larger jumps are taken as a new sequence */
+    static final int MAX_GAP=3000;
+
     /** UDP socket */
     private UdpSocket udp_socket;
 
@@ -45,6 +59,9 @@ public class RtpSocket
     /** Remote port */
     private int remote_port;
 
+    /** Highest sequence number received (or -1) */
+    private int max_seq=-1;
+
     /** Creates a new RTP socket (only receiver) */
     public RtpSocket(UdpSocket udp_socket)
     {  this.udp_socket=udp_socket;
@@ -81,6 +98,15 @@ public class RtpSocket
         rtpp.packet_len = udp_packet.getLength();
         remote_addr = udp_packet.getIpAddress();
         remote_port = udp_packet.getPort();
+        received_packets.increment();
+        int seq=rtpp.getSequenceNumber();
+        if (max_seq>=0)
+        {  int gap=(seq-max_seq)&0xffff;
+            // late (reordered or duplicated) packets are just skipped
+            if (gap>=0x8000) return;
+            if (gap>1 && gap<=MAX_GAP) lost_packets.add(gap-1);
+        }
+        max_seq=seq;
     }
 
     /** Sends a RTP packet from this socket */
@@ -91,6 +117,7 @@ public class RtpSocket
 //        udp_packet.setIpAddress(udp_socket.getLocalAddress());
 //        udp_packet.setPort(udp_socket.getLocalPort());
         udp_socket.send(udp_packet);
+        sent_packets.increment();
     }
 
     /** Closes this socket */
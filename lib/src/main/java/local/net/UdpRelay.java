@@ -22,7 +22,7 @@
 package local.net;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.net.*;
 import java.io.InterruptedIOException;
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** ByteBufferPool is a pool of (direct) ByteBuffers of the same capacity.
+  * <p> Buffers are created on demand; at most <i>max_buffers</i> released buffers
+  * are kept in the pool, while further released buffers are left to the garbage collector.
+  */
+public class ByteBufferPool
+{
+    /** Capacity of the buffers */
+    final int buffer_size;
+
+    /** Max number of buffers kept in the pool */
+    final int max_buffers;
+
+    /** Whether direct buffers are allocated */
+    final boolean direct;
+
+    /** Free buffers */
+    final ConcurrentLinkedQueue<ByteBuffer> pool=new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** Number of free buffers */
+    final AtomicInteger size=new AtomicInteger();
+
+
+    /** Creates a new ByteBufferPool.
+      * @param buffer_size the capacity of the buffers
+      * @param max_buffers the max number of buffers kept in the pool
+      * @param direct whether direct buffers are allocated */
+    public ByteBufferPool(int buffer_size, int max_buffers, boolean direct)
+    {  this.buffer_size=buffer_size;
+        this.max_buffers=max_buffers;
+        this.direct=direct;
+    }
+
+
+    /** Gets the capacity of the buffers. */
+    public int getBufferSize()
+    {  return buffer_size;
+    }
+
+
+    /** Gets a cleared buffer, taken from the pool or newly allocated. */
+    public ByteBuffer acquire()
+    {  ByteBuffer buffer=pool.poll();
+        if (buffer!=null)
+        {  size.decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        // else
+        return direct? ByteBuffer.allocateDirect(buffer_size) : ByteBuffer.allocate(buffer_size);
+    }
+
+
+    /** Returns a buffer to the pool. */
+    public void release(ByteBuffer buffer)
+    {  if (buffer==null || buffer.capacity()!=buffer_size || buffer.isDirect()!=direct) return;
+        if (size.incrementAndGet()<=max_buffers) pool.offer(buffer);
+        else size.decrementAndGet();
+    }
+
+
+    /** Gets the number of free buffers in the pool. */
+    public int getFreeBuffers()
+    {  return size.get();
+    }
+}
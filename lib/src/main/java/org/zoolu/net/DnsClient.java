@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.net;
+
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+
+
+/** DnsClient sends DNS queries (RFC 1035) through UDP to a list of name servers.
+  * <p> Each query uses a new socket bound to a random local port, and an unpredictable query id;
+  * a query is sent to each name server in turn, until a response is received.
+  * A truncated response is discarded, and the query is repeated through TCP (RFC 7766)
+  * to the same name server.
+  */
+public class DnsClient
+{
+    /** DNS port */
+    public static final int DNS_PORT=53;
+
+    /** Max size of a UDP response */
+    static final int MAX_RESPONSE_SIZE=4096;
+
+    /** Response code NOERROR */
+    public static final int NOERROR=0;
+    /** Response code NXDOMAIN */
+    public static final int NXDOMAIN=3;
+
+
+    /** Name servers */
+    InetSocketAddress[] servers;
+
+    /** Timeout of each attempt, in milliseconds */
+    int timeout;
+
+    /** Number of attempts for each name server */
+    int attempts;
+
+    /** Random generator for query ids (not predictable, against response spoofing) */
+    static final SecureRandom random=new SecureRandom();
+
+
+    /** Creates a new DnsClient.
+      * @param servers the name servers, as "address" or "address:port"
+      * @param timeout the timeout of each attempt, in milliseconds
+      * @param attempts the number of attempts for each name server */
+    public DnsClient(String[] servers, int timeout, int attempts)
+    {  this.servers=new InetSocketAddress[servers.length];
+        for (int i=0; i<servers.length; i++)
+        {  String server=servers[i].trim();
+            int port=DNS_PORT;
+            int colon=server.lastIndexOf(':');
+            if (colon>0 && server.indexOf(':')==colon)
+            {  port=Integer.parseInt(server.substring(colon+1));
+                server=server.substring(0,colon);
+            }
+            this.servers[i]=new InetSocketAddress(server,port);
+        }
+        this.timeout=timeout;
+        this.attempts=(attempts>0)? attempts : 1;
+    }
+
+    /** Gets the name servers. */
+    public InetSocketAddress[] getServers()
+    {  return servers;
+    }
+
+    /** Sends a query and waits for the response.
+      * @param name the queried domain name
+      * @param type the queried record type (see DnsRecord)
+      * @exception java.io.InterruptedIOException if no name server responded */
+    public Response query(String name, int type) throws IOException
+    {  int id=random.nextInt(0x10000);
+        byte[] query=encodeQuery(id,name,type);
+        byte[] buf=new byte[MAX_RESPONSE_SIZE];
+        IOException error=null;
+        for (int a=0; a<attempts; a++)
+        {  for (int i=0; i<servers.length; i++)
+            {  DatagramSocket socket=new DatagramSocket();
+                try
+                {  socket.setSoTimeout(timeout);
+                    socket.send(new DatagramPacket(query,query.length,servers[i]));
+                    long deadline=System.currentTimeMillis()+timeout;
+                    while (true)
+                    {  DatagramPacket packet=new DatagramPacket(buf,buf.length);
+                        socket.receive(packet);
+                        // discard datagrams that are not the response to this query
+                        if (packet.getPort()==servers[i].getPort() && packet.getAddress().equals(servers[i].getAddress()) && packet.getLength()>=12
+                            && ((buf[0]&0xff)<<8|(buf[1]&0xff))==id && (buf[2]&0x80)!=0)
+                        {  Response resp=decodeResponse(buf,packet.getLength());
+                            if (resp.truncated) return queryTcp(servers[i],id,query);
+                            // else
+                            return resp;
+                        }
+                        int left=(int)(deadline-System.currentTimeMillis());
+                        if (left<=0) throw new InterruptedIOException("DNS query timeout");
+                        socket.setSoTimeout(left);
+                    }
+                }
+                catch (IOException e)
+                {  error=e;
+                }
+                finally
+                {  socket.close();
+                }
+            }
+        }
+        throw (error!=null)? error : new InterruptedIOException("no DNS server");
+    }
+
+
+    /** Sends a query through TCP, and waits for the response. */
+    private Response queryTcp(InetSocketAddress server, int id, byte[] query) throws IOException
+    {  Socket socket=new Socket();
+        try
+        {  socket.connect(server,timeout);
+            socket.setSoTimeout(timeout);
+            OutputStream out=socket.getOutputStream();
+            byte[] data=new byte[2+query.length];
+            data[0]=(byte)(query.length>>8);
+            data[1]=(byte)query.length;
+            System.arraycopy(query,0,data,2,query.length);
+            out.write(data);
+            out.flush();
+            DataInputStream in=new DataInputStream(socket.getInputStream());
+            int len=in.readUnsignedShort();
+            if (len<12) throw new IOException("malformed DNS response");
+            byte[] buf=new byte[len];
+            in.readFully(buf);
+            if (((buf[0]&0xff)<<8|(buf[1]&0xff))!=id || (buf[2]&0x80)==0) throw new IOException("invalid DNS response");
+            Response resp=decodeResponse(buf,len);
+            if (resp.truncated) throw new IOException("truncated DNS response");
+            // else
+            return resp;
+        }
+        finally
+        {  socket.close();
+        }
+    }
+
+
+    // *************************** Encoding ***************************
+
+    /** Encodes a query. */
+    static byte[] encodeQuery(int id, String name, int type)
+    {  byte[] buf=new byte[12+name.length()+2+4+1];
+        int i=0;
+        buf[i++]=(byte)(id>>8);
+        buf[i++]=(byte)id;
+        buf[i++]=0x01; // RD
+        buf[i++]=0x00;
+        buf[i++]=0x00; buf[i++]=0x01; // QDCOUNT
+        i=12;
+        int begin=0;
+        if (name.endsWith(".")) name=name.substring(0,name.length()-1);
+        while (begin<=name.length() && name.length()>0)
+        {  int end=name.indexOf('.',begin);
+            if (end<0) end=name.length();
+            int len=end-begin;
+            if (len<1 || len>63) throw new IllegalArgumentException("invalid domain name: "+name);
+            buf[i++]=(byte)len;
+            for (int k=begin; k<end; k++) buf[i++]=(byte)name.charAt(k);
+            begin=end+1;
+        }
+        buf[i++]=0;
+        buf[i++]=(byte)(type>>8);
+        buf[i++]=(byte)type;
+        buf[i++]=0x00; buf[i++]=0x01; // class IN
+        if (i==buf.length) return buf;
+        // else
+        byte[] aux=new byte[i];
+        System.arraycopy(buf,0,aux,0,i);
+        return aux;
+    }
+
+
+    // *************************** Decoding ***************************
+
+    /** Decodes a response.
+      * @exception java.io.IOException if the response is malformed */
+    static Response decodeResponse(byte[] buf, int len) throws IOException
+    {  try
+        {  Response resp=new Response();
+            resp.truncated=(buf[2]&0x02)!=0;
+            resp.rcode=buf[3]&0x0f;
+            int qdcount=readShort(buf,4);
+            int ancount=readShort(buf,6);
+            int nscount=readShort(buf,8);
+            int arcount=readShort(buf,10);
+            int[] pos={ 12 };
+            for (int k=0; k<qdcount; k++)
+            {  readName(buf,len,pos);
+                pos[0]+=4;
+            }
+            for (int k=0; k<ancount; k++) resp.answers.add(readRecord(buf,len,pos));
+            for (int k=0; k<nscount; k++) resp.authorities.add(readRecord(buf,len,pos));
+            for (int k=0; k<arcount; k++) resp.additionals.add(readRecord(buf,len,pos));
+            return resp;
+        }
+        catch (IndexOutOfBoundsException e)
+        {  throw new IOException("malformed DNS response");
+        }
+    }
+
+    /** Reads a resource record. */
+    private static DnsRecord readRecord(byte[] buf, int len, int[] pos) throws IOException
+    {  String name=readName(buf,len,pos);
+        int i=pos[0];
+        if (i+10>len) throw new IOException("malformed DNS response");
+        int type=readShort(buf,i);
+        long ttl=((long)readShort(buf,i+4)<<16|readShort(buf,i+6))&0x7fffffffL;
+        int rdlength=readShort(buf,i+8);
+        i+=10;
+        int end=i+rdlength;
+        if (end>len) throw new IOException("malformed DNS response");
+        DnsRecord rr=new DnsRecord(name,type,ttl);
+        pos[0]=i;
+        switch (type)
+        {  case DnsRecord.A :
+            case DnsRecord.AAAA :
+            {  byte[] addr=new byte[rdlength];
+                System.arraycopy(buf,i,addr,0,rdlength);
+                rr.address=InetAddress.getByAddress(name,addr);
+                break;
+            }
+            case DnsRecord.CNAME :
+            {  rr.target=readName(buf,len,pos);
+                break;
+            }
+            case DnsRecord.SRV :
+            {  rr.priority=readShort(buf,i);
+                rr.weight=readShort(buf,i+2);
+                rr.port=readShort(buf,i+4);
+                pos[0]=i+6;
+                rr.target=readName(buf,len,pos);
+                break;
+            }
+            case DnsRecord.NAPTR :
+            {  rr.priority=readShort(buf,i);
+                rr.weight=readShort(buf,i+2);
+                pos[0]=i+4;
+                rr.flags=readString(buf,pos);
+                rr.service=readString(buf,pos);
+                rr.regexp=readString(buf,pos);
+                rr.target=readName(buf,len,pos);
+                break;
+            }
+            case DnsRecord.SOA :
+            {  readName(buf,len,pos); // MNAME
+                readName(buf,len,pos); // RNAME
+                rr.minimum=((long)readShort(buf,pos[0]+16)<<16|readShort(buf,pos[0]+18))&0x7fffffffL;
+                break;
+            }
+        }
+        pos[0]=end;
+        return rr;
+    }
+
+    /** Reads a (possibly compressed) domain name. */
+    private static String readName(byte[] buf, int len, int[] pos) throws IOException
+    {  StringBuffer sb=new StringBuffer();
+        int i=pos[0];
+        int next=-1; // where to continue after the first pointer
+        int jumps=0;
+        while (true)
+        {  int n=buf[i]&0xff;
+            if (n==0)
+            {  i++;
+                break;
+            }
+            if ((n&0xc0)==0xc0)
+            {  if (++jumps>64) throw new IOException("malformed DNS name");
+                if (next<0) next=i+2;
+                i=((n&0x3f)<<8)|(buf[i+1]&0xff);
+                continue;
+            }
+            if (i+1+n>len) throw new IOException("malformed DNS name");
+            if (sb.length()>0) sb.append('.');
+            for (int k=i+1; k<=i+n; k++) sb.append((char)(buf[k]&0xff));
+            i+=n+1;
+        }
+        pos[0]=(next>=0)? next : i;
+        return sb.toString();
+    }
+
+    /** Reads a character-string. */
+    private static String readString(byte[] buf, int[] pos)
+    {  int i=pos[0];
+        int n=buf[i]&0xff;
+        StringBuffer sb=new StringBuffer(n);
+        for (int k=i+1; k<=i+n; k++) sb.append((char)(buf[k]&0xff));
+        pos[0]=i+1+n;
+        return sb.toString();
+    }
+
+    /** Reads an unsigned 16-bit integer. */
+    private static int readShort(byte[] buf, int i)
+    {  return (buf[i]&0xff)<<8|(buf[i+1]&0xff);
+    }
+
+
+    /** Response to a DNS query. */
+    public static class Response
+    {  /** Response code */
+        int rcode;
+        /** Whether the response is truncated */
+        boolean truncated;
+        /** Answer records */
+        ArrayList<DnsRecord> answers=new ArrayList<DnsRecord>();
+        /** Authority records */
+        ArrayList<DnsRecord> authorities=new ArrayList<DnsRecord>();
+        /** Additional records */
+        ArrayList<DnsRecord> additionals=new ArrayList<DnsRecord>();
+
+        /** Gets the response code. */
+        public int getResponseCode()
+        {  return rcode;
+        }
+
+        /** Gets the answer records of type <i>type</i>. */
+        public ArrayList<DnsRecord> getAnswers(int type)
+        {  ArrayList<DnsRecord> list=new ArrayList<DnsRecord>();
+            for (int i=0; i<answers.size(); i++) if (answers.get(i).type==type) list.add(answers.get(i));
+            return list;
+        }
+
+        /** Gets the additional records. */
+        public ArrayList<DnsRecord> getAdditionals()
+        {  return additionals;
+        }
+
+        /** Gets the TTL of a negative response (RFC 2308), that is the minimum
+          * between the TTL and the MINIMUM field of the SOA authority record, or -1 if there is no SOA. */
+        public long getNegativeTtl()
+        {  for (int i=0; i<authorities.size(); i++)
+            {  DnsRecord rr=authorities.get(i);
+                if (rr.type==DnsRecord.SOA) return Math.min(rr.ttl,rr.minimum);
+            }
+            return -1;
+        }
+    }
+}
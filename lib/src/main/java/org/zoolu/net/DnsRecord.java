@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.net;
+
+
+import java.net.InetAddress;
+
+
+/** DnsRecord is a DNS resource record, as returned by DnsClient.
+  * <p> Only the record types used for locating SIP servers (RFC 3263) are decoded:
+  * A, AAAA, CNAME, SRV, NAPTR and SOA (the latter only for negative caching).
+  */
+public class DnsRecord
+{
+    /** Record type A */
+    public static final int A=1;
+    /** Record type CNAME */
+    public static final int CNAME=5;
+    /** Record type SOA */
+    public static final int SOA=6;
+    /** Record type AAAA */
+    public static final int AAAA=28;
+    /** Record type SRV */
+    public static final int SRV=33;
+    /** Record type NAPTR */
+    public static final int NAPTR=35;
+
+
+    /** Owner name */
+    String name;
+
+    /** Record type */
+    int type;
+
+    /** Time to live, in seconds */
+    long ttl;
+
+    /** Address (A and AAAA) */
+    InetAddress address=null;
+
+    /** Target (SRV), canonical name (CNAME), or replacement (NAPTR) */
+    String target=null;
+
+    /** Priority (SRV), or order (NAPTR) */
+    int priority=0;
+
+    /** Weight (SRV), or preference (NAPTR) */
+    int weight=0;
+
+    /** Port (SRV) */
+    int port=0;
+
+    /** Flags (NAPTR) */
+    String flags=null;
+
+    /** Service (NAPTR) */
+    String service=null;
+
+    /** Regular expression (NAPTR) */
+    String regexp=null;
+
+    /** Minimum TTL, used for negative caching (SOA) */
+    long minimum=0;
+
+
+    /** Creates a new DnsRecord. */
+    DnsRecord(String name, int type, long ttl)
+    {  this.name=name;
+        this.type=type;
+        this.ttl=ttl;
+    }
+
+    /** Creates a new A or AAAA DnsRecord. */
+    public DnsRecord(String name, InetAddress address, long ttl)
+    {  this(name,(address.getAddress().length==4)? A : AAAA,ttl);
+        this.address=address;
+    }
+
+    /** Creates a new SRV DnsRecord. */
+    public DnsRecord(String name, int priority, int weight, int port, String target, long ttl)
+    {  this(name,SRV,ttl);
+        this.priority=priority;
+        this.weight=weight;
+        this.port=port;
+        this.target=target;
+    }
+
+    /** Creates a new NAPTR DnsRecord. */
+    public DnsRecord(String name, int order, int preference, String flags, String service, String regexp, String replacement, long ttl)
+    {  this(name,NAPTR,ttl);
+        this.priority=order;
+        this.weight=preference;
+        this.flags=flags;
+        this.service=service;
+        this.regexp=regexp;
+        this.target=replacement;
+    }
+
+    /** Gets the owner name. */
+    public String getName()
+    {  return name;
+    }
+
+    /** Gets the record type. */
+    public int getType()
+    {  return type;
+    }
+
+    /** Gets the time to live, in seconds. */
+    public long getTtl()
+    {  return ttl;
+    }
+
+    /** Gets the address (A and AAAA records). */
+    public InetAddress getAddress()
+    {  return address;
+    }
+
+    /** Gets the target (SRV), the canonical name (CNAME), or the replacement (NAPTR). */
+    public String getTarget()
+    {  return target;
+    }
+
+    /** Gets the priority (SRV). */
+    public int getPriority()
+    {  return priority;
+    }
+
+    /** Gets the weight (SRV). */
+    public int getWeight()
+    {  return weight;
+    }
+
+    /** Gets the port (SRV). */
+    public int getPort()
+    {  return port;
+    }
+
+    /** Gets the order (NAPTR). */
+    public int getOrder()
+    {  return priority;
+    }
+
+    /** Gets the preference (NAPTR). */
+    public int getPreference()
+    {  return weight;
+    }
+
+    /** Gets the flags (NAPTR). */
+    public String getFlags()
+    {  return flags;
+    }
+
+    /** Gets the service (NAPTR). */
+    public String getService()
+    {  return service;
+    }
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  StringBuffer sb=new StringBuffer();
+        sb.append(name).append(' ').append(ttl).append(' ');
+        switch (type)
+        {  case A : case AAAA : sb.append((type==A)? "A " : "AAAA ").append(address.getHostAddress()); break;
+            case CNAME : sb.append("CNAME ").append(target); break;
+            case SRV : sb.append("SRV ").append(priority).append(' ').append(weight).append(' ').append(port).append(' ').append(target); break;
+            case NAPTR : sb.append("NAPTR ").append(priority).append(' ').append(weight).append(" \"").append(flags).append("\" \"").append(service).append("\" \"").append(regexp).append("\" ").append(target); break;
+            case SOA : sb.append("SOA ").append(minimum); break;
+            default : sb.append("TYPE").append(type);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,616 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.net;
+
+
+import org.zoolu.tools.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** DnsResolver locates SIP servers as described in RFC 3263, caching all DNS records.
+  * <p> If the transport is not specified, NAPTR records select the transport protocol and the SRV domain;
+  * if there are no usable NAPTR records, SRV records are looked up for each supported transport.
+  * SRV targets are ordered by priority and then randomly by weight (RFC 2782).
+  * If nothing is found, or if a port is specified, the host is simply resolved to its A and AAAA addresses.
+  * <p> Records are cached for their TTL, and failed lookups (NXDOMAIN or no data) for the negative TTL
+  * of the response (RFC 2308). NAPTR and SRV lookups require a list of name servers (see DnsClient);
+  * without name servers, only addresses are resolved, through the system resolver, and cached for a default TTL.
+  * <p> The result of a resolution is a list of targets in order of preference: if a target fails,
+  * it can be reported through reportFailure(), so that it is moved to the end of following results
+  * for a while, and the next target can be tried.
+  * <p> Lookups can be done synchronously, or asynchronously through a small pool of threads.
+  */
+public class DnsResolver
+{
+    private static final String TAG = "Sip: DnsResolver";
+
+    /** Transport UDP */
+    public static final String PROTO_UDP="udp";
+    /** Transport TCP */
+    public static final String PROTO_TCP="tcp";
+    /** Transport TLS */
+    public static final String PROTO_TLS="tls";
+
+    /** Max number of cached lookups */
+    static final int MAX_ENTRIES=1024;
+
+    /** Max number of threads used for asynchronous lookups */
+    static final int MAX_THREADS=2;
+
+
+    /** DNS client (null if no name server is configured) */
+    DnsClient client;
+
+    /** Supported transport protocols, in order of preference */
+    String[] protocols={ PROTO_UDP, PROTO_TCP };
+
+    /** Default port */
+    int default_port=5060;
+
+    /** Default port for TLS */
+    int default_tls_port=5061;
+
+    /** TTL of the addresses obtained from the system resolver, in seconds */
+    long default_ttl=60;
+
+    /** TTL of negative responses without SOA record, in seconds */
+    long negative_ttl=30;
+
+    /** Max TTL, in seconds */
+    long max_ttl=3600;
+
+    /** How long a failed target is moved to the end of the results, in milliseconds */
+    long failure_timeout=30000;
+
+    /** Cache, as table:(String)type:name-->(Entry)entry */
+    ConcurrentHashMap<String,Entry> cache=new ConcurrentHashMap<String,Entry>();
+
+    /** Failed targets, as table:(String)address:port-->(Long)expiration time */
+    ConcurrentHashMap<String,Long> failures=new ConcurrentHashMap<String,Long>();
+
+    /** Executor of the asynchronous lookups */
+    ThreadPoolExecutor executor=null;
+
+    /** Random generator for the weighted selection */
+    Random random=new Random();
+
+    /** Number of lookups found in cache */
+    final AtomicLong hits=new AtomicLong();
+
+    /** Number of lookups not found in cache */
+    final AtomicLong misses=new AtomicLong();
+
+
+    /** Creates a new DnsResolver that uses the system resolver (only A and AAAA records are resolved). */
+    public DnsResolver()
+    {  client=null;
+    }
+
+    /** Creates a new DnsResolver.
+      * @param servers the name servers, as "address" or "address:port"; if null or empty, the system resolver is used
+      * @param timeout the timeout of each query attempt, in milliseconds */
+    public DnsResolver(String[] servers, int timeout)
+    {  client=(servers!=null && servers.length>0)? new DnsClient(servers,timeout,2) : null;
+    }
+
+    /** Sets the supported transport protocols, in order of preference; the first one is used by default. */
+    public void setTransportProtocols(String[] protocols)
+    {  String[] protos=new String[protocols.length];
+        for (int i=0; i<protos.length; i++) protos[i]=protocols[i].toLowerCase();
+        this.protocols=protos;
+    }
+
+    /** Sets the default ports. */
+    public void setDefaultPorts(int port, int tls_port)
+    {  default_port=port;
+        default_tls_port=tls_port;
+    }
+
+    /** Whether NAPTR and SRV records are resolved (that is, whether name servers are configured). */
+    public boolean hasNameServers()
+    {  return client!=null;
+    }
+
+    /** Gets the number of lookups found in cache. */
+    public long getHits()
+    {  return hits.get();
+    }
+
+    /** Gets the number of lookups not found in cache. */
+    public long getMisses()
+    {  return misses.get();
+    }
+
+    /** Gets the number of cached lookups. */
+    public int getCacheSize()
+    {  return cache.size();
+    }
+
+    /** Removes all cached records and failures. */
+    public void clearCache()
+    {  cache.clear();
+        failures.clear();
+    }
+
+    /** Stops the threads of the asynchronous lookups. */
+    public synchronized void halt()
+    {  if (executor!=null) executor.shutdownNow();
+        executor=null;
+    }
+
+
+    // ************************* Addresses *************************
+
+    /** Gets the IpAddress of <i>host</i> (the first address found). */
+    public IpAddress getByName(String host) throws UnknownHostException
+    {  return new IpAddress(lookupAddresses(host,false)[0]);
+    }
+
+    /** Gets all IpAddresses of <i>host</i>. */
+    public IpAddress[] getAllByName(String host) throws UnknownHostException
+    {  InetAddress[] iaddrs=lookupAddresses(host,false);
+        IpAddress[] ipaddrs=new IpAddress[iaddrs.length];
+        for (int i=0; i<iaddrs.length; i++) ipaddrs[i]=new IpAddress(iaddrs[i]);
+        return ipaddrs;
+    }
+
+
+    // ************************** RFC 3263 **************************
+
+    /** Resolves the targets of a SIP URI.
+      * @param host the host of the URI (or the maddr)
+      * @param port the port of the URI, or a value &lt;=0 if not specified
+      * @param proto the transport protocol, or null if not specified (that is, no transport parameter)
+      * @param secure whether the URI is a SIPS URI
+      * @return the targets, in order of preference
+      * @exception java.net.UnknownHostException if no target is found */
+    public Target[] resolve(String host, int port, String proto, boolean secure) throws UnknownHostException
+    {  return resolve(host,port,proto,secure,false);
+    }
+
+    /** Gets the targets of a SIP URI, if all the needed records are cached; otherwise it returns null.
+      * It never blocks.
+      * @exception java.net.UnknownHostException if no target is found */
+    public Target[] getCached(String host, int port, String proto, boolean secure) throws UnknownHostException
+    {  return resolve(host,port,proto,secure,true);
+    }
+
+    /** Resolves the targets of a SIP URI asynchronously.
+      * If all the needed records are cached, the listener is called before this method returns;
+      * otherwise it is called by a lookup thread. */
+    public void resolve(final String host, final int port, final String proto, final boolean secure, final DnsResolverListener listener)
+    {  Target[] targets;
+        try
+        {  targets=getCached(host,port,proto,secure);
+        }
+        catch (UnknownHostException e)
+        {  listener.onResolutionFailure(this,host,e);
+            return;
+        }
+        if (targets!=null)
+        {  listener.onResolved(this,host,targets);
+            return;
+        }
+        // else
+        getExecutor().execute(new Runnable()
+        {  public void run()
+            {  Target[] targets;
+                try
+                {  targets=resolve(host,port,proto,secure);
+                }
+                catch (Exception e)
+                {  listener.onResolutionFailure(DnsResolver.this,host,e);
+                    return;
+                }
+                listener.onResolved(DnsResolver.this,host,targets);
+            }
+        });
+    }
+
+    /** Reports that a target failed (e.g. the connection was refused),
+      * so that it is moved to the end of the following results for a while. */
+    public void reportFailure(Target target)
+    {  failures.put(target.getAddress().toString()+":"+target.getPort(),Long.valueOf(System.currentTimeMillis()+failure_timeout));
+    }
+
+
+    /** Resolves the targets of a SIP URI.
+      * @param cache_only whether only cached records have to be used
+      * @return the targets, or null if <i>cache_only</i> is true and some records are not cached */
+    private Target[] resolve(String host, int port, String proto, boolean secure, boolean cache_only) throws UnknownHostException
+    {  if (proto!=null) proto=proto.toLowerCase();
+        if (secure) proto=PROTO_TLS;
+        String default_proto=(proto!=null)? proto : protocols[0];
+        int default_proto_port=(default_proto.equals(PROTO_TLS))? default_tls_port : default_port;
+        ArrayList<Target> targets=new ArrayList<Target>();
+        if (port<=0 && client!=null && !isNumeric(host))
+        {  if (proto==null)
+            {  DnsRecord[] naptrs=lookup(host,DnsRecord.NAPTR,cache_only);
+                if (naptrs==null) return null;
+                // else
+                naptrs=naptrs.clone();
+                Arrays.sort(naptrs,NAPTR_ORDER);
+                for (int i=0; i<naptrs.length; i++)
+                {  String p=getProtocol(naptrs[i]);
+                    if (p==null || !isSupported(p) || !"s".equalsIgnoreCase(naptrs[i].flags)) continue;
+                    // else
+                    if (!addSrvTargets(targets,host,naptrs[i].target,p,cache_only)) return null;
+                }
+                if (targets.size()==0)
+                {  for (int i=0; i<protocols.length; i++)
+                    {  String p=protocols[i];
+                        if (!p.equals(PROTO_UDP) && !p.equals(PROTO_TCP) && !p.equals(PROTO_TLS)) continue;
+                        if (!addSrvTargets(targets,host,getSrvName(host,p),p,cache_only)) return null;
+                    }
+                }
+            }
+            else
+            {  if (!addSrvTargets(targets,host,getSrvName(host,proto),proto,cache_only)) return null;
+            }
+        }
+        if (targets.size()==0)
+        {  InetAddress[] iaddrs=lookupAddresses(host,cache_only);
+            if (iaddrs==null) return null;
+            // else
+            for (int i=0; i<iaddrs.length; i++) targets.add(new Target(default_proto,host,new IpAddress(iaddrs[i],host),(port>0)? port : default_proto_port));
+        }
+        if (targets.size()==0) throw new UnknownHostException(host);
+        // else
+        return moveFailures(targets.toArray(new Target[targets.size()]));
+    }
+
+    /** Adds the targets of the SRV records of <i>srv_name</i>.
+      * The addresses keep the SIP <i>domain</i> as host name, since it is the identity a TLS server is verified against (RFC 5922).
+      * @return false if <i>cache_only</i> is true and some records are not cached */
+    private boolean addSrvTargets(ArrayList<Target> targets, String domain, String srv_name, String proto, boolean cache_only) throws UnknownHostException
+    {  DnsRecord[] srvs=lookup(srv_name,DnsRecord.SRV,cache_only);
+        if (srvs==null) return false;
+        // else
+        srvs=orderSrv(srvs);
+        for (int i=0; i<srvs.length; i++)
+        {  String target=srvs[i].target;
+            // "." means that the service is not available
+            if (target==null || target.length()==0 || target.equals(".")) continue;
+            // else
+            InetAddress[] iaddrs;
+            try
+            {  iaddrs=lookupAddresses(target,cache_only);
+            }
+            catch (UnknownHostException e)
+            {  continue;
+            }
+            if (iaddrs==null) return false;
+            // else
+            for (int k=0; k<iaddrs.length; k++) targets.add(new Target(proto,target,new IpAddress(iaddrs[k],domain),srvs[i].port));
+        }
+        return true;
+    }
+
+    /** Moves the targets that have been reported as failed to the end. */
+    Target[] moveFailures(Target[] targets)
+    {  if (failures.size()==0) return targets;
+        // else
+        long now=System.currentTimeMillis();
+        Target[] ordered=new Target[targets.length];
+        int n=0;
+        for (int i=0; i<targets.length; i++) if (!isFailed(targets[i],now)) ordered[n++]=targets[i];
+        for (int i=0; i<targets.length; i++) if (isFailed(targets[i],now)) ordered[n++]=targets[i];
+        return ordered;
+    }
+
+    /** Whether a target has been reported as failed. */
+    private boolean isFailed(Target target, long now)
+    {  String key=target.getAddress().toString()+":"+target.getPort();
+        Long expires=failures.get(key);
+        if (expires==null) return false;
+        if (expires.longValue()>now) return true;
+        // else
+        failures.remove(key);
+        return false;
+    }
+
+    /** Orders SRV records by priority, and randomly by weight within the same priority (RFC 2782). */
+    DnsRecord[] orderSrv(DnsRecord[] srvs)
+    {  DnsRecord[] sorted=srvs.clone();
+        Arrays.sort(sorted,SRV_PRIORITY);
+        DnsRecord[] ordered=new DnsRecord[sorted.length];
+        int n=0;
+        int begin=0;
+        while (begin<sorted.length)
+        {  int end=begin;
+            while (end<sorted.length && sorted[end].priority==sorted[begin].priority) end++;
+            // weighted random selection among [begin,end)
+            ArrayList<DnsRecord> group=new ArrayList<DnsRecord>(Arrays.asList(sorted).subList(begin,end));
+            while (group.size()>0)
+            {  int sum=0;
+                for (int i=0; i<group.size(); i++) sum+=group.get(i).weight;
+                int r;
+                synchronized (random) {  r=random.nextInt(sum+1);  }
+                int i=0;
+                int running=group.get(0).weight;
+                while (running<r) running+=group.get(++i).weight;
+                ordered[n++]=group.remove(i);
+            }
+            begin=end;
+        }
+        return ordered;
+    }
+
+    /** Gets the transport protocol of a NAPTR record (or null). */
+    private static String getProtocol(DnsRecord naptr)
+    {  String service=naptr.service;
+        if ("SIP+D2U".equalsIgnoreCase(service)) return PROTO_UDP;
+        if ("SIP+D2T".equalsIgnoreCase(service)) return PROTO_TCP;
+        if ("SIPS+D2T".equalsIgnoreCase(service)) return PROTO_TLS;
+        return null;
+    }
+
+    /** Gets the SRV domain name for a transport protocol. */
+    private static String getSrvName(String host, String proto)
+    {  if (proto.equals(PROTO_TLS)) return "_sips._tcp."+host;
+        else return "_sip._"+proto+"."+host;
+    }
+
+    /** Whether a transport protocol is supported. */
+    private boolean isSupported(String proto)
+    {  for (int i=0; i<protocols.length; i++) if (protocols[i].equals(proto)) return true;
+        return false;
+    }
+
+    /** Whether the host is a numeric IPv4 or IPv6 address. */
+    static boolean isNumeric(String host)
+    {  if (host.indexOf(':')>=0) return true;
+        for (int i=0; i<host.length(); i++)
+        {  char c=host.charAt(i);
+            if (c!='.' && (c<'0' || c>'9')) return false;
+        }
+        return true;
+    }
+
+
+    // *************************** Cache ***************************
+
+    /** Gets the addresses of <i>host</i> (A and AAAA records).
+      * @return the addresses, or null if <i>cache_only</i> is true and they are not cached
+      * @exception java.net.UnknownHostException if no address is found */
+    private InetAddress[] lookupAddresses(String host, boolean cache_only) throws UnknownHostException
+    {  if (host.startsWith("[") && host.endsWith("]")) host=host.substring(1,host.length()-1);
+        if (isNumeric(host)) return new InetAddress[]{ InetAddress.getByName(host) };
+        // else
+        DnsRecord[] records;
+        if (client!=null)
+        {  DnsRecord[] a=lookup(host,DnsRecord.A,cache_only);
+            DnsRecord[] aaaa=lookup(host,DnsRecord.AAAA,cache_only);
+            if (a==null || aaaa==null) return null;
+            // else
+            records=new DnsRecord[a.length+aaaa.length];
+            System.arraycopy(a,0,records,0,a.length);
+            System.arraycopy(aaaa,0,records,a.length,aaaa.length);
+        }
+        else
+        {  String key="0:"+host.toLowerCase();
+            records=get(key);
+            if (records==null)
+            {  if (cache_only) return null;
+                // else
+                try
+                {  InetAddress[] iaddrs=InetAddress.getAllByName(host);
+                    records=new DnsRecord[iaddrs.length];
+                    for (int i=0; i<iaddrs.length; i++) records[i]=new DnsRecord(host,iaddrs[i],default_ttl);
+                    put(key,records,default_ttl);
+                }
+                catch (UnknownHostException e)
+                {  records=new DnsRecord[0];
+                    put(key,records,negative_ttl);
+                }
+            }
+        }
+        if (records.length==0) throw new UnknownHostException(host);
+        // else
+        InetAddress[] iaddrs=new InetAddress[records.length];
+        for (int i=0; i<records.length; i++) iaddrs[i]=records[i].address;
+        return iaddrs;
+    }
+
+    /** Gets the records of type <i>type</i> for <i>name</i>.
+      * @return the records (possibly none), or null if <i>cache_only</i> is true and they are not cached */
+    private DnsRecord[] lookup(String name, int type, boolean cache_only)
+    {  String key=type+":"+name.toLowerCase();
+        DnsRecord[] records=get(key);
+        if (records!=null || cache_only) return records;
+        // else
+        DnsClient.Response resp;
+        try
+        {  resp=client.query(name,type);
+        }
+        catch (IOException e)
+        {  // server failure: not cached
+            Log.w(TAG, () -> "DNS query "+key+" failed: "+e);
+            return new DnsRecord[0];
+        }
+        ArrayList<DnsRecord> answers=resp.getAnswers(type);
+        records=answers.toArray(new DnsRecord[answers.size()]);
+        long ttl;
+        if (records.length>0)
+        {  ttl=max_ttl;
+            for (int i=0; i<records.length; i++) ttl=Math.min(ttl,records[i].ttl);
+        }
+        else
+        {  ttl=resp.getNegativeTtl();
+            if (ttl<0) ttl=negative_ttl;
+        }
+        put(key,records,ttl);
+        // cache also the addresses of additional records (e.g. SRV targets)
+        ArrayList<DnsRecord> additionals=resp.getAdditionals();
+        for (int i=0; i<additionals.size(); i++)
+        {  DnsRecord rr=additionals.get(i);
+            if (rr.type!=DnsRecord.A && rr.type!=DnsRecord.AAAA) continue;
+            // else
+            String rr_key=rr.type+":"+rr.name.toLowerCase();
+            if (get(rr_key)!=null) continue;
+            // else
+            ArrayList<DnsRecord> list=new ArrayList<DnsRecord>();
+            long rr_ttl=max_ttl;
+            for (int k=i; k<additionals.size(); k++)
+            {  DnsRecord aux=additionals.get(k);
+                if (aux.type==rr.type && aux.name.equalsIgnoreCase(rr.name))
+                {  list.add(aux);
+                    rr_ttl=Math.min(rr_ttl,aux.ttl);
+                }
+            }
+            put(rr_key,list.toArray(new DnsRecord[list.size()]),rr_ttl);
+        }
+        return records;
+    }
+
+    /** Gets cached records (or null). */
+    private DnsRecord[] get(String key)
+    {  Entry entry=cache.get(key);
+        if (entry!=null)
+        {  if (entry.expires>System.currentTimeMillis())
+            {  hits.incrementAndGet();
+                return entry.records;
+            }
+            // else
+            cache.remove(key,entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Caches records for <i>ttl</i> seconds. */
+    private void put(String key, DnsRecord[] records, long ttl)
+    {  if (ttl<=0) return;
+        // else
+        long now=System.currentTimeMillis();
+        if (cache.size()>=MAX_ENTRIES)
+        {  for (Iterator<Entry> i=cache.values().iterator(); i.hasNext(); ) if (i.next().expires<=now) i.remove();
+            if (cache.size()>=MAX_ENTRIES)
+            {  Iterator<String> i=cache.keySet().iterator();
+                if (i.hasNext()) {  i.next(); i.remove();  }
+            }
+        }
+        cache.put(key,new Entry(records,now+Math.min(ttl,max_ttl)*1000));
+    }
+
+    /** Gets the executor of the asynchronous lookups. */
+    private synchronized ThreadPoolExecutor getExecutor()
+    {  if (executor==null)
+        {  executor=new ThreadPoolExecutor(MAX_THREADS,MAX_THREADS,30,TimeUnit.SECONDS,new LinkedBlockingQueue<Runnable>(),new ThreadFactory()
+            {  public Thread newThread(Runnable r)
+                {  Thread t=new Thread(r,"DnsResolver");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+
+    /** NAPTR ordering: by order, then by preference. */
+    static final Comparator<DnsRecord> NAPTR_ORDER=new Comparator<DnsRecord>()
+    {  public int compare(DnsRecord a, DnsRecord b)
+        {  if (a.priority!=b.priority) return a.priority-b.priority;
+            else return a.weight-b.weight;
+        }
+    };
+
+    /** SRV ordering: by priority, zero weights first. */
+    static final Comparator<DnsRecord> SRV_PRIORITY=new Comparator<DnsRecord>()
+    {  public int compare(DnsRecord a, DnsRecord b)
+        {  if (a.priority!=b.priority) return a.priority-b.priority;
+            else return ((a.weight==0)? 0 : 1)-((b.weight==0)? 0 : 1);
+        }
+    };
+
+
+    /** Cached records. */
+    static class Entry
+    {  DnsRecord[] records;
+        long expires;
+
+        Entry(DnsRecord[] records, long expires)
+        {  this.records=records;
+            this.expires=expires;
+        }
+    }
+
+
+    /** Target of a SIP request: transport protocol, address and port. */
+    public static class Target
+    {  String proto;
+        String host;
+        IpAddress address;
+        int port;
+
+        /** Creates a new Target. */
+        public Target(String proto, String host, IpAddress address, int port)
+        {  this.proto=proto;
+            this.host=host;
+            this.address=address;
+            this.port=port;
+        }
+
+        /** Gets the transport protocol. */
+        public String getProtocol()
+        {  return proto;
+        }
+
+        /** Gets the host name. */
+        public String getHost()
+        {  return host;
+        }
+
+        /** Gets the address. */
+        public IpAddress getAddress()
+        {  return address;
+        }
+
+        /** Gets the port. */
+        public int getPort()
+        {  return port;
+        }
+
+        /** Gets a String representation of the Object */
+        public String toString()
+        {  return proto+":"+host+"/"+address+":"+port;
+        }
+    }
+}
@@ -23,8 +23,7 @@
 
 package org.zoolu.net;
 
-import android.net.wifi.WifiManager;
-import android.util.Log;
+import org.zoolu.tools.Log;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
@@ -45,6 +44,9 @@ public class IpAddress {
     /** The InetAddress */
     private InetAddress inet_address;
 
+    /** The host name the address has been resolved from (null if unknown) */
+    private String host_name;
+
     // ********************* Protected *********************
 
     /** Creates an IpAddress */
@@ -52,6 +54,12 @@ public class IpAddress {
         init(null, iaddress);
     }
 
+    /** Creates an IpAddress resolved from a given host name */
+    IpAddress(InetAddress iaddress, String host_name) {
+        init(null, iaddress);
+        this.host_name=host_name;
+    }
+
     /** Inits the IpAddress */
     private void init(String address, InetAddress iaddress) {
         this.address=address;
@@ -74,6 +82,13 @@ public class IpAddress {
     /** Creates an IpAddress */
     public IpAddress(IpAddress ipaddr) {
         init(ipaddr.address,ipaddr.inet_address);
+        host_name=ipaddr.host_name;
+    }
+
+    /** Gets the host name the address has been resolved from, e.g. the domain that a TLS server
+      * has to be verified against (null if unknown). */
+    public String getHostName() {
+        return host_name;
     }
 
     /** Makes a copy */
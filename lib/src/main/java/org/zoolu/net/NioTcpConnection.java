@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+
+/** NioTcpConnection is a TCP connection served by a NioTcpProvider.
+  * <p> It has no thread of its own: data is read by the I/O thread the connection
+  * is assigned to, and passed to the NioTcpConnectionListener.
+  * <br> Data to be sent is written directly to the non-blocking channel;
+  * data that cannot be written immediately is queued and written by the I/O thread
+  * as soon as the channel becomes writable.
+  * <p> Outgoing connections are established asynchronously: data sent before the
+  * connection is established is queued, and written as soon as the connection completes.
+  * If the connection cannot be established within the connect timeout, it is closed
+  * and the listener is notified of the failure.
+  */
+public class NioTcpConnection
+{
+    /** Default max number of bytes waiting to be sent */
+    public static final int DEFAULT_MAX_QUEUED_BYTES=1024*1024;
+
+    /** Socket channel */
+    SocketChannel channel;
+
+    /** I/O thread serving the connection */
+    NioTcpProvider.IoThread io;
+
+    /** Selection key (null if not registered yet) */
+    SelectionKey key=null;
+
+    /** NioTcpConnection listener */
+    NioTcpConnectionListener listener=null;
+
+    /** Remote address */
+    IpAddress remote_ipaddr;
+
+    /** Remote port */
+    int remote_port;
+
+    /** Buffers waiting to be sent */
+    ArrayDeque<ByteBuffer> queue=new ArrayDeque<ByteBuffer>();
+
+    /** Number of bytes waiting to be sent */
+    int queued_bytes=0;
+
+    /** Max number of bytes waiting to be sent */
+    int max_queued_bytes=DEFAULT_MAX_QUEUED_BYTES;
+
+    /** Whether the channel is connected */
+    boolean connected;
+
+    /** Time (in milliseconds) the connection has to be established by (0 for no timeout) */
+    long connect_deadline=0;
+
+    /** Whether the I/O thread should be notified when the channel becomes writable */
+    boolean write_interest=false;
+
+    /** Whether it has been started */
+    boolean started=false;
+
+    /** Whether it has been closed */
+    boolean closed=false;
+
+
+    /** Creates a new NioTcpConnection on a connected channel. */
+    NioTcpConnection(SocketChannel channel, NioTcpProvider.IoThread io) throws IOException
+    {  this(channel,io,null,0);
+    }
+
+
+    /** Creates a new NioTcpConnection on a connected, or connecting, channel.
+      * @param remote_ipaddr the remote address (null for the address the channel is connected to)
+      * @param remote_port the remote port */
+    NioTcpConnection(SocketChannel channel, NioTcpProvider.IoThread io, IpAddress remote_ipaddr, int remote_port) throws IOException
+    {  this.channel=channel;
+        this.io=io;
+        channel.configureBlocking(false);
+        connected=channel.isConnected();
+        if (remote_ipaddr!=null)
+        {  this.remote_ipaddr=remote_ipaddr;
+            this.remote_port=remote_port;
+        }
+        else
+        {  InetAddress iaddr=channel.socket().getInetAddress();
+            this.remote_ipaddr=(iaddr!=null)? new IpAddress(iaddr) : null;
+            this.remote_port=channel.socket().getPort();
+        }
+    }
+
+
+    /** Gets the remote IpAddress */
+    public IpAddress getRemoteAddress()
+    {  return remote_ipaddr;
+    }
+
+
+    /** Gets the remote port */
+    public int getRemotePort()
+    {  return remote_port;
+    }
+
+
+    /** Gets the local port */
+    public int getLocalPort()
+    {  return channel.socket().getLocalPort();
+    }
+
+
+    /** Sets the NioTcpConnection listener */
+    public void setListener(NioTcpConnectionListener listener)
+    {  this.listener=listener;
+    }
+
+
+    /** Gets the NioTcpConnection listener */
+    public NioTcpConnectionListener getListener()
+    {  return listener;
+    }
+
+
+    /** Sets the max number of bytes waiting to be sent. */
+    public void setMaxQueuedBytes(int max_queued_bytes)
+    {  this.max_queued_bytes=max_queued_bytes;
+    }
+
+
+    /** Gets the number of bytes waiting to be sent. */
+    public synchronized int getQueuedBytes()
+    {  return queued_bytes;
+    }
+
+
+    /** Whether the connection has been established. */
+    public synchronized boolean isConnected()
+    {  return connected;
+    }
+
+
+    /** Whether the connection has been closed. */
+    public synchronized boolean isClosed()
+    {  return closed;
+    }
+
+
+    /** Starts receiving data, by registering the connection to its I/O thread.
+      * It has no effect if already started. */
+    public synchronized void start()
+    {  if (started || closed) return;
+        started=true;
+        io.execute(new Runnable()
+        {  public void run()
+            {  register();
+            }
+        });
+    }
+
+
+    /** Sends data. */
+    public void send(byte[] data) throws IOException
+    {  send(data,0,data.length);
+    }
+
+
+    /** Sends <i>len</i> bytes of <i>data</i>, starting from <i>offset</i>.
+      * The data is copied only if it cannot be written immediately. */
+    public void send(byte[] data, int offset, int len) throws IOException
+    {  send(new ByteBuffer[]{ ByteBuffer.wrap(data,offset,len) });
+    }
+
+
+    /** Sends the remaining bytes of the given buffers, through a gathering write.
+      * The buffers are not retained: the bytes that cannot be written immediately
+      * (or before the connection is established) are copied. */
+    public void send(ByteBuffer[] buffers) throws IOException
+    {  long len=remaining(buffers);
+        synchronized (this)
+        {  if (closed) throw new IOException("connection closed");
+            if (queued_bytes+len>max_queued_bytes) throw new IOException("send queue full ("+queued_bytes+" bytes)");
+        }
+        try
+        {  synchronized (this)
+            {  if (connected && queue.isEmpty() && flushData(buffers)) return;
+                // else (not completely written)
+                byte[] aux=new byte[(int)remaining(buffers)];
+                ByteBuffer buffer=ByteBuffer.wrap(aux);
+                for (int i=0; i<buffers.length; i++) buffer.put(buffers[i]);
+                buffer.flip();
+                queue.add(buffer);
+                queued_bytes+=aux.length;
+                if (connected) setWriteInterest(true);
+            }
+        }
+        catch (IOException e)
+        {  close(e);
+            throw e;
+        }
+    }
+
+
+    /** Stops and closes the connection. */
+    public void halt()
+    {  close(null);
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  return remote_ipaddr+":"+remote_port;
+    }
+
+
+    //************************ Package methods ************************
+
+    /** Registers the channel to the selector of the I/O thread. It is called by the I/O thread. */
+    void register()
+    {  try
+        {  synchronized (this)
+            {  if (closed) return;
+                key=channel.register(io.selector,interestOps(),this);
+                io.connections.incrementAndGet();
+                if (connect_deadline>0) io.connecting.add(this);
+            }
+            if (connected) onConnected();
+        }
+        catch (IOException e)
+        {  close(e);
+        }
+    }
+
+
+    /** When the channel has completed (or failed) the connection. It is called by the I/O thread. */
+    void onConnectable() throws IOException
+    {  if (!channel.finishConnect()) return;
+        // else
+        synchronized (this)
+        {  connected=true;
+            updateInterestOps();
+        }
+        onConnected();
+    }
+
+
+    /** When the connection has been established and registered to the I/O thread.
+      * It writes the data queued while connecting. */
+    void onConnected() throws IOException
+    {  flush();
+    }
+
+
+    /** Whether the connection is ready to carry data, that is it is connected
+      * (and any connection setup has completed). */
+    boolean isEstablished()
+    {  return connected;
+    }
+
+
+    /** When the channel is readable. It is called by the I/O thread.
+      * @param buffer a buffer owned by the I/O thread, that can be used for reading
+      * @return false if the connection has been closed by the remote peer */
+    boolean onReadable(ByteBuffer buffer) throws IOException
+    {  buffer.clear();
+        int len=channel.read(buffer);
+        if (len<0) return false;
+        if (len>0) deliver(buffer.array(),buffer.arrayOffset(),len);
+        return true;
+    }
+
+
+    /** When the channel is writable. It is called by the I/O thread. */
+    void onWritable(ByteBuffer buffer) throws IOException
+    {  flush();
+    }
+
+
+    /** Writes the queued data. */
+    synchronized void flush() throws IOException
+    {  if (!connected) return;
+        // else
+        ByteBuffer buffer;
+        while ((buffer=queue.peek())!=null)
+        {  int len=buffer.remaining();
+            boolean done=writeData(buffer);
+            queued_bytes-=len-buffer.remaining();
+            if (!done) return;
+            queue.poll();
+        }
+        setWriteInterest(false);
+    }
+
+
+    /** Writes new data, when no data is queued.
+      * @return true if the data has been completely written */
+    boolean flushData(ByteBuffer[] buffers) throws IOException
+    {  while (remaining(buffers)>0)
+        {  if (channel.write(buffers)==0) return false;
+        }
+        return true;
+    }
+
+
+    /** Gets the total number of remaining bytes of the buffers. */
+    static long remaining(ByteBuffer[] buffers)
+    {  long len=0;
+        for (int i=0; i<buffers.length; i++) len+=buffers[i].remaining();
+        return len;
+    }
+
+
+    /** Writes the buffer to the channel.
+      * @return true if the buffer has been completely written */
+    boolean writeData(ByteBuffer buffer) throws IOException
+    {  while (buffer.hasRemaining())
+        {  if (channel.write(buffer)==0) return false;
+        }
+        return true;
+    }
+
+
+    /** Sets whether the I/O thread should wait for the channel to become writable. */
+    synchronized void setWriteInterest(boolean on)
+    {  if (write_interest==on) return;
+        write_interest=on;
+        if (key==null) return;
+        // else
+        if (io.isCurrentThread()) updateInterestOps();
+        else io.execute(new Runnable()
+        {  public void run()
+            {  updateInterestOps();
+            }
+        });
+    }
+
+
+    /** Updates the interest set of the selection key. */
+    synchronized void updateInterestOps()
+    {  if (key!=null && key.isValid()) key.interestOps(interestOps());
+    }
+
+
+    /** Gets the interest set of the selection key. */
+    private int interestOps()
+    {  if (!connected) return SelectionKey.OP_CONNECT;
+        else return SelectionKey.OP_READ|(write_interest? SelectionKey.OP_WRITE : 0);
+    }
+
+
+    /** Passes the received data to the listener. */
+    void deliver(byte[] data, int offset, int len)
+    {  NioTcpConnectionListener l=listener;
+        if (l!=null) l.onReceivedData(this,data,offset,len);
+    }
+
+
+    /** When the connection is going to be closed. */
+    void onClose()
+    {
+    }
+
+
+    /** Closes the connection and notifies the listener. */
+    void close(Exception error)
+    {  NioTcpConnectionListener l;
+        synchronized (this)
+        {  if (closed) return;
+            // else
+            onClose();
+            closed=true;
+            l=listener;
+            listener=null;
+            if (key!=null)
+            {  key.cancel();
+                io.connections.decrementAndGet();
+            }
+            try {  channel.close();  } catch (IOException e) {}
+            queue.clear();
+            queued_bytes=0;
+        }
+        if (l!=null) l.onConnectionTerminated(this,error);
+    }
+}
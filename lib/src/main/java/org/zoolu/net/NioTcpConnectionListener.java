@@ -21,35 +21,20 @@
  * Luca Veltri (luca.veltri@unipr.it)
  */
 
-package org.zoolu.tools;
 
+package org.zoolu.net;
 
-/** Class InnerTimerMT implements a separated-thread timer */
-class InnerTimerMT extends Thread {
 
-    /** Timeout value */
-    long timeout;
 
-    /** Timer listener */
-    InnerTimerListener listener;
 
-    /** Creates a new InnerTimerMT. */
-    public InnerTimerMT(long timeout, InnerTimerListener listener)
-    {  this.timeout=timeout;
-        this.listener=listener;
-        start();
-    }
+/** Listener for NioTcpConnection events.
+ */
+public interface NioTcpConnectionListener
+{
+    /** When new data is received through the NioTcpConnection.
+      * The <i>data</i> array is reused as soon as the method returns. */
+    public void onReceivedData(NioTcpConnection conn, byte[] data, int offset, int len);
 
-    /** From Thread. Runs in a separated thread. */
-    public void run() {
-        if (listener!=null) {
-            try {
-                Thread.sleep(timeout);
-                listener.onInnerTimeout();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            listener=null;
-        }
-    }
+    /** When NioTcpConnection terminates. */
+    public void onConnectionTerminated(NioTcpConnection conn, Exception error);
 }
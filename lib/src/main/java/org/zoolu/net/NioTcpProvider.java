@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+import org.zoolu.tools.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** NioTcpProvider provides TCP (or TLS) connections served by a small fixed set of I/O threads.
+  * <p> Each I/O thread multiplexes many non-blocking connections through its own Selector,
+  * and reads data into a single buffer that is shared by all its connections,
+  * so that neither a thread nor a receive buffer is allocated per connection.
+  * <p> Incoming connections are accepted on the local port (if not 0) and passed
+  * to the NioTcpProviderListener; outgoing connections are created by method connect(),
+  * and are established asynchronously by the I/O threads, within the connect timeout.
+  * <br> If a TlsEngineFactory is provided, all connections are TLS connections.
+  */
+public class NioTcpProvider
+{
+    private static final String TAG = "Sip: NioTcpProvider";
+
+    /** Size of the reading buffer of each I/O thread */
+    public static final int BUFFER_SIZE=65536;
+
+    /** Default number of I/O threads */
+    public static final int DEFAULT_IO_THREADS=2;
+
+    /** Default connect timeout, in milliseconds */
+    public static final int DEFAULT_CONNECT_TIMEOUT=10000;
+
+    /** Default ServerSocket backlog value */
+    static final int DEFAULT_SOCKET_BACKLOG=50;
+
+    /** Server channel (null if incoming connections are not accepted) */
+    ServerSocketChannel server=null;
+
+    /** I/O threads */
+    IoThread[] io_threads;
+
+    /** Counter used for assigning connections to I/O threads */
+    final AtomicInteger io_count=new AtomicInteger();
+
+    /** TLS engine factory (null for TCP) */
+    TlsEngineFactory tls_factory;
+
+    /** NioTcpProvider listener */
+    NioTcpProviderListener listener;
+
+    /** Local address */
+    IpAddress local_ipaddr=null;
+
+    /** Local port */
+    int local_port=0;
+
+    /** Connect timeout, in milliseconds (0 for no timeout) */
+    int connect_timeout=DEFAULT_CONNECT_TIMEOUT;
+
+
+    /** Creates and starts a new NioTcpProvider.
+      * @param local_port the port where incoming connections are accepted (0 for not accepting connections)
+      * @param ipaddr the local address to bind to (null for any address)
+      * @param n_threads the number of I/O threads
+      * @param tls_factory the TLS engine factory (null for plain TCP connections)
+      * @param listener the NioTcpProvider listener */
+    public NioTcpProvider(int local_port, IpAddress ipaddr, int n_threads, TlsEngineFactory tls_factory, NioTcpProviderListener listener) throws IOException
+    {  this.tls_factory=tls_factory;
+        this.listener=listener;
+        if (n_threads<1) n_threads=1;
+        io_threads=new IoThread[n_threads];
+        try
+        {  for (int i=0; i<n_threads; i++) io_threads[i]=new IoThread(i);
+            if (local_port>0)
+            {  server=ServerSocketChannel.open();
+                InetAddress iaddr=(ipaddr!=null)? ipaddr.getInetAddress() : null;
+                server.socket().bind(new InetSocketAddress(iaddr,local_port),DEFAULT_SOCKET_BACKLOG);
+                server.configureBlocking(false);
+                server.register(io_threads[0].selector,SelectionKey.OP_ACCEPT);
+                this.local_port=server.socket().getLocalPort();
+                InetAddress laddr=server.socket().getInetAddress();
+                local_ipaddr=(laddr!=null)? new IpAddress(laddr) : null;
+            }
+        }
+        catch (IOException e)
+        {  if (server!=null) try {  server.close();  } catch (IOException e2) {}
+            for (int i=0; i<n_threads; i++) if (io_threads[i]!=null) try {  io_threads[i].selector.close();  } catch (IOException e2) {}
+            throw e;
+        }
+        for (int i=0; i<n_threads; i++) io_threads[i].start();
+    }
+
+
+    /** Gets the local port */
+    public int getPort()
+    {  return local_port;
+    }
+
+
+    /** Gets the local address */
+    public IpAddress getLocalAddress()
+    {  return local_ipaddr;
+    }
+
+
+    /** Gets the number of I/O threads. */
+    public int getIoThreads()
+    {  return io_threads.length;
+    }
+
+
+    /** Gets the number of connections currently served. */
+    public int getConnections()
+    {  int n=0;
+        for (int i=0; i<io_threads.length; i++) n+=io_threads[i].connections.get();
+        return n;
+    }
+
+
+    /** Sets the connect timeout, that is the max time (in milliseconds) for establishing
+      * an outgoing connection, including the TLS handshake (0 for no timeout). */
+    public void setConnectTimeout(int connect_timeout)
+    {  this.connect_timeout=connect_timeout;
+    }
+
+
+    /** Gets the connect timeout, in milliseconds. */
+    public int getConnectTimeout()
+    {  return connect_timeout;
+    }
+
+
+    /** Whether connections are TLS connections. */
+    public boolean isTls()
+    {  return tls_factory!=null;
+    }
+
+
+    /** Opens a new connection to the given remote end-point, without waiting for the connection to be established.
+      * The returned connection has to be started (see NioTcpConnection.start()) after setting its listener;
+      * data sent before the connection is established is queued.
+      * If the connection fails, or it is not established within the connect timeout,
+      * the connection is closed and the listener is notified through onConnectionTerminated(). */
+    public NioTcpConnection connect(IpAddress ipaddr, int port) throws IOException
+    {  SocketChannel channel=SocketChannel.open();
+        try
+        {  channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress(ipaddr.getInetAddress(),port));
+            NioTcpConnection conn=createConnection(channel,ipaddr,port,true);
+            if (connect_timeout>0) conn.connect_deadline=System.currentTimeMillis()+connect_timeout;
+            return conn;
+        }
+        catch (IOException e)
+        {  try {  channel.close();  } catch (IOException e2) {}
+            throw e;
+        }
+    }
+
+
+    /** Stops running: the server channel and all connections are closed. */
+    public void halt()
+    {  if (server!=null) try {  server.close();  } catch (IOException e) {}
+        for (int i=0; i<io_threads.length; i++) io_threads[i].halt();
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  return ((tls_factory!=null)? "tls:" : "tcp:")+local_ipaddr+":"+local_port;
+    }
+
+
+    /** Creates a new connection on a connected, or connecting, channel. */
+    private NioTcpConnection createConnection(SocketChannel channel, IpAddress ipaddr, int port, boolean client_mode) throws IOException
+    {  IoThread io=io_threads[(io_count.getAndIncrement() & 0x7fffffff)%io_threads.length];
+        if (tls_factory==null) return new NioTcpConnection(channel,io,ipaddr,port);
+        else return new NioTlsConnection(channel,io,ipaddr,port,tls_factory.createSSLEngine(ipaddr,port,client_mode),(client_mode)? tls_factory.getHostnameVerifier() : null);
+    }
+
+
+    /** Accepts all pending incoming connections. It is called by the I/O thread. */
+    private void accept() throws IOException
+    {  SocketChannel channel;
+        while ((channel=server.accept())!=null)
+        {  NioTcpConnection conn;
+            try
+            {  conn=createConnection(channel,null,0,false);
+            }
+            catch (IOException e)
+            {  Log.e(TAG,"",e);
+                try {  channel.close();  } catch (IOException e2) {}
+                continue;
+            }
+            NioTcpProviderListener l=listener;
+            if (l!=null) l.onIncomingConnection(this,conn);
+            if (conn.getListener()!=null) conn.start();
+            else conn.halt();
+        }
+    }
+
+
+    /** When the server channel fails. */
+    private void onServerTerminated(Exception error)
+    {  if (server!=null) try {  server.close();  } catch (IOException e) {}
+        NioTcpProviderListener l=listener;
+        listener=null;
+        if (l!=null) l.onServerTerminated(this,error);
+    }
+
+
+    //*************************** Inner classes ***************************
+
+    /** I/O thread, serving the connections registered to its Selector. */
+    class IoThread extends Thread
+    {  Selector selector;
+        ConcurrentLinkedQueue<Runnable> tasks=new ConcurrentLinkedQueue<Runnable>();
+        AtomicInteger connections=new AtomicInteger();
+        ArrayList<NioTcpConnection> connecting=new ArrayList<NioTcpConnection>();
+        ByteBuffer buffer=ByteBuffer.allocate(BUFFER_SIZE);
+        volatile boolean stop=false;
+
+        IoThread(int id) throws IOException
+        {  super("NioTcpProvider-"+id);
+            setDaemon(true);
+            selector=Selector.open();
+        }
+
+        /** Whether the current thread is this I/O thread. */
+        boolean isCurrentThread()
+        {  return Thread.currentThread()==this;
+        }
+
+        /** Runs a task within this I/O thread. */
+        void execute(Runnable task)
+        {  tasks.offer(task);
+            selector.wakeup();
+        }
+
+        void halt()
+        {  stop=true;
+            selector.wakeup();
+        }
+
+        public void run()
+        {  try
+            {  while (!stop)
+                {  long timeout=checkConnecting();
+                    if (timeout>0) selector.select(timeout);
+                    else selector.select();
+                    Runnable task;
+                    while ((task=tasks.poll())!=null) task.run();
+                    Iterator<SelectionKey> i=selector.selectedKeys().iterator();
+                    while (i.hasNext())
+                    {  SelectionKey key=i.next();
+                        i.remove();
+                        if (!key.isValid()) continue;
+                        if (key.attachment()==null)
+                        {  // server channel
+                            try {  accept();  } catch (IOException e) {  key.cancel(); onServerTerminated(e);  }
+                            continue;
+                        }
+                        NioTcpConnection conn=(NioTcpConnection)key.attachment();
+                        try
+                        {  if (key.isConnectable()) conn.onConnectable();
+                            else if (key.isReadable() && !conn.onReadable(buffer)) conn.close(null);
+                            else if (key.isValid() && key.isWritable()) conn.onWritable(buffer);
+                        }
+                        catch (Exception e)
+                        {  conn.close(e);
+                        }
+                    }
+                }
+            }
+            catch (ClosedSelectorException e) {}
+            catch (IOException e)
+            {  Log.e(TAG,"",e);
+            }
+            // close all connections, including the ones that are going to be registered
+            try
+            {  Runnable task;
+                while ((task=tasks.poll())!=null) task.run();
+                for (SelectionKey key : selector.keys())
+                {  Object conn=key.attachment();
+                    if (conn!=null) ((NioTcpConnection)conn).close(null);
+                }
+            }
+            catch (Exception e) {}
+            try {  selector.close();  } catch (IOException e) {}
+        }
+
+        /** Closes the connections that have not been established within the connect timeout.
+          * @return the time (in milliseconds) to the next connect deadline, or 0 if none */
+        private long checkConnecting()
+        {  if (connecting.isEmpty()) return 0;
+            // else
+            long now=System.currentTimeMillis();
+            long next=0;
+            for (int i=connecting.size()-1; i>=0; i--)
+            {  NioTcpConnection conn=connecting.get(i);
+                if (conn.isClosed() || conn.isEstablished()) connecting.remove(i);
+                else
+                if (conn.connect_deadline<=now)
+                {  connecting.remove(i);
+                    conn.close(new SocketTimeoutException("connection to "+conn+" not established within "+connect_timeout+"ms"));
+                }
+                else
+                {  long timeout=conn.connect_deadline-now;
+                    if (next==0 || timeout<next) next=timeout;
+                }
+            }
+            // check again within one second, so that established connections are soon removed
+            return (next>0)? Math.min(next,1000) : 0;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+
+/** NioTlsConnection is a TLS connection served by a NioTcpProvider.
+  * <p> TLS records are processed by an SSLEngine: received records are unwrapped
+  * by the I/O thread, while data to be sent is wrapped by the sending thread
+  * (or by the I/O thread, if it has been queued).
+  * Handshake tasks are run inline.
+  * <p> When a handshake completes, the peer certificate can be checked by a HostnameVerifier,
+  * against the peer host of the SSLEngine; if it does not match, the connection is closed
+  * before any application data is sent.
+  */
+public class NioTlsConnection extends NioTcpConnection
+{
+    /** Empty buffer, used for wrapping handshake messages */
+    static final ByteBuffer EMPTY=ByteBuffer.allocate(0);
+
+    /** SSL engine */
+    SSLEngine engine;
+
+    /** Received TLS data, not unwrapped yet (in write mode) */
+    ByteBuffer net_in;
+
+    /** TLS data to be written (in read mode) */
+    ByteBuffer net_out;
+
+    /** Verifier of the peer certificate (null for no check) */
+    HostnameVerifier verifier;
+
+
+    /** Creates a new NioTlsConnection on a connected, or connecting, channel.
+      * @param remote_ipaddr the remote address (null for the address the channel is connected to)
+      * @param remote_port the remote port
+      * @param engine the SSLEngine
+      * @param verifier the verifier of the peer certificate (null for no check) */
+    NioTlsConnection(SocketChannel channel, NioTcpProvider.IoThread io, IpAddress remote_ipaddr, int remote_port, SSLEngine engine, HostnameVerifier verifier) throws IOException
+    {  super(channel,io,remote_ipaddr,remote_port);
+        this.engine=engine;
+        this.verifier=verifier;
+        int size=engine.getSession().getPacketBufferSize();
+        net_in=ByteBuffer.allocate(size);
+        net_out=ByteBuffer.allocate(size);
+        net_out.flip();
+    }
+
+
+    /** Gets the SSLEngine. */
+    public SSLEngine getSSLEngine()
+    {  return engine;
+    }
+
+
+    //************************ Package methods ************************
+
+    /** When the connection has been established and registered to the I/O thread.
+      * In client mode it starts the handshake. */
+    void onConnected() throws IOException
+    {  if (engine.getUseClientMode())
+        {  engine.beginHandshake();
+            flush();
+        }
+    }
+
+
+    /** Whether the connection is connected and the handshake has completed. */
+    boolean isEstablished()
+    {  return connected && engine.getHandshakeStatus()==SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+
+    /** When the channel is readable. */
+    boolean onReadable(ByteBuffer buffer) throws IOException
+    {  if (channel.read(net_in)<0) return false;
+        return unwrap(buffer);
+    }
+
+
+    /** When the channel is writable. */
+    void onWritable(ByteBuffer buffer) throws IOException
+    {  flush();
+        // unwrap data left while waiting for the handshake messages to be written
+        if (net_in.position()>0 && !unwrap(buffer)) close(null);
+    }
+
+
+    /** Unwraps the received TLS data and passes the application data to the listener.
+      * @return false if the connection has been closed by the remote peer */
+    private boolean unwrap(ByteBuffer buffer) throws IOException
+    {  net_in.flip();
+        try
+        {  while (net_in.hasRemaining())
+            {  buffer.clear();
+                SSLEngineResult res=engine.unwrap(net_in,buffer);
+                if (buffer.position()>0) deliver(buffer.array(),buffer.arrayOffset(),buffer.position());
+                SSLEngineResult.Status status=res.getStatus();
+                if (status==SSLEngineResult.Status.CLOSED) return false;
+                if (status==SSLEngineResult.Status.BUFFER_OVERFLOW)
+                {  buffer=ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                    continue;
+                }
+                if (status==SSLEngineResult.Status.BUFFER_UNDERFLOW)
+                {  // wait for the rest of the record, growing the buffer if needed
+                    int size=engine.getSession().getPacketBufferSize();
+                    if (net_in.limit()==net_in.capacity() && net_in.position()==0 && size>net_in.capacity())
+                    {  ByteBuffer aux=ByteBuffer.allocate(size);
+                        aux.put(net_in);
+                        aux.flip();
+                        net_in=aux;
+                    }
+                    break;
+                }
+                checkPeer(res);
+                SSLEngineResult.HandshakeStatus hs=runTasks(res.getHandshakeStatus());
+                if (hs==SSLEngineResult.HandshakeStatus.NEED_WRAP) flush();
+                if (res.bytesConsumed()==0 && res.bytesProduced()==0 && res.getHandshakeStatus()!=SSLEngineResult.HandshakeStatus.NEED_TASK) break;
+            }
+        }
+        finally
+        {  net_in.compact();
+        }
+        // send data queued during the handshake
+        if (engine.getHandshakeStatus()==SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && !queue.isEmpty()) flush();
+        return true;
+    }
+
+
+    /** Wraps and writes the queued data, and handshake messages. */
+    synchronized void flush() throws IOException
+    {  if (!connected) return;
+        // else
+        if (!writeData(net_out))
+        {  setWriteInterest(true);
+            return;
+        }
+        while (true)
+        {  ByteBuffer src=queue.peek();
+            if (src==null)
+            {  if (engine.getHandshakeStatus()!=SSLEngineResult.HandshakeStatus.NEED_WRAP) break;
+                src=EMPTY;
+            }
+            int len=src.remaining();
+            net_out.clear();
+            SSLEngineResult res=engine.wrap(src,net_out);
+            net_out.flip();
+            if (src!=EMPTY)
+            {  queued_bytes-=len-src.remaining();
+                if (!src.hasRemaining()) queue.poll();
+            }
+            SSLEngineResult.Status status=res.getStatus();
+            if (status==SSLEngineResult.Status.BUFFER_OVERFLOW)
+            {  net_out=ByteBuffer.allocate(engine.getSession().getPacketBufferSize()+net_out.capacity());
+                net_out.flip();
+                continue;
+            }
+            checkPeer(res);
+            SSLEngineResult.HandshakeStatus hs=runTasks(res.getHandshakeStatus());
+            if (!writeData(net_out))
+            {  setWriteInterest(true);
+                return;
+            }
+            if (status==SSLEngineResult.Status.CLOSED) break;
+            // nothing done: wait for the handshake messages of the remote peer
+            if (res.bytesConsumed()==0 && res.bytesProduced()==0 && hs!=SSLEngineResult.HandshakeStatus.NEED_WRAP) break;
+        }
+        setWriteInterest(false);
+    }
+
+
+    /** Writes new data, when no data is queued. */
+    boolean flushData(ByteBuffer[] buffers) throws IOException
+    {  // during the handshake, data is queued
+        if (net_out.hasRemaining() || engine.getHandshakeStatus()!=SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) return false;
+        while (remaining(buffers)>0)
+        {  net_out.clear();
+            SSLEngineResult res=engine.wrap(buffers,net_out);
+            net_out.flip();
+            SSLEngineResult.Status status=res.getStatus();
+            if (status==SSLEngineResult.Status.BUFFER_OVERFLOW)
+            {  net_out=ByteBuffer.allocate(engine.getSession().getPacketBufferSize()+net_out.capacity());
+                net_out.flip();
+                continue;
+            }
+            if (status==SSLEngineResult.Status.CLOSED) throw new IOException("TLS connection closed");
+            if (!writeData(net_out))
+            {  setWriteInterest(true);
+                return remaining(buffers)==0;
+            }
+            if (res.bytesConsumed()==0) return false;
+        }
+        return true;
+    }
+
+
+    /** Checks the peer certificate, if the handshake has just completed.
+      * @exception SSLPeerUnverifiedException if it does not match the peer host */
+    private void checkPeer(SSLEngineResult res) throws SSLPeerUnverifiedException
+    {  if (verifier==null || res.getHandshakeStatus()!=SSLEngineResult.HandshakeStatus.FINISHED) return;
+        // else
+        if (!verifier.verify(engine.getPeerHost(),engine.getSession())) throw new SSLPeerUnverifiedException("the certificate of the server does not match "+engine.getPeerHost());
+    }
+
+
+    /** Runs the delegated tasks, if needed.
+      * @return the new handshake status */
+    private SSLEngineResult.HandshakeStatus runTasks(SSLEngineResult.HandshakeStatus hs)
+    {  if (hs!=SSLEngineResult.HandshakeStatus.NEED_TASK) return hs;
+        // else
+        Runnable task;
+        while ((task=engine.getDelegatedTask())!=null) task.run();
+        return engine.getHandshakeStatus();
+    }
+
+
+    /** When the connection is going to be closed: sends the TLS close_notify alert. */
+    void onClose()
+    {  engine.closeOutbound();
+        try {  flush();  } catch (Exception e) {}
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+import org.zoolu.tools.Log;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** NioUdpProvider provides an UDP send/receive service based on non-blocking DatagramChannels.
+ * <p> It can bind more than one socket (channel) to the same local address and port
+ * by means of the SO_REUSEPORT option, each one served by its own reader thread,
+ * so that the kernel spreads the received datagrams among the readers.
+ * If SO_REUSEPORT is not supported by the platform, only one socket is used.
+ * <p> Readers wait for datagrams through a Selector, and receive them into
+ * pooled direct ByteBuffers; no per-datagram buffer is allocated.
+ * Since readers never poll with a socket timeout, halt() stops them immediately.
+ * <p> When the socket send buffer is full, the sender waits (up to SEND_TIMEOUT) for the channel
+ * to become writable, through a write Selector of the channel.
+ * <p> Method onServiceTerminated(NioUdpProvider) is fired when all readers have stopped.
+ */
+public class NioUdpProvider
+{
+    private static final String TAG = "Sip: NioUdpProvider";
+
+    /** The reading buffer size */
+    public static final int BUFFER_SIZE=65535;
+
+    /** Max number of free buffers kept in the pool */
+    static final int POOL_SIZE=16;
+
+    /** Max time (in milliseconds) a sender waits for room in the socket send buffer */
+    static final long SEND_TIMEOUT=200;
+
+    /** Pool of direct buffers, shared by all providers */
+    static final ByteBufferPool buffer_pool=new ByteBufferPool(BUFFER_SIZE,POOL_SIZE,true);
+
+    /** Channels */
+    DatagramChannel[] channels;
+
+    /** Readers */
+    Reader[] readers;
+
+    /** Write Selectors, one for each channel, used when the socket send buffer is full */
+    Selector[] write_selectors;
+
+    /** NioUdpProvider listener */
+    NioUdpProviderListener listener;
+
+    /** Minimum size for received packets. Shorter packets are silently discarded. */
+    int minimum_length=0;
+
+    /** Local address */
+    IpAddress local_ipaddr;
+
+    /** Local port */
+    int local_port;
+
+    /** Counter used for spreading outgoing datagrams among the channels */
+    final AtomicInteger send_count=new AtomicInteger();
+
+    /** Number of running readers */
+    final AtomicInteger running=new AtomicInteger();
+
+    /** Error that caused the termination */
+    volatile Exception error=null;
+
+    /** Whether it has been halted */
+    volatile boolean stop=false;
+
+
+    /** Creates and starts a new NioUdpProvider.
+      * @param local_port the local port (0 for any free port)
+      * @param ipaddr the local address to bind to (null for any address)
+      * @param n_readers the number of sockets and reader threads
+      * @param listener the NioUdpProvider listener */
+    public NioUdpProvider(int local_port, IpAddress ipaddr, int n_readers, NioUdpProviderListener listener) throws IOException
+    {  this.listener=listener;
+        if (n_readers<1) n_readers=1;
+        InetAddress iaddr=(ipaddr!=null)? ipaddr.getInetAddress() : null;
+        DatagramChannel[] aux=new DatagramChannel[n_readers];
+        int n=0;
+        try
+        {  for (; n<n_readers; n++)
+            {  DatagramChannel channel=DatagramChannel.open();
+                aux[n]=channel;
+                if (n_readers>1 && !setReusePort(channel))
+                {  if (n==0)
+                    {  Log.w(TAG,"SO_REUSEPORT not supported: only one socket is used");
+                        n_readers=1;
+                    }
+                    else throw new IOException("SO_REUSEPORT not supported");
+                }
+                channel.socket().bind(new InetSocketAddress(iaddr,local_port));
+                // following sockets are bound to the same port of the first one
+                local_port=channel.socket().getLocalPort();
+                channel.configureBlocking(false);
+            }
+            this.local_port=local_port;
+            InetAddress laddr=aux[0].socket().getLocalAddress();
+            local_ipaddr=(laddr!=null)? new IpAddress(laddr) : null;
+            channels=new DatagramChannel[n];
+            System.arraycopy(aux,0,channels,0,n);
+            readers=new Reader[n];
+            for (int i=0; i<n; i++) readers[i]=new Reader(i,channels[i]);
+            write_selectors=new Selector[n];
+            for (int i=0; i<n; i++)
+            {  write_selectors[i]=Selector.open();
+                channels[i].register(write_selectors[i],SelectionKey.OP_WRITE);
+            }
+        }
+        catch (IOException e)
+        {  if (readers!=null) for (int i=0; i<readers.length; i++) if (readers[i]!=null) try {  readers[i].selector.close();  } catch (IOException e2) {}
+            if (write_selectors!=null) for (int i=0; i<write_selectors.length; i++) if (write_selectors[i]!=null) try {  write_selectors[i].close();  } catch (IOException e2) {}
+            for (int i=0; i<aux.length; i++) if (aux[i]!=null) try {  aux[i].close();  } catch (IOException e2) {}
+            throw e;
+        }
+        running.set(readers.length);
+        for (int i=0; i<readers.length; i++) readers[i].start();
+    }
+
+
+    /** Sets the SO_REUSEPORT option (looked up by reflection, since it is not available on all platforms).
+      * @return true if the option has been set */
+    private static boolean setReusePort(DatagramChannel channel)
+    {  try
+        {  Object option=Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+            Method set_option=DatagramChannel.class.getMethod("setOption",Class.forName("java.net.SocketOption"),Object.class);
+            set_option.invoke(channel,option,Boolean.TRUE);
+            return true;
+        }
+        catch (Exception e)
+        {  return false;
+        }
+    }
+
+
+    /** Gets the local address */
+    public IpAddress getLocalAddress()
+    {  return local_ipaddr;
+    }
+
+
+    /** Gets the local port */
+    public int getLocalPort()
+    {  return local_port;
+    }
+
+
+    /** Gets the number of sockets (and reader threads). */
+    public int getReaders()
+    {  return readers.length;
+    }
+
+
+    /** Whether the service is running */
+    public boolean isRunning()
+    {  return running.get()>0;
+    }
+
+
+    /** Sets the minimum size for received packets.
+     * Packets shorter than that are silently discarded. */
+    public void setMinimumReceivedDataLength(int len)
+    {  minimum_length=len;
+    }
+
+
+    /** Gets the minimum size for received packets.
+     * Packets shorter than that are silently discarded. */
+    public int getMinimumReceivedDataLength()
+    {  return minimum_length;
+    }
+
+
+    /** Gets the pool of direct buffers, that can be used for preparing the datagrams to be sent. */
+    public static ByteBufferPool getBufferPool()
+    {  return buffer_pool;
+    }
+
+
+    /** Sends the remaining bytes of <i>buffer</i> to the given destination. */
+    public void send(ByteBuffer buffer, IpAddress ipaddr, int port) throws IOException
+    {  if (stop) return;
+        int i=(send_count.getAndIncrement() & 0x7fffffff)%channels.length;
+        DatagramChannel channel=channels[i];
+        SocketAddress dest=new InetSocketAddress(ipaddr.getInetAddress(),port);
+        if (channel.send(buffer,dest)>0) return;
+        // else, the socket send buffer is full: wait until the channel is writable
+        Selector selector=write_selectors[i];
+        long deadline=System.currentTimeMillis()+SEND_TIMEOUT;
+        try
+        {  synchronized (selector)
+            {  long timeout;
+                while (!stop && (timeout=deadline-System.currentTimeMillis())>0)
+                {  selector.select(timeout);
+                    selector.selectedKeys().clear();
+                    if (channel.send(buffer,dest)>0) return;
+                }
+            }
+        }
+        catch (ClosedSelectorException e)
+        {  return;
+        }
+        if (stop) return;
+        // else
+        throw new IOException("UDP send buffer full for "+SEND_TIMEOUT+"ms: datagram discarded");
+    }
+
+
+    /** Sends <i>len</i> bytes of <i>data</i> to the given destination, through a pooled direct buffer. */
+    public void send(byte[] data, int offset, int len, IpAddress ipaddr, int port) throws IOException
+    {  if (len>BUFFER_SIZE)
+        {  send(ByteBuffer.wrap(data,offset,len),ipaddr,port);
+            return;
+        }
+        // else
+        ByteBuffer buffer=buffer_pool.acquire();
+        try
+        {  buffer.put(data,offset,len);
+            buffer.flip();
+            send(buffer,ipaddr,port);
+        }
+        finally
+        {  buffer_pool.release(buffer);
+        }
+    }
+
+
+    /** Stops running. Readers are woken up and stop immediately. */
+    public void halt()
+    {  stop=true;
+        for (int i=0; i<readers.length; i++) readers[i].selector.wakeup();
+    }
+
+
+    /** When a reader terminates. */
+    private void onReaderTerminated(Exception e)
+    {  if (e!=null && error==null) error=e;
+        if (running.decrementAndGet()==0)
+        {  NioUdpProviderListener l=listener;
+            listener=null;
+            if (l!=null) l.onServiceTerminated(this,error);
+        }
+        else if (e!=null) halt();
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  return "udp:"+local_ipaddr+":"+local_port;
+    }
+
+
+    //*************************** Inner classes ***************************
+
+    /** Reader thread, receiving datagrams from one channel. */
+    class Reader extends Thread
+    {  int id;
+        DatagramChannel channel;
+        Selector selector;
+
+        Reader(int id, DatagramChannel channel) throws IOException
+        {  super("NioUdpProvider-"+id);
+            this.id=id;
+            this.channel=channel;
+            selector=Selector.open();
+            channel.register(selector,SelectionKey.OP_READ);
+        }
+
+        public void run()
+        {  ByteBuffer buffer=buffer_pool.acquire();
+            Exception e=null;
+            try
+            {  while (!stop)
+                {  selector.select();
+                    selector.selectedKeys().clear();
+                    // receive all pending datagrams
+                    SocketAddress source;
+                    while (!stop && (source=channel.receive(buffer))!=null)
+                    {  buffer.flip();
+                        NioUdpProviderListener l=listener;
+                        if (buffer.remaining()>=minimum_length && l!=null) l.onReceivedDatagram(NioUdpProvider.this,buffer,(InetSocketAddress)source);
+                        buffer.clear();
+                    }
+                }
+            }
+            catch (ClosedChannelException ce) {}
+            catch (ClosedSelectorException ce) {}
+            catch (Exception ex)
+            {  if (!stop) e=ex;
+            }
+            buffer_pool.release(buffer);
+            try {  selector.close();  } catch (IOException ex) {}
+            try {  write_selectors[id].close();  } catch (IOException ex) {}
+            try {  channel.close();  } catch (IOException ex) {}
+            onReaderTerminated(e);
+        }
+    }
+}
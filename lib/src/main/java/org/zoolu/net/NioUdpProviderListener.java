@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+
+/** Listener for NioUdpProvider events.
+ */
+public interface NioUdpProviderListener
+{
+    /** When a new UDP datagram is received.
+      * The <i>buffer</i> contains the datagram (from its position to its limit)
+      * and it is reused as soon as the method returns. */
+    public void onReceivedDatagram(NioUdpProvider udp, ByteBuffer buffer, InetSocketAddress source);
+
+    /** When NioUdpProvider terminates. */
+    public void onServiceTerminated(NioUdpProvider udp, Exception error);
+}
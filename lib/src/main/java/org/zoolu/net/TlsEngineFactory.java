@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2007 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+
+
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import javax.net.ssl.*;
+
+
+
+/** TLS engine factory, for TLS connections over non-blocking channels (see NioTcpProvider).
+ */
+public class TlsEngineFactory
+{
+    /** SSLContext */
+    SSLContext ssl_context;
+
+    /** Whether requiring client authentication */
+    boolean client_auth=false;
+
+    /** Whether all certificates are trusted */
+    boolean trust_all=false;
+
+    /* Enabled protocol versions */
+    String[] enabled_protocols=null;
+
+
+
+    /** Creates a new TlsEngineFactory */
+    public TlsEngineFactory(TlsContext tls_context) throws java.security.KeyStoreException, java.security.KeyManagementException, java.security.UnrecoverableKeyException, java.security.NoSuchAlgorithmException
+    {  KeyStore ks=tls_context.getKeyStore();
+        // get key managers
+        KeyManagerFactory key_manager_factory=KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        key_manager_factory.init(ks,TlsContext.DEFAULT_PASSWORD);
+        KeyManager[] key_managers=key_manager_factory.getKeyManagers();
+        TrustManager[] trust_managers;
+        // get trust managers
+        trust_all=tls_context.isTrustAll();
+        if (trust_all)
+        {  X509TrustManager trust_all=new X509TrustManager()
+        {  public X509Certificate[] getAcceptedIssuers() {  return new X509Certificate[0];  }
+            public void checkClientTrusted(X509Certificate[] certs, String auth_type) {}
+            public void checkServerTrusted(X509Certificate[] certs, String auth_type) {}
+        };
+            trust_managers=new TrustManager[] { trust_all };
+        }
+        else
+        {  TrustManagerFactory trust_manager_factory=TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trust_manager_factory.init(ks);
+            trust_managers=trust_manager_factory.getTrustManagers();
+        }
+        ssl_context=SSLContext.getInstance("TLS");
+        ssl_context.init(key_managers,trust_managers,null);
+    }
+
+
+    /** Sets whether requiring client authentication. */
+    public void setNeedClientAuth(boolean flag)
+    {  client_auth=flag;
+    }
+
+
+    /** Whether requiring client authentication. */
+    public boolean getNeedClientAuth()
+    {  return client_auth;
+    }
+
+
+    /** Sets the list of enabled protocol versions. */
+    public void setEnabledProtocols(String[] enabled_protocols)
+    {  this.enabled_protocols=enabled_protocols;
+    }
+
+
+    /** Creates a new SSLEngine for a connection to the given remote peer.
+      * The peer host of the engine is the host name the address has been resolved from (i.e. the SIP domain),
+      * or the address itself if it is unknown.
+      * @param client_mode whether using client mode in the TLS handshake */
+    public SSLEngine createSSLEngine(IpAddress ipaddr, int port, boolean client_mode)
+    {  SSLEngine engine;
+        if (ipaddr==null) engine=ssl_context.createSSLEngine();
+        else engine=ssl_context.createSSLEngine((ipaddr.getHostName()!=null)? ipaddr.getHostName() : ipaddr.toString(),port);
+        engine.setUseClientMode(client_mode);
+        if (!client_mode && client_auth) engine.setNeedClientAuth(true);
+        if (enabled_protocols!=null) engine.setEnabledProtocols(enabled_protocols);
+        return engine;
+    }
+
+
+    /** Gets the HostnameVerifier that checks the server certificate at the end of a client handshake,
+      * or null if all certificates are trusted.
+      * <br> It is used in place of SSLParameters.setEndpointIdentificationAlgorithm(), that is not available before Android 7. */
+    public HostnameVerifier getHostnameVerifier()
+    {  return (trust_all)? null : SIP_DOMAIN_VERIFIER;
+    }
+
+
+    /** Verifies the server certificate against the peer host, as in RFC 5922 (section 7.1):
+      * the host has to match a subjectAltName of type URI (as "sip:"<i>host</i>) or DNS,
+      * or, only if there are none of them, the most specific CN of the subject.
+      * IP addresses are matched against subjectAltNames of type IP address.
+      * Names are compared case-insensitively, and wildcards are not allowed (section 7.2). */
+    static final HostnameVerifier SIP_DOMAIN_VERIFIER=new HostnameVerifier()
+    {  public boolean verify(String host, SSLSession session)
+        {  try
+            {  Certificate[] certs=session.getPeerCertificates();
+                return certs.length>0 && certs[0] instanceof X509Certificate && matches(host,(X509Certificate)certs[0]);
+            }
+            catch (SSLPeerUnverifiedException e)
+            {  return false;
+            }
+        }
+    };
+
+
+    /** Whether the certificate identifies the given host (see SIP_DOMAIN_VERIFIER). */
+    static boolean matches(String host, X509Certificate cert)
+    {  if (host==null) return false;
+        boolean numeric=host.indexOf(':')>=0 || host.matches("[0-9.]+");
+        boolean has_names=false;
+        Collection<List<?>> alt_names;
+        try
+        {  alt_names=cert.getSubjectAlternativeNames();
+        }
+        catch (CertificateParsingException e)
+        {  return false;
+        }
+        if (alt_names!=null)
+        {  for (List<?> alt_name : alt_names)
+            {  int type=((Integer)alt_name.get(0)).intValue();
+                Object value=alt_name.get(1);
+                if (!(value instanceof String)) continue;
+                // else
+                String name=(String)value;
+                if (type==2 || type==6) has_names=true;
+                if (numeric)
+                {  if (type==7 && sameAddress(host,name)) return true;
+                }
+                else
+                {  if (type==2 && name.equalsIgnoreCase(host)) return true;
+                    if (type==6 && name.regionMatches(true,0,"sip:",0,4) && name.substring(4).equalsIgnoreCase(host)) return true;
+                }
+            }
+        }
+        if (numeric || has_names) return false;
+        // else
+        String cn=getCommonName(cert.getSubjectX500Principal().getName());
+        return cn!=null && cn.equalsIgnoreCase(host);
+    }
+
+
+    /** Gets the first (i.e. the most specific) CN of a RFC 2253 distinguished name (null if there is none). */
+    static String getCommonName(String dn)
+    {  int i=0, len=dn.length();
+        while (i<len)
+        {  // attribute type
+            int eq=dn.indexOf('=',i);
+            if (eq<0) return null;
+            String type=dn.substring(i,eq).trim();
+            // attribute value, up to an unescaped ',' or '+'
+            StringBuilder value=new StringBuilder();
+            i=eq+1;
+            while (i<len && dn.charAt(i)!=',' && dn.charAt(i)!='+')
+            {  char c=dn.charAt(i++);
+                if (c=='\\' && i<len) c=dn.charAt(i++);
+                value.append(c);
+            }
+            if (type.equalsIgnoreCase("CN") || type.equals("2.5.4.3")) return value.toString();
+            i++;
+        }
+        return null;
+    }
+
+
+    /** Whether two textual IP addresses are the same address. */
+    private static boolean sameAddress(String addr1, String addr2)
+    {  if (addr1.equalsIgnoreCase(addr2)) return true;
+        try
+        {  return java.net.InetAddress.getByName(addr1).equals(java.net.InetAddress.getByName(addr2));
+        }
+        catch (java.net.UnknownHostException e)
+        {  return false;
+        }
+    }
+
+}
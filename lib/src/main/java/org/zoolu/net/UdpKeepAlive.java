@@ -24,7 +24,7 @@ package org.zoolu.net;
 
 import org.zoolu.tools.Timer;
 import org.zoolu.tools.TimerListener;
-import java.util.Date;
+import java.util.Random;
 
 
 /** UdpKeepAlive keeps up the connection toward a target node
@@ -33,12 +33,20 @@ import java.util.Date;
  * (for the UDP session).
  * <p/>
  * It can be used for both signaling (SIP) or data plane (RTP/UDP).
+ * <p/>
+ * It has no thread of its own: keep-alive tokens are sent by a Timer, so that all
+ * keep-alives are scheduled by the single timer thread, however many targets there are.
+ * As suggested by RFC 5626, the time between two tokens is randomly chosen between
+ * 80% and 100% of the delta time, so that the keep-alives of many clients do not synchronize.
  */
-public class UdpKeepAlive extends Thread
+public class UdpKeepAlive implements TimerListener
 {
     /** Default udp keep-alive token */
     public static final byte[] DEFAULT_TOKEN={ (byte)'\r',(byte)'\n' };
 
+    /** Random generator used for the jitter */
+    static final Random random=new Random();
+
     /** Destination socket address */
     protected SocketAddress target;
 
@@ -55,7 +63,10 @@ public class UdpKeepAlive extends Thread
     protected long expire=0;
 
     /** Whether it is running */
-    protected boolean stop=false;
+    protected volatile boolean stop=false;
+
+    /** Timer of the next keep-alive token */
+    Timer keepalive_to=null;
 
 
     /** Creates a new UdpKeepAlive daemon */
@@ -84,7 +95,7 @@ public class UdpKeepAlive extends Thread
 
 
     /** Inits the UdpKeepAlive */
-    private void init(UdpSocket udp_socket, UdpPacket udp_packet)
+    private void init(UdpSocket udp_socket, UdpPacket udp_token)
     {  this.udp_socket=udp_socket;
         if (udp_token==null)
         {  byte[] buff=DEFAULT_TOKEN;
@@ -98,6 +109,13 @@ public class UdpKeepAlive extends Thread
     }
 
 
+    /** Starts sending keep-alive tokens: the first token is sent as soon as possible. */
+    protected void start()
+    {  keepalive_to=new Timer(0,"KeepAlive",this);
+        keepalive_to.start();
+    }
+
+
     /** Whether the UDP relay is running */
     public boolean isRunning()
     {  return !stop;
@@ -140,6 +158,8 @@ public class UdpKeepAlive extends Thread
     /** Stops sending keep-alive tokens */
     public void halt()
     {  stop=true;
+        Timer t=keepalive_to;
+        if (t!=null) t.halt();
     }
 
 
@@ -152,16 +172,36 @@ public class UdpKeepAlive extends Thread
     }
 
 
-    /** Main thread. */
-    public void run()
-    {  try
-    {  while(!stop)
-    {  sendToken();
-        Thread.sleep(delta_time);
-        if (expire>0 && System.currentTimeMillis()>expire) halt();
+    /** From TimerListener. Sends the keep-alive token, and schedules the next one. */
+    public void onTimeout(Timer t)
+    {  if (t!=keepalive_to || stop) return;
+        // else
+        if (expire>0 && System.currentTimeMillis()>expire)
+        {  halt();
+            return;
+        }
+        try
+        {  sendToken();
+        }
+        catch (Exception e)
+        {  halt();
+            onFailure(e);
+            return;
+        }
+        keepalive_to.setTime(nextTime());
+        keepalive_to.start();
     }
+
+
+    /** Gets the time to the next token, randomly chosen between 80% and 100% of the delta time. */
+    protected long nextTime()
+    {  return delta_time-(long)(random.nextDouble()*delta_time/5);
     }
-    catch (Exception e) { e.printStackTrace(); }
+
+
+    /** When a keep-alive token cannot be sent. The keep-alive has been already halted. */
+    protected void onFailure(Exception e)
+    {  e.printStackTrace();
         udp_socket=null;
     }
 
@@ -175,4 +215,4 @@ public class UdpKeepAlive extends Thread
         return str+" ("+delta_time+"ms)";
     }
 
-}
\ No newline at end of file
+}
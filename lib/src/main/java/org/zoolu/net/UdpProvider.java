@@ -24,8 +24,7 @@
 package org.zoolu.net;
 
 
-import android.os.Looper;
-import android.util.Log;
+import org.zoolu.tools.Log;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
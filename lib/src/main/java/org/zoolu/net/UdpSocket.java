@@ -24,9 +24,7 @@
 package org.zoolu.net;
 
 
-import android.os.Build;
-import android.system.ErrnoException;
-import android.util.Log;
+import org.zoolu.tools.Log;
 
 import java.net.DatagramSocket;
 import java.net.DatagramPacket;
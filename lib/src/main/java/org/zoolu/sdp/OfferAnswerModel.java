@@ -24,9 +24,6 @@
 package org.zoolu.sdp;
 
 
-
-import local.media.MediaDesc;
-
 import java.util.Enumeration;
 import java.util.Vector;
 
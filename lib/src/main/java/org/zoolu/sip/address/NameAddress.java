@@ -75,15 +75,19 @@ public class NameAddress
    {  return new NameAddress(this);
    }
 
-   /** Whether object <i>obj</i> is "equal to" this. */
+   /** Whether object <i>obj</i> is "equal to" this.
+     * Two NameAddresses are equal if they have the same display name and equal URLs (see SipURL.equals()). */
    public boolean equals(Object obj)
-   {  try
-      {  NameAddress naddr=(NameAddress)obj;
-         return ((name==naddr.name) || (name.equals(naddr.name)) && url.equals(naddr.url));
-      }
-      catch (Exception e)
-      {  return false;
-      }
+   {  if (obj==this) return true;
+      if (!(obj instanceof NameAddress)) return false;
+      NameAddress naddr=(NameAddress)obj;
+      if ((name==null)? naddr.name!=null : !name.equals(naddr.name)) return false;
+      return (url==null)? naddr.url==null : url.equals(naddr.url);
+   }
+
+   /** Gets a hash code value, consistent with equals(). */
+   public int hashCode()
+   {  return ((name!=null)? name.hashCode() : 0)*31+((url!=null)? url.hashCode() : 0);
    }
 
    /** Gets address of NameAddress */
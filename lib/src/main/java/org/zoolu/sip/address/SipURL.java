@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 2007 Luca Veltri - University of Parma - Italy
+ * 
+ * This file is part of MjSip (http://www.mjsip.org)
+ * 
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.address;
+
+
+import org.zoolu.sip.provider.SipParser;
+import org.zoolu.tools.Parser;
+import java.util.Vector;
+
+
+/** Class <i>SipURL</i> implements SIP and SIPS URLs.
+  * <P> A SIP URL is a string of the form of:
+  * <BR><BLOCKQUOTE><PRE>&nbsp&nbsp sip:[user@]hostname[:port][;parameters] </PRE></BLOCKQUOTE>
+  * <P> If <i>port</i> number is ommitted, -1 is returned
+  * <P> The URL is parsed only once, the first time one of its components is read;
+  * the parsed components (see SipURL.Fields) are cached until the URL is changed.
+  */
+public class SipURL
+{
+
+   /** SIP scheme */
+   protected static final String SIP_SCHEME="sip"; 
+
+   /** SIPS scheme */
+   protected static final String SIPS_SCHEME="sips"; 
+
+   /** Transport param rtpmap */
+   protected static final String PARAM_TRANSPORT="transport"; 
+
+   /** Maddr param rtpmap */
+   protected static final String PARAM_MADDR="maddr"; 
+
+   /** TTL param rtpmap */
+   protected static final String PARAM_TTL="ttl"; 
+
+   /** Lr param rtpmap */
+   protected static final String PARAM_LR="lr"; 
+
+   /** Parameters that must be present in both URLs for them to be equal (RFC 3261, section 19.1.4) */
+   static final String[] PARAMS_ALWAYS_COMPARED={ "user", PARAM_TTL, "method", PARAM_MADDR, PARAM_TRANSPORT };
+
+
+   /** Whether has SIPS scheme */
+   protected boolean secure=false;
+
+   /** SIP URL */
+   protected String url;
+
+   /** Parsed components of the URL (null if not parsed yet) */
+   private Fields fields=null;
+
+
+
+   /** Creates a new SipURL. */
+   public SipURL(SipURL u)
+   {  url=u.url;
+      secure=u.secure;
+      fields=u.fields;
+   }
+
+   /** Creates a new SipURL.
+     * @param url hostname or the complete SIP (or SIPS) URL. */
+   public SipURL(String url)
+   {  if (url.startsWith(SIP_SCHEME+":")) this.url=url;
+      else
+      if(url.startsWith(SIPS_SCHEME+":"))
+      {  this.url=url;
+         this.secure=true;
+      }
+      else this.url=SIP_SCHEME+":"+url;
+   }
+
+   /** Creates a new SipURL. */
+   public SipURL(String username, String hostname)
+   {  init(username,hostname,-1);
+   }
+
+   /** Creates a new SipURL. */
+   public SipURL(String hostname, int portnumber)
+   {  init(null,hostname,portnumber);
+   }
+
+   /** Creates a new SipURL. */
+   public SipURL(String username, String hostname, int portnumber) {
+      init(username,hostname,portnumber);
+   }
+
+   /** Inits the SipURL. */
+   private void init(String username, String hostname, int portnumber) {
+      StringBuffer sb = new StringBuffer(getScheme());
+      sb.append(':');
+      if (username!=null) sb.append(username).append('@');
+      sb.append(hostname);
+      if (portnumber>0) sb.append(":" + portnumber);
+      url=sb.toString();
+   }
+
+   /** Creates and returns a copy of the URL. */
+   public Object clone()
+   {  return new SipURL(this);
+   }
+
+   /** Indicates whether some other Object is "equal to" this URL. */
+   public boolean equals(Object obj)
+   {  try
+      {  return equals((SipURL)obj);
+      }
+      catch (Exception e)
+      {  return false;  
+      }
+   }
+
+   /** Whether two SipURLs are equals, according to the URI comparison rules of RFC 3261 (section 19.1.4).
+     * They are compared component by component, after decoding the %-escapes: the user part is case-sensitive,
+     * while host, parameters and headers are case-insensitive, and parameters and headers can be in any order.
+     * A parameter present in only one URL is ignored, except the user, ttl, method, maddr and transport parameters;
+     * headers must be present in both URLs. */
+   public boolean equals(SipURL sip_url)
+   {  if (sip_url==this) return true;
+      if (url.equals(sip_url.url)) return true;
+      // else
+      return secure==sip_url.secure && getFields().matches(sip_url.getFields());
+   }
+
+   /** Gets a hash code value for the URL, consistent with equals(). */
+   public int hashCode()
+   {  return getFields().hash+(secure? 1 : 0);
+   }
+
+   /** Gets the parsed components, parsing the URL if needed. */
+   private Fields getFields()
+   {  Fields f=fields;
+      if (f==null) fields=f=new Fields(url);
+      return f;
+   }
+
+   /** Gets scheme ("sip" or "sips"). */
+   private String getScheme()
+   {  return ((secure)? SIPS_SCHEME : SIP_SCHEME);
+   }
+
+   /** Gets user rtpmap of SipURL (Returns null if user rtpmap does not exist). */
+   public String getUserName()
+   {  return getFields().user;
+   }
+
+   /** Gets host of SipURL. */
+   public String getHost()
+   {  return getFields().host;
+   }
+
+   /** Gets port of SipURL; returns -1 if port is not specidfied. */
+   public int getPort()
+   {  return getFields().port;
+   }
+
+   /** Gets boolean value to indicate if SipURL has user rtpmap. */
+   public boolean hasUserName()
+   {  return getUserName()!=null;
+   }
+
+   /** Gets boolean value to indicate if SipURL has port. */
+   public boolean hasPort()
+   {  return getPort()>=0;
+   }
+
+   /** Gets string representation of URL. */
+   public String toString()
+   {  return url;
+   }
+
+   /** Gets the string of all parameters.
+     * @return Returns a string of all parameters or null if no parameter is present. */
+   public String getParameters() 
+   {  Fields f=getFields();
+      if (f.params_offset>=0) return url.substring(f.params_offset+1);
+      // else
+      return null;
+   }
+   
+   /** Gets the value of specified parameter.
+     * @return Returns the value of the specified parameter or null if not present. */
+   public String getParameter(String name) 
+   {  Fields f=getFields();
+      int i=f.indexOfParameter(name);
+      return (i>=0)? f.param_values[i] : null;
+   }
+   
+   /** Gets a String Vector of parameter names.
+     * @return Returns a String Vector of all parameter names or null if no parameter is present. */
+   public Vector getParameterNames() 
+   {  String[] names=getFields().param_names;
+      Vector v=new Vector(names.length);
+      for (int i=0; i<names.length; i++) v.addElement(names[i]);
+      return v;
+   }
+   
+   /** Whether there is the specified parameter. */
+   public boolean hasParameter(String name)
+   {  return getFields().indexOfParameter(name)>=0;
+   }
+   
+   /** Whether there are any parameters. */
+   public boolean hasParameters()
+   {  return getFields().params_offset>=0;
+   }
+   
+   /** Adds a new parameter without a value. */
+   public void addParameter(String name) 
+   {  url=url+";"+name;       
+      fields=null;
+   }
+   
+   /** Adds a new parameter with value. */
+   public void addParameter(String name, String value) 
+   {  if (value!=null) url=url+";"+name+"="+value;
+      else url=url+";"+name;       
+      fields=null;
+   }
+
+   /** Removes all parameters (if any). */
+   public void removeParameters() 
+   {  int index=url.indexOf(';');
+      if (index>=0) url=url.substring(0,index);      
+      fields=null;
+   }
+
+   /** Removes specified parameter (if present). */
+   public void removeParameter(String name) 
+   {  int index=url.indexOf(';');
+      if (index<0) return;
+      Parser par=new Parser(url,index);
+      while (par.hasMore())
+      {  int begin_param=par.getPos();
+         par.skipChar();
+         if (par.getWord(SipParser.param_separators).equals(name))
+         {  String top=url.substring(0,begin_param); 
+            par.goToSkippingQuoted(';');
+            String bottom="";
+            if (par.hasMore()) bottom=url.substring(par.getPos()); 
+            url=top.concat(bottom);
+            fields=null;
+            return;
+         }
+         par.goTo(';');
+      }
+   }
+
+   /** Gets the value of transport parameter.
+     * @return null if no transport parameter is present. */
+   public String getTransport() 
+   {  return getParameter(PARAM_TRANSPORT);
+   }  
+
+   /** Whether transport parameter is present. */
+   public boolean hasTransport()
+   {  return hasParameter(PARAM_TRANSPORT);
+   }
+
+   /** Adds transport parameter. */
+   public void addTransport(String proto) 
+   {  addParameter(PARAM_TRANSPORT,proto.toLowerCase());
+   }
+
+   /** Gets the value of maddr parameter.
+     * @return null if no maddr parameter is present. */
+   public String getMaddr() 
+   {  return getParameter(PARAM_MADDR);
+   }  
+
+   /** Whether maddr parameter is present. */
+   public boolean hasMaddr()
+   {  return hasParameter(PARAM_MADDR);
+   }
+
+   /** Adds maddr parameter. */
+   public void addMaddr(String maddr) 
+   {  addParameter(PARAM_MADDR,maddr);
+   }
+
+   /** Gets the value of ttl parameter.
+     * @return 1 if no ttl parameter is present. */
+   public int getTtl() 
+   {  try {  return Integer.parseInt(getParameter(PARAM_TTL));  } catch (Exception e) {  return 1;  }
+   }  
+
+   /** Whether ttl parameter is present. */
+   public boolean hasTtl()
+   {  return hasParameter(PARAM_TTL);
+   }
+
+   /** Adds ttl parameter. */
+   public void addTtl(int ttl) 
+   {  addParameter(PARAM_TTL,Integer.toString(ttl));
+   }
+
+   /** Whether lr (loose-route) parameter is present. */
+   public boolean hasLr()
+   {  return hasParameter(PARAM_LR);
+   }
+
+   /** Adds lr parameter. */
+   public void addLr() 
+   {  addParameter(PARAM_LR);
+   }
+
+  /** Whether is SIPS. */
+   public boolean isSecure()
+   {  return secure;
+   }
+
+   /** Sets scheme to SIPS. */
+   public void setSecure(boolean secure) 
+   {  if (this.secure!=secure)
+      {  this.secure=secure;
+         url=getScheme()+url.substring(url.indexOf(':'));
+         fields=null;
+      }
+   }
+
+
+   /** Fields holds the components of a SIP URL, parsed once.
+     * It is immutable, so it can be shared by copies of the same URL. */
+   static final class Fields
+   {
+      /** User part (null if not present) */
+      final String user;
+
+      /** Host (IPv6 references include the brackets) */
+      final String host;
+
+      /** Port (-1 if not present) */
+      final int port;
+
+      /** Index of the first ';' (-1 if there are no parameters) */
+      final int params_offset;
+
+      /** Parameter names */
+      final String[] param_names;
+
+      /** Parameter values (null for parameters without value) */
+      final String[] param_values;
+
+      /** Headers (the part following '?', or null) */
+      final String headers;
+
+      /** Decoded user part, and decoded lower-case host (used for comparisons) */
+      final String user_key, host_key;
+
+      /** Decoded lower-case parameter names and values (used for comparisons) */
+      final String[] param_keys, param_value_keys;
+
+      /** Decoded lower-case header names and values (used for comparisons) */
+      final String[] header_keys, header_value_keys;
+
+      /** Hash code */
+      final int hash;
+
+
+      /** Parses the URL <i>url</i> ("sip:" or "sips:" scheme). */
+      Fields(String url)
+      {  int len=url.length();
+         int begin=url.indexOf(':')+1; // skip "sip:"
+         int at=url.indexOf('@',begin);
+         user=(at>=0)? url.substring(begin,at) : null;
+         int i=(at>=0)? at+1 : begin;
+         int host_begin=i;
+         if (i<len && url.charAt(i)=='[')
+         {  int close=url.indexOf(']',i);
+            i=(close>=0)? close+1 : len;
+         }
+         while (i<len && ":;?".indexOf(url.charAt(i))<0) i++;
+         host=url.substring(host_begin,i);
+         int p=-1;
+         if (i<len && url.charAt(i)==':')
+         {  int port_begin=++i;
+            while (i<len && url.charAt(i)!=';' && url.charAt(i)!='?') i++;
+            try {  p=Integer.parseInt(url.substring(port_begin,i).trim());  } catch (NumberFormatException e) {}
+         }
+         port=p;
+         int question=url.indexOf('?',i);
+         int params_end=(question>=0)? question : len;
+         headers=(question>=0)? url.substring(question+1) : null;
+         if (i<params_end && url.charAt(i)==';')
+         {  params_offset=i;
+            Vector names=new Vector();
+            Vector values=new Vector();
+            while (i<params_end)
+            {  int param_begin=++i; // skip ';'
+               boolean quoted=false;
+               while (i<params_end && (quoted || url.charAt(i)!=';'))
+               {  if (url.charAt(i)=='\"') quoted=!quoted;
+                  i++;
+               }
+               int eq=url.indexOf('=',param_begin);
+               String name, value;
+               if (eq>=0 && eq<i)
+               {  name=url.substring(param_begin,eq).trim();
+                  value=url.substring(eq+1,i).trim();
+               }
+               else
+               {  name=url.substring(param_begin,i).trim();
+                  value=null;
+               }
+               if (name.length()>0)
+               {  names.addElement(name);
+                  values.addElement(value);
+               }
+            }
+            param_names=new String[names.size()];
+            names.copyInto(param_names);
+            param_values=new String[values.size()];
+            values.copyInto(param_values);
+         }
+         else
+         {  params_offset=-1;
+            param_names=new String[0];
+            param_values=param_names;
+         }
+         // comparison keys
+         user_key=(user!=null)? unescape(user) : null;
+         host_key=unescape(host).toLowerCase();
+         param_keys=new String[param_names.length];
+         param_value_keys=new String[param_names.length];
+         for (int k=0; k<param_names.length; k++)
+         {  param_keys[k]=unescape(param_names[k]).toLowerCase();
+            param_value_keys[k]=(param_values[k]!=null)? unescape(param_values[k]).toLowerCase() : null;
+         }
+         if (headers!=null)
+         {  Vector names=new Vector();
+            Vector values=new Vector();
+            int hbegin=0;
+            while (hbegin<=headers.length())
+            {  int hend=headers.indexOf('&',hbegin);
+               if (hend<0) hend=headers.length();
+               int eq=headers.indexOf('=',hbegin);
+               if (eq<0 || eq>hend) eq=hend;
+               if (hend>hbegin)
+               {  names.addElement(unescape(headers.substring(hbegin,eq)).toLowerCase());
+                  values.addElement((eq<hend)? unescape(headers.substring(eq+1,hend)).toLowerCase() : "");
+               }
+               hbegin=hend+1;
+            }
+            header_keys=new String[names.size()];
+            names.copyInto(header_keys);
+            header_value_keys=new String[values.size()];
+            values.copyInto(header_value_keys);
+         }
+         else
+         {  header_keys=new String[0];
+            header_value_keys=header_keys;
+         }
+         // hash: only the components that are never ignored
+         int h=(user_key!=null)? user_key.hashCode() : 0;
+         h=31*h+host_key.hashCode();
+         h=31*h+port;
+         int hp=0;
+         for (int k=0; k<param_keys.length; k++)
+         {  if (isAlwaysCompared(param_keys[k])) hp+=param_keys[k].hashCode()^((param_value_keys[k]!=null)? param_value_keys[k].hashCode() : 0);
+         }
+         h=31*h+hp;
+         int hh=0;
+         for (int k=0; k<header_keys.length; k++) hh+=header_keys[k].hashCode()^header_value_keys[k].hashCode();
+         hash=31*h+hh;
+      }
+
+      /** Gets the index of parameter <i>name</i> (case-insensitive), or -1. */
+      int indexOfParameter(String name)
+      {  for (int k=0; k<param_names.length; k++) if (param_names[k].equalsIgnoreCase(name)) return k;
+         return -1;
+      }
+
+      /** Gets the index of the parameter whose decoded lower-case name is <i>key</i>, or -1. */
+      private int indexOfKey(String key)
+      {  for (int k=0; k<param_keys.length; k++) if (param_keys[k].equals(key)) return k;
+         return -1;
+      }
+
+      /** Whether the components are equal, according to the URI comparison rules of RFC 3261 (section 19.1.4). */
+      boolean matches(Fields f)
+      {  if (hash!=f.hash || port!=f.port || header_keys.length!=f.header_keys.length) return false;
+         if (!host_key.equals(f.host_key)) return false;
+         if ((user_key==null)? f.user_key!=null : !user_key.equals(f.user_key)) return false;
+         // parameters present in both URLs must match; the others are ignored, unless they are always compared
+         for (int k=0; k<param_keys.length; k++)
+         {  int j=f.indexOfKey(param_keys[k]);
+            if (j<0)
+            {  if (isAlwaysCompared(param_keys[k])) return false;
+               continue;
+            }
+            String v=param_value_keys[k], fv=f.param_value_keys[j];
+            if ((v==null)? fv!=null : !v.equals(fv)) return false;
+         }
+         for (int j=0; j<f.param_keys.length; j++)
+         {  if (isAlwaysCompared(f.param_keys[j]) && indexOfKey(f.param_keys[j])<0) return false;
+         }
+         // headers are never ignored
+         for (int k=0; k<header_keys.length; k++)
+         {  boolean found=false;
+            for (int j=0; j<f.header_keys.length && !found; j++)
+            {  found=header_keys[k].equals(f.header_keys[j]) && header_value_keys[k].equals(f.header_value_keys[j]);
+            }
+            if (!found) return false;
+         }
+         return true;
+      }
+
+      /** Whether the parameter (decoded lower-case name) is never ignored when comparing URLs. */
+      private static boolean isAlwaysCompared(String key)
+      {  for (int i=0; i<PARAMS_ALWAYS_COMPARED.length; i++) if (PARAMS_ALWAYS_COMPARED[i].equals(key)) return true;
+         return false;
+      }
+
+      /** Decodes the %-escapes (UTF-8 encoded) of a URL component. Malformed escapes are left as they are. */
+      static String unescape(String str)
+      {  int i=str.indexOf('%');
+         if (i<0) return str;
+         // else
+         java.io.ByteArrayOutputStream out=new java.io.ByteArrayOutputStream(str.length());
+         for (int k=0; k<str.length(); k++)
+         {  char c=str.charAt(k);
+            if (c=='%' && k+2<str.length())
+            {  int hi=Character.digit(str.charAt(k+1),16), lo=Character.digit(str.charAt(k+2),16);
+               if (hi>=0 && lo>=0)
+               {  out.write((hi<<4)|lo);
+                  k+=2;
+                  continue;
+               }
+            }
+            if (c<0x80) out.write(c);
+            else
+            {  byte[] b=String.valueOf(c).getBytes(java.nio.charset.Charset.forName("UTF-8"));
+               out.write(b,0,b.length);
+            }
+         }
+         return new String(out.toByteArray(),java.nio.charset.Charset.forName("UTF-8"));
+      }
+   }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.authentication;
+
+
+import org.zoolu.sip.header.AuthorizationHeader;
+import org.zoolu.sip.header.ProxyAuthorizationHeader;
+import org.zoolu.sip.header.RequestLine;
+import org.zoolu.sip.header.WwwAuthenticateHeader;
+import org.zoolu.sip.message.Message;
+import org.zoolu.tools.BinTools;
+import org.zoolu.tools.IdGenerator;
+import org.zoolu.tools.Log;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/** AuthenticationCache keeps the last digest challenge received for each user and realm,
+ * so that the following requests to the same realm can carry an Authorization
+ * (or Proxy-Authorization) header preemptively, instead of waiting for a 401 (or 407) response.
+ * <p> For each realm it keeps the nonce, opaque, and algorithm of the challenge,
+ * and, if a qop is offered, the cnonce and the nonce-count (nc), that is incremented for each request.
+ * <br> Challenges of registrars (401) and of proxies (407) are kept apart, since a request may need both.
+ * <br> If the server rejects a preemptive authorization (e.g. with stale=true when the nonce has expired)
+ * the request goes through the usual challenge path, and the new challenge replaces the cached one.
+ */
+public class AuthenticationCache
+{
+    private static final String TAG = "Sip: AuthenticationCache";
+
+    /** Cached challenges, as table:key-->Entry (see key()) */
+    ConcurrentHashMap<String,Entry> entries=new ConcurrentHashMap<String,Entry>();
+
+
+    /** Cached challenge of a realm. */
+    static class Entry
+    {
+        final String username, passwd, realm, opaque, algorithm, qop;
+
+        /** Whether the challenge came from a proxy (407) */
+        final boolean proxy;
+
+        String nonce;
+
+        String cnonce;
+
+        int nc;
+
+        Entry(WwwAuthenticateHeader challenge, boolean proxy, String username, String passwd)
+        {  this.username=username;
+            this.passwd=passwd;
+            this.realm=challenge.getRealmParam();
+            this.opaque=challenge.getOpaqueParam();
+            this.algorithm=challenge.getAlgorithParam();
+            this.qop=selectQop(challenge.getQopOptionsParam());
+            this.proxy=proxy;
+            setNonce(challenge.getNonceParam());
+        }
+
+        /** Sets a new nonce, restarting the nonce-count. */
+        synchronized void setNonce(String nonce)
+        {  this.nonce=nonce;
+            cnonce=IdGenerator.nextId();
+            nc=0;
+        }
+
+        /** Gets the authorization header for the next request, incrementing the nonce-count. */
+        synchronized AuthorizationHeader getAuthorizationHeader(String method, String uri, String body)
+        {  DigestAuthentication digest=new DigestAuthentication();
+            digest.method=method;
+            digest.uri=uri;
+            digest.body=body;
+            digest.username=username;
+            digest.passwd=passwd;
+            digest.realm=realm;
+            digest.nonce=nonce;
+            digest.opaque=opaque;
+            digest.algorithm=algorithm;
+            if (qop!=null)
+            {  digest.qop=qop;
+                digest.cnonce=cnonce;
+                digest.nc=BinTools.asHex(BinTools.intTo4Bytes(++nc));
+            }
+            return (proxy)? digest.getProxyAuthorizationHeader() : digest.getAuthorizationHeader();
+        }
+    }
+
+
+    /** Selects the qop among the qop-options of a challenge: "auth" if offered, otherwise "auth-int" if offered, otherwise null. */
+    static String selectQop(String qop_options)
+    {  if (qop_options==null) return null;
+        // else
+        String qop=null;
+        for (String option : qop_options.split(","))
+        {  option=option.trim();
+            if (option.equalsIgnoreCase("auth")) return "auth";
+            if (option.equalsIgnoreCase("auth-int")) qop="auth-int";
+        }
+        return qop;
+    }
+
+
+    /** Gets the table key of a user and realm (realms are case-insensitive), for a registrar or a proxy. */
+    private static String key(String username, String realm, boolean proxy)
+    {  return ((proxy)? "proxy:" : "")+username+":"+((realm!=null)? realm.toLowerCase(Locale.ROOT) : "");
+    }
+
+
+    /** Caches a challenge, replacing the previous challenge of the same realm from the same kind of server (registrar or proxy).
+     * @param challenge the WWW-Authenticate (or Proxy-Authenticate) header
+     * @param proxy whether it is a Proxy-Authenticate header
+     * @param username the user name
+     * @param passwd the user password */
+    public void update(WwwAuthenticateHeader challenge, boolean proxy, String username, String passwd)
+    {  Entry entry=new Entry(challenge,proxy,username,passwd);
+        if (entries.put(key(username,entry.realm,proxy),entry)!=null) Log.v(TAG, () -> "new challenge for realm "+entry.realm+(("true".equalsIgnoreCase(challenge.getStaleParam()))? " (stale nonce)" : ""));
+    }
+
+
+    /** Sets the nonce for the next requests to a realm, as received in the nextnonce parameter of an Authentication-Info header
+     * (i.e. from a registrar, not from a proxy). */
+    public void setNextNonce(String username, String realm, String nextnonce)
+    {  Entry entry=entries.get(key(username,realm,false));
+        if (entry!=null && nextnonce!=null) entry.setNonce(nextnonce);
+    }
+
+
+    /** Removes the cached challenges of a realm, e.g. when the credentials have been refused. */
+    public void remove(String username, String realm)
+    {  entries.remove(key(username,realm,false));
+        entries.remove(key(username,realm,true));
+    }
+
+
+    /** Adds to a request the Authorization and Proxy-Authorization headers computed from the cached challenges of a realm.
+     * @return true if a header has been added, false if no challenge is cached for the given user, realm, and password */
+    public boolean authorize(Message req, String username, String realm, String passwd)
+    {  boolean authorized=false;
+        for (boolean proxy : new boolean[]{ false, true })
+        {  Entry entry=entries.get(key(username,realm,proxy));
+            if (entry==null) continue;
+            if ((passwd!=null)? !passwd.equals(entry.passwd) : entry.passwd!=null) continue;
+            RequestLine rl=req.getRequestLine();
+            AuthorizationHeader ah=entry.getAuthorizationHeader(rl.getMethod(),rl.getAddress().toString(),req.getBody());
+            if (proxy) req.setProxyAuthorizationHeader((ProxyAuthorizationHeader)ah);
+            else req.setAuthorizationHeader(ah);
+            authorized=true;
+        }
+        return authorized;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.authentication;
+
+
+
+/** CredentialStore provides the digest credentials of the users to a DigestAuthenticator.
+ * <p> Credentials are given as the hex value of H(A1), i.e. H( username ":" realm ":" passwd ),
+ * so that the passwords need not be kept in clear (see DigestAuthentication.getHA1()).
+ */
+public interface CredentialStore
+{
+    /** Gets the hex value of H(A1) of a user.
+     * @param username the user name
+     * @param realm the realm
+     * @return the H(A1) value, or null if the user is unknown */
+    public String getHA1(String username, String realm);
+}
@@ -8,6 +8,7 @@ import org.zoolu.sip.header.WwwAuthenticateHeader;
 import org.zoolu.tools.MD5;
 import org.zoolu.tools.Random;
 import org.zoolu.tools.BinTools;
+import java.security.MessageDigest;
 
 
 /** The HTTP Digest Authentication as defined in RFC2617.
@@ -58,7 +59,7 @@ public class DigestAuthentication
         this.qop=qop;
         this.username=username;
         if (this.qop!=null)
-        {  if (this.cnonce!=null) this.cnonce=cnonce;
+        {  if (cnonce!=null) this.cnonce=cnonce;
         else this.cnonce=BinTools.asHex(Random.nextBytes(4));
             if (nc>0)
             {  this.nc=BinTools.asHex(BinTools.intTo4Bytes(nc));
@@ -107,8 +108,30 @@ public class DigestAuthentication
 
     /** Whether the digest-response in the 'response' parameter in correct. */
     public boolean checkResponse()
+    {  return matchesResponse(getResponse());
+    }
+
+
+    /** Whether the digest-response in the 'response' parameter in correct,
+     * given the hex value of H(A1) instead of the password (see getHA1()). */
+    public boolean checkResponse(String ha1)
+    {  return matchesResponse(getResponse(ha1));
+    }
+
+
+    /** Whether the 'response' parameter is equal to the given (lowercase hex) digest-response.
+     * Hex digits are compared regardless of case, and in constant time, so that the time
+     * taken does not tell how many leading digits are right. */
+    private boolean matchesResponse(String expected)
     {  if (response==null) return false;
-    else return response.equals(getResponse());
+        return MessageDigest.isEqual(response.toLowerCase().getBytes(),expected.getBytes());
+    }
+
+
+    /** Calculates the hex value of H(A1) for the "MD5" algorithm, that is H( unq(username) ":" unq(realm) ":" passwd ).
+     * It can be stored in place of the password, and used with getResponse(String) and checkResponse(String). */
+    public static String getHA1(String username, String realm, String passwd)
+    {  return HEX(MD5(username+":"+realm+":"+passwd));
     }
 
 
@@ -144,7 +167,13 @@ public class DigestAuthentication
      * <br>   KD ( H(A1), unq(nonce) ":" H(A2) )
      */
     public String getResponse()
-    {  String secret=HEX(MD5(A1()));
+    {  return getResponse(HEX(MD5(A1())));
+    }
+
+
+    /** Calculates the digest-response, given the hex value of H(A1). */
+    public String getResponse(String ha1)
+    {  String secret=ha1;
         StringBuffer sb=new StringBuffer();
         if (nonce!=null) sb.append(nonce);
         sb.append(":");
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.authentication;
+
+
+import org.zoolu.sip.header.AuthorizationHeader;
+import org.zoolu.sip.header.ProxyAuthenticateHeader;
+import org.zoolu.sip.header.WwwAuthenticateHeader;
+import org.zoolu.sip.message.BaseMessageFactory;
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.provider.SipProvider;
+import org.zoolu.tools.BinTools;
+import org.zoolu.tools.Counter;
+import org.zoolu.tools.Log;
+import org.zoolu.tools.Metrics;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/** DigestAuthenticator authenticates the requests received by a UAS, registrar, or proxy,
+ * with the HTTP Digest Authentication of RFC 2617 (algorithm MD5, qop=auth).
+ * <p> A nonce is the time it has been issued and a sequence number, followed by an HMAC-SHA256
+ * of both, with a key picked at startup, so it can be checked without keeping the issued nonces.
+ * <br> Replays are detected by tracking the highest nonce-count (nc) of each issued nonce, and which of the
+ * WINDOW nonce-counts up to it have been seen, in a fixed-size table indexed by a hash of the nonce.
+ * So requests that arrive out of order (e.g. through UDP) are accepted as long as they are within the window,
+ * while older ones are reported as stale, since they cannot be told from replays; the client simply retries
+ * with a new nonce. The same holds for a nonce that is no longer tracked (i.e. evicted by a colliding one),
+ * or that has been used more than MAX_NC times. Clients that do not use qop (that have no nc) can use a nonce once.
+ * <br> Users' credentials are given as H(A1) values by a CredentialStore, and the most recently used ones are cached.
+ * <p> Typical use, for a registrar:
+ * <pre>
+ * int result=authenticator.authenticate(req);
+ * if (result==DigestAuthenticator.ACCEPTED) ... // serve the request
+ * else respond with authenticator.createChallengeResponse(sip_provider,req,result==DigestAuthenticator.STALE)
+ * </pre>
+ */
+public class DigestAuthenticator
+{
+    private static final String TAG = "Sip: DigestAuthenticator";
+
+    /** The request is authenticated */
+    public static final int ACCEPTED=0;
+
+    /** The request has no credentials for this realm */
+    public static final int MISSING=1;
+
+    /** The credentials are valid, but the nonce has expired (or it is no longer tracked) */
+    public static final int STALE=2;
+
+    /** The credentials are wrong, malformed, or replayed */
+    public static final int REJECTED=3;
+
+    /** Names of the results, as metric labels */
+    static final String[] RESULTS={ "accepted", "missing", "stale", "rejected" };
+
+    /** Counters of the results */
+    static final Counter[] result_counters=new Counter[RESULTS.length];
+
+    static
+    {  Metrics.Family family=Metrics.family("sip.auth.server",RESULTS.length);
+        for (int i=0; i<RESULTS.length; i++) result_counters[i]=family.get(RESULTS[i]);
+    }
+
+    /** Default nonce lifetime, in milliseconds */
+    public static final long DEFAULT_NONCE_LIFETIME=300000;
+
+    /** Default number of tracked nonces */
+    public static final int DEFAULT_MAX_NONCES=65536;
+
+    /** Default number of cached H(A1) values */
+    public static final int DEFAULT_MAX_CREDENTIALS=4096;
+
+    /** Number of bytes of the nonce time */
+    static final int TIME_LEN=8;
+
+    /** Number of bytes of the signed part of the nonce, i.e. the time and the sequence number */
+    static final int DATA_LEN=TIME_LEN+8;
+
+    /** Number of bytes of the nonce HMAC */
+    static final int MAC_LEN=16;
+
+    /** Mask of the high half of a slot of the nonce table, that holds the nonce tag */
+    static final long TAG_MASK=0xffffffff00000000L;
+
+    /** Shift of the highest nonce-count within a slot of the nonce table */
+    static final int NC_SHIFT=16;
+
+    /** Max nonce-count of a nonce; beyond it, the nonce is stale */
+    static final long MAX_NC=0xffff;
+
+    /** Number of nonce-counts, up to the highest one, whose use is tracked */
+    static final int WINDOW=16;
+
+    /** Mask of the bitmap of the used nonce-counts within a slot of the nonce table */
+    static final long WINDOW_MASK=(1L<<WINDOW)-1;
+
+
+    /** Realm */
+    String realm;
+
+    /** Whether it authenticates as a proxy (i.e. with 407 responses) */
+    boolean proxy;
+
+    /** Credential store */
+    CredentialStore store;
+
+    /** Nonce lifetime, in milliseconds */
+    long nonce_lifetime;
+
+    /** HMAC key of the nonces */
+    SecretKeySpec key;
+
+    /** Sequence number of the next nonce, so that nonces issued in the same millisecond differ */
+    AtomicLong nonce_seqn=new AtomicLong();
+
+    /** HMAC of each thread */
+    ThreadLocal<Mac> mac=new ThreadLocal<Mac>()
+    {  protected Mac initialValue()
+        {  try
+            {  Mac m=Mac.getInstance("HmacSHA256");
+                m.init(key);
+                return m;
+            }
+            catch (GeneralSecurityException e)
+            {  throw new RuntimeException(e);
+            }
+        }
+    };
+
+    /** Nonce table: each slot holds the tag of a nonce (the high 32 bits), its highest nc (the next 16 bits, 0 if unused),
+     * and a bitmap of the used nonce-counts (the low 16 bits, where bit <i>k</i> stands for the highest nc minus <i>k</i>) */
+    AtomicLongArray nonces;
+
+    /** Mask for computing the slot of a nonce (the table size minus 1) */
+    int mask;
+
+    /** Cached H(A1) values, as table:username-->H(A1), in LRU order */
+    Map<String,String> credentials;
+
+
+    /** Creates a new DigestAuthenticator, with the default nonce lifetime and table sizes.
+     * @param realm the realm
+     * @param store the credential store */
+    public DigestAuthenticator(String realm, CredentialStore store)
+    {  this(realm,false,store,DEFAULT_NONCE_LIFETIME,DEFAULT_MAX_NONCES,DEFAULT_MAX_CREDENTIALS);
+    }
+
+    /** Creates a new DigestAuthenticator.
+     * @param realm the realm
+     * @param proxy whether it authenticates as a proxy (with Proxy-Authenticate and Proxy-Authorization headers)
+     * @param store the credential store
+     * @param nonce_lifetime the nonce lifetime, in milliseconds
+     * @param max_nonces the number of tracked nonces (rounded up to a power of 2)
+     * @param max_credentials the number of cached H(A1) values */
+    public DigestAuthenticator(String realm, boolean proxy, CredentialStore store, long nonce_lifetime, int max_nonces, int max_credentials)
+    {  this.realm=realm;
+        this.proxy=proxy;
+        this.store=store;
+        this.nonce_lifetime=nonce_lifetime;
+        byte[] secret=new byte[32];
+        new SecureRandom().nextBytes(secret);
+        key=new SecretKeySpec(secret,"HmacSHA256");
+        int size=1;
+        while (size<max_nonces) size<<=1;
+        nonces=new AtomicLongArray(size);
+        mask=size-1;
+        final int max_size=max_credentials;
+        credentials=new LinkedHashMap<String,String>(16,0.75f,true)
+        {  protected boolean removeEldestEntry(Map.Entry<String,String> eldest)
+            {  return size()>max_size;
+            }
+        };
+    }
+
+
+    /** Gets the realm. */
+    public String getRealm()
+    {  return realm;
+    }
+
+
+    /** Creates a new nonce, and starts tracking it (evicting the nonce it collides with, if any). */
+    public String createNonce()
+    {  byte[] nonce=new byte[DATA_LEN+MAC_LEN];
+        long time=System.currentTimeMillis();
+        for (int i=TIME_LEN-1; i>=0; i--, time>>>=8) nonce[i]=(byte)time;
+        long seqn=nonce_seqn.getAndIncrement();
+        for (int i=DATA_LEN-1; i>=TIME_LEN; i--, seqn>>>=8) nonce[i]=(byte)seqn;
+        sign(nonce);
+        long id=getNonceId(nonce);
+        nonces.set((int)id&mask,id&TAG_MASK);
+        return BinTools.asHex(nonce);
+    }
+
+
+    /** Gets a new challenge, that is a WWW-Authenticate (or Proxy-Authenticate) header with a new nonce.
+     * @param stale whether the previous request had a stale nonce */
+    public WwwAuthenticateHeader getChallenge(boolean stale)
+    {  WwwAuthenticateHeader wah=(proxy)? new ProxyAuthenticateHeader("Digest") : new WwwAuthenticateHeader("Digest");
+        wah.addRealmParam(realm);
+        wah.addNonceParam(createNonce());
+        wah.addAlgorithParam("MD5");
+        wah.addQopOptionsParam("auth");
+        if (stale) wah.addStaleParam("true");
+        return wah;
+    }
+
+
+    /** Creates a 401 (or 407) response with a new challenge.
+     * @param stale whether the request had a stale nonce (i.e. authenticate() returned STALE) */
+    public Message createChallengeResponse(SipProvider sip_provider, Message req, boolean stale)
+    {  Message resp=BaseMessageFactory.createResponse(sip_provider,req,(proxy)? 407 : 401,null,null);
+        if (proxy) resp.setProxyAuthenticateHeader((ProxyAuthenticateHeader)getChallenge(stale));
+        else resp.setWwwAuthenticateHeader(getChallenge(stale));
+        return resp;
+    }
+
+
+    /** Authenticates a request.
+     * @return ACCEPTED, MISSING (the request has to be challenged), STALE (the request has to be challenged with stale=true),
+     * or REJECTED */
+    public int authenticate(Message req)
+    {  int result=check(req);
+        result_counters[result].increment();
+        return result;
+    }
+
+
+    /** Removes the cached H(A1) of a user, e.g. after the password has changed. */
+    public void invalidate(String username)
+    {  synchronized (credentials)
+        {  credentials.remove(username);
+        }
+    }
+
+
+    /** Authenticates a request. */
+    private int check(Message req)
+    {  AuthorizationHeader ah=(proxy)? req.getProxyAuthorizationHeader() : req.getAuthorizationHeader();
+        if (ah==null || !"Digest".equalsIgnoreCase(ah.getAuthScheme()) || !realm.equals(ah.getRealmParam())) return MISSING;
+        DigestAuthentication digest=new DigestAuthentication(req.getRequestLine().getMethod(),ah,req.getBody(),null);
+        if (digest.username==null || digest.nonce==null || digest.uri==null || digest.response==null) return REJECTED;
+        if (digest.algorithm!=null && !digest.algorithm.equalsIgnoreCase("MD5")) return REJECTED;
+        if (!digest.uri.equals(req.getRequestLine().getAddress().toString())) return REJECTED;
+        long nc=1;
+        if (digest.qop!=null)
+        {  if (digest.cnonce==null || digest.nc==null || digest.nc.length()!=8) return REJECTED;
+            try
+            {  nc=Long.parseLong(digest.nc,16);
+            }
+            catch (NumberFormatException e)
+            {  return REJECTED;
+            }
+            if (nc<1) return REJECTED;
+        }
+        String ha1=getHA1(digest.username);
+        if (ha1==null || !digest.checkResponse(ha1))
+        {  Log.v(TAG, () -> "wrong credentials of user "+digest.username);
+            return REJECTED;
+        }
+        // the credentials are right: check the nonce
+        byte[] nonce=decodeNonce(digest.nonce);
+        if (nonce==null) return STALE;
+        long time=0;
+        for (int i=0; i<TIME_LEN; i++) time=(time<<8)|(nonce[i]&0xff);
+        long now=System.currentTimeMillis();
+        if (time>now || now-time>nonce_lifetime) return STALE;
+        return updateCount(getNonceId(nonce),nc);
+    }
+
+
+    /** Gets the id of a nonce, that is the first 64 bits of its HMAC. */
+    private static long getNonceId(byte[] nonce)
+    {  long id=0;
+        for (int i=DATA_LEN; i<DATA_LEN+8; i++) id=(id<<8)|(nonce[i]&0xff);
+        return id;
+    }
+
+
+    /** Records the nonce-count of a nonce.
+     * @param id the nonce id (the first 64 bits of its HMAC)
+     * @param nc the nonce-count
+     * @return ACCEPTED if nc has not been used yet, REJECTED if it has (replay),
+     * STALE if nc is too old to tell, or the nonce is no longer tracked (even with nc=1, as it may have been used already) */
+    private int updateCount(long id, long nc)
+    {  if (nc>MAX_NC) return STALE;
+        int i=(int)id&mask;
+        long tag=id&TAG_MASK;
+        while (true)
+        {  long slot=nonces.get(i);
+            if ((slot&TAG_MASK)!=tag) return STALE;
+            // else
+            long highest=(slot>>>NC_SHIFT)&MAX_NC;
+            long used=slot&WINDOW_MASK;
+            if (nc>highest)
+            {  long shift=nc-highest;
+                used=(shift<WINDOW)? ((used<<shift)|1)&WINDOW_MASK : 1;
+                highest=nc;
+            }
+            else
+            if (highest-nc>=WINDOW) return STALE;
+            else
+            {  long bit=1L<<(highest-nc);
+                if ((used&bit)!=0)
+                {  Log.v(TAG, "replayed nonce-count");
+                    return REJECTED;
+                }
+                used|=bit;
+            }
+            long value=tag|(highest<<NC_SHIFT)|used;
+            if (nonces.compareAndSet(i,slot,value)) return ACCEPTED;
+        }
+    }
+
+
+    /** Decodes a nonce, checking its HMAC.
+     * @return the nonce bytes, or null if it is not a nonce issued by this DigestAuthenticator */
+    private byte[] decodeNonce(String str)
+    {  if (str.length()!=2*(DATA_LEN+MAC_LEN)) return null;
+        byte[] nonce=new byte[DATA_LEN+MAC_LEN];
+        for (int i=0; i<nonce.length; i++)
+        {  int hi=Character.digit(str.charAt(2*i),16);
+            int lo=Character.digit(str.charAt(2*i+1),16);
+            if (hi<0 || lo<0) return null;
+            nonce[i]=(byte)((hi<<4)|lo);
+        }
+        byte[] received=BinTools.getBytes(nonce,DATA_LEN,MAC_LEN);
+        sign(nonce);
+        return (MessageDigest.isEqual(received,BinTools.getBytes(nonce,DATA_LEN,MAC_LEN)))? nonce : null;
+    }
+
+
+    /** Writes the HMAC of the nonce time and sequence number into the nonce. */
+    private void sign(byte[] nonce)
+    {  Mac m=mac.get();
+        m.update(nonce,0,DATA_LEN);
+        byte[] hmac=m.doFinal();
+        System.arraycopy(hmac,0,nonce,DATA_LEN,MAC_LEN);
+    }
+
+
+    /** Gets the H(A1) of a user, from the cache or from the credential store. */
+    private String getHA1(String username)
+    {  String ha1;
+        synchronized (credentials)
+        {  ha1=credentials.get(username);
+        }
+        if (ha1==null)
+        {  ha1=store.getHA1(username,realm);
+            if (ha1!=null)
+            {  synchronized (credentials)
+                {  credentials.put(username,ha1);
+                }
+            }
+        }
+        return ha1;
+    }
+}
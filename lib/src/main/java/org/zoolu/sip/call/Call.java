@@ -24,12 +24,14 @@
 package org.zoolu.sip.call;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.dialog.*;
 import org.zoolu.sip.provider.*;
 import org.zoolu.sip.message.*;
 import org.zoolu.sip.address.NameAddress;
 import org.zoolu.sip.header.MultipleHeader;
+import org.zoolu.tools.Histogram;
+import org.zoolu.tools.Metrics;
 
 
 /** Class Call implements SIP calls.
@@ -47,6 +49,12 @@ public class Call extends org.zoolu.tools.MonitoredObject implements InviteDialo
 
     private static final String TAG = "Sip: Call";
 
+    /** Setup time of outgoing calls, from the INVITE to the 2xx response (in milliseconds) */
+    static final Histogram setup_time=Metrics.histogram("call.setup_time");
+
+    /** Duration of the calls, from the 2xx response (or the acceptance) to the end of the call (in milliseconds) */
+    static final Histogram duration=Metrics.histogram("call.duration");
+
 
     /** The SipProvider used for the call */
     protected SipProvider sip_provider;
@@ -76,6 +84,12 @@ public class Call extends org.zoolu.tools.MonitoredObject implements InviteDialo
     /** Internal call state. */
     protected int status;
 
+    /** Time the call has been started (in nanoseconds), or 0 */
+    long invite_time=0;
+
+    /** Time the call has become active (in nanoseconds), or 0 */
+    long active_time=0;
+
     protected static final int C_IDLE=0;
     protected static final int C_INCOMING=1;
     protected static final int C_OUTGOING=2;
@@ -96,8 +110,21 @@ public class Call extends org.zoolu.tools.MonitoredObject implements InviteDialo
 
     /** Changes the internal dialog state */
     protected void changeStatus(int newstatus)
-    {  status=newstatus;
-        Log.v(TAG, "changed call state: "+getStatus());
+    {  long now=System.nanoTime();
+        if (newstatus==C_OUTGOING && status!=C_OUTGOING) invite_time=now;
+        else
+        if (newstatus==C_ACTIVE && active_time==0)
+        {  if (invite_time!=0) setup_time.record((now-invite_time)/1000000);
+            invite_time=0;
+            active_time=now;
+        }
+        else
+        if (newstatus==C_CLOSED && active_time!=0)
+        {  duration.record((now-active_time)/1000000);
+            active_time=0;
+        }
+        status=newstatus;
+        Log.v(TAG, () -> "changed call state: "+getStatus());
     }
 
     /** Whether the call state is equal to <i>st</i> */
@@ -209,7 +236,7 @@ public class Call extends org.zoolu.tools.MonitoredObject implements InviteDialo
 
     /** Starts a new call, inviting a remote user (<i>callee</i>) */
     public void call(NameAddress callee, NameAddress from, String sdp)
-    {  Log.v(TAG, "calling "+callee);
+    {  Log.v(TAG, () -> "calling "+callee);
         dialog=new InviteDialog(sip_provider,this);
         if (from==null) from=from_naddr;
         if (sdp!=null) local_sdp=sdp;
@@ -221,7 +248,7 @@ public class Call extends org.zoolu.tools.MonitoredObject implements InviteDialo
 
     /** Starts a new call with the <i>invite</i> message request */
     public void call(Message invite)
-    {  Log.v(TAG, "calling "+invite.getRequestLine().getAddress());
+    {  Log.v(TAG, () -> "calling "+invite.getRequestLine().getAddress());
         dialog=new InviteDialog(sip_provider,this);
         local_sdp=invite.getBody();
         if (local_sdp!=null) dialog.invite(invite);
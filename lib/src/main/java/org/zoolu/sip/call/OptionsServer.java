@@ -22,7 +22,7 @@
 package org.zoolu.sip.call;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.provider.*;
 import org.zoolu.sip.header.AcceptHeader;
 import org.zoolu.sip.header.AllowHeader;
@@ -74,7 +74,7 @@ public class OptionsServer implements SipProviderListener {
    {  // respond to OPTIONS request
       if (msg.isRequest() && msg.isOptions())
       {  Log.v(TAG, "responding to a new OPTIONS request");
-         Message resp=MessageFactory.createResponse(msg,200,null,null);
+         Message resp=MessageFactory.createResponse(sip_provider,msg,200,null,null);
          if (allow!=null) resp.setAllowHeader(new AllowHeader(allow));
          if (accept!=null) resp.setAcceptHeader(new AcceptHeader(accept));
          TransactionServer ts=new TransactionServer(sip_provider,msg,null);
@@ -22,7 +22,7 @@
 package org.zoolu.sip.call;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.address.*;
 import org.zoolu.sip.provider.SipStack;
 import org.zoolu.sip.provider.SipProvider;
@@ -31,7 +31,7 @@ import org.zoolu.sip.header.*;
 import org.zoolu.sip.message.*;
 import org.zoolu.sip.transaction.TransactionClient;
 import org.zoolu.sip.transaction.TransactionClientListener;
-import org.zoolu.sip.authentication.DigestAuthentication;
+import org.zoolu.sip.authentication.AuthenticationCache;
 import org.zoolu.tools.Timer;
 import org.zoolu.tools.TimerListener;
 
@@ -70,12 +70,6 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
    /** User's passwd. */
    protected String passwd;
 
-   /** Nonce for the next authentication. */
-   protected String next_nonce;
-
-   /** Qop for the next authentication. */
-   protected String qop;
-
    /** User's contact address. */
    protected NameAddress contact; 
 
@@ -127,16 +121,14 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
       this.target=target_url;
       this.from=from_url;
       this.contact=new NameAddress(sip_provider.getContactAddress(from.getAddress().getUserName()));
-      this.expire_time=SipStack.default_expires;
-      this.renew_time=SipStack.default_expires;
+      this.expire_time=sip_provider.getConfig().default_expires;
+      this.renew_time=sip_provider.getConfig().default_expires;
       this.is_running=false;
       //this.keep_alive=null;
       // authentication
       this.username=null;
       this.realm=null;
       this.passwd=null;
-      this.next_nonce=null;
-      this.qop=null;
       this.attempts=0;
    }
 
@@ -180,18 +172,8 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
       if (expire_time>0) this.expire_time=expire_time;
       Message req=MessageFactory.createRegisterRequest(sip_provider,registrar,target,from,contact);
       req.setExpiresHeader(new ExpiresHeader(String.valueOf(expire_time)));
-      if (next_nonce!=null)
-      {  AuthorizationHeader ah=new AuthorizationHeader("Digest");
-         SipURL target_url=target.getAddress();
-         ah.addUsernameParam(username);
-         ah.addRealmParam(realm);
-         ah.addNonceParam(next_nonce);
-         ah.addUriParam(req.getRequestLine().getAddress().toString());
-         ah.addQopParam(qop);
-         String response=(new DigestAuthentication(SipMethods.REGISTER,ah,null,passwd)).getResponse();
-         ah.addResponseParam(response);
-         req.setAuthorizationHeader(ah);
-      }
+      // preemptive authentication, with the last challenge of the realm
+      if (username!=null) sip_provider.getAuthenticationCache().authorize(req,username,realm,passwd);
       if (body!=null)
       {  Log.v(TAG, "register body: "+body.length()+" bytes");
          req.setBody(body);
@@ -265,8 +247,8 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
    /** Callback function called when client sends back a success response. */
    public void onTransSuccessResponse(TransactionClient transaction, Message resp)
    {  if (transaction.getTransactionMethod().equals(SipMethods.REGISTER))
-      {  if (resp.hasAuthenticationInfoHeader())
-         {  next_nonce=resp.getAuthenticationInfoHeader().getNextnonceParam();
+      {  if (resp.hasAuthenticationInfoHeader() && username!=null)
+         {  sip_provider.getAuthenticationCache().setNextNonce(username,realm,resp.getAuthenticationInfoHeader().getNextnonceParam());
          }
          StatusLine status=resp.getStatusLine();
          String result=status.getCode()+" "+status.getReason();
@@ -301,7 +283,7 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
    {  if (transaction.getTransactionMethod().equals(SipMethods.REGISTER))
       {  StatusLine status=resp.getStatusLine();
          int code=status.getCode();
-         if (code==401 && attempts<SipStack.regc_auth_attempts && resp.hasWwwAuthenticateHeader() && resp.getWwwAuthenticateHeader().getRealmParam().equalsIgnoreCase(realm))
+         if (code==401 && attempts<sip_provider.getConfig().regc_auth_attempts && resp.hasWwwAuthenticateHeader() && resp.getWwwAuthenticateHeader().getRealmParam().equalsIgnoreCase(realm))
          {  // UAS authentication
             attempts++;
             Message req=transaction.getRequestMessage();
@@ -311,38 +293,33 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
             req.removeViaHeader();
             vh.setBranch(SipProvider.pickBranch());
             req.addViaHeader(vh);
-            WwwAuthenticateHeader wah=resp.getWwwAuthenticateHeader();
-            String qop_options=wah.getQopOptionsParam();
-            //Log.v(TAG, "DEBUG: qop-options: "+qop_options,Log.LEVEL_MEDIUM);
-            qop=(qop_options!=null)? "auth" : null;
-            AuthorizationHeader ah=(new DigestAuthentication(SipMethods.REGISTER,req.getRequestLine().getAddress().toString(),wah,qop,null,0,null,username,passwd)).getAuthorizationHeader();
-            req.setAuthorizationHeader(ah);
+            AuthenticationCache auth_cache=sip_provider.getAuthenticationCache();
+            auth_cache.update(resp.getWwwAuthenticateHeader(),false,username,passwd);
+            auth_cache.authorize(req,username,realm,passwd);
             TransactionClient t=new TransactionClient(sip_provider,req,this);
             t.request();
          }
          else
-         if (code==407 && attempts<SipStack.regc_auth_attempts && resp.hasProxyAuthenticateHeader() && resp.getProxyAuthenticateHeader().getRealmParam().equalsIgnoreCase(realm))
+         if (code==407 && attempts<sip_provider.getConfig().regc_auth_attempts && resp.hasProxyAuthenticateHeader() && resp.getProxyAuthenticateHeader().getRealmParam().equalsIgnoreCase(realm))
          {  // Proxy authentication
             attempts++;
             Message req=transaction.getRequestMessage();
             req.setCSeqHeader(req.getCSeqHeader().incSequenceNumber());
-            ProxyAuthenticateHeader pah=resp.getProxyAuthenticateHeader();
-            String qop_options=pah.getQopOptionsParam();
-            //Log.v(TAG, "DEBUG: qop-options: "+qop_options,Log.LEVEL_MEDIUM);
-            qop=(qop_options!=null)? "auth" : null;
-            ProxyAuthorizationHeader ah=(new DigestAuthentication(SipMethods.REGISTER,req.getRequestLine().getAddress().toString(),pah,qop,null,0,null,username,passwd)).getProxyAuthorizationHeader();
-            req.setProxyAuthorizationHeader(ah);
+            AuthenticationCache auth_cache=sip_provider.getAuthenticationCache();
+            auth_cache.update(resp.getProxyAuthenticateHeader(),true,username,passwd);
+            auth_cache.authorize(req,username,realm,passwd);
             TransactionClient t=new TransactionClient(sip_provider,req,this);
             t.request();
          }
          else
          {  // Registration failure
+            if ((code==401 || code==407) && username!=null) sip_provider.getAuthenticationCache().remove(username,realm);
             String result=code+" "+status.getReason();
             Log.v(TAG, "Registration failure: "+result);
             if (loop)
             {  registration_to=null;
-               (attempt_to=new Timer(SipStack.regc_max_attempt_timeout,this)).start();
-               Log.v(TAG, "next attempt after "+(SipStack.regc_max_attempt_timeout/1000)+" secs");
+               (attempt_to=new Timer(sip_provider.getConfig().regc_max_attempt_timeout,this)).start();
+               Log.v(TAG, "next attempt after "+(sip_provider.getConfig().regc_max_attempt_timeout/1000)+" secs");
             }
             if (listener!=null) listener.onRegistrationFailure(this,target,contact,result);
          }
@@ -355,8 +332,8 @@ public class RegistrationClient implements TransactionClientListener, TimerListe
       {  Log.v(TAG, "Registration failure: No response from server");
          if (loop)
          {  registration_to=null;
-            long inter_time_msecs=(attempt_to==null)? SipStack.regc_min_attempt_timeout : attempt_to.getTime()*2;
-            if (inter_time_msecs>SipStack.regc_max_attempt_timeout) inter_time_msecs=SipStack.regc_max_attempt_timeout;
+            long inter_time_msecs=(attempt_to==null)? sip_provider.getConfig().regc_min_attempt_timeout : attempt_to.getTime()*2;
+            if (inter_time_msecs>sip_provider.getConfig().regc_max_attempt_timeout) inter_time_msecs=sip_provider.getConfig().regc_max_attempt_timeout;
             (attempt_to=new Timer(inter_time_msecs,this)).start();
             Log.v(TAG, "next attempt after "+(inter_time_msecs/1000)+" secs");
          }
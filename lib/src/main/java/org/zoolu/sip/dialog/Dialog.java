@@ -24,7 +24,7 @@
 package org.zoolu.sip.dialog;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.address.*;
 import org.zoolu.sip.message.*;
 import org.zoolu.sip.header.*;
@@ -112,7 +112,7 @@ public abstract class Dialog extends DialogInfo implements SipProviderListener {
    /** Changes the internal dialog state */
    protected void changeStatus(int newstatus)
    {  status=newstatus;
-      Log.v(TAG, "changed dialog state: "+getStatus());
+      Log.v(TAG, () -> "changed dialog state: "+getStatus());
       
       // remove the sip_provider listener when going to "terminated" state
       if (isTerminated())
@@ -226,7 +226,7 @@ public abstract class Dialog extends DialogInfo implements SipProviderListener {
          }
       }
       // REMOVE THE LOCAL NODE FROM THE ROUTE SET (ELIMINATE FIRST-HOP LOOP)
-      if (SipStack.on_dialog_route)
+      if (sip_provider.getConfig().on_dialog_route)
       {  if (route!=null && route.size()>0)
          {  SipURL url=((NameAddress)route.elementAt(0)).getAddress();
             if (url.getHost().equals(sip_provider.getViaAddress()) && url.getPort()==sip_provider.getPort())
@@ -243,7 +243,7 @@ public abstract class Dialog extends DialogInfo implements SipProviderListener {
       // update dialog_id and sip_provider listener
       DialogId new_id=new DialogId(call_id,local_tag,remote_tag);
       if (dialog_id==null || !dialog_id.equals(new_id))
-      {  Log.v(TAG, "new dialog-id: "+new_id);
+      {  Log.v(TAG, () -> "new dialog-id: "+new_id);
          if (sip_provider!=null) sip_provider.addSelectiveListener(new_id,this);
          if (dialog_id!=null && sip_provider!=null) sip_provider.removeSelectiveListener(dialog_id);
          dialog_id=new_id;
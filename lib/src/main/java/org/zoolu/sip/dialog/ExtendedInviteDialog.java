@@ -29,7 +29,7 @@ import org.zoolu.sip.address.NameAddress;
 import org.zoolu.sip.header.*;
 import org.zoolu.sip.transaction.*;
 import org.zoolu.sip.message.*;
-import org.zoolu.sip.authentication.DigestAuthentication;
+import org.zoolu.sip.authentication.AuthenticationCache;
 
 import java.util.Hashtable;
 
@@ -62,12 +62,6 @@ public class ExtendedInviteDialog extends InviteDialog
     /** User's passwd. */
     String passwd;
 
-    /** Nonce for the next authentication. */
-    String next_nonce;
-
-    /** Qop for the next authentication. */
-    String qop;
-
     /** Number of authentication attempts. */
     int attempts;
 
@@ -121,15 +115,28 @@ public class ExtendedInviteDialog extends InviteDialog
         this.username=null;
         this.realm=null;
         this.passwd=null;
-        this.next_nonce=null;
-        this.qop=null;
         this.attempts=0;
     }
 
 
+    /** Starts a new InviteTransactionClient, preemptively authenticating the INVITE with the last challenge of the realm (if any). */
+    public void invite(Message invite)
+    {  if (username!=null && statusIs(D_INIT)) sip_provider.getAuthenticationCache().authorize(invite,username,realm,passwd);
+        super.invite(invite);
+    }
+
+
+    /** Re-invites the remote user, preemptively authenticating the INVITE with the last challenge of the realm (if any). */
+    public void reInvite(Message invite)
+    {  if (username!=null && statusIs(D_CALL)) sip_provider.getAuthenticationCache().authorize(invite,username,realm,passwd);
+        super.reInvite(invite);
+    }
+
+
     /** Sends a new request within the dialog */
     public void request(Message req)
-    {  TransactionClient t=new TransactionClient(sip_provider,req,this);
+    {  if (username!=null) sip_provider.getAuthenticationCache().authorize(req,username,realm,passwd);
+        TransactionClient t=new TransactionClient(sip_provider,req,this);
         transactions.put(t.getTransactionId(),t);
         t.request();
     }
@@ -190,7 +197,7 @@ public class ExtendedInviteDialog extends InviteDialog
     /** Accept a REFER */
     public void acceptRefer(Message req)
     {
-        Message resp=MessageFactory.createResponse(req,202,null,null);
+        Message resp=MessageFactory.createResponse(sip_provider,req,202,null,null);
         respond(resp);
     }
 
@@ -198,13 +205,13 @@ public class ExtendedInviteDialog extends InviteDialog
     /** Refuse a REFER */
     public void refuseRefer(Message req)
     {
-        Message resp=MessageFactory.createResponse(req,603,null,null);
+        Message resp=MessageFactory.createResponse(sip_provider,req,603,null,null);
         respond(resp);
     }
 
 
     /** Inherited from class SipProviderListener. */
-    public void onReceivedMessage(SipProvider provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider provider, Message msg)
     {
         if (msg.isResponse())
         {  super.onReceivedMessage(provider,msg);
@@ -227,7 +234,7 @@ public class ExtendedInviteDialog extends InviteDialog
             }
             else
             if (msg.isNotify())
-            {  Message resp=MessageFactory.createResponse(msg,200,null,null);
+            {  Message resp=MessageFactory.createResponse(sip_provider,msg,200,null,null);
                 respond(resp);
                 String event=msg.getEventHeader().getValue();
                 String sipfragment=msg.getBody();
@@ -251,6 +258,7 @@ public class ExtendedInviteDialog extends InviteDialog
         String reason=status_line.getReason();
 
         // AUTHENTICATION-BEGIN
+        if ((code==401 || code==407) && attempts>=MAX_ATTEMPTS && username!=null) sip_provider.getAuthenticationCache().remove(username,realm);
         if ((code==401 && attempts<MAX_ATTEMPTS && msg.hasWwwAuthenticateHeader() && msg.getWwwAuthenticateHeader().getRealmParam().equalsIgnoreCase(realm))
                 || (code==407 && attempts<MAX_ATTEMPTS && msg.hasProxyAuthenticateHeader() && msg.getProxyAuthenticateHeader().getRealmParam().equalsIgnoreCase(realm)))
         {  attempts++;
@@ -261,17 +269,10 @@ public class ExtendedInviteDialog extends InviteDialog
             req.removeViaHeader();
             vh.setBranch(SipProvider.pickBranch());
             req.addViaHeader(vh);
-            WwwAuthenticateHeader wah;
-            if (code==401) wah=msg.getWwwAuthenticateHeader();
-            else wah=msg.getProxyAuthenticateHeader();
-            String qop_options=wah.getQopOptionsParam();
-            qop=(qop_options!=null)? "auth" : null;
-            RequestLine rl=req.getRequestLine();
-            DigestAuthentication digest=new DigestAuthentication(rl.getMethod(),rl.getAddress().toString(),wah,qop,null,0,null,username,passwd);
-            AuthorizationHeader ah;
-            if (code==401) ah=digest.getAuthorizationHeader();
-            else ah=digest.getProxyAuthorizationHeader();
-            req.setAuthorizationHeader(ah);
+            AuthenticationCache auth_cache=sip_provider.getAuthenticationCache();
+            if (code==401) auth_cache.update(msg.getWwwAuthenticateHeader(),false,username,passwd);
+            else auth_cache.update(msg.getProxyAuthenticateHeader(),true,username,passwd);
+            auth_cache.authorize(req,username,realm,passwd);
             transactions.remove(tc.getTransactionId());
             if (req.isInvite()) tc=new InviteTransactionClient(sip_provider,req,this);
             else tc=new TransactionClient(sip_provider,req,this);
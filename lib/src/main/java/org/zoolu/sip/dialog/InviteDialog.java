@@ -24,7 +24,7 @@
 package org.zoolu.sip.dialog;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.address.*;
 import org.zoolu.sip.transaction.*;
 import org.zoolu.sip.message.*;
@@ -196,7 +196,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
         // else
         changeStatus(D_INVITING);
         // FORCE THIS NODE IN THE DIALOG ROUTE
-        if (SipStack.on_dialog_route)
+        if (sip_provider.getConfig().on_dialog_route)
         {  SipURL url=new SipURL(sip_provider.getViaAddress(),sip_provider.getPort());
             url.addLr();
             invite.addRecordRouteHeader(new RecordRouteHeader(new NameAddress(url)));
@@ -350,7 +350,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
     public void respond(int code, String reason, NameAddress contact, String sdp)
     {
         if (statusIs(D_INVITED) || statusIs(D_ReINVITED))
-        {  Message resp=MessageFactory.createResponse(invite_req,code,reason,contact);
+        {  Message resp=MessageFactory.createResponse(sip_provider,invite_req,code,reason,contact);
             resp.setBody(sdp);
             respond(resp);
         }
@@ -480,7 +480,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
      * it moves to D_BYED state, removes the listener from SipProvider, fires onDlgBye(this,msg)
      * then it responds with 200 OK, moves to D_CLOSE state and fires onDlgClosed(this)
      */
-    public void onReceivedMessage(SipProvider sip_provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider sip_provider, Message msg)
     {
         // if request
         if (msg.isRequest())
@@ -497,7 +497,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
                 //   however state D_INIT has been included for robustness against further changes.
                 if (statusIs(D_INIT)) changeStatus(D_INVITED); else changeStatus(D_ReINVITED);
                 // FORCE THIS NODE IN THE DIALOG ROUTE
-                if (SipStack.on_dialog_route)
+                if (sip_provider.getConfig().on_dialog_route)
                 {  SipURL url=new SipURL(sip_provider.getViaAddress(),sip_provider.getPort());
                     url.addLr();
                     msg.addRecordRouteHeader(new RecordRouteHeader(new NameAddress(url)));
@@ -528,7 +528,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
                         changeStatus(D_BYED);
                         bye_ts=new TransactionServer(sip_provider,msg,this);
                         // automatically sends a 200 OK
-                        Message resp=MessageFactory.createResponse(msg,200,null,null);
+                        Message resp=MessageFactory.createResponse(sip_provider,msg,200,null,null);
                         respond(resp);
                         if (listener!=null) listener.onDlgBye(this,msg);
                         changeStatus(D_CLOSE);
@@ -540,9 +540,9 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
                         {  if (!(statusIs(D_INVITED)||statusIs(D_ReINVITED))) return;
                             // create a CANCEL TransactionServer and send a 200 OK (CANCEL)
                             TransactionServer ts=new TransactionServer(sip_provider,msg,null);
-                            ts.respondWith(MessageFactory.createResponse(msg,200,null,null));
+                            ts.respondWith(MessageFactory.createResponse(sip_provider,msg,200,null,null));
                             // automatically sends a 487 Cancelled
-                            Message resp=MessageFactory.createResponse(invite_req,487,null,null);
+                            Message resp=MessageFactory.createResponse(sip_provider,invite_req,487,null,null);
                             respond(resp);
                             if (listener!=null) listener.onDlgCancel(this,msg);
                         }
@@ -550,7 +550,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
                             // if any other request
                             if (msg.isRequest())
                             {  TransactionServer ts=new TransactionServer(sip_provider,msg,null);
-                                ts.respondWith(MessageFactory.createResponse(msg,405,null,null));
+                                ts.respondWith(MessageFactory.createResponse(sip_provider,msg,405,null,null));
                             }
         }
         else
@@ -687,7 +687,7 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
         {  if (!statusIs(D_WAITING)) return;
             changeStatus(D_INVITED);
             // FORCE THIS NODE IN THE DIALOG ROUTE
-            if (SipStack.on_dialog_route)
+            if (sip_provider.getConfig().on_dialog_route)
             {  SipURL url=new SipURL(sip_provider.getViaAddress(),sip_provider.getPort());
                 url.addLr();
                 req.addRecordRouteHeader(new RecordRouteHeader(new NameAddress(url)));
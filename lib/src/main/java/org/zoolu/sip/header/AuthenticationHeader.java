@@ -400,6 +400,23 @@ public abstract class AuthenticationHeader extends Header
 
 
 
+    /** Whether has stale */
+    public boolean hasStaleParam()
+    {  return hasParameter("stale");
+    }
+
+    /** Returns the stale */
+    public String getStaleParam()
+    {  return getParameter("stale");
+    }
+
+    /** Adds the stale */
+    public void addStaleParam(String stale)
+    {  addUnquotedParameter("stale",stale);
+    }
+
+
+
     /** Whether has algorithm */
     public boolean hasAlgorithmParam()
     {  return hasParameter("algorithm");
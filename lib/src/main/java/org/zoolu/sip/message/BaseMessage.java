@@ -29,6 +29,7 @@ import org.zoolu.sip.header.*;
 import org.zoolu.sip.address.*;
 import org.zoolu.sip.message.SipMethods;
 import org.zoolu.net.UdpPacket;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 
@@ -66,9 +67,45 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     /** Packet length */
     //protected int packet_length;
 
-    /** The message string */
+    /** The message string (null if not created yet, or if it has to be rebuilt from the header index) */
     protected String message;
 
+    /** The received message bytes (null if the message has not been read from bytes, or has been changed) */
+    private byte[] data;
+
+    /** Request/Status line, without terminating CRLF (null if not present) */
+    private String first_line;
+
+    /** Index of the message headers (null if the message string has not been indexed yet) */
+    private ArrayList<HeaderField> headers;
+
+    /** Whether the headers are terminated by an empty line */
+    private boolean has_eoh;
+
+    /** Everything that follows the empty line (null if there is no empty line, or if still in <i>body_data</i>) */
+    private String body_str;
+
+    /** Received bytes containing everything that follows the empty line (or null) */
+    private byte[] body_data;
+
+    /** Offset of the body within <i>body_data</i> */
+    private int body_offset;
+
+    /** End of the body within <i>body_data</i> */
+    private int body_end;
+
+    /** Cached client TransactionId (null if not computed yet) */
+    private TransactionId transaction_client_id;
+
+    /** Cached server TransactionId (null if not computed yet) */
+    private TransactionId transaction_server_id;
+
+    /** Cached DialogId (null if not computed yet) */
+    private DialogId dialog_id;
+
+    /** Cached MethodId (null if not computed yet) */
+    private MethodId method_id;
+
 
     /** Inits empty Message. */
     private void init()
@@ -85,28 +122,47 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
         message="";
     }
 
-    /** Costructs a new Message. */
+    /** Costructs a new Message.
+      * The bytes are copied, and decoded into Strings only when needed. */
     public BaseMessage(byte[] data, int offset, int len)
     {  init();
-        message=new String(data,offset,len);
+        this.data=new byte[len];
+        System.arraycopy(data,offset,this.data,0,len);
+    }
+
+    /** Costructs a new Message from the remaining bytes of <i>buffer</i>.
+      * The bytes are copied, and decoded into Strings only when needed. */
+    public BaseMessage(ByteBuffer buffer)
+    {  init();
+        data=new byte[buffer.remaining()];
+        buffer.get(data);
     }
 
     /** Costructs a new Message. */
     public BaseMessage(UdpPacket packet)
-    {  init();
-        message=new String(packet.getData(),packet.getOffset(),packet.getLength());
+    {  this(packet.getData(),packet.getOffset(),packet.getLength());
     }
 
     /** Costructs a new Message. */
     public BaseMessage(String str)
     {  init();
-        message=new String(str);
+        message=str;
     }
 
     /** Costructs a new Message. */
     public BaseMessage(BaseMessage msg)
     {  //message=new String(msg.message);
         message=msg.message;
+        data=msg.data;
+        if (msg.headers!=null)
+        {  first_line=msg.first_line;
+            headers=new ArrayList<HeaderField>(msg.headers);
+            has_eoh=msg.has_eoh;
+            body_str=msg.body_str;
+            body_data=msg.body_data;
+            body_offset=msg.body_offset;
+            body_end=msg.body_end;
+        }
         remote_addr=msg.remote_addr;
         remote_port=msg.remote_port;
         transport_proto=msg.transport_proto;
@@ -122,11 +178,180 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     /** Sets the entire message. */
     public void setMessage(String message)
     {  this.message=message;
+        data=null;
+        headers=null;
+        clearIds();
     }
 
     /** Gets string representation of Message. */
     public String toString()
-    {  return message;
+    {  if (message==null)
+        {  if (data!=null) message=SipByteParser.decode(data,0,data.length);
+            else
+            {  StringBuffer sb=new StringBuffer();
+                if (first_line!=null) sb.append(first_line).append("\r\n");
+                for (int i=0; i<headers.size(); i++) headers.get(i).appendTo(sb);
+                if (has_eoh) sb.append("\r\n").append(getBodyString());
+                message=sb.toString();
+            }
+        }
+        return message;
+    }
+
+    /** Writes the message into a buffer, encoded as UTF-8, without building its String representation.
+      * A received message that has not been modified is simply copied.
+      * @return false if the buffer is too small (in this case the buffer position is not changed) */
+    public boolean writeTo(ByteBuffer buffer)
+    {  int pos=buffer.position();
+        try
+        {  if (data!=null) buffer.put(data);
+            else if (message!=null) SipByteParser.encode(message,0,message.length(),buffer);
+            else
+            {  writeHeadTo(buffer);
+                if (has_eoh)
+                {  if (body_data!=null) buffer.put(body_data,body_offset,body_end-body_offset);
+                    else if (body_str!=null) SipByteParser.encode(body_str,0,body_str.length(),buffer);
+                }
+            }
+            return true;
+        }
+        catch (java.nio.BufferOverflowException e)
+        {  buffer.position(pos);
+            return false;
+        }
+    }
+
+    /** Writes the message head into a buffer, encoded as UTF-8: the first line, the header lines, and the empty line
+      * (if present). The body can be sent separately (see getBodyBuffer()) through a gathering write.
+      * @exception java.nio.BufferOverflowException if the buffer is too small */
+    public void writeHeadTo(ByteBuffer buffer)
+    {  index();
+        if (first_line!=null)
+        {  SipByteParser.encode(first_line,0,first_line.length(),buffer);
+            buffer.put((byte)'\r').put((byte)'\n');
+        }
+        for (int i=0; i<headers.size(); i++) headers.get(i).writeTo(buffer);
+        if (has_eoh) buffer.put((byte)'\r').put((byte)'\n');
+    }
+
+    /** Gets the message body encoded as UTF-8, or null if the message has no body.
+      * The body of a received message is wrapped without being copied. */
+    public ByteBuffer getBodyBuffer()
+    {  index();
+        if (!has_eoh) return null;
+        if (body_data!=null) return (body_end>body_offset)? ByteBuffer.wrap(body_data,body_offset,body_end-body_offset) : null;
+        if (body_str==null || body_str.length()==0) return null;
+        ByteBuffer buffer=ByteBuffer.allocate(body_str.length()*3);
+        SipByteParser.encode(body_str,0,body_str.length(),buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Indexes the message, if not already done.
+      * Only the boundaries of the first line and of each header line are located;
+      * header names and values are extracted only when needed. */
+    private void index()
+    {  if (headers!=null) return;
+        // else
+        first_line=null;
+        has_eoh=false;
+        body_str=null;
+        body_data=null;
+        if (data!=null) indexBytes(); else indexString();
+    }
+
+    /** Indexes the message string. */
+    private void indexString()
+    {  String str=message;
+        int len=str.length();
+        ArrayList<HeaderField> hlist=new ArrayList<HeaderField>();
+        int i=0;
+        int eol=HeaderField.indexOfEOL(str,0);
+        if (eol>0)
+        {  String line=str.substring(0,eol);
+            if (HeaderField.isStartLine(line))
+            {  first_line=line;
+                i=HeaderField.skipEOL(str,eol);
+            }
+        }
+        while (i<len)
+        {  char c=str.charAt(i);
+            if (c=='\r' || c=='\n')
+            {  has_eoh=true;
+                i=HeaderField.skipEOL(str,i);
+                break;
+            }
+            int end=HeaderField.indexOfEOH(str,i);
+            hlist.add(new HeaderField(str,i,end));
+            i=HeaderField.skipEOL(str,end);
+        }
+        if (has_eoh) body_str=str.substring(i);
+        headers=hlist;
+    }
+
+    /** Indexes the message bytes. */
+    private void indexBytes()
+    {  byte[] buf=data;
+        int len=buf.length;
+        ArrayList<HeaderField> hlist=new ArrayList<HeaderField>();
+        int i=0;
+        int eol=SipByteParser.indexOfEOL(buf,0,len);
+        if (eol>0)
+        {  String line=SipByteParser.decode(buf,0,eol);
+            if (HeaderField.isStartLine(line))
+            {  first_line=line;
+                i=SipByteParser.skipEOL(buf,eol,len);
+            }
+        }
+        while (i<len)
+        {  byte b=buf[i];
+            if (b=='\r' || b=='\n')
+            {  has_eoh=true;
+                i=SipByteParser.skipEOL(buf,i,len);
+                break;
+            }
+            int end=SipByteParser.indexOfEOH(buf,i,len);
+            hlist.add(new HeaderField(buf,i,end));
+            i=SipByteParser.skipEOL(buf,end,len);
+        }
+        if (has_eoh)
+        {  body_data=buf;
+            body_offset=i;
+            body_end=len;
+        }
+        headers=hlist;
+    }
+
+    /** Indexes the message (if needed) and marks the message string as outdated.
+      * It must be called before any change of the first line, the headers, or the body. */
+    private void modify()
+    {  index();
+        message=null;
+        data=null;
+        clearIds();
+    }
+
+    /** Clears the cached identifiers. */
+    private void clearIds()
+    {  transaction_client_id=null;
+        transaction_server_id=null;
+        dialog_id=null;
+        method_id=null;
+    }
+
+    /** Whether <i>line</i> is a Status-line. */
+    static boolean isStatusLine(String line)
+    {  // Status-Line = "SIP/2.0" ' ' Status-Code ' 'Reason-Phrase" CRLF
+        return line.regionMatches(true,0,SIP_VERSION,0,SIP_VERSION.length());
+    }
+
+    /** Whether <i>line</i> is a Request-line. */
+    static boolean isRequestLine(String line)
+    {  // Req-Line = Method ' ' SIP-URL ' ' "SIP/2.0" CRLF
+        if (isStatusLine(line)) return false;
+        String proto_version=(new SipParser(line)).skipString().skipString().getString();
+        if (proto_version==null || proto_version.length()<SIP_VERSION.length()) return false;
+        return proto_version.regionMatches(true,0,SIP_VERSION,0,SIP_VERSION.length());
     }
 
     /** Gets remote ip address. */
@@ -151,7 +376,8 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
 
     /** Gets message length. */
     public int getLength()
-    {  return message.length();
+    {  if (message==null && data!=null) return data.length;
+        else return toString().length();
     }
 
     /** Sets remote ip address. */
@@ -176,42 +402,120 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
 
     /** Gets the inique DialogId for an INCOMING message. */
     public DialogId getDialogId()
-    {  String call_id=getCallIdHeader().getCallId();
-        String local_tag, remote_tag;
-        if (isRequest()) {  local_tag=getToHeader().getTag(); remote_tag=getFromHeader().getTag(); }
-        else {  local_tag=getFromHeader().getTag(); remote_tag=getToHeader().getTag(); }
-        return new DialogId(call_id,local_tag,remote_tag);
+    {  if (dialog_id==null) dialog_id=createDialogId();
+        return dialog_id;
+    }
+
+    /** Creates the DialogId, reading the header values straight from the header index. */
+    private DialogId createDialogId()
+    {  String call_id=getHeaderValue(SipHeaders.Call_ID);
+        String from_tag=getTag(getHeaderValue(SipHeaders.From));
+        String to_tag=getTag(getHeaderValue(SipHeaders.To));
+        if (call_id==null) throw new NullPointerException("no Call-ID");
+        if (isRequest()) return new DialogId(call_id,to_tag,from_tag);
+        else return new DialogId(call_id,from_tag,to_tag);
     }
 
 
     /** Gets the unique client TransactionId. */
     public TransactionId getTransactionClientId()
-    {  return getTransactionId(true);
+    {  if (transaction_client_id==null) transaction_client_id=getTransactionId(true);
+        return transaction_client_id;
     }
 
     /** Gets the unique server TransactionId. */
     public TransactionId getTransactionServerId()
-    {  return getTransactionId(false);
+    {  if (transaction_server_id==null) transaction_server_id=getTransactionId(false);
+        return transaction_server_id;
     }
 
-    /** Gets the unique TransactionId. */
+    /** Gets the unique TransactionId, reading the header values straight from the header index
+      * (no Header object is created). */
     private TransactionId getTransactionId(boolean is_client)
-    {  String call_id=getCallIdHeader().getCallId();
-        ViaHeader top_via=getViaHeader();
-        String branch=null;
-        if (top_via.hasBranch()) branch=top_via.getBranch();
-        String sent_by=top_via.getSentBy();
-        CSeqHeader cseqh=getCSeqHeader();
-        long seqn=cseqh.getSequenceNumber();
-        String method=cseqh.getMethod();
+    {  String call_id=getHeaderValue(SipHeaders.Call_ID);
+        String via=getHeaderValue(SipHeaders.Via);
+        String cseq=getHeaderValue(SipHeaders.CSeq);
+        if (call_id==null || via==null || cseq==null) throw new NullPointerException("no Call-ID, Via, or CSeq");
+        // CSeq: sequence number and method
+        int len=cseq.length();
+        int i=0;
+        long seqn=0;
+        for (; i<len && cseq.charAt(i)>='0' && cseq.charAt(i)<='9'; i++) seqn=seqn*10+(cseq.charAt(i)-'0');
+        while (i<len && HeaderField.isWSP(cseq.charAt(i))) i++;
+        int method_begin=i;
+        while (i<len && !HeaderField.isWSP(cseq.charAt(i))) i++;
+        String method=cseq.substring(method_begin,i);
+        // top Via: "SIP/2.0/transport sent-by;params", up to the first comma
+        len=via.length();
+        i=via.indexOf('/');
+        if (i>=0) i=via.indexOf('/',i+1);
+        if (i<0) throw new NullPointerException("malformed Via");
+        while (i<len && !HeaderField.isWSP(via.charAt(i))) i++;
+        while (i<len && HeaderField.isWSP(via.charAt(i))) i++;
+        int sent_by_begin=i;
+        while (i<len && ";, \t".indexOf(via.charAt(i))<0) i++;
+        String sent_by=(i>sent_by_begin)? via.substring(sent_by_begin,i) : null;
+        String branch=getParameter(via,i,"branch");
         return new TransactionId(call_id,seqn,method,is_client,sent_by,branch);
     }
 
+    /** Gets the value of the first header named <i>hname</i>, straight from the header index (null if not present). */
+    private String getHeaderValue(String hname)
+    {  int i=indexOfHeader(hname,true);
+        return (i>=0)? headers.get(i).getValue() : null;
+    }
+
+    /** Gets the 'tag' parameter of a From or To header value (null if not present). */
+    private static String getTag(String value)
+    {  if (value==null) return null;
+        // else
+        int i=0;
+        int len=value.length();
+        int laquot=-1;
+        // look for the name-addr, skipping the quoted display name
+        for (boolean quoted=false; i<len; i++)
+        {  char c=value.charAt(i);
+            if (c=='\"') quoted=!quoted;
+            else if (!quoted && (c=='<' || c==';')) break;
+        }
+        if (i<len && value.charAt(i)=='<') laquot=value.indexOf('>',i);
+        if (laquot>=0) i=laquot+1;
+        return getParameter(value,i,"tag");
+    }
+
+    /** Gets the value of parameter <i>pname</i> (case-insensitive) within the ';'-separated parameters of <i>value</i>
+      * that follow index <i>begin</i>, up to the first comma (null if not present). */
+    private static String getParameter(String value, int begin, String pname)
+    {  int len=value.length();
+        int i=begin;
+        while (i<len && value.charAt(i)!=';' && value.charAt(i)!=',') i++;
+        while (i<len && value.charAt(i)==';')
+        {  int name_begin=i+1;
+            while (name_begin<len && HeaderField.isWSP(value.charAt(name_begin))) name_begin++;
+            int end=name_begin;
+            boolean quoted=false;
+            while (end<len)
+            {  char c=value.charAt(end);
+                if (c=='\"') quoted=!quoted;
+                else if (!quoted && (c==';' || c==',')) break;
+                end++;
+            }
+            int eq=value.indexOf('=',name_begin);
+            int name_end=(eq>=0 && eq<end)? eq : end;
+            while (name_end>name_begin && HeaderField.isWSP(value.charAt(name_end-1))) name_end--;
+            if (name_end-name_begin==pname.length() && value.regionMatches(true,name_begin,pname,0,name_end-name_begin))
+            {  return (eq>=0 && eq<end)? value.substring(eq+1,end).trim() : "";
+            }
+            i=end;
+        }
+        return null;
+    }
+
 
     /** Gets the MethodId. */
     public MethodId getMethodId()
-    {  String method=getCSeqHeader().getMethod();
-        return new MethodId(method);
+    {  if (method_id==null) method_id=new MethodId(getCSeqHeader().getMethod());
+        return method_id;
     }
 
 
@@ -219,20 +523,15 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
 
     /** Whether Message is a Request. */
     public boolean isRequest() throws NullPointerException
-    {  // Req-Line = Method ' ' SIP-URL ' ' "SIP/2.0" CRLF
-        if (message==null || isResponse()) return false;
-        String firstline=(new SipParser(message)).getLine();
-        String proto_version=(new SipParser(firstline)).skipString().skipString().getString();
-        if (proto_version==null || proto_version.length()<SIP_VERSION.length()) return false;
-        proto_version=proto_version.substring(0,SIP_VERSION.length());
-        if (proto_version.equalsIgnoreCase(SIP_VERSION)) return true;
-        return false;
+    {  if (message==null && data==null && headers==null) return false;
+        index();
+        return first_line!=null && !isStatusLine(first_line);
     }
 
     /** Whether Message is a <i>method</i> request. */
     public boolean isRequest(String method)
-    {  //if (message==null) return false;
-        if (message.startsWith(method)) return true; else return false;
+    {  index();
+        return first_line!=null && first_line.startsWith(method);
     }
 
     /** Whether Message is a Method that creates a dialog. */
@@ -289,14 +588,13 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     /** Gets the RequestLine of the Message (returns null if called for no request message). */
     public RequestLine getRequestLine()
     {  if (!isRequest()) return null;
-        SipParser par=new SipParser(message);
+        SipParser par=new SipParser(first_line);
         return par.getRequestLine();
     }
 
     /** Sets the RequestLine of the Message. */
     public void setRequestLine(RequestLine rl)
-    {  if (hasRequestLine()) removeRequestLine();
-        message=rl.toString()+message;
+    {  setFirstLine(rl.toString());
     }
 
     /** Removes the RequestLine of the Message. */
@@ -310,13 +608,9 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
 
     /** Whether Message is a Response. */
     public boolean isResponse() throws NullPointerException
-    {  // Status-Line = "SIP/2.0" ' ' Status-Code ' 'Reason-Phrase" CRLF
-        //if (message==null) return false;
-        if (message==null || message.length()<SIP_VERSION.length()) return false;
-        String proto_version=message.substring(0,SIP_VERSION.length());
-        if (proto_version.equalsIgnoreCase(SIP_VERSION)) return true;
-
-        return false;
+    {  if (message==null && data==null && headers==null) return false;
+        index();
+        return first_line!=null && isStatusLine(first_line);
     }
 
     /** Whether Message has Status-line. */
@@ -327,14 +621,13 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     /** Gets the StautsLine of the Message (returns null if called for no response message). */
     public StatusLine getStatusLine()
     {  if (!isResponse()) return null;
-        SipParser par=new SipParser(message);
+        SipParser par=new SipParser(first_line);
         return par.getStatusLine();
     }
 
     /** Sets the StatusLine of the Message. */
     public void setStatusLine(StatusLine sl)
-    {  if (hasStatusLine()) removeStatusLine();
-        message=sl.toString()+message;
+    {  setFirstLine(sl.toString());
     }
 
     /** Removes the StatusLine of the Message. */
@@ -359,35 +652,101 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     }
 
     /** Sets Request/Status Line of the Message. */
-   /*private void setFirstLine(String value)
-   {  message=value+" \r\n"+message;
-   }. */
+    private void setFirstLine(String value)
+    {  modify();
+        first_line=value.substring(0,HeaderField.indexOfEOL(value,0));
+    }
 
     /** Removes Request\Status Line of the Message. */
     protected void removeFirstLine()
-    {  message=message.substring((new SipParser(message)).indexOfNextHeader());
+    {  modify();
+        first_line=null;
+    }
+
+    /** Gets the index of the first (or last) header named <i>hname</i> (returns -1 if no Header is found). */
+    private int indexOfHeader(String hname, boolean first)
+    {  index();
+        int n=headers.size();
+        if (first)
+        {  for (int i=0; i<n; i++) if (headers.get(i).hasName(hname)) return i;
+        }
+        else
+        {  for (int i=n-1; i>=0; i--) if (headers.get(i).hasName(hname)) return i;
+        }
+        return -1;
+    }
+
+    /** Gets the index where headers are added at the top/bottom.
+      * The bottom is considered before the Content-Length and Content-Type headers. */
+    private int indexOfInsertion(boolean top)
+    {  index();
+        if (top) return 0;
+        // else
+        for (int i=0; i<headers.size(); i++)
+        {  HeaderField hf=headers.get(i);
+            if (hf.hasName(SipHeaders.Content_Length) || hf.hasName(SipHeaders.Content_Type)) return i;
+        }
+        return headers.size();
+    }
+
+    /** Inserts the HeaderFields <i>hlist</i> at position <i>i</i> of the header index. */
+    private void insertHeaderFields(int i, ArrayList<HeaderField> hlist)
+    {  modify();
+        headers.addAll(i,hlist);
+    }
+
+    /** Gets the HeaderField(s) of Header <i>hd</i>. */
+    private static ArrayList<HeaderField> toHeaderFields(Header hd)
+    {  ArrayList<HeaderField> hlist=new ArrayList<HeaderField>(1);
+        hlist.add(new HeaderField(hd));
+        return hlist;
+    }
+
+    /** Gets the HeaderField(s) of a Vector of Headers. */
+    private static ArrayList<HeaderField> toHeaderFields(Vector hdv)
+    {  ArrayList<HeaderField> hlist=new ArrayList<HeaderField>(hdv.size());
+        for (int i=0; i<hdv.size(); i++) hlist.add(new HeaderField((Header)hdv.elementAt(i)));
+        return hlist;
+    }
+
+    /** Gets the HeaderField(s) of MultipleHeader <i>mheader</i>, in compact or extended form. */
+    private static ArrayList<HeaderField> toHeaderFields(MultipleHeader mheader)
+    {  if (mheader.isCommaSeparated()) return toHeaderFields(mheader.toHeader());
+        else return toHeaderFields(mheader.getHeaders());
+    }
+
+    /** Gets the HeaderField(s) contained in a String of one or more header lines. */
+    private static ArrayList<HeaderField> toHeaderFields(String str)
+    {  ArrayList<HeaderField> hlist=new ArrayList<HeaderField>();
+        int len=str.length();
+        int i=0;
+        while (i<len)
+        {  int end=HeaderField.indexOfEOH(str,i);
+            if (end>i) hlist.add(new HeaderField(str,i,end));
+            i=HeaderField.skipEOL(str,end);
+        }
+        return hlist;
     }
 
     /** Whether Message has any headers of specified rtpmap. */
     public boolean hasHeader(String name)
-    {  Header hd=getHeader(name);
-        if (hd==null) return false;
-        else return true;
+    {  return indexOfHeader(name,true)>=0;
     }
 
     /** Gets the first Header of specified rtpmap (returns null if no Header is found). */
     public Header getHeader(String hname)
-    {  SipParser par=new SipParser(message);
-        return par.getHeader(hname);
+    {  int i=indexOfHeader(hname,true);
+        if (i<0) return null;
+        else return headers.get(i).toHeader(hname);
     }
 
     /** Gets a Vector of all Headers of specified rtpmap (returns empty Vector if no Header is found). */
     public Vector getHeaders(String hname)
-    {  Vector v=new Vector();
-        SipParser par=new SipParser(message);
-        Header h;
-        while ((h=par.getHeader(hname))!=null)
-        {  v.addElement(h);
+    {  index();
+        Vector v=new Vector();
+        for (int i=0; i<headers.size(); i++)
+        {  HeaderField hf=headers.get(i);
+            if (hf.hasName(hname)) v.addElement(hf.toHeader(hname));
         }
         return v;
     }
@@ -395,104 +754,74 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     /** Adds Header at the top/bottom.
      * The bottom is considered before the Content-Length and Content-Type headers. */
     public void addHeader(Header header, boolean top)
-    {  addHeaders(header.toString(),top);
+    {  insertHeaderFields(indexOfInsertion(top),toHeaderFields(header));
     }
 
     /** Adds a Vector of Headers at the top/bottom. */
     public void addHeaders(Vector headers, boolean top)
-    {  String str="";
-        for (int i=0; i<headers.size(); i++) str+=((Header)headers.elementAt(i)).toString();
-        addHeaders(str,top);
+    {  insertHeaderFields(indexOfInsertion(top),toHeaderFields(headers));
     }
 
     /** Adds MultipleHeader(s) <i>mheader</i> at the top/bottom. */
     public void addHeaders(MultipleHeader mheader, boolean top)
-    {  addHeaders(mheader.toString(),top);
+    {  insertHeaderFields(indexOfInsertion(top),toHeaderFields(mheader));
     }
 
     /** Adds a one or more Headers at the top/bottom.
      * The bottom is considered before the Content-Length and Content-Type headers. */
     protected void addHeaders(String str, boolean top)
-    {  int i,aux;
-        if (top)
-        {  if (this.hasRequestLine() || this.hasStatusLine())
-        {  SipParser par=new SipParser(message);
-            par.goToNextHeader();
-            i=par.getPos();
-        }
-        else i=0;
-        }
-        else
-        {  SipParser par=new SipParser(message);
-            // index the end of headers
-            i=par.goToEndOfLastHeader().goToNextLine().getPos();
-            par=new SipParser(message);
-            // if Content_Length is present, jump before
-            aux=par.indexOfHeader(SipHeaders.Content_Length);
-            if (aux<i) i=aux;
-            // if Content_Type is present, jump before
-            aux=par.indexOfHeader(SipHeaders.Content_Type);
-            if (aux<i) i=aux;
-        }
-        String head=message.substring(0,i);
-        String tail=message.substring(i);
-        String new_message=head.concat(str);
-        new_message=new_message.concat(tail);
-        message=new_message;
-    }
-
-    /** Adds Headers on position <i>index</i> within the Message. */
-    protected void addHeaders(String str, int index)
-    {  if (index>message.length()) index=message.length();
-        message=message.substring(0,index)+str+message.substring(index);
+    {  insertHeaderFields(indexOfInsertion(top),toHeaderFields(str));
     }
 
     /** Adds Header before the first header <i>refer_header</i>
      * . <p>If there is no header of such type, it is added at top. */
     public void addHeaderBefore(Header new_header, String refer_header)
-    {  addHeadersBefore(new_header.toString(),refer_header);
+    {  addHeaderFieldsBefore(toHeaderFields(new_header),refer_header);
     }
 
     /** Adds MultipleHeader(s) before the first header <i>refer_header</i>
      * . <p>If there is no header of such type, they are added at top. */
     public void addHeadersBefore(MultipleHeader mheader, String refer_header)
-    {  addHeadersBefore(mheader.toString(),refer_header);
+    {  addHeaderFieldsBefore(toHeaderFields(mheader),refer_header);
     }
 
     /** Adds Headers before the first header <i>refer_header</i>
      * . <p>If there is no header of such type, they are added at top. */
     protected void addHeadersBefore(String str, String refer_header)
-    {  if (!hasHeader(refer_header)) addHeaders(str,true);
-    else
-    {  SipParser par=new SipParser(message);
-        par.goTo(refer_header);
-        int here=par.getPos();
-        message=message.substring(0,here)+str+message.substring(here);
+    {  addHeaderFieldsBefore(toHeaderFields(str),refer_header);
     }
+
+    /** Adds HeaderFields before the first header <i>refer_header</i>, or at top. */
+    private void addHeaderFieldsBefore(ArrayList<HeaderField> hlist, String refer_header)
+    {  int i=indexOfHeader(refer_header,true);
+        if (i<0) i=indexOfInsertion(true);
+        insertHeaderFields(i,hlist);
     }
 
     /** Adds Header after the first header <i>refer_header</i>
      * . <p>If there is no header of such type, it is added at bottom. */
     public void addHeaderAfter(Header new_header, String refer_header)
-    {  addHeadersAfter(new_header.toString(),refer_header);
+    {  addHeaderFieldsAfter(toHeaderFields(new_header),refer_header);
     }
 
     /** Adds MultipleHeader(s) after the first header <i>refer_header</i>
      * . <p>If there is no header of such type, they are added at bottom. */
     public void addHeadersAfter(MultipleHeader mheader, String refer_header)
-    {  addHeadersAfter(mheader.toString(),refer_header);
+    {  addHeaderFieldsAfter(toHeaderFields(mheader),refer_header);
     }
 
     /** Adds Headers after the first header <i>refer_header</i>
      * . <p>If there is no header of such type, they are added at bottom. */
     protected void addHeadersAfter(String str, String refer_header)
-    {  if (!hasHeader(refer_header)) addHeaders(str,false);
-    else
-    {  SipParser par=new SipParser(message);
-        par.goTo(refer_header);
-        int here=par.indexOfNextHeader();
-        message=message.substring(0,here)+str+message.substring(here);
+    {  addHeaderFieldsAfter(toHeaderFields(str),refer_header);
     }
+
+    /** Adds HeaderFields after the first header <i>refer_header</i>, or at bottom. */
+    private void addHeaderFieldsAfter(ArrayList<HeaderField> hlist, String refer_header)
+    {  int i=indexOfHeader(refer_header,true);
+        if (i<0) i=indexOfInsertion(false);
+        else i++;
+        insertHeaderFields(i,hlist);
     }
 
     /** Removes first Header of specified rtpmap. */
@@ -502,72 +831,37 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
 
     /** Removes first (or last) Header of specified rtpmap. */
     public void removeHeader(String hname, boolean first)
-    {  String[] target={'\n'+hname, '\r'+hname};
-        SipParser par=new SipParser(message);
-        par.goTo(target);
-        if (!par.hasMore()) return;
-        if (!first)
-            while(true)
-            {  int next=par.indexOf(target);
-                if (next<0) break;
-                par.setPos(next);
-            }
-        par.skipChar();
-        String head=message.substring(0,par.getPos());
-        par.goToNextHeader();
-        String tail=message.substring(par.getPos());
-        message=head.concat(tail);
+    {  int i=indexOfHeader(hname,first);
+        if (i<0) return;
+        modify();
+        headers.remove(i);
     }
 
-    /** Sets the new Header (removing any previous headers of the same rtpmap). */
-   /*public void setHeader(Header hd) 
-   {  if (hasHeader(hd.getName())) removeAllHeaders(hd.getName());
-      addHeader(hd,false);               
-   }*/
-
     /** Sets the Header <i>hd</i> removing any previous headers of the same type. */
     public void setHeader(Header hd)
-    {  String hname=hd.getName();
-        if (hasHeader(hname))
-        {  int index=(new SipParser(message)).indexOfHeader(hname);
-            removeAllHeaders(hname);
-            addHeaders(hd.toString(),index);
-        }
-        else
-            addHeader(hd,false);
+    {  setHeaderFields(hd.getName(),toHeaderFields(hd));
     }
 
     /** Removes all Headers of specified rtpmap. */
     public void removeAllHeaders(String hname)
-    {  String[] target={'\n'+hname, '\r'+hname};
-        SipParser par=new SipParser(message);
-        par.goTo(target);
-        while (par.hasMore())
-        {  par.skipChar();
-            String head=message.substring(0,par.getPos());
-            String tail=message.substring(par.indexOfNextHeader());
-            message=head.concat(tail);
-            par=new SipParser(message,par.getPos()-1);
-            par.goTo(target);
-        }
+    {  if (indexOfHeader(hname,true)<0) return;
+        modify();
+        for (int i=headers.size()-1; i>=0; i--)
+            if (headers.get(i).hasName(hname)) headers.remove(i);
     }
 
-    /** Sets MultipleHeader <i>mheader</i>. */
-   /*public void setHeaders(MultipleHeader mheader) 
-   {  if (hasHeader(mheader.getName())) removeAllHeaders(mheader.getName());
-      addHeaders(mheader,false);            
-   }*/
-
     /** Sets MultipleHeader <i>mheader</i>. */
     public void setHeaders(MultipleHeader mheader)
-    {  String hname=mheader.getName();
-        if (hasHeader(hname))
-        {  int index=(new SipParser(message)).indexOfHeader(hname);
-            removeAllHeaders(hname);
-            addHeaders(mheader.toString(),index);
-        }
-        else
-            addHeaders(mheader,false);
+    {  setHeaderFields(mheader.getName(),toHeaderFields(mheader));
+    }
+
+    /** Replaces all Headers <i>hname</i> with HeaderFields <i>hlist</i>,
+      * placed where the first of them was found (or at bottom). */
+    private void setHeaderFields(String hname, ArrayList<HeaderField> hlist)
+    {  int i=indexOfHeader(hname,true);
+        if (i>=0) removeAllHeaders(hname);
+        else i=indexOfInsertion(false);
+        insertHeaderFields(i,hlist);
     }
 
 
@@ -1059,12 +1353,15 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
         if (body!=null && body.length()>0)
         {  setContentTypeHeader(new ContentTypeHeader(content_type));
             setContentLengthHeader(new ContentLengthHeader(body.length()));
-            message=message+"\r\n"+body;
+            body_str=body;
+            body_data=null;
         }
         else
         {  setContentLengthHeader(new ContentLengthHeader(0));
-            message=message+"\r\n";
+            body_str="";
+            body_data=null;
         }
+        has_eoh=true;
     }
     /** Sets sdp body. */
     public void setBody(String body)
@@ -1076,26 +1373,38 @@ public abstract class BaseMessage extends org.zoolu.tools.MonitoredObject
     public String getBody()
     {  //if (!hasBody()) return "";
         if (!hasBody()) return null;
-        int begin=(new SipParser(message)).goToBody().getPos();
+        if (body_data!=null)
+        {  // the Content-Length is in bytes
+            int len=body_end-body_offset;
+            if (hasContentLengthHeader()) len=Math.min(len,getContentLengthHeader().getContentLength());
+            return SipByteParser.decode(body_data,body_offset,len);
+        }
+        if (body_str==null) return "";
         int len;
         // the following 'if' is for robustness with non SIP-compliant UAs;
         // copliant UAs must insert Content-Length header when body is present..
         if (this.hasContentLengthHeader()) len=getContentLengthHeader().getContentLength();
         else
         {  //printWarning("No Content-Length header found for the Body",3);
-            len=message.length()-begin;
+            len=body_str.length();
         }
-        int end=begin+len;
-        if (end>message.length())
+        if (len>body_str.length())
         {  //printWarning("Found a Message Body shorter than Content-Length",3);
-            end=message.length();
+            len=body_str.length();
         }
-        return message.substring(begin,end);
+        return body_str.substring(0,len);
+    }
+    /** Gets everything that follows the empty line. */
+    private String getBodyString()
+    {  if (body_str==null && body_data!=null) body_str=SipByteParser.decode(body_data,body_offset,body_end-body_offset);
+        return body_str;
     }
     /** Removes the message body (if it exists) and the final empty line. */
     public void removeBody()
-    {  int pos=(new SipParser(message)).goToEndOfLastHeader().goToNextLine().getPos();
-        message=message.substring(0,pos);
+    {  modify();
+        has_eoh=false;
+        body_str=null;
+        body_data=null;
         removeContentLengthHeader();
         removeContentTypeHeader();
     }
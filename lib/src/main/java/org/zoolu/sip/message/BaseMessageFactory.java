@@ -27,6 +27,7 @@ package org.zoolu.sip.message;
 import org.zoolu.sip.address.*;
 import org.zoolu.sip.header.*;
 import org.zoolu.sip.dialog.Dialog;
+import org.zoolu.sip.provider.SipConfig;
 import org.zoolu.sip.provider.SipStack;
 import org.zoolu.sip.provider.SipProvider;
 import org.zoolu.sip.message.Message;
@@ -68,6 +69,20 @@ public abstract class BaseMessageFactory
      * @param branch      branch value (if null, a random value is picked)
      * @param body        body (if null, no body is added) */
     public static Message createRequest(String method, SipURL request_uri, NameAddress to, NameAddress from, NameAddress contact, String proto, String via_addr, int host_port, boolean rport, String call_id, long cseq, String local_tag, String remote_tag, String branch, String body)
+    {  return createRequest(method,request_uri,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,remote_tag,branch,body,70,SipStack.default_expires,SipStack.ua_info);
+    }
+
+
+    /** Creates a SIP request message, with the Max-Forwards, Expires, and User-Agent values of the configuration of a SipProvider.
+     * @see #createRequest(String,SipURL,NameAddress,NameAddress,NameAddress,String,String,int,boolean,String,long,String,String,String,String) */
+    private static Message createRequest(SipProvider sip_provider, String method, SipURL request_uri, NameAddress to, NameAddress from, NameAddress contact, String proto, String via_addr, int host_port, boolean rport, String call_id, long cseq, String local_tag, String remote_tag, String branch, String body)
+    {  SipConfig config=sip_provider.getConfig();
+        return createRequest(method,request_uri,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,remote_tag,branch,body,config.max_forwards,config.default_expires,config.ua_info);
+    }
+
+
+    /** Creates a SIP request message with given Max-Forwards, Expires, and User-Agent (if not null) values. */
+    private static Message createRequest(String method, SipURL request_uri, NameAddress to, NameAddress from, NameAddress contact, String proto, String via_addr, int host_port, boolean rport, String call_id, long cseq, String local_tag, String remote_tag, String branch, String body, int max_forwards, int expires, String ua_info)
     {  Message req=new Message();
         //mandatory headers first (To, From, Via, Max-Forwards, Call-ID, CSeq):
         req.setRequestLine(new RequestLine(method,request_uri));
@@ -76,7 +91,7 @@ public abstract class BaseMessageFactory
         if (branch==null) branch=SipProvider.pickBranch();
         via.setBranch(branch);
         req.addViaHeader(via);
-        req.setMaxForwardsHeader(new MaxForwardsHeader(70));
+        req.setMaxForwardsHeader(new MaxForwardsHeader(max_forwards));
         //if (remote_tag==null) req.setToHeader(new ToHeader(to)); else req.setToHeader(new ToHeader(to,remote_tag));
         req.setToHeader(new ToHeader(to,remote_tag));
         req.setFromHeader(new FromHeader(from,local_tag));
@@ -84,9 +99,9 @@ public abstract class BaseMessageFactory
         req.setCSeqHeader(new CSeqHeader(cseq,method));
         //optional headers:
         if (contact!=null) req.addContactHeader(new ContactHeader(contact));
-        req.setExpiresHeader(new ExpiresHeader(String.valueOf(SipStack.default_expires)));
+        req.setExpiresHeader(new ExpiresHeader(String.valueOf(expires)));
         // add User-Agent header field
-        if (SipStack.ua_info!=null) req.setUserAgentHeader(new UserAgentHeader(SipStack.ua_info));
+        if (ua_info!=null) req.setUserAgentHeader(new UserAgentHeader(ua_info));
         //if (body!=null) req.setBody(body); else req.setBody("");
         req.setBody(body);
         return req;
@@ -109,7 +124,7 @@ public abstract class BaseMessageFactory
         if (request_uri.isSecure()) proto=BaseMessage.PROTO_TLS;
         else if (request_uri.hasTransport()) proto=request_uri.getTransport();
         else proto=sip_provider.getDefaultTransport();
-        return createRequest(method,request_uri,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,remote_tag,branch,body);
+        return createRequest(sip_provider,method,request_uri,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,remote_tag,branch,body);
     }
 
 
@@ -185,7 +200,7 @@ public abstract class BaseMessageFactory
         String local_tag=dialog.getLocalTag();
         String remote_tag=dialog.getRemoteTag();
         //String branch=SipStack.pickBranch();
-        Message req=createRequest(method,request_uri,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,remote_tag,null,body);
+        Message req=createRequest(sip_provider,method,request_uri,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,remote_tag,null,body);
         Vector route=dialog.getRoute();
         if (route!=null && route.size()>0) req.addRoutes(new MultipleHeader(SipHeaders.Route,route));
         req.rfc2543RouteAdapt();
@@ -234,7 +249,7 @@ public abstract class BaseMessageFactory
         else proto=sip_provider.getDefaultTransport();
         String branch=method.getViaHeader().getBranch();
         NameAddress contact=null;
-        Message ack=createRequest(SipMethods.ACK,request_uri,to.getNameAddress(),from.getNameAddress(),contact,proto,via_addr,host_port,rport,method.getCallIdHeader().getCallId(),method.getCSeqHeader().getSequenceNumber(),from.getParameter("tag"),to.getParameter("tag"),branch,null);
+        Message ack=createRequest(sip_provider,SipMethods.ACK,request_uri,to.getNameAddress(),from.getNameAddress(),contact,proto,via_addr,host_port,rport,method.getCallIdHeader().getCallId(),method.getCSeqHeader().getSequenceNumber(),from.getParameter("tag"),to.getParameter("tag"),branch,null);
         ack.removeExpiresHeader();
         if (method.hasRouteHeader()) ack.setRoutes(method.getRoutes());
         return ack;
@@ -314,12 +329,12 @@ public abstract class BaseMessageFactory
         int cseq=SipProvider.pickInitialCSeq();
         String local_tag=SipProvider.pickTag();
         //String branch=SipStack.pickBranch();
-        Message req=createRequest(SipMethods.REGISTER,registrar,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,null,null,null);
+        Message req=createRequest(sip_provider,SipMethods.REGISTER,registrar,to,from,contact,proto,via_addr,host_port,rport,call_id,cseq,local_tag,null,null,null);
         // if no contact, deregister all
         if (contact==null)
         {  ContactHeader star=new ContactHeader(); // contact is *
             req.setContactHeader(star);
-            req.setExpiresHeader(new ExpiresHeader(String.valueOf(SipStack.default_expires)));
+            req.setExpiresHeader(new ExpiresHeader(String.valueOf(sip_provider.getConfig().default_expires)));
         }
         return req;
     }
@@ -341,6 +356,17 @@ public abstract class BaseMessageFactory
      * @param local_tag the local tag in the 'To' header
      * @param body the message body */
     public static Message createResponse(Message req, int code, String reason, String local_tag, NameAddress contact, String content_type, String body)
+    {  return createResponse(req,code,reason,local_tag,contact,content_type,body,SipStack.server_info);
+    }
+
+    /** Creates a SIP response message, with the Server value of the configuration of a SipProvider.
+     * @see #createResponse(Message, int, String, String, NameAddress, String, String) */
+    public static Message createResponse(SipProvider sip_provider, Message req, int code, String reason, String local_tag, NameAddress contact, String content_type, String body)
+    {  return createResponse(req,code,reason,local_tag,contact,content_type,body,sip_provider.getConfig().server_info);
+    }
+
+    /** Creates a SIP response message with a given Server value (if not null). */
+    private static Message createResponse(Message req, int code, String reason, String local_tag, NameAddress contact, String content_type, String body, String server_info)
     {  Message resp=new Message();
         if (reason==null) reason=SipResponses.reasonOf(code);
         resp.setStatusLine(new StatusLine(code,reason));
@@ -354,7 +380,7 @@ public abstract class BaseMessageFactory
         resp.setCSeqHeader(req.getCSeqHeader());
         if (contact!=null) resp.setContactHeader(new ContactHeader(contact));
         // add Server header field
-        if (SipStack.server_info!=null) resp.setServerHeader(new ServerHeader(SipStack.server_info));
+        if (server_info!=null) resp.setServerHeader(new ServerHeader(server_info));
         //if (body!=null) resp.setBody(body); else resp.setBody("");
         if (content_type==null) resp.setBody(body);
         else resp.setBody(content_type,body);
@@ -365,11 +391,22 @@ public abstract class BaseMessageFactory
      * @see #createResponse(Message, int, String, NameAddress) */
     public static Message createResponse(Message req, int code, String reason, NameAddress contact)
     {  //String reason=SipResponses.reasonOf(code);
-        String localtag=null;
-        if (req.createsDialog() && !req.getToHeader().hasTag())
-        {  if (SipStack.early_dialog || (code>=200 && code<300)) localtag=SipProvider.pickTag(req);
+        return createResponse(req,code,reason,pickLocalTag(req,code,SipStack.early_dialog),contact,null,null,SipStack.server_info);
+    }
+
+    /** Creates a SIP response message, with the Server and early dialog values of the configuration of a SipProvider.
+     * @see #createResponse(Message, int, String, NameAddress) */
+    public static Message createResponse(SipProvider sip_provider, Message req, int code, String reason, NameAddress contact)
+    {  SipConfig config=sip_provider.getConfig();
+        return createResponse(req,code,reason,pickLocalTag(req,code,config.early_dialog),contact,null,null,config.server_info);
+    }
+
+    /** Picks the local tag of a response that creates a dialog (or returns null). */
+    private static String pickLocalTag(Message req, int code, boolean early_dialog)
+    {  if (req.createsDialog() && !req.getToHeader().hasTag())
+        {  if (early_dialog || (code>=200 && code<300)) return SipProvider.pickTag(req);
         }
-        return createResponse(req,code,reason,localtag,contact,null,null);
+        return null;
     }
 
 }  
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.message;
+
+
+import org.zoolu.sip.header.Header;
+import org.zoolu.sip.header.SipHeaders;
+import java.nio.ByteBuffer;
+
+
+/** HeaderField is an entry of the header index of a BaseMessage.
+  * <p> A HeaderField read from a raw message simply refers to the header line
+  * (offset and end within the message string or within the received bytes);
+  * the header name and value are extracted only when they are actually needed,
+  * and then cached.
+  * <br> A HeaderField created from a Header object directly holds its name and value.
+  * <p> HeaderFields are never changed once created: a message is modified
+  * by adding, removing or replacing HeaderFields within its index.
+  */
+class HeaderField
+{
+    /** Raw text the header line belongs to (null if not read from a message string) */
+    final String source;
+
+    /** Raw bytes the header line belongs to (null if not read from received bytes) */
+    final byte[] data;
+
+    /** Offset of the header line within the source */
+    final int offset;
+
+    /** End of the header line within the source (terminating CRLF excluded) */
+    final int end;
+
+    /** Length of the header name within the source (-1 if the line has no colon) */
+    final int name_len;
+
+    /** Offset of the first char after the colon */
+    final int value_offset;
+
+    /** Header name */
+    String name;
+
+    /** Header value (trimmed) */
+    String value;
+
+
+    /** Creates a new HeaderField for the header line <i>source</i>[<i>offset</i>,<i>end</i>). */
+    HeaderField(String source, int offset, int end)
+    {  this.source=source;
+        this.data=null;
+        this.offset=offset;
+        this.end=end;
+        int colon=source.indexOf(':',offset);
+        if (colon<0 || colon>=end)
+        {  name_len=-1;
+            value_offset=end;
+        }
+        else
+        {  int name_end=colon;
+            while (name_end>offset && isWSP(source.charAt(name_end-1))) name_end--;
+            name_len=name_end-offset;
+            value_offset=colon+1;
+        }
+    }
+
+    /** Creates a new HeaderField for the header line <i>data</i>[<i>offset</i>,<i>end</i>). */
+    HeaderField(byte[] data, int offset, int end)
+    {  this.source=null;
+        this.data=data;
+        this.offset=offset;
+        this.end=end;
+        int colon=offset;
+        while (colon<end && data[colon]!=':') colon++;
+        if (colon>=end)
+        {  name_len=-1;
+            value_offset=end;
+        }
+        else
+        {  int name_end=colon;
+            while (name_end>offset && (data[name_end-1]==' ' || data[name_end-1]=='\t')) name_end--;
+            name_len=name_end-offset;
+            value_offset=colon+1;
+        }
+    }
+
+    /** Creates a new HeaderField. */
+    HeaderField(String hname, String hvalue)
+    {  source=null;
+        data=null;
+        offset=0;
+        end=0;
+        name_len=hname.length();
+        value_offset=0;
+        name=hname;
+        value=hvalue;
+    }
+
+    /** Creates a new HeaderField. */
+    HeaderField(Header hd)
+    {  this(hd.getName(),hd.getValue());
+    }
+
+
+    /** Whether the header has name <i>hname</i> (case-insensitive), or its compact form. */
+    boolean hasName(String hname)
+    {  if (name_len!=hname.length())
+        {  if (name_len!=1) return false;
+            char c=compactName(hname);
+            if (c==0) return false;
+            char first=(source!=null)? source.charAt(offset) : (data!=null)? (char)data[offset] : name.charAt(0);
+            return (first|0x20)==c;
+        }
+        if (source!=null) return source.regionMatches(true,offset,hname,0,name_len);
+        if (data!=null) return SipByteParser.regionMatchesIgnoreCase(data,offset,end,hname);
+        return name.equalsIgnoreCase(hname);
+    }
+
+    /** Gets the header name (or null if the line is not a valid header). */
+    String getName()
+    {  if (name==null && name_len>=0)
+        {  if (source!=null) name=source.substring(offset,offset+name_len);
+            else name=SipByteParser.decode(data,offset,name_len);
+        }
+        return name;
+    }
+
+    /** Gets the header value. */
+    String getValue()
+    {  if (value==null)
+        {  if (source!=null) value=source.substring(value_offset,end).trim();
+            else value=SipByteParser.decode(data,value_offset,end-value_offset).trim();
+        }
+        return value;
+    }
+
+    /** Gets a Header named <i>hname</i> with the value of this field. */
+    Header toHeader(String hname)
+    {  return new Header(hname,getValue());
+    }
+
+    /** Appends the header line, including the terminating CRLF. */
+    void appendTo(StringBuffer sb)
+    {  if (source!=null) sb.append(source,offset,end);
+        else if (data!=null) sb.append(SipByteParser.decode(data,offset,end-offset));
+        else sb.append(name).append(": ").append(value);
+        sb.append("\r\n");
+    }
+
+    /** Writes the header line, including the terminating CRLF, into a buffer.
+      * @exception java.nio.BufferOverflowException if the buffer is too small */
+    void writeTo(ByteBuffer buffer)
+    {  if (data!=null) buffer.put(data,offset,end-offset);
+        else if (source!=null) SipByteParser.encode(source,offset,end,buffer);
+        else
+        {  SipByteParser.encode(name,0,name.length(),buffer);
+            buffer.put((byte)':').put((byte)' ');
+            SipByteParser.encode(value,0,value.length(),buffer);
+        }
+        buffer.put((byte)'\r').put((byte)'\n');
+    }
+
+
+    /** Full header names that have a compact form */
+    private static final String[] COMPACT_NAMES={ SipHeaders.Call_ID, SipHeaders.Contact, SipHeaders.Content_Length, SipHeaders.Content_Type,
+        SipHeaders.From, SipHeaders.Subject, SipHeaders.Supported, SipHeaders.To, SipHeaders.Via, SipHeaders.Event };
+
+    /** Compact forms of COMPACT_NAMES */
+    private static final String[] COMPACT_FORMS={ SipHeaders.Call_ID_short, SipHeaders.Contact_short, SipHeaders.Content_Length_short, SipHeaders.Content_Type_short,
+        SipHeaders.From_short, SipHeaders.Subject_short, SipHeaders.Supported_short, SipHeaders.To_short, SipHeaders.Via_short, SipHeaders.Event_short };
+
+    /** Gets the compact form of header name <i>hname</i> (a lowercase char), or 0 if it has none. */
+    static char compactName(String hname)
+    {  for (int i=0; i<COMPACT_NAMES.length; i++)
+        {  if (COMPACT_NAMES[i].equalsIgnoreCase(hname)) return COMPACT_FORMS[i].charAt(0);
+        }
+        return 0;
+    }
+
+
+    // ***************************** Tokenizer *****************************
+
+    /** Whether the char is a space or a tab. */
+    static boolean isWSP(char c)
+    {  return c==' ' || c=='\t';
+    }
+
+    /** Gets the index of the first CR or LF starting from <i>i</i> (or the string length). */
+    static int indexOfEOL(String str, int i)
+    {  int len=str.length();
+        while (i<len)
+        {  char c=str.charAt(i);
+            if (c=='\r' || c=='\n') return i;
+            i++;
+        }
+        return len;
+    }
+
+    /** Skips the line terminator (CR, LF or CRLF) found at <i>i</i>. */
+    static int skipEOL(String str, int i)
+    {  int len=str.length();
+        if (i<len)
+        {  if (str.charAt(i)=='\r' && i+1<len && str.charAt(i+1)=='\n') return i+2;
+            else return i+1;
+        }
+        return i;
+    }
+
+    /** Gets the end of the header starting at <i>i</i>, that is the index
+      * of the first line terminator not followed by a folded line. */
+    static int indexOfEOH(String str, int i)
+    {  int len=str.length();
+        while (true)
+        {  int end=indexOfEOL(str,i);
+            i=skipEOL(str,end);
+            if (i>=len || !isWSP(str.charAt(i))) return end;
+        }
+    }
+
+    /** Whether the <i>line</i> is a request-line or a status-line. */
+    static boolean isStartLine(String line)
+    {  return BaseMessage.isStatusLine(line) || BaseMessage.isRequestLine(line);
+    }
+}
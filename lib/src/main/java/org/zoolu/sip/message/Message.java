@@ -26,6 +26,7 @@ package org.zoolu.sip.message;
 
 import org.zoolu.net.UdpPacket;
 import org.zoolu.sip.header.*;
+import java.nio.ByteBuffer;
 
 
 /** Class Message extends class sip.message.BaseMessage adding some SIP extensions.
@@ -54,6 +55,11 @@ public class Message extends org.zoolu.sip.message.BaseMessage
    {  super(buff,offset,len);
    }
 
+   /** Creates a new Message */
+   public Message(ByteBuffer buffer)
+   {  super(buffer);
+   }
+
    /** Creates a new Message */
    public Message(UdpPacket packet)
    {  super(packet);
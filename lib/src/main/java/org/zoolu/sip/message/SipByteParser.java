@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.message;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+
+/** Class SipByteParser collects the methods used to parse SIP messages directly from byte arrays,
+  * without decoding them into Strings.
+  * <p> Header names are compared as ASCII, case-insensitively.
+  * Strings are created only for the parts of the message that are actually read.
+  * <br> Messages received through stream connections are framed by SipStreamFramer.
+  */
+public class SipByteParser
+{
+    /** UTF-8 charset, used for decoding non-ASCII text */
+    static final Charset UTF8=Charset.forName("UTF-8");
+
+
+    //*************************** Static methods ***************************
+
+    /** Gets the index of the first CR or LF found in [<i>i</i>,<i>end</i>) (or <i>end</i>). */
+    public static int indexOfEOL(byte[] data, int i, int end)
+    {  while (i<end)
+        {  byte b=data[i];
+            if (b=='\r' || b=='\n') return i;
+            i++;
+        }
+        return end;
+    }
+
+    /** Skips the line terminator (CR, LF or CRLF) found at <i>i</i>. */
+    public static int skipEOL(byte[] data, int i, int end)
+    {  if (i<end)
+        {  if (data[i]=='\r' && i+1<end && data[i+1]=='\n') return i+2;
+            else return i+1;
+        }
+        return i;
+    }
+
+    /** Gets the end of the header starting at <i>i</i>, that is the index
+      * of the first line terminator not followed by a folded line. */
+    public static int indexOfEOH(byte[] data, int i, int end)
+    {  while (true)
+        {  int eol=indexOfEOL(data,i,end);
+            i=skipEOL(data,eol,end);
+            if (i>=end || (data[i]!=' ' && data[i]!='\t')) return eol;
+        }
+    }
+
+    /** Whether the bytes at <i>i</i> match the ASCII string <i>str</i>, ignoring case. */
+    public static boolean regionMatchesIgnoreCase(byte[] data, int i, int end, String str)
+    {  int len=str.length();
+        if (end-i<len) return false;
+        for (int k=0; k<len; k++)
+        {  int b=data[i+k];
+            int c=str.charAt(k);
+            if (b!=c && toLowerCase(b)!=toLowerCase(c)) return false;
+        }
+        return true;
+    }
+
+    /** Gets the index of the value of header <i>hname</i> (just after the colon),
+      * if the header line [<i>i</i>,<i>eol</i>) is a <i>hname</i> header; otherwise returns -1. */
+    public static int indexOfValue(byte[] data, int i, int eol, String hname)
+    {  if (!regionMatchesIgnoreCase(data,i,eol,hname)) return -1;
+        i+=hname.length();
+        while (i<eol && (data[i]==' ' || data[i]=='\t')) i++;
+        if (i<eol && data[i]==':') return i+1;
+        else return -1;
+    }
+
+    /** Parses the (non-negative) decimal integer found in [<i>i</i>,<i>end</i>),
+      * skipping leading white spaces; it returns -1 if no digit is found. */
+    public static int parseInt(byte[] data, int i, int end)
+    {  while (i<end && (data[i]==' ' || data[i]=='\t')) i++;
+        if (i>=end || data[i]<'0' || data[i]>'9') return -1;
+        int n=0;
+        while (i<end && data[i]>='0' && data[i]<='9') n=n*10+(data[i++]-'0');
+        return n;
+    }
+
+    /** Gets the String of the <i>len</i> bytes starting from <i>offset</i>.
+      * Pure ASCII text is simply copied, other text is decoded as UTF-8. */
+    @SuppressWarnings("deprecation")
+    public static String decode(byte[] data, int offset, int len)
+    {  for (int i=offset; i<offset+len; i++)
+            if (data[i]<0) return new String(data,offset,len,UTF8);
+        return new String(data,0,offset,len);
+    }
+
+    /** Writes the chars of <i>str</i> in [<i>begin</i>,<i>end</i>) into the buffer, encoded as UTF-8
+      * (ASCII chars are simply copied).
+      * @exception java.nio.BufferOverflowException if the buffer is too small */
+    public static void encode(String str, int begin, int end, ByteBuffer buffer)
+    {  for (int i=begin; i<end; i++)
+        {  int c=str.charAt(i);
+            if (c<0x80) buffer.put((byte)c);
+            else
+            if (c<0x800)
+            {  buffer.put((byte)(0xc0|(c>>6)));
+                buffer.put((byte)(0x80|(c&0x3f)));
+            }
+            else
+            if (c<0xd800 || c>0xdfff)
+            {  buffer.put((byte)(0xe0|(c>>12)));
+                buffer.put((byte)(0x80|((c>>6)&0x3f)));
+                buffer.put((byte)(0x80|(c&0x3f)));
+            }
+            else
+            if (Character.isHighSurrogate((char)c) && i+1<end && Character.isLowSurrogate(str.charAt(i+1)))
+            {  c=Character.toCodePoint((char)c,str.charAt(++i));
+                buffer.put((byte)(0xf0|(c>>18)));
+                buffer.put((byte)(0x80|((c>>12)&0x3f)));
+                buffer.put((byte)(0x80|((c>>6)&0x3f)));
+                buffer.put((byte)(0x80|(c&0x3f)));
+            }
+            else buffer.put((byte)'?'); // unpaired surrogate
+        }
+    }
+
+    /** ASCII lower case. */
+    private static int toLowerCase(int c)
+    {  if (c>='A' && c<='Z') return c+('a'-'A');
+        else return c;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2009 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+
+import org.zoolu.tools.Log;
+import org.zoolu.net.*;
+import org.zoolu.sip.message.Message;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.io.IOException;
+
+
+
+/** ConnectedTransport is a generic Connection Oriented (CO) transport service for SIP.
+ * <p> Connections are served by a NioTcpProvider, that is by a small fixed set of I/O threads.
+ * <br> Active connections are kept in LRU order (the least recently used first),
+ * so that when the max number of connections is reached the idle connection
+ * to be closed is found in constant time. Only sending and receiving messages
+ * mark a connection as used; status checks (see peekConnection()) do not.
+ * <br> Outgoing connections are established asynchronously: messages sent to a destination
+ * whose connection is still being established are queued by the connection, in order.
+ * When a connection fails, the TransportListener is notified through onConnectionFailure().
+ */
+abstract class ConnectedTransport implements Transport, NioTcpProviderListener, TransportConnListener
+{
+
+    private static final String TAG = "Sip: ConnectedTransport";
+    /** Max number of (contemporary) open connections */
+    int nmax_connections=0;
+
+    /** Configuration (I/O threads, connection timeout, and max message size) */
+    final SipConfig config;
+
+    /** Table of active connections, as table:TransportConnId-->TransportConn, in LRU order */
+    LinkedHashMap<TransportConnId,TransportConn> connections=null;
+
+    /** Transport listener */
+    TransportListener listener;
+
+
+
+
+    /** Creates a new ConnectedTransport */
+    public ConnectedTransport(int local_port, int nmax_connections) throws IOException
+    {  this(local_port,nmax_connections,SipConfig.getDefault());
+    }
+
+
+    /** Creates a new ConnectedTransport */
+    public ConnectedTransport(int local_port, int nmax_connections, SipConfig config) throws IOException
+    {  this.nmax_connections=nmax_connections;
+        this.config=config;
+        connections=new LinkedHashMap<TransportConnId,TransportConn>();
+    }
+
+
+    /** Gets protocol type */
+    abstract public String getProtocol();
+
+
+    /** Creates a proper transport connection to the remote end-point. */
+    abstract protected TransportConn createTransportConn(IpAddress dest_ipaddr, int dest_port)  throws IOException;
+
+
+    /** Sets transport listener */
+    public void setListener(TransportListener listener)
+    {  this.listener=listener;
+    }
+
+
+    /** Gets the number of active connections. */
+    public synchronized int getConnectionCount()
+    {  return (connections!=null)? connections.size() : 0;
+    }
+
+
+    /** Sends a Message through the connection. Parameters <i>dest_addr</i>/<i>dest_addr</i>
+     * are not used, and the message is addressed to the connection remote peer.
+     * <p>Better use sendMessage(Message msg) method instead.
+     * @exception IOException if the connection cannot be set up or the message cannot be sent through it */
+    public TransportConn sendMessage(Message msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException
+    {  TransportConnId conn_id=new TransportConnId(getProtocol(),dest_ipaddr,dest_port);
+        TransportConn conn;
+        // the connection is created and added atomically, so that all messages
+        // sent to the same destination are queued on the same connection
+        synchronized (this)
+        {  conn=getConnection(conn_id);
+            if (conn==null)
+            {  Log.v(TAG, () -> "no active connection found matching "+conn_id);
+                Log.v(TAG, () -> "connecting "+getProtocol()+" connection to "+dest_ipaddr+":"+dest_port);
+                try
+                {  conn=createTransportConn(dest_ipaddr,dest_port);
+                }
+                catch (IOException e)
+                {  Log.v(TAG, "connection setup FAILED");
+                    throw e;
+                }
+                addConnection(conn);
+            }
+            else
+            {  Log.v(TAG, () -> "active connection found matching "+conn_id);
+            }
+        }
+        final TransportConn sending_conn=conn;
+        Log.v(TAG, () -> "sending data through conn "+sending_conn);
+        sending_conn.sendMessage(msg);
+        return sending_conn;
+    }
+
+
+    /** Sends the message <i>msg</i> using the specified connection. */
+    public TransportConn sendMessage(Message msg, TransportConnId conn_id)
+    {  TransportConn conn=(conn_id!=null)? getConnection(conn_id) : null;
+        if (conn!=null)
+        {  // connection exists
+            Log.v(TAG, () -> "active connection found matching "+conn_id);
+            try
+            {  conn.sendMessage(msg);
+                return conn;
+            }
+            catch (Exception e)
+            {  Log.e(TAG, "", e);
+            }
+        }
+        //else
+        Log.v(TAG, () -> "no active connection found matching "+conn_id);
+        return null;
+    }
+
+
+    /** Stops running */
+    public void halt()
+    {  // close all connections
+        ArrayList<TransportConn> list=null;
+        synchronized (this)
+        {  if (connections!=null)
+            {  list=new ArrayList<TransportConn>(connections.values());
+                connections=null;
+            }
+        }
+        if (list!=null)
+        {  Log.v(TAG, "connections are going down");
+            for (int i=0; i<list.size(); i++) list.get(i).halt();
+        }
+    }
+
+
+    /** From NioTcpProviderListener. When a new incoming connection is established */
+    abstract public void onIncomingConnection(NioTcpProvider tcp_provider, NioTcpConnection conn);
+
+
+
+    /** From NioTcpProviderListener. When NioTcpProvider stops accepting connections. */
+    public void onServerTerminated(NioTcpProvider tcp_provider, Exception error)
+    {  Log.v(TAG, () -> "tcp server "+tcp_provider+" terminated");
+    }
+
+
+    /** From TransportConnListener. When a new SIP message is received. */
+    public void onReceivedMessage(TransportConn conn, Message msg)
+    {  // mark the connection as recently used
+        TransportConnId conn_id=msg.getTransportConnId();
+        if (conn_id!=null) getConnection(conn_id);
+        if (listener!=null) listener.onReceivedMessage(this,msg);
+    }
+
+
+    /** From TransportConnListener. When TransportConn terminates. */
+    public void onConnectionTerminated(TransportConn conn, Exception error)
+    {  TransportConnId conn_id=new TransportConnId(conn);
+        synchronized (this)
+        {  // remove the connection only if it has not been replaced yet
+            if (connections!=null && connections.get(conn_id)==conn) connections.remove(conn_id);
+        }
+        if (error!=null)
+        {  Log.e(TAG, "", error);
+            if (listener!=null) listener.onConnectionFailure(this,conn_id,error);
+        }
+    }
+
+
+    /** Whether there is an active connection (established, or being established) matching <i>conn_id</i>. */
+    public synchronized boolean hasConnection(TransportConnId conn_id)
+    {  return connections!=null && connections.containsKey(conn_id);
+    }
+
+
+    /** Gets an active connection, marking it as recently used (it is moved to the end of the LRU order). */
+    protected synchronized TransportConn getConnection(TransportConnId conn_id)
+    {  if (connections==null) return null;
+        // else
+        TransportConn conn=connections.remove(conn_id);
+        if (conn!=null) connections.put(conn_id,conn);
+        return conn;
+    }
+
+
+    /** Gets an active connection, without changing the LRU order. */
+    synchronized TransportConn peekConnection(TransportConnId conn_id)
+    {  return (connections!=null)? connections.get(conn_id) : null;
+    }
+
+
+    /** Adds a new Connection */
+    protected void addConnection(TransportConn conn)
+    {  TransportConnId conn_id=new TransportConnId(conn);
+        TransportConn old_conn=null;
+        synchronized (this)
+        {  if (connections==null) old_conn=conn;
+            else
+            {  old_conn=connections.remove(conn_id);
+                connections.put(conn_id,conn);
+                if (old_conn!=null)
+                {  // remove the previous connection
+                    Log.v(TAG, () -> "trying to add the already established connection "+conn_id);
+                    Log.v(TAG, () -> "connection "+conn_id+" will be replaced");
+                }
+                else
+                if (nmax_connections>0 && connections.size()>nmax_connections)
+                {  // remove the least recently used connection
+                    Log.v(TAG, "reached the maximum number of connection: removing the least recently used connection");
+                    Iterator<TransportConn> i=connections.values().iterator();
+                    old_conn=i.next();
+                    i.remove();
+                }
+            }
+            Log.v(TAG, () -> "active connections: "+((connections!=null)? connections.size() : 0));
+        }
+        if (old_conn!=null) old_conn.halt();
+    }
+
+
+    /** Removes a Connection */
+    protected void removeConnection(TransportConnId conn_id)
+    {  TransportConn conn;
+        synchronized (this)
+        {  conn=(connections!=null)? connections.remove(conn_id) : null;
+        }
+        if (conn!=null)
+        {  conn.halt();
+            Log.v(TAG, () -> "connection "+conn_id+" removed");
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+
+
+/** DialogId is used to address specific dialogs to the SipProvider.
+ */
+public class DialogId extends SipId
+{
+    /** Call-ID */
+    final String call_id;
+
+    /** Local tag */
+    final String local_tag;
+
+    /** Remote tag */
+    final String remote_tag;
+
+    /** Costructs a new DialogId based on call-id, local and remote tags. */
+    public DialogId(String call_id, String local_tag, String remote_tag)
+    {  this.call_id=call_id;
+        this.local_tag=local_tag;
+        this.remote_tag=remote_tag;
+        hash=(hash(call_id)*31+hash(local_tag))*31+hash(remote_tag);
+    }
+
+    /** Costructs a new DialogId. */
+    public DialogId(DialogId i)
+    {  super(i);
+        call_id=i.call_id;
+        local_tag=i.local_tag;
+        remote_tag=i.remote_tag;
+    }
+
+    /** Whether the SipId is composed of more components. */
+    boolean isComposite()
+    {  return true;
+    }
+
+    /** Whether the components are equal to those of <i>i</i>. */
+    boolean matches(SipId i)
+    {  if (!(i instanceof DialogId)) return false;
+        DialogId d=(DialogId)i;
+        return equals(call_id,d.call_id) && equals(local_tag,d.local_tag) && equals(remote_tag,d.remote_tag);
+    }
+
+    /** Gets a String value for the DialogId */
+    public String toString()
+    {  if (id==null) id=call_id+"-"+local_tag+"-"+remote_tag;
+        return id;
+    }
+}
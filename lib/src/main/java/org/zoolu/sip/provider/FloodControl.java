@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.sip.header.SipHeaders;
+import org.zoolu.tools.Random;
+import org.zoolu.tools.TokenBucketSketch;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** FloodControl rate-limits the datagrams received by a UDP transport, before they are parsed.
+  * <p> Each datagram takes a token from the bucket of its source IP address and, optionally,
+  * requests also take a token from the bucket of the user of their From URI.
+  * Buckets are kept in TokenBucketSketches, so that the memory used is fixed
+  * regardless of the number of sources.
+  * <p> Datagrams that do not begin like a SIP message (or a CRLF keep-alive) are dropped as malformed.
+  * <br> Only the bytes that are needed are read: the From header is located
+  * only if the datagram passed the source check.
+  * <p> Dropped datagrams are counted for each reason.
+  */
+public class FloodControl
+{
+    /** Dropped since the source address exceeded its rate */
+    public static final int DROP_SOURCE_RATE=0;
+    /** Dropped since the From user exceeded its rate */
+    public static final int DROP_USER_RATE=1;
+    /** Dropped since the datagram is not a SIP message */
+    public static final int DROP_MALFORMED=2;
+
+    /** Names of the drop reasons */
+    static final String[] DROP_REASONS={ "source_rate", "user_rate", "malformed" };
+
+    /** Number of rows of the sketches */
+    static final int DEPTH=4;
+
+    /** Number of buckets of each row of the sketches */
+    static final int WIDTH=1024;
+
+
+    /** Buckets of the source addresses */
+    TokenBucketSketch source_buckets;
+
+    /** Buckets of the From users (null if users are not limited) */
+    TokenBucketSketch user_buckets;
+
+    /** Hash seed */
+    final long seed=Random.nextLong();
+
+    /** Number of admitted datagrams */
+    final AtomicLong admitted=new AtomicLong();
+
+    /** Number of dropped datagrams, for each reason */
+    final AtomicLong[] dropped=new AtomicLong[DROP_REASONS.length];
+
+
+    /** Creates a new FloodControl.
+      * @param source_rate the max number of datagrams per second from each source address
+      * @param source_burst the max number of datagrams from a source address in a burst
+      * @param user_rate the max number of requests per second from each From user (0 for not limiting users)
+      * @param user_burst the max number of requests from a From user in a burst */
+    public FloodControl(int source_rate, int source_burst, int user_rate, int user_burst)
+    {  source_buckets=new TokenBucketSketch(DEPTH,WIDTH,source_rate,source_burst);
+        if (user_rate>0) user_buckets=new TokenBucketSketch(DEPTH,WIDTH,user_rate,user_burst);
+        for (int i=0; i<dropped.length; i++) dropped[i]=new AtomicLong();
+    }
+
+
+    /** Whether a received datagram has to be processed.
+      * @param source the source address
+      * @param buffer the datagram, between the buffer position and limit (that are not changed) */
+    public boolean admit(InetAddress source, ByteBuffer buffer)
+    {  int begin=buffer.position();
+        int end=buffer.limit();
+        // skip leading CRLFs (keep-alives)
+        int i=begin;
+        while (i<end && isEOL(buffer.get(i))) i++;
+        if (i<end && (buffer.get(i)<'A' || buffer.get(i)>'Z'))
+        {  dropped[DROP_MALFORMED].incrementAndGet();
+            return false;
+        }
+        byte[] addr=source.getAddress();
+        if (!source_buckets.take(TokenBucketSketch.hash(addr,0,addr.length,seed)))
+        {  dropped[DROP_SOURCE_RATE].incrementAndGet();
+            return false;
+        }
+        if (user_buckets!=null && i<end && !isStatusLine(buffer,i,end))
+        {  long hash=hashFromUser(buffer,i,end);
+            if (hash!=0 && !user_buckets.take(hash))
+            {  dropped[DROP_USER_RATE].incrementAndGet();
+                return false;
+            }
+        }
+        admitted.incrementAndGet();
+        return true;
+    }
+
+
+    /** Gets the number of admitted datagrams. */
+    public long getAdmittedCount()
+    {  return admitted.get();
+    }
+
+    /** Gets the number of datagrams dropped for the given reason (DROP_SOURCE_RATE, DROP_USER_RATE, or DROP_MALFORMED). */
+    public long getDroppedCount(int reason)
+    {  return dropped[reason].get();
+    }
+
+    /** Gets the total number of dropped datagrams. */
+    public long getDroppedCount()
+    {  long n=0;
+        for (int i=0; i<dropped.length; i++) n+=dropped[i].get();
+        return n;
+    }
+
+    /** Gets a String representation of the counters. */
+    public String toString()
+    {  StringBuffer sb=new StringBuffer("admitted=").append(getAdmittedCount());
+        for (int i=0; i<dropped.length; i++) sb.append(" dropped_").append(DROP_REASONS[i]).append('=').append(dropped[i].get());
+        return sb.toString();
+    }
+
+
+    //*************************** Private methods ***************************
+
+    /** Gets the hash of the user of the From URI of the message starting at <i>i</i>,
+      * or 0 if the From header or its user are not found. */
+    private long hashFromUser(ByteBuffer buffer, int i, int end)
+    {  // skip the request-line
+        i=skipLine(buffer,i,end);
+        while (i<end && !isEOL(buffer.get(i)))
+        {  int eol=i;
+            while (eol<end && !isEOL(buffer.get(eol))) eol++;
+            int value=indexOfValue(buffer,i,eol,SipHeaders.From);
+            if (value<0) value=indexOfValue(buffer,i,eol,SipHeaders.From_short);
+            if (value>=0)
+            {  // the user is between the scheme colon and the '@'
+                int colon=-1;
+                for (int k=value; k<eol; k++)
+                {  byte b=buffer.get(k);
+                    if (b==':' && colon<0) colon=k;
+                    else if (b=='@' && colon>=0) return hash(buffer,colon+1,k);
+                    else if (b=='>' || b==';' || b==',') break;
+                }
+                return 0;
+            }
+            i=skipLine(buffer,i,end);
+        }
+        return 0;
+    }
+
+    /** Gets the index of the value of header <i>hname</i> (just after the colon),
+      * if the header line [<i>i</i>,<i>eol</i>) is a <i>hname</i> header; otherwise returns -1. */
+    private static int indexOfValue(ByteBuffer buffer, int i, int eol, String hname)
+    {  int len=hname.length();
+        if (eol-i<len) return -1;
+        for (int k=0; k<len; k++)
+        {  int b=buffer.get(i+k)|0x20;
+            if (b!=(hname.charAt(k)|0x20)) return -1;
+        }
+        i+=len;
+        while (i<eol && (buffer.get(i)==' ' || buffer.get(i)=='\t')) i++;
+        return (i<eol && buffer.get(i)==':')? i+1 : -1;
+    }
+
+    /** Gets the hash of the bytes in [<i>begin</i>,<i>end</i>). */
+    private long hash(ByteBuffer buffer, int begin, int end)
+    {  long h=seed^0xcbf29ce484222325L;
+        for (int i=begin; i<end; i++) h=(h^(buffer.get(i)&0xff))*0x100000001b3L;
+        h=TokenBucketSketch.mix(h);
+        return (h!=0)? h : 1;
+    }
+
+    /** Skips the line starting at <i>i</i>, including the line terminator. */
+    private static int skipLine(ByteBuffer buffer, int i, int end)
+    {  while (i<end && !isEOL(buffer.get(i))) i++;
+        if (i<end && buffer.get(i)=='\r') i++;
+        if (i<end && buffer.get(i)=='\n') i++;
+        return i;
+    }
+
+    /** Whether the message starting at <i>i</i> begins with a status-line. */
+    private static boolean isStatusLine(ByteBuffer buffer, int i, int end)
+    {  return end-i>=4 && buffer.get(i)=='S' && buffer.get(i+1)=='I' && buffer.get(i+2)=='P' && buffer.get(i+3)=='/';
+    }
+
+    /** Whether the byte is a CR or a LF. */
+    private static boolean isEOL(byte b)
+    {  return b=='\r' || b=='\n';
+    }
+}
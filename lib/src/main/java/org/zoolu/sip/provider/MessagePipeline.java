@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.tools.Log;
+import org.zoolu.sip.header.CallIdHeader;
+import org.zoolu.sip.message.Message;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** MessagePipeline is an optional staged processing of the messages received by a SipProvider.
+  * <p> Transport receive threads only locate the Call-ID and enqueue the received messages;
+  * a pool of worker threads then parses and dispatches them.
+  * <p> Messages are assigned to workers by hashing their Call-ID, so that messages
+  * of the same call (and dialog) are processed in order, while different calls
+  * are processed in parallel.
+  * <p> Each worker has two queues: responses, ACKs, CANCELs and in-dialog requests (see OverloadControl.isPriority())
+  * are queued apart and processed first, so that established calls are served before new requests
+  * when the workers are late. However, a priority message of a call that has messages waiting in the
+  * normal queue is queued after them, so that the messages of each call are always processed in order.
+  * <p> Queue depth and per-stage latency (time spent in queue, and processing time) are collected.
+  */
+public class MessagePipeline
+{
+    private static final String TAG = "Sip: MessagePipeline";
+
+    /** SipProvider that processes the messages */
+    SipProvider sip_provider;
+
+    /** Workers */
+    Worker[] workers;
+
+    /** Number of enqueued messages */
+    final AtomicLong enqueued=new AtomicLong();
+
+    /** Number of messages dropped because of full queue */
+    final AtomicLong dropped=new AtomicLong();
+
+    /** Number of processed messages */
+    final AtomicLong processed=new AtomicLong();
+
+    /** Total time spent in queue (nanoseconds) */
+    final AtomicLong queue_time=new AtomicLong();
+
+    /** Max time spent in queue (nanoseconds) */
+    final AtomicLong queue_time_max=new AtomicLong();
+
+    /** Total processing time (nanoseconds) */
+    final AtomicLong processing_time=new AtomicLong();
+
+    /** Max processing time (nanoseconds) */
+    final AtomicLong processing_time_max=new AtomicLong();
+
+
+    /** Creates and starts a new MessagePipeline.
+      * @param sip_provider the SipProvider that processes the messages
+      * @param n_workers the number of worker threads
+      * @param queue_size the max number of messages waiting for each worker */
+    public MessagePipeline(SipProvider sip_provider, int n_workers, int queue_size)
+    {  this.sip_provider=sip_provider;
+        if (n_workers<1) n_workers=1;
+        workers=new Worker[n_workers];
+        for (int i=0; i<n_workers; i++)
+        {  workers[i]=new Worker(i,queue_size);
+            workers[i].start();
+        }
+    }
+
+
+    /** Enqueues a received message. It is called by transport receive threads.
+      * @return false if the message has been dropped since the queue is full */
+    public boolean enqueue(Transport transport, Message msg)
+    {  String call_id=getCallId(msg);
+        // non-SIP or malformed messages are assigned by source address
+        int selector=(call_id!=null)? call_id.hashCode() : msg.getRemotePort()+31*String.valueOf(msg.getRemoteAddress()).hashCode();
+        Worker worker=workers[(selector & 0x7fffffff)%workers.length];
+        if (worker.offer(new Entry(transport,msg,call_id),call_id!=null && OverloadControl.isPriority(msg)))
+        {  enqueued.incrementAndGet();
+            return true;
+        }
+        // else
+        dropped.incrementAndGet();
+        Log.w(TAG, () -> "queue of worker "+worker.id+" is full: message discarded");
+        return false;
+    }
+
+
+    /** Stops the workers. Messages still in queue are discarded. */
+    public void halt()
+    {  for (int i=0; i<workers.length; i++) workers[i].halt();
+    }
+
+
+    /** Gets the Call-ID of a message, or null for non-SIP or malformed messages. */
+    private static String getCallId(Message msg)
+    {  try
+        {  CallIdHeader ch=msg.getCallIdHeader();
+            if (ch!=null) return ch.getCallId();
+        }
+        catch (Exception e) {}
+        return null;
+    }
+
+
+    /** Updates the max value. */
+    private static void updateMax(AtomicLong max, long value)
+    {  long current;
+        while (value>(current=max.get()) && !max.compareAndSet(current,value));
+    }
+
+
+    //*************************** Metrics ***************************
+
+    /** Gets the number of worker threads. */
+    public int getWorkers()
+    {  return workers.length;
+    }
+
+    /** Gets the total number of messages waiting in queue. */
+    public int getQueueDepth()
+    {  int depth=0;
+        for (int i=0; i<workers.length; i++) depth+=workers[i].size();
+        return depth;
+    }
+
+    /** Gets the number of messages waiting in the queue of worker <i>i</i>. */
+    public int getQueueDepth(int i)
+    {  return workers[i].size();
+    }
+
+    /** Gets the max number of messages waiting in the queues of a worker (for each priority). */
+    public int getQueueCapacity()
+    {  return workers[0].capacity;
+    }
+
+    /** Gets the time the oldest message has been waiting in queue (milliseconds), that is the current queue delay. */
+    public long getQueueDelay()
+    {  long oldest=0;
+        for (int i=0; i<workers.length; i++)
+        {  long time=workers[i].oldest();
+            if (time!=0 && (oldest==0 || time-oldest<0)) oldest=time;
+        }
+        return (oldest!=0)? (System.nanoTime()-oldest)/1000000 : 0;
+    }
+
+    /** Gets the number of enqueued messages. */
+    public long getEnqueuedCount()
+    {  return enqueued.get();
+    }
+
+    /** Gets the number of messages dropped because of full queue. */
+    public long getDroppedCount()
+    {  return dropped.get();
+    }
+
+    /** Gets the number of processed messages. */
+    public long getProcessedCount()
+    {  return processed.get();
+    }
+
+    /** Gets the average time spent in queue (microseconds). */
+    public long getQueueLatencyAvg()
+    {  long n=processed.get();
+        return (n>0)? queue_time.get()/n/1000 : 0;
+    }
+
+    /** Gets the max time spent in queue (microseconds). */
+    public long getQueueLatencyMax()
+    {  return queue_time_max.get()/1000;
+    }
+
+    /** Gets the average processing time (microseconds). */
+    public long getProcessingTimeAvg()
+    {  long n=processed.get();
+        return (n>0)? processing_time.get()/n/1000 : 0;
+    }
+
+    /** Gets the max processing time (microseconds). */
+    public long getProcessingTimeMax()
+    {  return processing_time_max.get()/1000;
+    }
+
+    /** Gets a String representation of the metrics. */
+    public String toString()
+    {  return "workers="+workers.length+" queue="+getQueueDepth()+" enqueued="+getEnqueuedCount()+" dropped="+getDroppedCount()+" processed="+getProcessedCount()
+            +" queue_latency(avg/max us)="+getQueueLatencyAvg()+"/"+getQueueLatencyMax()+" processing(avg/max us)="+getProcessingTimeAvg()+"/"+getProcessingTimeMax();
+    }
+
+
+    //*************************** Inner classes ***************************
+
+    /** Enqueued message. */
+    static class Entry
+    {  Transport transport;
+        Message msg;
+        String call_id;
+        long time;
+
+        Entry(Transport transport, Message msg, String call_id)
+        {  this.transport=transport;
+            this.msg=msg;
+            this.call_id=call_id;
+            this.time=System.nanoTime();
+        }
+    }
+
+
+    /** Worker thread, processing the messages of its own queues in order. */
+    class Worker extends Thread
+    {  int id;
+        int capacity;
+        ArrayDeque<Entry> queue=new ArrayDeque<Entry>();
+        ArrayDeque<Entry> priority_queue=new ArrayDeque<Entry>();
+        /** Number of messages of each call waiting in the normal queue */
+        HashMap<String,Integer> queued_calls=new HashMap<String,Integer>();
+        volatile boolean stop=false;
+
+        Worker(int id, int queue_size)
+        {  super("MessagePipeline-"+id);
+            this.id=id;
+            capacity=queue_size>0? queue_size : Integer.MAX_VALUE;
+            setDaemon(true);
+        }
+
+        synchronized boolean offer(Entry entry, boolean priority)
+        {  if (priority && !queued_calls.containsKey(entry.call_id))
+            {  if (priority_queue.size()>=capacity) return false;
+                // else
+                priority_queue.add(entry);
+            }
+            else
+            {  if (queue.size()>=capacity) return false;
+                // else
+                queue.add(entry);
+                if (entry.call_id!=null)
+                {  Integer n=queued_calls.get(entry.call_id);
+                    queued_calls.put(entry.call_id,Integer.valueOf((n!=null)? n.intValue()+1 : 1));
+                }
+            }
+            notify();
+            return true;
+        }
+
+        synchronized Entry take() throws InterruptedException
+        {  while (queue.isEmpty() && priority_queue.isEmpty()) wait();
+            Entry entry=priority_queue.poll();
+            if (entry!=null) return entry;
+            // else
+            entry=queue.poll();
+            if (entry.call_id!=null)
+            {  int n=queued_calls.get(entry.call_id).intValue();
+                if (n>1) queued_calls.put(entry.call_id,Integer.valueOf(n-1));
+                else queued_calls.remove(entry.call_id);
+            }
+            return entry;
+        }
+
+        synchronized int size()
+        {  return queue.size()+priority_queue.size();
+        }
+
+        /** Gets the enqueuing time of the oldest waiting message, or 0. */
+        synchronized long oldest()
+        {  Entry entry=queue.peek();
+            Entry priority_entry=priority_queue.peek();
+            if (entry==null) return (priority_entry!=null)? priority_entry.time : 0;
+            if (priority_entry==null || entry.time-priority_entry.time<0) return entry.time;
+            return priority_entry.time;
+        }
+
+        void halt()
+        {  stop=true;
+            interrupt();
+        }
+
+        public void run()
+        {  while (!stop)
+            {  Entry entry;
+                try
+                {  entry=take();
+                }
+                catch (InterruptedException e)
+                {  continue;
+                }
+                long start=System.nanoTime();
+                long wait=start-entry.time;
+                sip_provider.processReceivedMessage(entry.transport,entry.msg);
+                long time=System.nanoTime()-start;
+                processed.incrementAndGet();
+                queue_time.addAndGet(wait);
+                updateMax(queue_time_max,wait);
+                processing_time.addAndGet(time);
+                updateMax(processing_time_max,time);
+            }
+            synchronized (this)
+            {  queue.clear();
+                priority_queue.clear();
+                queued_calls.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.net.*;
+import org.zoolu.sip.message.Message;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+
+/** NioUdpTransport provides an UDP transport service for SIP based on a NioUdpProvider,
+  * that is on non-blocking DatagramChannels.
+  * <p> Received datagrams are parsed directly from the reader buffers,
+  * and optionally more sockets (each one with its own reader thread) are bound to the same port.
+  */
+public class NioUdpTransport implements Transport, NioUdpProviderListener
+{
+    /** UDP protocol type */
+    public static final String PROTO_UDP=UdpTransport.PROTO_UDP;
+
+    /** UDP provider */
+    NioUdpProvider udp_provider;
+
+    /** Transport listener */
+    TransportListener listener=null;
+
+    /** Rate limiter of the received datagrams (null if not used) */
+    FloodControl flood_control=null;
+
+
+    /** Creates a new NioUdpTransport */
+    public NioUdpTransport(int local_port, IpAddress host_ipaddr) throws IOException
+    {  this(local_port,host_ipaddr,1);
+    }
+
+
+    /** Creates a new NioUdpTransport with <i>n_readers</i> sockets bound to the same port. */
+    public NioUdpTransport(int local_port, IpAddress host_ipaddr, int n_readers) throws IOException
+    {  udp_provider=new NioUdpProvider(local_port,host_ipaddr,n_readers,this);
+    }
+
+
+    /** Gets protocol type */
+    public String getProtocol()
+    {  return PROTO_UDP;
+    }
+
+
+    /** Gets port */
+    public int getLocalPort()
+    {  NioUdpProvider udp=udp_provider;
+        return (udp!=null)? udp.getLocalPort() : 0;
+    }
+
+
+    /** Sets transport listener */
+    public void setListener(TransportListener listener)
+    {  this.listener=listener;
+    }
+
+
+    /** Sets the rate limiter of the received datagrams (null for not limiting them) */
+    public void setFloodControl(FloodControl flood_control)
+    {  this.flood_control=flood_control;
+    }
+
+
+    /** Sends a Message to a destination address and port */
+    public TransportConn sendMessage(Message msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException
+    {  NioUdpProvider udp=udp_provider;
+        if (udp!=null)
+        {  ByteBufferPool pool=NioUdpProvider.getBufferPool();
+            ByteBuffer buffer=pool.acquire();
+            try
+            {  if (msg.writeTo(buffer))
+                {  buffer.flip();
+                    udp.send(buffer,dest_ipaddr,dest_port);
+                }
+                else
+                {  byte[] data=msg.toString().getBytes("UTF-8");
+                    udp.send(data,0,data.length,dest_ipaddr,dest_port);
+                }
+            }
+            finally
+            {  pool.release(buffer);
+            }
+        }
+        return null;
+    }
+
+
+    /** Stops running */
+    public void halt()
+    {  NioUdpProvider udp=udp_provider;
+        if (udp!=null) udp.halt();
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  NioUdpProvider udp=udp_provider;
+        if (udp!=null) return udp.toString();
+        else return null;
+    }
+
+
+    //************************* Callback methods *************************
+
+    /** When a new UDP datagram is received. */
+    public void onReceivedDatagram(NioUdpProvider udp, ByteBuffer buffer, InetSocketAddress source)
+    {  FloodControl fc=flood_control;
+        if (fc!=null && !fc.admit(source.getAddress(),buffer)) return;
+        // else
+        Message msg=new Message(buffer);
+        msg.setRemoteAddress(source.getAddress().getHostAddress());
+        msg.setRemotePort(source.getPort());
+        msg.setTransport(PROTO_UDP);
+        TransportListener l=listener;
+        if (l!=null) l.onReceivedMessage(this,msg);
+    }
+
+
+    /** When NioUdpProvider stops receiving UDP datagrams. */
+    public void onServiceTerminated(NioUdpProvider udp, Exception error)
+    {  TransportListener l=listener;
+        if (l!=null) l.onTransportTerminated(this,error);
+        this.udp_provider=null;
+        this.listener=null;
+    }
+
+}
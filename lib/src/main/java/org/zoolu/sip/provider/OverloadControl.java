@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.tools.Log;
+import org.zoolu.sip.header.Header;
+import org.zoolu.sip.header.SipHeaders;
+import org.zoolu.sip.header.ToHeader;
+import org.zoolu.sip.header.ViaHeader;
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.message.SipByteParser;
+import java.nio.ByteBuffer;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** OverloadControl protects a SipProvider from overload, by shedding new requests
+  * before they are dispatched.
+  * <p> The load is measured on the MessagePipeline of the SipProvider, as the time the oldest message
+  * has been waiting in queue (queue delay) and as the queue depth. When the load goes beyond
+  * the low threshold, a growing fraction of the new (out-of-dialog) requests is rejected,
+  * up to all of them beyond the high threshold. Responses, in-dialog requests, ACKs and CANCELs
+  * are always admitted, and are processed first by the pipeline (see isPriority()),
+  * unless messages of the same call are already waiting.
+  * <p> Rejected requests are answered statelessly with a 503 response, whose status line and tail
+  * (Retry-After and Content-Length headers) are pre-encoded: only the few headers it needs are copied from the request.
+  * The 503 is sent back through the connection of the request, if any, or else it is routed
+  * by the top Via (RFC 3261, section 18.2.2), as stamped with the received and rport parameters.
+  * If the client supports RFC 7339 overload control (the top Via has an 'oc' parameter),
+  * the 503 also carries the current reduction ('loss' algorithm) in the Via.
+  */
+public class OverloadControl
+{
+    private static final String TAG = "Sip: OverloadControl";
+
+    /** Load level: all requests are admitted */
+    public static final int LEVEL_NORMAL=0;
+
+    /** Load level: part of the new requests are rejected */
+    public static final int LEVEL_HIGH=1;
+
+    /** Load level: all new requests are rejected */
+    public static final int LEVEL_OVERLOAD=2;
+
+    /** Queue depth (percentage of the queue capacity) beyond which new requests start to be rejected */
+    static final int LOW_DEPTH=50;
+
+    /** Queue depth (percentage of the queue capacity) beyond which all new requests are rejected */
+    static final int HIGH_DEPTH=90;
+
+    /** Validity of the RFC 7339 overload control feedback, in milliseconds */
+    static final int OC_VALIDITY=500;
+
+    /** Pre-encoded status line of the rejections */
+    static final byte[] STATUS_LINE=ascii("SIP/2.0 503 Service Unavailable\r\n");
+
+    /** SipProvider */
+    SipProvider sip_provider;
+
+    /** Pipeline whose load is measured */
+    MessagePipeline pipeline;
+
+    /** Queue delay (in milliseconds) beyond which new requests start to be rejected */
+    long low_delay;
+
+    /** Queue delay (in milliseconds) beyond which all new requests are rejected */
+    long high_delay;
+
+    /** Pre-encoded tail of the rejections (Retry-After and Content-Length headers, and the empty line) */
+    byte[] tail;
+
+    /** To tag of the rejections */
+    String to_tag;
+
+    /** Number of new requests, used for rejecting the right fraction of them */
+    final AtomicLong new_requests=new AtomicLong();
+
+    /** Number of rejected requests */
+    final AtomicLong rejected=new AtomicLong();
+
+
+    /** Creates a new OverloadControl.
+      * @param sip_provider the SipProvider that sends the rejections
+      * @param pipeline the MessagePipeline whose load is measured
+      * @param low_delay the queue delay (in milliseconds) beyond which new requests start to be rejected
+      * @param high_delay the queue delay (in milliseconds) beyond which all new requests are rejected
+      * @param retry_after the Retry-After value of the rejections, in seconds */
+    public OverloadControl(SipProvider sip_provider, MessagePipeline pipeline, long low_delay, long high_delay, int retry_after)
+    {  this.sip_provider=sip_provider;
+        this.pipeline=pipeline;
+        this.low_delay=low_delay;
+        this.high_delay=(high_delay>low_delay)? high_delay : low_delay+1;
+        tail=ascii("Retry-After: "+retry_after+"\r\nContent-Length: 0\r\n\r\n");
+        to_tag=SipProvider.pickTag();
+    }
+
+
+    /** Gets the current reduction, that is the percentage (0-100) of new requests that are rejected. */
+    public int getReduction()
+    {  long delay=pipeline.getQueueDelay();
+        int reduction=0;
+        if (delay>low_delay) reduction=(int)Math.min(100,(delay-low_delay)*100/(high_delay-low_delay));
+        int capacity=pipeline.getQueueCapacity();
+        if (capacity<Integer.MAX_VALUE && reduction<100)
+        {  long depth=(long)pipeline.getQueueDepth()*100/((long)capacity*pipeline.getWorkers());
+            if (depth>LOW_DEPTH) reduction=Math.max(reduction,(int)Math.min(100,(depth-LOW_DEPTH)*100/(HIGH_DEPTH-LOW_DEPTH)));
+        }
+        return reduction;
+    }
+
+
+    /** Gets the current load level (LEVEL_NORMAL, LEVEL_HIGH, or LEVEL_OVERLOAD). */
+    public int getLoadLevel()
+    {  int reduction=getReduction();
+        if (reduction==0) return LEVEL_NORMAL;
+        if (reduction<100) return LEVEL_HIGH;
+        return LEVEL_OVERLOAD;
+    }
+
+
+    /** Gets the number of rejected requests. */
+    public long getRejectedCount()
+    {  return rejected.get();
+    }
+
+
+    /** Decides whether a received message is admitted; if not, the message is rejected with a 503 response.
+      * It is called by the transport threads, before the message is enqueued.
+      * @return true if the message is admitted */
+    public boolean admit(Message msg)
+    {  if (!isNewRequest(msg)) return true;
+        // else
+        int reduction=getReduction();
+        if (reduction==0 || new_requests.incrementAndGet()%100>=reduction) return true;
+        // else
+        rejected.incrementAndGet();
+        try
+        {  Message resp=createRejection(msg,reduction);
+            // through the connection of the request (if still active), or else routed by the Via
+            TransportConnId conn_id=msg.getTransportConnId();
+            if (conn_id!=null) sip_provider.sendMessage(resp,conn_id);
+            else sip_provider.sendMessage(resp);
+        }
+        catch (Exception e)
+        {  Log.w(TAG, () -> "rejection not sent: "+e);
+        }
+        return false;
+    }
+
+
+    /** Creates the 503 response to a request, between the pre-encoded status line and tail.
+      * As the request has not been processed by the SipProvider yet, the received and rport parameters
+      * are set here in the top Via (RFC 3261, section 18.2.1), so that the 503 can be routed by it. */
+    Message createRejection(Message req, int reduction)
+    {  StringBuffer sb=new StringBuffer(512);
+        Vector<?> vias=req.getHeaders(SipHeaders.Via);
+        for (int i=0; i<vias.size(); i++)
+        {  Header via=(Header)vias.elementAt(i);
+            if (i==0)
+            {  ViaHeader vh=new ViaHeader(via);
+                String src_addr=req.getRemoteAddress();
+                if (src_addr!=null && !src_addr.equals(vh.getHost())) vh.setReceived(src_addr);
+                if (vh.hasRport()) vh.setRport(req.getRemotePort());
+                via=vh;
+                if (vh.hasParameter("oc"))
+                {  // RFC 7339 feedback, with a timestamp as sequence number
+                    long now=System.currentTimeMillis();
+                    vh.setParameter("oc",String.valueOf(reduction));
+                    vh.setParameter("oc-algo","\"loss\"");
+                    vh.setParameter("oc-validity",String.valueOf(OC_VALIDITY));
+                    vh.setParameter("oc-seq",(now/1000)+"."+String.valueOf(1000+now%1000).substring(1));
+                }
+            }
+            sb.append(SipHeaders.Via).append(": ").append(via.getValue()).append("\r\n");
+        }
+        appendHeader(sb,req,SipHeaders.From);
+        Header to=req.getHeader(SipHeaders.To);
+        if (to!=null)
+        {  sb.append(SipHeaders.To).append(": ").append(to.getValue());
+            if (!new ToHeader(to).hasTag()) sb.append(";tag=").append(to_tag);
+            sb.append("\r\n");
+        }
+        appendHeader(sb,req,SipHeaders.Call_ID);
+        appendHeader(sb,req,SipHeaders.CSeq);
+        String headers=sb.toString();
+        ByteBuffer buffer=ByteBuffer.allocate(STATUS_LINE.length+headers.length()*3+tail.length);
+        buffer.put(STATUS_LINE);
+        SipByteParser.encode(headers,0,headers.length(),buffer);
+        buffer.put(tail);
+        return new Message(buffer.array(),0,buffer.position());
+    }
+
+
+    /** Encodes an ASCII string. */
+    private static byte[] ascii(String str)
+    {  byte[] data=new byte[str.length()];
+        for (int i=0; i<data.length; i++) data[i]=(byte)str.charAt(i);
+        return data;
+    }
+
+
+    /** Appends the header <i>hname</i> of the message, if present. */
+    private static void appendHeader(StringBuffer sb, Message msg, String hname)
+    {  Header h=msg.getHeader(hname);
+        if (h!=null) sb.append(hname).append(": ").append(h.getValue()).append("\r\n");
+    }
+
+
+    /** Whether the message is a new request, that is an out-of-dialog request other than ACK and CANCEL. */
+    public static boolean isNewRequest(Message msg)
+    {  try
+        {  if (!msg.isRequest() || msg.isAck() || msg.isCancel()) return false;
+            ToHeader th=msg.getToHeader();
+            return th!=null && !th.hasTag();
+        }
+        catch (Exception e)
+        {  // malformed: let the SipProvider discard it
+            return false;
+        }
+    }
+
+
+    /** Whether the message is processed first, that is if it is a response, an ACK, a CANCEL, or an in-dialog request. */
+    public static boolean isPriority(Message msg)
+    {  try
+        {  if (msg.isResponse() || msg.isAck() || msg.isCancel()) return true;
+            ToHeader th=msg.getToHeader();
+            return th!=null && th.hasTag();
+        }
+        catch (Exception e)
+        {  return false;
+        }
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  return "reduction="+getReduction()+"% queue_delay="+pipeline.getQueueDelay()+"ms rejected="+getRejectedCount();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.net.IpAddress;
+import org.zoolu.sip.message.Message;
+
+
+/** SentMessage is a message that may be sent more than once through a SipProvider
+  * (e.g. a request or a final response retransmitted by a transaction).
+  * <p> The first time it is sent, the SipProvider resolves its destination
+  * (transport, address and port) and encodes it; both are cached,
+  * so that retransmissions through unreliable transports simply send the same bytes again.
+  * <p> If the destination is not in the DNS cache, the message is queued and sent as soon as it is resolved;
+  * if it cannot be sent (the lookup fails, or no target is available), the failure listener is notified.
+  * If it is sent through a reliable transport, the failure listener is also added for that connection.
+  * <p> The message must not be modified once it has been sent.
+  */
+public class SentMessage
+{
+    /** The message */
+    Message msg;
+
+    /** Transport protocol (null if to be selected through DNS) */
+    String proto=null;
+
+    /** Destination address, as found in the message */
+    String dest_addr=null;
+
+    /** Resolved destination address (null if not resolved yet) */
+    IpAddress dest_ipaddr=null;
+
+    /** Destination port (0 if to be selected through DNS) */
+    int dest_port=0;
+
+    /** Multicast TTL */
+    int ttl=0;
+
+    /** Whether the destination is a SIPS URI */
+    boolean secure=false;
+
+    /** Whether an asynchronous DNS lookup of the destination is in progress */
+    boolean resolving=false;
+
+    /** The encoded message (null if not encoded yet) */
+    Message encoded=null;
+
+    /** Number of times it has been sent (guarded by the SentMessage itself) */
+    int count=0;
+
+    /** Connection through which it has been sent (null if not sent yet, or if the transport is not reliable) */
+    TransportConnId conn_id=null;
+
+    /** Listener notified if it cannot be sent, or if its connection fails (null if none) */
+    TransportFailureListener failure_listener;
+
+
+    /** Creates a new SentMessage. */
+    public SentMessage(Message msg)
+    {  this(msg,null);
+    }
+
+    /** Creates a new SentMessage, notifying <i>failure_listener</i> if it cannot be sent. */
+    public SentMessage(Message msg, TransportFailureListener failure_listener)
+    {  this.msg=msg;
+        this.failure_listener=failure_listener;
+    }
+
+    /** Gets the message. */
+    public Message getMessage()
+    {  return msg;
+    }
+
+    /** Gets the number of times it has been sent. */
+    public synchronized int getCount()
+    {  return count;
+    }
+
+    /** Gets the connection through which it has been sent, if the transport is reliable; otherwise null. */
+    public synchronized TransportConnId getTransportConnId()
+    {  return conn_id;
+    }
+
+    /** Whether the destination and the encoded bytes are cached. */
+    public boolean isCached()
+    {  return dest_ipaddr!=null && encoded!=null;
+    }
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  return proto+":"+dest_ipaddr+":"+dest_port+" ("+count+")";
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.tools.Preferences;
+
+
+/** SipConfig is the immutable configuration of a SipProvider, and of the transports,
+  * transactions, dialogs and calls bound to it (that get it through SipProvider.getConfig()).
+  * <p> Different SipProviders may run in the same JVM with different configurations
+  * (e.g. ports, timers, or overload thresholds).
+  * <p> Values that are not configured are taken from the static attributes of SipStack,
+  * that are the defaults; see SipStack for the meaning of each value.
+  * <p> The few SipStack values that are not here (single_timer and monitor_objects) apply to the whole JVM,
+  * since all Timers share one timing wheel and the live instances are counted per class.
+  */
+public class SipConfig
+{
+    // ********************** transport and provider **********************
+
+    /** Standard SIP port, used when a URI or a Via has no port */
+    public final int default_port;
+    /** Standard SIPS port, used when a secure URI or a TLS Via has no port */
+    public final int default_tls_port;
+
+    /** Supported transport protocols, if not configured for the SipProvider */
+    private final String[] default_transport_protocols;
+    /** Max number of contemporary open transport connections, if not configured for the SipProvider */
+    public final int default_nmax_connections;
+    /** Whether adding 'rport' parameter on via header fields of outgoing requests */
+    public final boolean use_rport;
+    /** Whether adding (forcing) 'rport' parameter on via header fields of incoming requests */
+    public final boolean force_rport;
+    /** Number of worker threads that process the received messages (0 for none) */
+    public final int message_workers;
+    /** Max number of received messages waiting for each worker thread */
+    public final int message_queue_size;
+    /** Queue delay (milliseconds) beyond which new requests start to be rejected (0 for no overload control) */
+    public final long overload_low_delay;
+    /** Queue delay (milliseconds) beyond which all new requests are rejected */
+    public final long overload_high_delay;
+    /** Retry-After value (seconds) of the 503 responses sent to rejected requests */
+    public final int overload_retry_after;
+    /** Max datagrams per second from each source address (0 for no rate limit) */
+    public final int flood_source_rate;
+    /** Max datagrams from a source address in a burst */
+    public final int flood_source_burst;
+    /** Max requests per second from each From user (0 for no limit) */
+    public final int flood_user_rate;
+    /** Max requests from a From user in a burst */
+    public final int flood_user_burst;
+    /** Number of NIO sockets bound to the UDP port (0 for the blocking UdpTransport) */
+    public final int udp_readers;
+    /** Number of I/O threads of each TCP or TLS transport */
+    public final int tcp_io_threads;
+    /** Max time (milliseconds) for establishing an outgoing TCP or TLS connection (0 for no timeout) */
+    public final int connect_timeout;
+    /** Max size of the headers of a SIP message received through a stream connection */
+    public final int max_header_size;
+    /** Max size of the body of a SIP message received through a stream connection */
+    public final int max_body_size;
+    /** Name servers used for NAPTR and SRV queries */
+    private final String[] dns_servers;
+    /** Timeout of each DNS query attempt (milliseconds) */
+    public final int dns_timeout;
+    /** Whether transactions are identified without the 'sent-by' value of the top Via */
+    public final boolean alternative_transaction_id;
+
+    // ************************ transaction timeouts ************************
+
+    /** Starting retransmission timeout (milliseconds), T1 */
+    public final long retransmission_timeout;
+    /** Maximum retransmission timeout (milliseconds), T2 */
+    public final long max_retransmission_timeout;
+    /** Transaction timeout (milliseconds), 64*T1 */
+    public final long transaction_timeout;
+    /** Clearing timeout (milliseconds), T4 */
+    public final long clearing_timeout;
+
+    // *********************** messages and dialogs ***********************
+
+    /** Max-Forwards value of new requests */
+    public final int max_forwards;
+    /** Whether automatically sending a 100 Trying on INVITE */
+    public final boolean auto_trying;
+    /** Whether 1xx responses create an "early dialog" */
+    public final boolean early_dialog;
+    /** Default 'expires' value (seconds) */
+    public final int default_expires;
+    /** User-Agent header value of requests (null for no User-Agent header) */
+    public final String ua_info;
+    /** Server header value of responses (null for no Server header) */
+    public final String server_info;
+    /** Whether staying within the dialog route by adding a RecordRoute header */
+    public final boolean on_dialog_route;
+
+    // ************************ registration client ************************
+
+    /** Starting registration timeout (milliseconds) after a request timeout */
+    public final long regc_min_attempt_timeout;
+    /** Maximum registration timeout (milliseconds) after a request timeout */
+    public final long regc_max_attempt_timeout;
+    /** Max number of consecutive registration authentication attempts */
+    public final int regc_auth_attempts;
+
+
+
+    /** Creates a new SipConfig with the current SipStack defaults. */
+    public static SipConfig getDefault()
+    {  return new SipConfig(null);
+    }
+
+
+    /** Creates a new SipConfig reading the values from Preferences (with the same keys used by SipStack).
+      * Missing values are taken from SipStack.
+      * @param prefs the Preferences (if null, all values are taken from SipStack) */
+    public SipConfig(Preferences prefs)
+    {  if (prefs==null) prefs=NO_PREFERENCES;
+        default_port=prefs.getInt("default_port",SipStack.default_port);
+        default_tls_port=prefs.getInt("default_tls_port",SipStack.default_tls_port);
+        default_transport_protocols=prefs.getStrings("default_transport_protocols",SipStack.default_transport_protocols).clone();
+        default_nmax_connections=prefs.getInt("default_nmax_connections",SipStack.default_nmax_connections);
+        use_rport=prefs.getBoolean("use_rport",SipStack.use_rport);
+        force_rport=prefs.getBoolean("force_rport",SipStack.force_rport);
+        message_workers=prefs.getInt("message_workers",SipStack.message_workers);
+        message_queue_size=prefs.getInt("message_queue_size",SipStack.message_queue_size);
+        overload_low_delay=prefs.getLong("overload_low_delay",SipStack.overload_low_delay);
+        overload_high_delay=prefs.getLong("overload_high_delay",SipStack.overload_high_delay);
+        overload_retry_after=prefs.getInt("overload_retry_after",SipStack.overload_retry_after);
+        flood_source_rate=prefs.getInt("flood_source_rate",SipStack.flood_source_rate);
+        flood_source_burst=prefs.getInt("flood_source_burst",SipStack.flood_source_burst);
+        flood_user_rate=prefs.getInt("flood_user_rate",SipStack.flood_user_rate);
+        flood_user_burst=prefs.getInt("flood_user_burst",SipStack.flood_user_burst);
+        udp_readers=prefs.getInt("udp_readers",SipStack.udp_readers);
+        tcp_io_threads=prefs.getInt("tcp_io_threads",SipStack.tcp_io_threads);
+        connect_timeout=prefs.getInt("connect_timeout",SipStack.connect_timeout);
+        max_header_size=prefs.getInt("max_header_size",SipStack.max_header_size);
+        max_body_size=prefs.getInt("max_body_size",SipStack.max_body_size);
+        dns_servers=prefs.getStrings("dns_servers",SipStack.dns_servers).clone();
+        dns_timeout=prefs.getInt("dns_timeout",SipStack.dns_timeout);
+        alternative_transaction_id=prefs.getBoolean("alternative_transaction_id",SipStack.alternative_transaction_id);
+
+        retransmission_timeout=prefs.getLong("retransmission_timeout",SipStack.retransmission_timeout);
+        max_retransmission_timeout=prefs.getLong("max_retransmission_timeout",SipStack.max_retransmission_timeout);
+        transaction_timeout=prefs.getLong("transaction_timeout",SipStack.transaction_timeout);
+        clearing_timeout=prefs.getLong("clearing_timeout",SipStack.clearing_timeout);
+
+        max_forwards=prefs.getInt("max_forwards",SipStack.max_forwards);
+        auto_trying=prefs.getBoolean("auto_trying",SipStack.auto_trying);
+        early_dialog=prefs.getBoolean("early_dialog",SipStack.early_dialog);
+        default_expires=prefs.getInt("default_expires",SipStack.default_expires);
+        ua_info=info(prefs.getString("ua_info",SipStack.ua_info),"NO-MyUA-INFO");
+        server_info=info(prefs.getString("server_info",SipStack.server_info),"NO-SERVER-INFO");
+        on_dialog_route=prefs.getBoolean("on_dialog_route",SipStack.on_dialog_route);
+
+        regc_min_attempt_timeout=prefs.getLong("regc_min_attempt_timeout",SipStack.regc_min_attempt_timeout);
+        regc_max_attempt_timeout=prefs.getLong("regc_max_attempt_timeout",SipStack.regc_max_attempt_timeout);
+        regc_auth_attempts=prefs.getInt("regc_auth_attempts",SipStack.regc_auth_attempts);
+    }
+
+
+    /** Gets the supported transport protocols, if not configured for the SipProvider. */
+    public String[] getDefaultTransportProtocols()
+    {  return default_transport_protocols.clone();
+    }
+
+    /** Gets the name servers used for NAPTR and SRV queries. */
+    public String[] getDnsServers()
+    {  return dns_servers.clone();
+    }
+
+
+    /** Sets this configuration as the default one, that is it copies all values to the SipStack attributes. */
+    void setAsDefault()
+    {  SipStack.default_port=default_port;
+        SipStack.default_tls_port=default_tls_port;
+        SipStack.default_transport_protocols=getDefaultTransportProtocols();
+        SipStack.default_nmax_connections=default_nmax_connections;
+        SipStack.use_rport=use_rport;
+        SipStack.force_rport=force_rport;
+        SipStack.message_workers=message_workers;
+        SipStack.message_queue_size=message_queue_size;
+        SipStack.overload_low_delay=overload_low_delay;
+        SipStack.overload_high_delay=overload_high_delay;
+        SipStack.overload_retry_after=overload_retry_after;
+        SipStack.flood_source_rate=flood_source_rate;
+        SipStack.flood_source_burst=flood_source_burst;
+        SipStack.flood_user_rate=flood_user_rate;
+        SipStack.flood_user_burst=flood_user_burst;
+        SipStack.udp_readers=udp_readers;
+        SipStack.tcp_io_threads=tcp_io_threads;
+        SipStack.connect_timeout=connect_timeout;
+        SipStack.max_header_size=max_header_size;
+        SipStack.max_body_size=max_body_size;
+        SipStack.dns_servers=getDnsServers();
+        SipStack.dns_timeout=dns_timeout;
+        SipStack.alternative_transaction_id=alternative_transaction_id;
+        SipStack.retransmission_timeout=retransmission_timeout;
+        SipStack.max_retransmission_timeout=max_retransmission_timeout;
+        SipStack.transaction_timeout=transaction_timeout;
+        SipStack.clearing_timeout=clearing_timeout;
+        SipStack.max_forwards=max_forwards;
+        SipStack.auto_trying=auto_trying;
+        SipStack.early_dialog=early_dialog;
+        SipStack.default_expires=default_expires;
+        SipStack.ua_info=ua_info;
+        SipStack.server_info=server_info;
+        SipStack.on_dialog_route=on_dialog_route;
+        SipStack.regc_min_attempt_timeout=regc_min_attempt_timeout;
+        SipStack.regc_max_attempt_timeout=regc_max_attempt_timeout;
+        SipStack.regc_auth_attempts=regc_auth_attempts;
+    }
+
+
+    /** Gets a String representation of the main values. */
+    public String toString()
+    {  return "T1="+retransmission_timeout+" T2="+max_retransmission_timeout+" T4="+clearing_timeout+" timeout="+transaction_timeout
+            +" workers="+message_workers+" udp_readers="+udp_readers+" tcp_io_threads="+tcp_io_threads;
+    }
+
+
+    /** Gets an info value (User-Agent or Server), or null if it is empty or "NONE". */
+    private static String info(String value, String none)
+    {  if (value!=null && (value.length()==0 || value.equalsIgnoreCase("NONE") || value.equalsIgnoreCase(none))) return null;
+        return value;
+    }
+
+
+    /** Empty Preferences */
+    private static final Preferences NO_PREFERENCES=new Preferences()
+    {  public String getString(String key, String default_value)
+        {  return default_value;
+        }
+    };
+}
@@ -27,12 +27,18 @@ package org.zoolu.sip.provider;
 
 
 /** Generic identifier used to address SipProvider-related entities.
- */
+  * <p> A SipId is immutable, and its hash code is computed once when it is created.
+  * Composite identifiers (see TransactionId and DialogId) keep their components,
+  * and build their String representation only when toString() is called.
+  */
 public class SipId
 {
-    /** The actual id */
+    /** The actual id (for composite ids, it is built only when needed) */
     String id;
 
+    /** Hash code */
+    int hash;
+
     /** Constructs a new void SipId. */
     SipId()
     {
@@ -41,29 +47,54 @@ public class SipId
     /** Constructs a new SipId. */
     SipId(String id)
     {  this.id=id;
+        this.hash=id.hashCode();
     }
 
     /** Constructs a new SipId. */
     SipId(SipId i)
     {  this.id=i.id;
+        this.hash=i.hash;
+    }
+
+    /** Whether the SipId is composed of more components. */
+    boolean isComposite()
+    {  return false;
+    }
+
+    /** Whether the components of this composite SipId are equal to those of <i>i</i>.
+      * Both SipIds are composite and have the same hash code. */
+    boolean matches(SipId i)
+    {  return false;
     }
 
     /** Whether the SipId equals to <i>obj</i>. */
     public boolean equals(Object obj)
-    {  try
-    {  SipId i=(SipId)obj;
-        return id.equals(i.id);
-    }
-    catch (Exception e) {  return false;  }
+    {  if (obj==this) return true;
+        if (!(obj instanceof SipId)) return false;
+        SipId i=(SipId)obj;
+        if (hash!=i.hash || isComposite()!=i.isComposite()) return false;
+        if (isComposite()) return matches(i);
+        else return id.equals(i.id);
     }
 
     /** Gets an int hashCode for the SipId. */
     public int hashCode()
-    {  return id.hashCode();
+    {  return hash;
     }
 
     /** Gets a String value for the SipId */
     public String toString()
     {  return id;
     }
+
+
+    /** Whether two (possibly null) Strings are equal. */
+    static boolean equals(String a, String b)
+    {  return (a==null)? b==null : a.equals(b);
+    }
+
+    /** Gets the hash code of a (possibly null) String. */
+    static int hash(String str)
+    {  return (str!=null)? str.hashCode() : 0;
+    }
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2006 Luca Veltri - University of Parma - Italy
+ *
+ * This source code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+
+import org.zoolu.tools.Log;
+import org.zoolu.net.*;
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.message.SipByteParser;
+
+import org.zoolu.tools.Timer;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+
+/** SipKeepAlive keeps up the connection up toward a target SIP node
+ * (e.g. toward the seriving proxy/gw or a remote UAS).
+ * <p/>
+ * It periodically sends keep-alive tokens in order to refresh TCP connection timeouts
+ * and/or NAT timeouts (for the TCP and/or UDP sessions).
+ * <p/>
+ * Over connection-oriented transports (TCP or TLS) the RFC 5626 double-CRLF keep-alive is used:
+ * a ping (CRLFCRLF) is sent, and a pong (CRLF) is expected within PONG_TIMEOUT.
+ * When the pong is not received, or the connection fails, the flow is considered failed
+ * and the SipKeepAliveListener is notified, so that a new flow can be registered.
+ * <p/>
+ * Like UdpKeepAlive, it has no thread of its own: all keep-alives are scheduled by the timer thread.
+ */
+public class SipKeepAlive extends UdpKeepAlive implements TransportFailureListener
+{
+    private static final String TAG = "Sip: SipKeepAlive";
+
+    /** Keep-alive ping for connection-oriented transports (RFC 5626) */
+    public static final String PING="\r\n\r\n";
+
+    /** Max time (in milliseconds) for receiving the pong of a keep-alive ping (RFC 5626) */
+    public static final long PONG_TIMEOUT=10000;
+
+    /** Class SipToken extends class Message in order to support simple and eventually malformed SIP message tokens. */
+    private static class SipToken extends Message
+    {  /** The raw message */
+    String token;
+        /** Creates a new SipToken. */
+        public SipToken(String str) {  super();  token=str;  }
+        /** Creates a new SipToken. */
+        public SipToken(Message msg) {  super();  token=msg.toString();  }
+        /** Gets string value of Message. */
+        public String toString() {  return token;  }
+        /** Gets message length */
+        public int getLength() {  return token.length();  }
+        /** Writes the raw message into a buffer. */
+        public boolean writeTo(ByteBuffer buffer)
+        {  if (buffer.remaining()<token.length()*3) return false;
+            SipByteParser.encode(token,0,token.length(),buffer);
+            return true;
+        }
+        /** Writes the raw message into a buffer. */
+        public void writeHeadTo(ByteBuffer buffer) {  SipByteParser.encode(token,0,token.length(),buffer);  }
+        /** The raw message has no separate body. */
+        public ByteBuffer getBodyBuffer() {  return null;  }
+    }
+
+    /** SipProvider */
+    SipProvider sip_provider;
+
+    /** Sip token */
+    Message sip_token=null;
+
+    /** Transport protocol */
+    String proto;
+
+    /** Whether the transport is connection-oriented (pings are sent, and pongs are expected) */
+    boolean reliable;
+
+    /** Target address, resolved asynchronously (null if not resolved yet) */
+    volatile String dest_addr=null;
+
+    /** Whether the target address is being resolved */
+    boolean resolving=false;
+
+    /** Connection the last ping has been sent through */
+    TransportConnId conn_id=null;
+
+    /** Time the last ping has been sent */
+    long ping_time=0;
+
+    /** Pong timeout */
+    Timer pong_to=null;
+
+    /** SipKeepAlive listener */
+    SipKeepAliveListener listener;
+
+
+    /** Creates a new SipKeepAlive. */
+    public SipKeepAlive(SipProvider sip_provider, SocketAddress target, long delta_time)
+    {  super(target,delta_time);
+        init(sip_provider,null,null,null);
+        start();
+    }
+
+    /** Creates a new SipKeepAlive. */
+    public SipKeepAlive(SipProvider sip_provider, SocketAddress target, Message sip_token, long delta_time)
+    {  super(target,delta_time);
+        init(sip_provider,null,sip_token,null);
+        start();
+    }
+
+    /** Creates a new SipKeepAlive.
+      * @param sip_provider the SipProvider
+      * @param proto the transport protocol (null for the default transport)
+      * @param target the target address
+      * @param sip_token the keep-alive token (null for CRLF over UDP, or the RFC 5626 ping over TCP and TLS)
+      * @param delta_time the time between two keep-alive tokens, in milliseconds
+      * @param listener the SipKeepAliveListener notified of flow failures (or null) */
+    public SipKeepAlive(SipProvider sip_provider, String proto, SocketAddress target, Message sip_token, long delta_time, SipKeepAliveListener listener)
+    {  super(target,delta_time);
+        init(sip_provider,proto,sip_token,listener);
+        start();
+    }
+
+
+    /** Inits the SipKeepAlive. */
+    private void init(SipProvider sip_provider, String proto, Message sip_token, SipKeepAliveListener listener)
+    {  this.sip_provider=sip_provider;
+        this.proto=(proto!=null)? proto.toLowerCase() : sip_provider.getDefaultTransport();
+        this.listener=listener;
+        reliable=sip_provider.isReliableTransport(this.proto);
+        if (sip_token==null)
+        {  sip_token=new SipToken(reliable? PING : new String(DEFAULT_TOKEN));
+        }
+        //if (target!=null)
+        //{  sip_token.setRemoteAddress(target.getAddress().toString());
+        //   sip_token.setRemotePort(target.getPort());
+        //}
+        this.sip_token=sip_token;
+        // start resolving the target now; the timer thread never waits for the name resolution
+        resolve();
+    }
+
+
+    /** Resolves the target address asynchronously (unless it is already being resolved). */
+    private void resolve()
+    {  SipProvider provider=sip_provider;
+        if (target==null || provider==null) return;
+        // else
+        synchronized (this)
+        {  if (resolving) return;
+            // else
+            resolving=true;
+        }
+        provider.getDnsResolver().resolve(target.getAddress().toString(),target.getPort(),proto,false,new DnsResolverListener()
+        {  public void onResolved(DnsResolver resolver, String host, DnsResolver.Target[] targets)
+            {  dest_addr=targets[0].getAddress().toString();
+                synchronized (SipKeepAlive.this) {  resolving=false;  }
+            }
+            public void onResolutionFailure(DnsResolver resolver, String host, Exception error)
+            {  Log.w(TAG, () -> "keep-alive target "+host+" not resolved: "+error);
+                synchronized (SipKeepAlive.this) {  resolving=false;  }
+            }
+        });
+    }
+
+
+    /** Stops sending keep-alive tokens */
+    public void halt()
+    {  super.halt();
+        TransportConnId id;
+        synchronized (this)
+        {  if (pong_to!=null) pong_to.halt();
+            id=conn_id;
+            conn_id=null;
+        }
+        SipProvider provider=sip_provider;
+        if (id!=null && provider!=null) provider.removeTransportFailureListener(id,this);
+    }
+
+
+    /** Sends the kepp-alive packet now. */
+    public void sendToken() throws java.io.IOException
+    {  // do send?
+        SipProvider provider=sip_provider;
+        if (!stop && target!=null && provider!=null)
+        {  String addr=dest_addr;
+            if (addr==null)
+            {  // the target is being resolved: this token is skipped
+                resolve();
+                return;
+            }
+            TransportConnId id=provider.sendMessage(sip_token,proto,addr,target.getPort(),127);
+            if (!reliable) return;
+            // else
+            if (id==null)
+            {  // no connection: the flow has failed, and a new connection will be tried at the next ping
+                dest_addr=null;
+                notifyFailure(new IOException("keep-alive ping to "+target+" not sent"));
+                return;
+            }
+            TransportConnId old_id;
+            synchronized (this)
+            {  old_id=conn_id;
+                conn_id=id;
+                if (pong_to==null) pong_to=new Timer(PONG_TIMEOUT,"Pong",this);
+                // the pong timeout is not restarted by the pings sent while waiting for a pong
+                if (!pong_to.isRunning() || !id.equals(old_id))
+                {  ping_time=System.currentTimeMillis();
+                    pong_to.start();
+                }
+            }
+            if (!id.equals(old_id))
+            {  if (old_id!=null) provider.removeTransportFailureListener(old_id,this);
+                provider.addTransportFailureListener(id,this);
+            }
+        }
+    }
+
+
+    /** From TimerListener. Sends the keep-alive tokens, and checks the pongs. */
+    public void onTimeout(Timer t)
+    {  if (t!=pong_to)
+        {  super.onTimeout(t);
+            return;
+        }
+        // else
+        TransportConnId id;
+        synchronized (this)
+        {  id=conn_id;
+            if (stop || id==null || sip_provider==null || sip_provider.getLastPongTime(id)>=ping_time) return;
+        }
+        onFlowFailure(id,new SocketTimeoutException("no keep-alive pong from "+target+" within "+PONG_TIMEOUT+"ms"));
+    }
+
+
+    /** From TransportFailureListener. When the connection toward the target fails. */
+    public void onTransportFailure(SipProvider sip_provider, TransportConnId conn_id, Exception error)
+    {  onFlowFailure(conn_id,error);
+    }
+
+
+    /** When a keep-alive token cannot be sent. The keep-alive has been already halted. */
+    protected void onFailure(Exception e)
+    {  Log.w(TAG, () -> "keep-alive "+this+" failed: "+e);
+        notifyFailure(e);
+        sip_provider=null;
+    }
+
+
+    /** When the flow through the connection <i>id</i> fails. The failure is notified once per connection;
+      * keep-alives are still sent, through a new connection. */
+    private void onFlowFailure(TransportConnId id, Exception error)
+    {  synchronized (this)
+        {  if (stop || !id.equals(conn_id)) return;
+            // else
+            conn_id=null;
+            if (pong_to!=null) pong_to.halt();
+        }
+        SipProvider provider=sip_provider;
+        if (provider!=null) provider.removeTransportFailureListener(id,this);
+        Log.w(TAG, () -> "flow "+id+" failed: "+error);
+        notifyFailure(error);
+    }
+
+
+    /** Notifies the listener of a flow failure. */
+    private void notifyFailure(Exception error)
+    {  SipKeepAliveListener l=listener;
+        if (l!=null) l.onKeepAliveFailure(this,error);
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  String str=null;
+        if (sip_provider!=null)
+        {  str="sip:"+sip_provider.getViaAddress()+":"+sip_provider.getPort()+"-->"+target.toString();
+        }
+        return str+" ("+delta_time+"ms)";
+    }
+
+}
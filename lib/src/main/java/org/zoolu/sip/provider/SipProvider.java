@@ -24,21 +24,24 @@
 package org.zoolu.sip.provider;
 
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.text.TextUtils;
-import android.util.Log;
+import org.zoolu.net.ByteBufferPool;
+import org.zoolu.net.DnsResolver;
+import org.zoolu.net.DnsResolverListener;
 import org.zoolu.net.IpAddress;
 import org.zoolu.sip.address.SipURL;
+import org.zoolu.sip.authentication.AuthenticationCache;
 import org.zoolu.sip.header.ViaHeader;
 import org.zoolu.sip.message.Message;
 import org.zoolu.tools.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 
@@ -124,6 +127,9 @@ public class SipProvider implements Configurable, TransportListener {
      * Use 'auto-configuration' for auto detection, or let it undefined. */
     private String via_addr = null;
 
+    /** Suffix of the Call-IDs, that is "@" followed by the via address */
+    private String call_id_suffix = null;
+
     /** Local SIP port */
     private int host_port = 0;
 
@@ -181,8 +187,14 @@ public class SipProvider implements Configurable, TransportListener {
     /** Network interface (IP address) used by SIP. */
     private IpAddress host_ipaddr=null;
 
+    /** Configuration of this SipProvider, and of its transports, transactions, and dialogs. */
+    private final SipConfig config;
+
+    /** Digest challenges received by the clients of this SipProvider, for preemptive authentication. */
+    private final AuthenticationCache auth_cache=new AuthenticationCache();
+
     /** Table of supported transport layers for SIP, as table:(String)protocol-->(Transport)transport. */
-    private Hashtable sip_transports=null;
+    private ConcurrentHashMap<String,Transport> sip_transports=null;
 
     /** Default transport */
     private String default_transport=null;
@@ -193,14 +205,60 @@ public class SipProvider implements Configurable, TransportListener {
     /** Whether forcing 'rport' parameter on incoming requests ('force-rport' mode). */
     private boolean force_rport=false;
 
-    /** Table of sip listeners as Hashtable:(SipId)id-->(SipProviderListener)listener */
-    private Hashtable sip_listeners=new Hashtable();
+    /** Table of sip listeners as table:(SipId)id-->(SipProviderListener)listener.
+      * It is a concurrent map, so that incoming messages can be dispatched without locking. */
+    private final ConcurrentHashMap<SipId,SipProviderListener> sip_listeners=new ConcurrentHashMap<SipId,SipProviderListener>();
+
+    /** List of promiscuous listeners (copy-on-write, since it is read for every incoming message) */
+    private final CopyOnWriteArrayList<SipProviderListener> promiscuous_listeners=new CopyOnWriteArrayList<SipProviderListener>();
+
+    /** List of exception listeners (copy-on-write) */
+    private final CopyOnWriteArrayList<SipProviderExceptionListener> exception_listeners=new CopyOnWriteArrayList<SipProviderExceptionListener>();
+
+    /** Table of transport failure listeners as table:(TransportConnId)conn_id-->(list of TransportFailureListener) */
+    private final ConcurrentHashMap<TransportConnId,CopyOnWriteArrayList<TransportFailureListener>> failure_listeners=new ConcurrentHashMap<TransportConnId,CopyOnWriteArrayList<TransportFailureListener>>();
+
+    /** Worker threads processing the received messages (null if messages are processed by the transport threads) */
+    private MessagePipeline message_pipeline=null;
+
+    /** Overload control of the received messages (null if not used) */
+    private OverloadControl overload_control=null;
+
+    /** Rate limiter of the datagrams received through UDP (null if not used) */
+    private FloodControl flood_control=null;
+
+    /** Received requests, for each method */
+    private static final Metrics.Family in_requests=Metrics.family("sip.in.request",32);
+
+    /** Received responses, for each status class (1xx-6xx) */
+    private static final Counter[] in_responses=newStatusCounters("sip.in.response");
+
+    /** Sent requests, for each method */
+    private static final Metrics.Family out_requests=Metrics.family("sip.out.request",32);
 
-    /** Vector of promiscuous listeners */
-    private Vector promiscuous_listeners=new Vector();
+    /** Sent responses, for each status class (1xx-6xx) */
+    private static final Counter[] out_responses=newStatusCounters("sip.out.response");
 
-    /** Vector of exception listeners */
-    private Vector exception_listeners=new Vector();
+    /** Received messages that are not valid SIP messages, or that caused an error while being processed */
+    private static final Counter parse_failures=Metrics.counter("sip.in.parse_failures");
+
+    /** Received messages not matching any listener */
+    private static final Counter dispatch_misses=Metrics.counter("sip.in.dispatch_misses");
+
+    /** Retransmitted messages, by all SipProviders */
+    private static final Counter retransmissions=Metrics.counter("sip.out.retransmissions");
+
+    /** Number of retransmitted messages (see sendMessage(SentMessage)) */
+    private final AtomicLong retransmission_count=new AtomicLong();
+
+    /** Number of retransmissions served from the cached destination and bytes */
+    private final AtomicLong cached_retransmission_count=new AtomicLong();
+
+    /** Pool of the buffers used for encoding the messages to be cached */
+    private static final ByteBufferPool encoding_pool=new ByteBufferPool(65535,4,false);
+
+    /** Resolver of the destination addresses (RFC 3263) */
+    private DnsResolver dns_resolver;
 
 
 
@@ -209,11 +267,20 @@ public class SipProvider implements Configurable, TransportListener {
 
     /** Creates a new SipProvider.
      * Costructs the SipProvider, initializing the SipProviderListeners, the transport protocols, and other attributes. */
-    public SipProvider(String via_addr, int host_port, Transport[] sip_transports, Context context) {
-        init(via_addr,host_port, context);
+    public SipProvider(String via_addr, int host_port, Transport[] sip_transports, Preferences prefs) {
+        this(configOf(prefs),via_addr,host_port,sip_transports);
+    }
+
+
+    /** Creates a new SipProvider with a given configuration.
+     * Costructs the SipProvider, initializing the SipProviderListeners, the transport protocols, and other attributes. */
+    public SipProvider(SipConfig config, String via_addr, int host_port, Transport[] sip_transports) {
+        if (!SipStack.isInit()) SipStack.init(null);
+        this.config=config;
+        init(via_addr,host_port);
 
         // init transport
-        this.sip_transports=new Hashtable();
+        this.sip_transports=new ConcurrentHashMap<String,Transport>();
         if (sip_transports!=null) {
             for (Transport sip_transport : sip_transports) setTransport(sip_transport);
             if (sip_transports.length>0) default_transport=sip_transports[0].getProtocol();
@@ -222,39 +289,57 @@ public class SipProvider implements Configurable, TransportListener {
 
 
     /** Creates a new SipProvider.
-     * The SipProvider attributres are read from file. */
-    public SipProvider(Context context) {
-
-        if (!SipStack.isInit())
-            SipStack.init(context);
+     * The SipProvider attributres are read from Preferences. */
+    public SipProvider(Preferences prefs) {
 
-        readAll(context);
-        init(via_addr, host_port, context);
+        config=configOf(prefs);
+        readAll(prefs);
+        init(via_addr, host_port);
         initSipTrasport(transport_protocols, transport_ports, host_ifaddr);
     }
 
 
+    /** Inits SipStack (if not already done) and gets the configuration read from Preferences. */
+    private static SipConfig configOf(Preferences prefs) {
+        if (!SipStack.isInit()) SipStack.init(prefs);
+        return new SipConfig(prefs);
+    }
+
+
     /** Inits the SipProvider, initializing the SipProviderListeners, the transport protocols, the outbound proxy, and other attributes. */
-    private void init(String via_addr, int host_port, Context context) {
-        if (!SipStack.isInit()) SipStack.init(context);
+    private void init(String via_addr, int host_port) {
         if (via_addr == null || via_addr.equalsIgnoreCase(AUTO_CONFIGURATION)) {
             via_addr = IpAddress.getLocalHostAddress().toString();
         }
 
         this.via_addr = via_addr;
-        if (host_port<=0) host_port=SipStack.default_port;
+        call_id_suffix="@"+via_addr;
+        if (host_port<=0) host_port=config.default_port;
         this.host_port=host_port;
-        rport=SipStack.use_rport;
-        force_rport=SipStack.force_rport;
+        rport=config.use_rport;
+        force_rport=config.force_rport;
+        if (config.message_workers>0)
+        {  message_pipeline=new MessagePipeline(this,config.message_workers,config.message_queue_size);
+            if (config.overload_low_delay>0) overload_control=new OverloadControl(this,message_pipeline,config.overload_low_delay,config.overload_high_delay,config.overload_retry_after);
+        }
+        if (config.flood_source_rate>0) flood_control=new FloodControl(config.flood_source_rate,config.flood_source_burst,config.flood_user_rate,config.flood_user_burst);
+        dns_resolver=new DnsResolver(config.getDnsServers(),config.dns_timeout);
+        dns_resolver.setDefaultPorts(config.default_port,config.default_tls_port);
 
         // just for backward compatibility..
-        if (outbound_port<0) outbound_port=SipStack.default_port;
+        if (outbound_port<0) outbound_port=config.default_port;
         if (outbound_addr!=null)
         {  if (outbound_addr.equalsIgnoreCase("NONE") || outbound_addr.equalsIgnoreCase("NO-OUTBOUND")) outbound_proxy=null;
         else outbound_proxy=new SipURL(outbound_addr,outbound_port);
         }
     }
 
+    /** Creates the UDP transport service: the NIO one if SipConfig.udp_readers is greater than 0, the blocking one otherwise. */
+    private Transport newUdpTransport(int port) throws IOException
+    {  if (config.udp_readers>0) return new NioUdpTransport(port,host_ipaddr,config.udp_readers);
+        else return new UdpTransport(port,host_ipaddr);
+    }
+
     /** Inits and starts the transport services. */
     private void initSipTrasport(String[] transport_protocols, int[] transport_ports, String ifaddr)
     {
@@ -262,12 +347,13 @@ public class SipProvider implements Configurable, TransportListener {
         if (ifaddr!=null && !ifaddr.equalsIgnoreCase(ALL_INTERFACES))
         {  try {  host_ipaddr=IpAddress.getByName(ifaddr);  } catch (IOException e) {  e.printStackTrace(); host_ipaddr=null;  }
         }
-        if (transport_protocols==null) transport_protocols=SipStack.default_transport_protocols;
+        if (transport_protocols==null) transport_protocols=config.getDefaultTransportProtocols();
         this.transport_protocols=transport_protocols;
         if (transport_protocols.length>0) default_transport=transport_protocols[0];
-        if (nmax_connections<=0) nmax_connections=SipStack.default_nmax_connections;
+        if (transport_protocols.length>0) dns_resolver.setTransportProtocols(transport_protocols);
+        if (nmax_connections<=0) nmax_connections=config.default_nmax_connections;
 
-        sip_transports=new Hashtable();
+        sip_transports=new ConcurrentHashMap<String,Transport>();
         for (int i=0; i<transport_protocols.length; i++)
         {  try
         {  String proto=transport_protocols[i].toLowerCase();
@@ -275,17 +361,17 @@ public class SipProvider implements Configurable, TransportListener {
             Transport transp=null;
             if (proto.equals(PROTO_UDP))
             {  if (port==0) port=host_port;
-                transp=new UdpTransport(port,host_ipaddr);
+                transp=newUdpTransport(port);
             }
             else
             if (proto.equals(PROTO_TCP))
             {  if (port==0) port=host_port;
-                transp=new TcpTransport(port,host_ipaddr,nmax_connections);
+                transp=new TcpTransport(port,host_ipaddr,nmax_connections,config);
             }
             else
             if (proto.equals(PROTO_TLS))
-            {  if (port==0) port=(host_port==SipStack.default_port)? SipStack.default_tls_port : host_port;
-                transp=new TlsTransport(port,host_ipaddr,nmax_connections,key_file,cert_file,trust_folder,trust_all);
+            {  if (port==0) port=(host_port==config.default_port)? config.default_tls_port : host_port;
+                transp=new TlsTransport(port,host_ipaddr,nmax_connections,key_file,cert_file,trust_folder,trust_all,config);
             }
             if (transp!=null)
             {  setTransport(transp);
@@ -303,7 +389,7 @@ public class SipProvider implements Configurable, TransportListener {
     {  for(Enumeration e=sip_transports.keys(); e.hasMoreElements(); )
     {  String proto=(String)e.nextElement();
         Transport transp=(Transport)sip_transports.get(proto);
-        Log.v(TAG, proto + " is going down");
+        Log.v(TAG, () -> proto + " is going down");
         transp.halt();
     }
         sip_transports.clear();
@@ -318,6 +404,8 @@ public class SipProvider implements Configurable, TransportListener {
         removeTransport(proto);
         sip_transports.put(proto,transport);
         transport.setListener(this);
+        if (transport instanceof UdpTransport) ((UdpTransport)transport).setFloodControl(flood_control);
+        else if (transport instanceof NioUdpTransport) ((NioUdpTransport)transport).setFloodControl(flood_control);
         if(default_transport == null)
             default_transport = proto;
 //        Log.v(TAG, proto + " is up at port " + transport.getLocalPort());
@@ -339,45 +427,25 @@ public class SipProvider implements Configurable, TransportListener {
     public synchronized void halt() {
 //        Log.v(TAG, "halt: SipProvider is going down");
         stopSipTrasport();
-        sip_listeners=new Hashtable();
-        promiscuous_listeners=new Vector();
-        exception_listeners=new Vector();
+        if (message_pipeline!=null)
+        {  message_pipeline.halt();
+            message_pipeline=null;
+            overload_control=null;
+        }
+        dns_resolver.halt();
+        sip_listeners.clear();
+        promiscuous_listeners.clear();
+        exception_listeners.clear();
+        failure_listeners.clear();
     }
 
-    public void readAll(Context context) {
-
-        SharedPreferences prefs = context.getSharedPreferences("SipStack", Context.MODE_PRIVATE);
+    public void readAll(Preferences prefs) {
 
         via_addr = prefs.getString("via_addr", via_addr);
         host_port = prefs.getInt("host_port", host_port);
         host_ifaddr = prefs.getString("host_ifaddr", host_ifaddr);
-
-        String tp = prefs.getString("transport_protocols", transport_protocols == null ? null : TextUtils.join(",", transport_protocols));
-        if(tp == null) transport_protocols = null;
-        else transport_protocols = tp.split(",");
-
-        if(transport_ports != null) {
-            String[] stpotrs = new String[transport_ports.length];
-            for (int i = 0; i < transport_ports.length; i++) {
-                stpotrs[i] = ""+transport_ports[i];
-            }
-            String tports = prefs.getString("transport_ports", TextUtils.join(",", stpotrs));
-            stpotrs = tports.split(",");
-            transport_ports = new int[stpotrs.length];
-            for (int i = 0; i < transport_ports.length; i++) {
-                transport_ports[i] = Integer.parseInt(stpotrs[i]);
-            }
-        } else {
-            String tports = prefs.getString("transport_ports", null);
-            if(tports == null) transport_ports = null;
-            else {
-                String [] stpotrs = tports.split(",");
-                transport_ports = new int[stpotrs.length];
-                for (int i = 0; i < transport_ports.length; i++) {
-                    transport_ports[i] = Integer.parseInt(stpotrs[i]);
-                }
-            }
-        }
+        transport_protocols = prefs.getStrings("transport_protocols", transport_protocols);
+        transport_ports = prefs.getInts("transport_ports", transport_ports);
 
         nmax_connections = prefs.getInt("nmax_connections", nmax_connections);
         String url = prefs.getString("outbound_proxy", null);
@@ -439,7 +507,7 @@ public class SipProvider implements Configurable, TransportListener {
 
     /** Gets a valid contact address with user rtpmap and transport information. */
     public SipURL getContactAddress(String user) {
-        SipURL url = (getPort() != SipStack.default_port) ? new SipURL(user, getViaAddress(), getPort()) : new SipURL(user, getViaAddress());
+        SipURL url = (getPort() != config.default_port) ? new SipURL(user, getViaAddress(), getPort()) : new SipURL(user, getViaAddress());
         if(!hasTransport(PROTO_UDP))
             url.addTransport(getDefaultTransport());
         return url;
@@ -448,7 +516,7 @@ public class SipProvider implements Configurable, TransportListener {
     /** Gets a valid secure contact address with user rtpmap and transport information. */
     public SipURL getSecureContactAddress(String user)
     {  if (hasTransport(SipProvider.PROTO_TLS))
-    {  SipURL url=(getTlsPort()!=SipStack.default_tls_port)? new SipURL(user,getViaAddress(),getTlsPort()) : new SipURL(user,getViaAddress());
+    {  SipURL url=(getTlsPort()!=config.default_tls_port)? new SipURL(user,getViaAddress(),getTlsPort()) : new SipURL(user,getViaAddress());
         url.setSecure(true);
         return url;
     }
@@ -495,6 +563,16 @@ public class SipProvider implements Configurable, TransportListener {
     {  return default_transport;
     }
 
+    /** Gets the configuration of this SipProvider. */
+    public SipConfig getConfig()
+    {  return config;
+    }
+
+    /** Gets the cache of the digest challenges, shared by the clients of this SipProvider. */
+    public AuthenticationCache getAuthenticationCache()
+    {  return auth_cache;
+    }
+
     /** Gets the default transport protocol. */
     public synchronized void setDefaultTransport(String proto)
     {  default_transport=proto;
@@ -550,8 +628,44 @@ public class SipProvider implements Configurable, TransportListener {
     {  nmax_connections=n;
     }
 
-    /** Returns the table of active listeners as Hastable:(SipId)IDs-->(SipListener)listener. */
-    public Hashtable getListeners()
+    /** Gets the MessagePipeline processing the received messages (or null if not used). */
+    public MessagePipeline getMessagePipeline()
+    {  return message_pipeline;
+    }
+
+    /** Gets the OverloadControl of the received messages (or null if not used). */
+    public OverloadControl getOverloadControl()
+    {  return overload_control;
+    }
+
+    /** Gets the FloodControl of the datagrams received through UDP (or null if not used). */
+    public FloodControl getFloodControl()
+    {  return flood_control;
+    }
+
+    /** Gets the current load level (see OverloadControl). */
+    public int getLoadLevel()
+    {  OverloadControl oc=overload_control;
+        return (oc!=null)? oc.getLoadLevel() : OverloadControl.LEVEL_NORMAL;
+    }
+
+    /** Gets the resolver of the destination addresses. */
+    public DnsResolver getDnsResolver()
+    {  return dns_resolver;
+    }
+
+    /** Gets the number of retransmitted messages (see sendMessage(SentMessage)). */
+    public long getRetransmissionCount()
+    {  return retransmission_count.get();
+    }
+
+    /** Gets the number of retransmissions served from the cached destination and bytes. */
+    public long getCachedRetransmissionCount()
+    {  return cached_retransmission_count.get();
+    }
+
+    /** Returns the table of active listeners as Map:(SipId)IDs-->(SipListener)listener. */
+    public Map<SipId,SipProviderListener> getListeners()
     {  return sip_listeners;
     }
 
@@ -561,29 +675,32 @@ public class SipProvider implements Configurable, TransportListener {
      * as to be associated to. It may identify a method, a transaction, or a dialog, or all messages.
      * Use SipProvider.ANY to capture all messages.
      * @param listener is the SipProviderListener that the specified type of messages has to be passed to. */
-    public synchronized void addSelectiveListener(SipId id, SipProviderListener listener) {
+    public void addSelectiveListener(SipId id, SipProviderListener listener) {
 //        Log.v(TAG, "setting SipProviderListener: "+id);
-        SipId key=id;
-        if (sip_listeners.containsKey(key))
+        SipId key=toKey(id);
+        if (sip_listeners.put(key,listener)!=null)
         {  Log.v(TAG,"setting a SipProvider listener with an identifier already selected: the previous listener is removed.");
-            sip_listeners.remove(key);
         }
-        sip_listeners.put(key,listener);
 //        Log.v(TAG, "active sip listeners: "+sip_listeners.size());
     }
 
 
+    /** Gets the key of the listener table for a SipId.
+     * If the alternative transaction id is configured, the sent-by is removed from TransactionIds. */
+    private SipId toKey(SipId id)
+    {  if (config.alternative_transaction_id && id instanceof TransactionId) return ((TransactionId)id).withoutSentBy();
+        else return id;
+    }
+
+
     /** Removes a SipProviderListener.
      * @param id is the identifier that specifies the messages that the listener was associated to. */
-    public synchronized void removeSelectiveListener(SipId id) {
+    public void removeSelectiveListener(SipId id) {
 //        Log.v(TAG, "removing SipProviderListener: "+id);
-        SipId key=id;
-        if (!sip_listeners.containsKey(key)) {
+        SipId key=toKey(id);
+        if (sip_listeners.remove(key)==null) {
 //            Log.v(TAG,"removeListener("+id+"): no such listener found.");
         }
-        else
-        {  sip_listeners.remove(key);
-        }
 //        Log.v(TAG, "active sip listeners: "+sip_listeners.size());
     }
 
@@ -595,57 +712,100 @@ public class SipProvider implements Configurable, TransportListener {
      * <br/> More that one SipProviderListener can be active in promiscuous mode at the same time;
      * in that case the same message is passed to all promiscuous SipProviderListeners.
      * @param listener is the SipProviderListener. */
-    public synchronized void addPromiscuousListener(SipProviderListener listener) {
+    public void addPromiscuousListener(SipProviderListener listener) {
 //        Log.v(TAG, "adding SipProviderListener in promiscuous mode");
-        if (promiscuous_listeners.contains(listener)) {
+        if (!promiscuous_listeners.addIfAbsent(listener)) {
 //            Log.v(TAG,"trying to add an already present SipProviderListener in promiscuous mode.");
         }
-        else
-        {  promiscuous_listeners.addElement(listener);
-        }
     }
 
 
     /** Removes a SipProviderListener in promiscuous mode.
      * @param listener is the SipProviderListener to be removed. */
-    public synchronized void removePromiscuousListener(SipProviderListener listener) {
+    public void removePromiscuousListener(SipProviderListener listener) {
 //        Log.v(TAG, "removing SipProviderListener in promiscuous mode");
-        if (!promiscuous_listeners.contains(listener)) {
+        if (!promiscuous_listeners.remove(listener)) {
 //            Log.v(TAG,"trying to remove a missed SipProviderListener in promiscuous mode.");
         }
-        else
-        {  promiscuous_listeners.removeElement(listener);
-        }
     }
 
 
     /** Adds a SipProviderExceptionListener.
      * The SipProviderExceptionListener is a listener for all exceptions thrown by the SipProviders.
      * @param listener is the SipProviderExceptionListener. */
-    public synchronized void addExceptionListener(SipProviderExceptionListener listener) {
+    public void addExceptionListener(SipProviderExceptionListener listener) {
 //        Log.v(TAG, "adding a SipProviderExceptionListener");
-        if (exception_listeners.contains(listener)) {
+        if (!exception_listeners.addIfAbsent(listener)) {
 //            Log.v(TAG,"trying to add an already present SipProviderExceptionListener.");
         }
-        else
-        {  exception_listeners.addElement(listener);
-        }
     }
 
 
     /** Removes a SipProviderExceptionListener.
      * @param listener is the SipProviderExceptionListener to be removed. */
-    public synchronized void removeExceptionListener(SipProviderExceptionListener listener) {
+    public void removeExceptionListener(SipProviderExceptionListener listener) {
 //        Log.v(TAG, "removing a SipProviderExceptionListener");
-        if (!exception_listeners.contains(listener)) {
+        if (!exception_listeners.remove(listener)) {
 //            Log.v(TAG,"trying to remove a missed SipProviderExceptionListener.");
         }
-        else
-        {  exception_listeners.removeElement(listener);
+    }
+
+
+    /** Adds a TransportFailureListener for the transport connection <i>conn_id</i>.
+      * The listener is notified (once) if the connection fails, or if it cannot be established;
+      * if the connection has already been closed, the listener is notified immediately.
+      * @param conn_id the transport connection id
+      * @param listener the TransportFailureListener */
+    public void addTransportFailureListener(TransportConnId conn_id, TransportFailureListener listener)
+    {  CopyOnWriteArrayList<TransportFailureListener> list=failure_listeners.get(conn_id);
+        if (list==null)
+        {  CopyOnWriteArrayList<TransportFailureListener> aux=failure_listeners.putIfAbsent(conn_id,list=new CopyOnWriteArrayList<TransportFailureListener>());
+            if (aux!=null) list=aux;
+        }
+        list.addIfAbsent(listener);
+        // the connection may have failed before the listener was added
+        if (!hasConnection(conn_id) && list.remove(listener))
+        {  listener.onTransportFailure(this,conn_id,new IOException("connection "+conn_id+" closed"));
         }
     }
 
 
+    /** Removes a TransportFailureListener.
+      * @param conn_id the transport connection id
+      * @param listener the TransportFailureListener to be removed */
+    public void removeTransportFailureListener(TransportConnId conn_id, TransportFailureListener listener)
+    {  CopyOnWriteArrayList<TransportFailureListener> list=failure_listeners.get(conn_id);
+        if (list!=null)
+        {  list.remove(listener);
+            if (list.isEmpty()) failure_listeners.remove(conn_id,list);
+        }
+    }
+
+
+    /** Gets the last time a keep-alive pong (RFC 5626) has been received through the transport connection <i>conn_id</i>.
+      * @return the time in milliseconds, 0 if no pong has been received, or -1 if the connection is not active */
+    public long getLastPongTime(TransportConnId conn_id)
+    {  for (Enumeration e=sip_transports.elements(); e.hasMoreElements(); )
+        {  Transport transp=(Transport)e.nextElement();
+            if (isReliableTransport(transp))
+            {  TransportConn conn=((ConnectedTransport)transp).peekConnection(conn_id);
+                if (conn!=null) return conn.getLastPongMillis();
+            }
+        }
+        return -1;
+    }
+
+
+    /** Whether a reliable transport has an active connection (established, or being established) matching <i>conn_id</i>. */
+    private boolean hasConnection(TransportConnId conn_id)
+    {  for (Enumeration e=sip_transports.elements(); e.hasMoreElements(); )
+        {  Transport transp=(Transport)e.nextElement();
+            if (isReliableTransport(transp) && ((ConnectedTransport)transp).hasConnection(conn_id)) return true;
+        }
+        return false;
+    }
+
+
     /** Sends the message <i>msg</i>.
      * <p/>
      * The destination for the request is computed as follows:
@@ -670,7 +830,18 @@ public class SipProvider implements Configurable, TransportListener {
      */
     public TransportConnId sendMessage(Message msg) {
 //        Log.v(TAG, "Sending message:\r\n"+msg.toString());
+        return send(new SentMessage(msg),false);
+    }
+
 
+    /** Selects the transport protocol, the destination address and port of a message,
+      * according to RFC 3261 (outbound proxy, Route, Request-URI, maddr; Via for responses).
+      * For requests, the port is left unspecified (0) if not present in the URI, and,
+      * if NAPTR records can be used, also the transport protocol is left unspecified (null);
+      * both are then selected by the DnsResolver (RFC 3263).
+      * The Via header of a request may be updated (maddr and ttl). */
+    private void route(SentMessage sent)
+    {  Message msg=sent.msg;
         // select the transport protocol
         ViaHeader via=msg.getViaHeader();
         String via_proto=via.getProtocol().toLowerCase();
@@ -697,8 +868,10 @@ public class SipProvider implements Configurable, TransportListener {
             }
             dest_addr=url.getHost();
             dest_port=url.getPort();
+            sent.secure=url.isSecure();
             if (url.isSecure()) proto="tls";
             else if (url.hasTransport()) proto=url.getTransport();
+            else if (dest_port<=0 && dns_resolver.hasNameServers()) proto=null;
             // if maddr is set, update the via header by adding maddr and ttl params
             if (url.hasMaddr())
             {  dest_addr=url.getMaddr();
@@ -708,28 +881,193 @@ public class SipProvider implements Configurable, TransportListener {
                 msg.removeViaHeader();
                 msg.addViaHeader(via);
             }
-            // if the resulting proto differs from via proto, update via
-            if (!via_proto.equalsIgnoreCase(proto))
-            {  via.setProtocol(proto);
-                msg.removeViaHeader();
-                msg.addViaHeader(via);
-            }
 //            Log.v(TAG, "using transport "+proto);
         }
         else
-        {  // RESPONSES
+        {  // RESPONSES (RFC 3261, section 18.2.2)
             SipURL url=via.getSipURL();
-            if (via.hasReceived()) dest_addr=via.getReceived(); else dest_addr=url.getHost();
-            if (via.hasRport()) dest_port=via.getRport();
+            if (via.hasMaddr())
+            {  dest_addr=via.getMaddr();
+                if (via.hasTtl()) ttl=via.getTtl();
+            }
+            else
+            {  if (via.hasReceived()) dest_addr=via.getReceived(); else dest_addr=url.getHost();
+                if (via.hasRport()) dest_port=via.getRport();
+            }
             if (dest_port<=0) dest_port=url.getPort();
+            if (dest_port<=0)
+            {  if (proto.equalsIgnoreCase("tls")) dest_port=config.default_tls_port;
+            else dest_port=config.default_port;
+            }
         }
 
-        if (dest_port<=0)
-        {  if (proto.equalsIgnoreCase("tls")) dest_port=SipStack.default_tls_port;
-        else dest_port=SipStack.default_port;
+        sent.proto=proto;
+        sent.dest_addr=dest_addr;
+        sent.dest_port=dest_port;
+        sent.ttl=ttl;
+    }
+
+
+    /** Sends a message that may be retransmitted.
+      * The first time, the destination is resolved and the message is sent as sendMessage(Message) does;
+      * if the transport is not reliable, the resolved destination and the encoded message are also cached.
+      * Following calls (retransmissions) send the cached bytes to the cached destination,
+      * while messages sent through reliable transports are not sent again.
+      * <p> If the destination is not in the DNS cache, the message is queued and sent asynchronously,
+      * as soon as the destination is resolved; if it cannot be sent, the failure listener of the SentMessage is notified.
+      * @return Returns a TransportConnId in case of connection-oriented delivery
+      * (e.g. TCP) or null in case of connection-less delivery (e.g. UDP) or if the message is queued */
+    public TransportConnId sendMessage(SentMessage sent)
+    {  return send(sent,true);
+    }
+
+
+    /** Sends a message that may be retransmitted (see sendMessage(SentMessage)).
+      * The DNS lookup is never done by the calling thread: if the destination is not cached,
+      * the message is queued and sent by the thread of the lookup.
+      * @param cache whether the selected target and the encoded message (for unreliable transports) have to be cached */
+    private TransportConnId send(SentMessage sent, boolean cache)
+    {  DnsResolver.Target[] targets;
+        TransportConnId conn_id=null;
+        try
+        {  synchronized (sent)
+            {  if (sent.count++>0)
+                {  retransmission_count.incrementAndGet();
+                    retransmissions.increment();
+                    if (sent.conn_id!=null) return sent.conn_id;
+                    // else
+                    if (sent.isCached())
+                    {  cached_retransmission_count.incrementAndGet();
+                        return sendMessage(sent.encoded,sent.proto,sent.dest_ipaddr,sent.dest_port,sent.ttl);
+                    }
+                    // else
+                    if (sent.resolving) return null;
+                }
+                // else
+                route(sent);
+                targets=dns_resolver.getCached(sent.dest_addr,sent.dest_port,sent.proto,sent.secure);
+                if (targets!=null) conn_id=deliver(sent,targets,cache);
+                else sent.resolving=true;
+            }
+        }
+        catch (IOException e)
+        {  onSendFailure(sent,e);
+            return null;
         }
+        if (targets!=null) return onSent(sent,conn_id);
+        // else
+        resolve(sent,cache);
+        return null;
+    }
+
+
+    /** Resolves the destination of a queued message (that has been already routed) asynchronously,
+      * and sends it as soon as it is resolved. */
+    private void resolve(final SentMessage sent, final boolean cache)
+    {  dns_resolver.resolve(sent.dest_addr,sent.dest_port,sent.proto,sent.secure,new DnsResolverListener()
+        {  public void onResolved(DnsResolver resolver, String host, DnsResolver.Target[] targets)
+            {  TransportConnId conn_id;
+                try
+                {  synchronized (sent)
+                    {  sent.resolving=false;
+                        conn_id=deliver(sent,targets,cache);
+                    }
+                }
+                catch (IOException e)
+                {  onSendFailure(sent,e);
+                    return;
+                }
+                onSent(sent,conn_id);
+            }
+            public void onResolutionFailure(DnsResolver resolver, String host, Exception error)
+            {  synchronized (sent)
+                {  sent.resolving=false;
+                }
+                onSendFailure(sent,error);
+            }
+        });
+    }
 
-        return sendMessage(msg,proto,dest_addr,dest_port,ttl);
+
+    /** When a message has been sent: if it has been sent through a connection, its failure listener is added for that connection.
+      * It must be called without holding the lock of the SentMessage, since the listener may be notified immediately. */
+    private TransportConnId onSent(SentMessage sent, TransportConnId conn_id)
+    {  if (conn_id!=null && sent.failure_listener!=null) addTransportFailureListener(conn_id,sent.failure_listener);
+        return conn_id;
+    }
+
+
+    /** When a message cannot be sent: its failure listener (if any) is notified, so that the transaction
+      * reports a transport error (RFC 3261, section 8.1.3.1).
+      * It must be called without holding the lock of the SentMessage. */
+    private void onSendFailure(SentMessage sent, Exception error)
+    {  Log.e(TAG, () -> "sending to "+sent.dest_addr+" failed: "+error);
+        if (sent.failure_listener!=null) sent.failure_listener.onTransportFailure(this,null,error);
+    }
+
+
+    /** Sends a message to the first of the <i>targets</i> that does not fail;
+      * failed targets are reported to the DnsResolver.
+      * If the message is a request and the selected transport differs from the Via one, the Via header is updated.
+      * It must be called holding the lock of the SentMessage.
+      * @param cache whether the selected target and the encoded message (for unreliable transports) have to be cached
+      * @exception java.io.IOException if no target is available */
+    private TransportConnId deliver(SentMessage sent, DnsResolver.Target[] targets, boolean cache) throws IOException
+    {  Message msg=sent.msg;
+        for (int i=0; i<targets.length; i++)
+        {  DnsResolver.Target target=targets[i];
+            String proto=target.getProtocol();
+            Transport transp=(Transport)sip_transports.get(proto);
+            if (transp==null) continue;
+            // else
+            if (msg.isRequest())
+            {  ViaHeader via=msg.getViaHeader();
+                if (!via.getProtocol().equalsIgnoreCase(proto))
+                {  via.setProtocol(proto);
+                    msg.removeViaHeader();
+                    msg.addViaHeader(via);
+                }
+            }
+            sent.proto=proto;
+            sent.dest_ipaddr=target.getAddress();
+            sent.dest_port=target.getPort();
+            sent.encoded=null;
+            if (cache && !isReliableTransport(transp))
+            {  // encode the message once
+                ByteBuffer buffer=encoding_pool.acquire();
+                try
+                {  if (msg.writeTo(buffer)) sent.encoded=new Message(buffer.array(),0,buffer.position());
+                }
+                finally
+                {  encoding_pool.release(buffer);
+                }
+            }
+            try
+            {  sent.conn_id=transmit((sent.encoded!=null)? sent.encoded : msg,proto,sent.dest_ipaddr,sent.dest_port,sent.ttl);
+                return sent.conn_id;
+            }
+            catch (IOException e)
+            {  Log.w(TAG, () -> "sending to "+target+" failed: "+e);
+                dns_resolver.reportFailure(target);
+                sent.encoded=null;
+            }
+        }
+        throw new IOException("no target available for "+sent.dest_addr);
+    }
+
+
+    /** Sends a message that may be retransmitted, using the specified transport connection
+      * (if not null), or as sendMessage(SentMessage) does. */
+    public TransportConnId sendMessage(SentMessage sent, TransportConnId conn_id)
+    {  if (conn_id==null) return sendMessage(sent);
+        // else
+        synchronized (sent)
+        {  if (sent.count++>0)
+            {  retransmission_count.incrementAndGet();
+                retransmissions.increment();
+            }
+        }
+        return sendMessage(sent.msg,conn_id);
     }
 
 
@@ -747,17 +1085,20 @@ public class SipProvider implements Configurable, TransportListener {
      * @return It returns a Connection in case of connection-oriented delivery
      * (e.g. TCP) or null in case of connection-less delivery (e.g. UDP)
      */
-    public TransportConnId sendMessage(Message msg, String proto, String dest_addr, int dest_port, int ttl)
+    public TransportConnId sendMessage(final Message msg, final String proto, String dest_addr, int dest_port, final int ttl)
     {
 //        if (log_all_packets || msg.getLength()>MIN_MESSAGE_LENGTH) Log.v(TAG, "Resolving host address '"+dest_addr+"'");
-        try
-        {  IpAddress dest_ipaddr=IpAddress.getByName(dest_addr);
-            return sendMessage(msg,proto,dest_ipaddr,dest_port,ttl);
-        }
-        catch (Exception e)
-        {  Log.e(TAG,"",e);
-            return null;
-        }
+        // if the address is not cached, the message is sent by the thread of the lookup
+        final TransportConnId[] conn_id=new TransportConnId[1];
+        dns_resolver.resolve(dest_addr,dest_port,proto,false,new DnsResolverListener()
+        {  public void onResolved(DnsResolver resolver, String host, DnsResolver.Target[] targets)
+            {  conn_id[0]=sendMessage(msg,proto,targets[0].getAddress(),targets[0].getPort(),ttl);
+            }
+            public void onResolutionFailure(DnsResolver resolver, String host, Exception error)
+            {  Log.e(TAG,"",error);
+            }
+        });
+        return conn_id[0];
     }
 
     /** Sends a Message, specifing the transport portocol, nexthop address and port. */
@@ -765,24 +1106,29 @@ public class SipProvider implements Configurable, TransportListener {
     {
 //        if (log_all_packets || msg.getLength()>MIN_MESSAGE_LENGTH) Log.v(TAG, "Sending message to "+(new TransportConnId(proto,dest_ipaddr,dest_port)).toString());
 
-        TransportConn conn=null;
         try
-        {  Transport transp=(Transport)sip_transports.get(proto.toLowerCase());
-            if (transp!=null)
-            {  conn=transp.sendMessage(msg,dest_ipaddr,dest_port,ttl);
-            }
-            else
-            {
-//                Log.v(TAG,"Unsupported protocol ("+proto+"): Message discarded");
-                return null;
-            }
+        {  return transmit(msg,proto,dest_ipaddr,dest_port,ttl);
         }
         catch (IOException e)
         {  Log.e(TAG,"",e);
             return null;
         }
+    }
+
+    /** Sends a Message through the transport <i>proto</i>.
+      * @return It returns a Connection in case of connection-oriented delivery, or null
+      * @exception java.io.IOException if the transport failed, or if it is not supported */
+    private TransportConnId transmit(Message msg, String proto, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException
+    {  Transport transp=(Transport)sip_transports.get(proto.toLowerCase());
+        if (transp==null)
+        {
+//            Log.v(TAG,"Unsupported protocol ("+proto+"): Message discarded");
+            throw new IOException("unsupported protocol "+proto);
+        }
+        TransportConn conn=transp.sendMessage(msg,dest_ipaddr,dest_port,ttl);
+        countMessage(msg,out_requests,out_responses);
         // logs
-        Log.v(SDP_TAG, "Message sent:\n\n"+msg.toString()+"\n");
+        if (Log.isLoggable(SDP_TAG,Log.VERBOSE)) Log.v(SDP_TAG, "Message sent:\n\n"+msg.toString()+"\n");
 
         if (conn!=null) return new TransportConnId(conn);
         else return null;
@@ -800,8 +1146,9 @@ public class SipProvider implements Configurable, TransportListener {
             if (isReliableTransport(transp)) conn=((ConnectedTransport)transp).sendMessage(msg,conn_id);
         }
         if (conn!=null)
-        {  // logs
-            Log.v(SDP_TAG, "Message sent:\n\n"+msg.toString()+"\n");
+        {  countMessage(msg,out_requests,out_responses);
+            // logs
+            if (Log.isLoggable(SDP_TAG,Log.VERBOSE)) Log.v(SDP_TAG, "Message sent:\n\n"+msg.toString()+"\n");
 
             return new TransportConnId(conn);
         }
@@ -813,25 +1160,43 @@ public class SipProvider implements Configurable, TransportListener {
 
     //************************* Callback methods *************************
 
-    /** From TransportListener. When a new SIP message is received. */
-    public synchronized void onReceivedMessage(Transport transport, Message msg)
+    /** From TransportListener. When a new SIP message is received.
+      * <p> If a MessagePipeline is used, the message is simply passed to it
+      * (unless it is rejected by the OverloadControl), otherwise it is processed
+      * by the current (transport) thread. */
+    public void onReceivedMessage(Transport transport, Message msg)
+    {  MessagePipeline pipeline=message_pipeline;
+        if (pipeline!=null)
+        {  OverloadControl oc=overload_control;
+            if (oc==null || oc.admit(msg)) pipeline.enqueue(transport,msg);
+        }
+        else processReceivedMessage(transport,msg);
+    }
+
+
+    /** Processes a received message.
+      * <p> It is not synchronized: messages received by different transports
+      * (or transport threads, or pipeline workers) are dispatched concurrently. */
+    void processReceivedMessage(Transport transport, Message msg)
     {  try
     {  // logs
-        Log.v(TAG, "Received message:\n" + msg.toString());
+        if (Log.isLoggable(TAG,Log.VERBOSE)) Log.v(TAG, "Received message:\n" + msg.toString());
 
         // discard too short messages
         if (msg.getLength()<=2)
-        {  if (log_all_packets) Log.v(TAG, "message too short: discarded\r\n");
+        {  parse_failures.increment();
+            if (log_all_packets) Log.v(TAG, "message too short: discarded\r\n");
             return;
         }
         // discard non-SIP messages
         String first_line=msg.getFirstLine();
         if (first_line==null || first_line.toUpperCase().indexOf("SIP/2.0")<0)
-        {  if (log_all_packets) Log.v(TAG, "NOT a SIP message: discarded\r\n");
+        {  parse_failures.increment();
+            if (log_all_packets) Log.v(TAG, "NOT a SIP message: discarded\r\n");
             return;
         }
 
-        Log.v(SDP_TAG, "Received message:\n\n"+msg.toString()+"\n");
+        if (Log.isLoggable(SDP_TAG,Log.VERBOSE)) Log.v(SDP_TAG, "Received message:\n\n"+msg.toString()+"\n");
 
         // if a request, handle "received" and "rport" parameters
         if (msg.isRequest())
@@ -841,7 +1206,7 @@ public class SipProvider implements Configurable, TransportListener {
             int src_port=msg.getRemotePort();
             String via_addr=vh.getHost();
             int via_port=vh.getPort();
-            if (via_port<=0) via_port=SipStack.default_port;
+            if (via_port<=0) via_port=config.default_port;
 
             if (!via_addr.equals(src_addr))
             {  vh.setReceived(src_addr);
@@ -867,75 +1232,79 @@ public class SipProvider implements Configurable, TransportListener {
 
         // is there any listeners?
         if (sip_listeners.size()==0)
-        {  Log.v(TAG, "no listener found: message discarded.");
+        {  dispatch_misses.increment();
+            Log.v(TAG, "no listener found: message discarded.");
             return;
         }
 
         // try to look for listeners in promiscuous mode
-        for (int i=0; i<promiscuous_listeners.size(); i++)
-        {  SipProviderListener listener=(SipProviderListener)promiscuous_listeners.elementAt(i);
+        for (SipProviderListener listener : promiscuous_listeners)
+        {
 //            Log.v(TAG, "message passed to promiscuous listener");
             listener.onReceivedMessage(this,msg);
         }
 
         // check if the message is still valid
         if (!msg.isRequest() && !msg.isResponse())
-        {  Log.v(TAG, "no valid SIP message: message discarded.");
-            Log.v(TAG, "message:\r\n"+msg.toString());
+        {  parse_failures.increment();
+            Log.v(TAG, "no valid SIP message: message discarded.");
+            if (Log.isLoggable(TAG,Log.VERBOSE)) Log.v(TAG, "message:\r\n"+msg.toString());
             return;
         }
+        countMessage(msg,in_requests,in_responses);
 
         // look for a specifid listener:
 
         // try to look for a transaction
+        // (a single get() for each key, since listeners may be concurrently added or removed)
         SipId key;
+        SipProviderListener lis;
         // pass requests to transaction servers and response to transaction clients
         if (msg.isRequest()) key=msg.getTransactionServerId(); else key=msg.getTransactionClientId();
 //        Log.v(TAG, "transaction-id: "+key);
-        if (sip_listeners.containsKey(key)) {
+        if ((lis=sip_listeners.get(toKey(key)))!=null) {
 //            Log.v(TAG, "message passed to transaction: "+key);
-            SipProviderListener lis = (SipProviderListener) sip_listeners.get(key);
-            if(lis != null) {
-//                Log.v(TAG, lis.getClass().toString());
-                lis.onReceivedMessage(this, msg);
-            }
+            deliver(lis,msg);
             return;
         }
         // try to look for a dialog
+        // (also for requests without To tag, since a UAS dialog is registered without local tag until it responds, e.g. for CANCEL)
         key=msg.getDialogId();
 //        Log.v(TAG, "dialog-id: "+key);
-        if (sip_listeners.containsKey(key))
+        if ((lis=sip_listeners.get(key))!=null)
         {
 //            Log.v(TAG, "message passed to dialog: "+key);
-            ((SipProviderListener)sip_listeners.get(key)).onReceivedMessage(this,msg);
+            deliver(lis,msg);
             return;
         }
         // try to look for a UAS
         key=msg.getMethodId();
-        if (sip_listeners.containsKey(key))
+        if ((lis=sip_listeners.get(key))!=null)
         {
 //            Log.v(TAG, "message passed to uas: "+key);
-            ((SipProviderListener)sip_listeners.get(key)).onReceivedMessage(this,msg);
+            deliver(lis,msg);
             return;
         }
         // try to look for a default MyUA
-        if (sip_listeners.containsKey(ANY))
-        {  Log.v(TAG, "message passed to uas: "+ANY);
-            ((SipProviderListener)sip_listeners.get(ANY)).onReceivedMessage(this,msg);
+        if ((lis=sip_listeners.get(ANY))!=null)
+        {  Log.v(TAG, () -> "message passed to uas: "+ANY);
+            deliver(lis,msg);
             return;
         }
 
         // if we are here, no listener_ID matched..
+        dispatch_misses.increment();
         Log.v(TAG, "no listener found matching that message: message discarded.");
         //Log.v(TAG, "Pending SipProviderListeners= "+getListeners().size(),3);
 //        Log.v(TAG, "active listeners: "+sip_listeners.size());
     }
     catch (Exception exception)
-    {  Log.v(TAG,"Error handling a new incoming message:\n"+msg.toString());
+    {  parse_failures.increment();
+        Log.v(TAG, () -> "Error handling a new incoming message:\n"+msg.toString());
         Log.e(TAG,"",exception);
-        for (int i=0; i<exception_listeners.size(); i++)
+        for (SipProviderExceptionListener listener : exception_listeners)
         {  try
-        {  ((SipProviderExceptionListener)exception_listeners.elementAt(i)).onMessageException(msg,exception);
+        {  listener.onMessageException(msg,exception);
         }
         catch (Exception e)
         {  Log.v(TAG,"Error handling the Exception");
@@ -946,15 +1315,61 @@ public class SipProvider implements Configurable, TransportListener {
     }
 
 
+    /** Counts a request by method (the cached MethodId, also used for dispatching), or a response by status class. */
+    private static void countMessage(Message msg, Metrics.Family requests, Counter[] responses)
+    {  try
+        {  if (msg.isRequest()) requests.get(msg.getMethodId().toString()).increment();
+            else
+            {  int n=msg.getStatusLine().getCode()/100;
+                responses[(n>=1 && n<=6)? n-1 : 6].increment();
+            }
+        }
+        catch (RuntimeException e)
+        {  // not a valid message: it is not counted
+        }
+    }
+
+
+    /** Creates the Counters of the response status classes: 1xx to 6xx, and "other". */
+    private static Counter[] newStatusCounters(String name)
+    {  Counter[] counters=new Counter[7];
+        for (int i=0; i<6; i++) counters[i]=Metrics.counter(name+"."+(i+1)+"xx");
+        counters[6]=Metrics.counter(name+".other");
+        return counters;
+    }
+
+
+    /** Passes the message to the selected listener.
+      * No lock is taken here, so that a listener receiving many messages (e.g. the UA listening for new INVITEs)
+      * does not serialize them; transactions and dialogs serialize their own messages
+      * (their onReceivedMessage() is synchronized). */
+    private void deliver(SipProviderListener listener, Message msg)
+    {  listener.onReceivedMessage(this,msg);
+    }
+
+
+    /** From TransportListener. When a transport connection fails, or it cannot be established.
+      * All TransportFailureListeners of the connection are notified, and then removed. */
+    public void onConnectionFailure(Transport transport, TransportConnId conn_id, Exception error)
+    {  Log.v(TAG, () -> "connection "+conn_id+" failed: "+error);
+        CopyOnWriteArrayList<TransportFailureListener> list=failure_listeners.remove(conn_id);
+        if (list!=null)
+        {  for (TransportFailureListener listener : list)
+            {  try {  listener.onTransportFailure(this,conn_id,error);  } catch (Exception e) {  Log.e(TAG,"",e);  }
+            }
+        }
+    }
+
+
     /** From TransportListener. When Transport terminates. */
     public void onTransportTerminated(Transport transport, Exception error)
-    {  Log.v(TAG, "transport "+transport+" terminated");
+    {  Log.v(TAG, () -> "transport "+transport+" terminated");
         // TRY TO RESTART UDP WHEN ERRORS OCCUR
         if (error!=null && transport.getProtocol().equals(PROTO_UDP))
         {  Log.v(TAG, "transport UDP terminated with error: trying to restart it (after 1000ms)..");
             try {  Thread.sleep(1000);  } catch (Exception e) {}
             try
-            {  Transport udp=new UdpTransport(host_port,host_ipaddr);
+            {  Transport udp=newUdpTransport(host_port);
                 setTransport(udp);
             }
             catch (Exception e)
@@ -972,30 +1387,43 @@ public class SipProvider implements Configurable, TransportListener {
      * The branch ID always begin with the characters "z9hG4bK". These
      * 7 characters are used by RFC 3261 as a magic cookie. */
     public static String pickBranch()
-    {  //String str=Long.toString(Math.abs(Random.nextLong()),16);
-        //if (str.length()<5) str+="00000";
-        //return "z9hG4bK"+str.substring(0,5);
-        return "z9hG4bK"+Random.nextHexString(8);
+    {  return IdGenerator.nextId("z9hG4bK",null);
     }
 
     /** Picks an unique branch value based on a SIP message.
      * This value could also be used as transaction ID */
     public String pickBranch(Message msg)
-    {  StringBuffer sb=new StringBuffer();
-        sb.append(msg.getRequestLine().getAddress().toString());
-        sb.append(getViaAddress()+getPort());
+    {  long h=hash(FNV_OFFSET,msg.getRequestLine().getAddress().toString());
+        h=hash(h,getViaAddress());
+        h=hash(h,getPort());
         ViaHeader top_via=msg.getViaHeader();
         if (top_via.hasBranch())
-            sb.append(top_via.getBranch());
+            h=hash(h,top_via.getBranch());
         else
-        {  sb.append(top_via.getHost()+top_via.getPort());
-            sb.append(msg.getCSeqHeader().getSequenceNumber());
-            sb.append(msg.getCallIdHeader().getCallId());
-            sb.append(msg.getFromHeader().getTag());
-            sb.append(msg.getToHeader().getTag());
+        {  h=hash(h,top_via.getHost());
+            h=hash(h,top_via.getPort());
+            h=hash(h,msg.getCSeqHeader().getSequenceNumber());
+            h=hash(h,msg.getCallIdHeader().getCallId());
+            h=hash(h,msg.getFromHeader().getTag());
+            h=hash(h,msg.getToHeader().getTag());
         }
-        //return "z9hG4bK"+(new MD5(unique_str)).asHex().substring(0,9);
-        return "z9hG4bK"+(new SimpleDigest(5,sb.toString())).asHex();
+        return "z9hG4bK"+IdGenerator.toBase32(h);
+    }
+
+    /** FNV-1a 64-bit offset basis */
+    private static final long FNV_OFFSET=0xcbf29ce484222325L;
+
+    /** Adds a string to a FNV-1a 64-bit hash, without copying it. */
+    private static long hash(long h, String str)
+    {  if (str==null) return h*0x100000001b3L;
+        for (int i=0; i<str.length(); i++) h=(h^str.charAt(i))*0x100000001b3L;
+        return h;
+    }
+
+    /** Adds a number to a FNV-1a 64-bit hash. */
+    private static long hash(long h, long n)
+    {  for (int i=0; i<8; i++, n>>>=8) h=(h^(n&0xff))*0x100000001b3L;
+        return h;
     }
 
 
@@ -1007,10 +1435,7 @@ public class SipProvider implements Configurable, TransportListener {
      * response to the same INVITE.  This is needed in order for a MyUA to
      * invite itself to a session. */
     public static String pickTag()
-    {  //String str=Long.toString(Math.abs(Random.nextLong()),16);
-        //if (str.length()<8) str+="00000000";
-        //return str.substring(0,8);
-        return Random.nextNumString(12);
+    {  return IdGenerator.nextId();
     }
 
     /** Picks a new tag. The tag is generated uniquely based on message <i>req</i>.
@@ -1030,7 +1455,7 @@ public class SipProvider implements Configurable, TransportListener {
      * It is implemented in the form "localid@host".
      * Call-id must be considered case-sensitive and is compared byte-by-byte. */
     public String pickCallId()
-    {  return pickCallId(getViaAddress());
+    {  return IdGenerator.nextId(null,call_id_suffix);
     }
 
 
@@ -1040,10 +1465,7 @@ public class SipProvider implements Configurable, TransportListener {
      * form "localid@host". Call-id must be considered case-sensitive and is
      * compared byte-by-byte. */
     public static String pickCallId(String hostaddr)
-    {  //String str=Long.toString(Math.abs(Random.nextLong()),16);
-        //if (str.length()<12) str+="000000000000";
-        //return str.substring(0,12)+"@"+hostaddr();
-        return Random.nextNumString(12)+"@"+hostaddr;
+    {  return IdGenerator.nextId(null,"@"+hostaddr);
     }
 
 
@@ -1077,12 +1499,12 @@ public class SipProvider implements Configurable, TransportListener {
          if (outbound_proxy!=null)
          {  String host=outbound_proxy.getHost();
             int port=outbound_proxy.getPort();
-            SipURL url=(port>0 && port!=SipStack.default_port)? new SipURL(str,host,port) : new SipURL(str,host);
+            SipURL url=(port>0 && port!=config.default_port)? new SipURL(str,host,port) : new SipURL(str,host);
             if (outbound_proxy.isSecure()) url.setSecure(true);
             return url;
          }
          else
-         {  SipURL url=(host_port>0 && host_port!=SipStack.default_port)? new SipURL(str,via_addr,host_port) : new SipURL(str,via_addr);
+         {  SipURL url=(host_port>0 && host_port!=config.default_port)? new SipURL(str,via_addr,host_port) : new SipURL(str,via_addr);
             if (transport_protocols[0].equals(PROTO_TLS)) url.setSecure(true);
             return url;
          }
@@ -24,9 +24,9 @@
 package org.zoolu.sip.provider;
 
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.text.TextUtils;
+import org.zoolu.tools.Metrics;
+import org.zoolu.tools.MonitoredObject;
+import org.zoolu.tools.Preferences;
 import org.zoolu.tools.Timer;
 
 
@@ -34,6 +34,10 @@ import org.zoolu.tools.Timer;
  * <p>
  * SipStack attributes are: the default SIP port, default supported transport protocols,
  * timeouts, log configuration, etc.
+ * <p>
+ * Most attributes are only the defaults of the configuration of each SipProvider (see SipConfig),
+ * that is read when the SipProvider is created; the others (ports, timers, and monitoring)
+ * are common to the whole JVM.
  */
 public class SipStack {
 
@@ -57,12 +61,14 @@ public class SipStack {
     /** Default SIP port.
      * Note that this is not the port used by the running stack, but simply the standard default SIP port.
      * <br> Normally it sould be set to 5060 as defined by RFC 3261. Using a different value may cause
-     * some problems when interacting with other unaware SIP UAs. */
+     * some problems when interacting with other unaware SIP UAs.
+     * <br> It is the default of SipConfig.default_port. */
     public static int default_port = 5060;
     /** Default SIP port for TLS transport (SIPS).
      * Note that this is not the port used by the running stack, but simply the standard default SIPS port.
      * <br> Normally it sould be set to 5061 as defined by RFC 3261. Using a different value may cause
-     * some problems when interacting with other unaware SIP UAs. */
+     * some problems when interacting with other unaware SIP UAs.
+     * <br> It is the default of SipConfig.default_tls_port. */
     static int default_tls_port = 5061;
     /** Default supported transport protocols. */
     static String[] default_transport_protocols = { SipProvider.PROTO_UDP, SipProvider.PROTO_TCP };
@@ -72,6 +78,43 @@ public class SipStack {
     static boolean use_rport = true;
     /** Whether adding (forcing) 'rport' parameter on via header fields of incoming requests. */
     static boolean force_rport = false;
+    /** Number of worker threads that process the received messages (see MessagePipeline).
+     * If 0, received messages are processed directly by the transport receive threads. */
+    static int message_workers = 0;
+    /** Max number of received messages waiting for each worker thread. */
+    static int message_queue_size = 1024;
+    /** Queue delay (in milliseconds) of the received messages beyond which new requests start to be rejected (see OverloadControl).
+     * Overload control requires the message workers; if 0, it is disabled. */
+    static long overload_low_delay = 200;
+    /** Queue delay (in milliseconds) of the received messages beyond which all new requests are rejected. */
+    static long overload_high_delay = 1000;
+    /** Retry-After value (in seconds) of the 503 responses sent to rejected requests. */
+    static int overload_retry_after = 10;
+    /** Max number of datagrams per second received through UDP from each source address, beyond which they are dropped
+     * before being parsed (see FloodControl). If 0, received datagrams are not rate-limited. */
+    static int flood_source_rate = 100;
+    /** Max number of datagrams received through UDP from a source address in a burst. */
+    static int flood_source_burst = 200;
+    /** Max number of requests per second received through UDP from each From user (0 for not limiting users). */
+    static int flood_user_rate = 0;
+    /** Max number of requests received through UDP from a From user in a burst. */
+    static int flood_user_burst = 50;
+    /** Number of NIO sockets bound to the UDP port, each one with its own reader thread (see NioUdpTransport).
+     * If 0, the blocking UdpTransport is used; more than one socket requires SO_REUSEPORT. */
+    static int udp_readers = 0;
+    /** Number of I/O threads serving all the connections of each TCP or TLS transport (see NioTcpProvider). */
+    static int tcp_io_threads = 2;
+    /** Max time (in milliseconds) for establishing an outgoing TCP or TLS connection, including the TLS handshake (0 for no timeout). */
+    static int connect_timeout = 10000;
+    /** Max size of the headers of a SIP message received through a stream (TCP or TLS) connection. */
+    static int max_header_size = 16384;
+    /** Max size of the body of a SIP message received through a stream (TCP or TLS) connection. */
+    static int max_body_size = 1048576;
+    /** Name servers used for locating SIP servers through NAPTR and SRV records (RFC 3263), as "address" or "address:port".
+     * If empty, only A and AAAA records are resolved, through the system resolver. */
+    static String[] dns_servers = {};
+    /** Timeout of each DNS query attempt (milliseconds). */
+    static int dns_timeout = 2000;
 
     // ********************* transaction timeouts *********************
 
@@ -87,9 +130,12 @@ public class SipStack {
     // ******************** general configurations ********************
 
     /** default max-forwards value (RFC3261 recommends value 70) */
-    private static int max_forwards=70;
-    /** Whether using only one thread for all timer instances (less precise but more efficient). */
+    static int max_forwards=70;
+    /** Whether using only one thread for all timer instances (less precise but more efficient).
+     * It applies to the whole JVM, since all timers share one timing wheel. */
     private static boolean single_timer=true;
+    /** Whether counting the live instances of the monitored classes (see MonitoredObject); it has a cost for each new message, transaction, and timer. */
+    private static boolean monitor_objects=false;
     /** Whether at UAS side automatically sending (by default) a 100 Trying on INVITE. */
     public static boolean auto_trying=true;
     /** Whether 1xx responses create an "early dialog" for methods that create dialog. */
@@ -119,16 +165,17 @@ public class SipStack {
      * This is a non-standard behaviour and is normally not necessary. */
     public static boolean on_dialog_route = false;
 
-    /** Whether using an alternative transaction id that does not include the 'sent-by' value. */
+    /** Whether using an alternative transaction id that does not include the 'sent-by' value
+     * (default of SipConfig.alternative_transaction_id). */
     static boolean alternative_transaction_id = false;
 
     /* ************************** costructor ************************** */
 
-    /** Inits SipStack from the specified <i>file</i> */
-    public static void init(Context context) {
+    /** Inits SipStack from the specified Preferences (or with the default values, if <i>prefs</i> is null) */
+    public static void init(Preferences prefs) {
 
-        if(context != null)
-            readAll(context);
+        if(prefs != null)
+            readAll(prefs);
 
         // user-agent info
         if (ua_info!=null && (ua_info.length()==0 || ua_info.equalsIgnoreCase("NONE") || ua_info.equalsIgnoreCase("NO-MyUA-INFO")))
@@ -141,6 +188,10 @@ public class SipStack {
         // timers
         Timer.SINGLE_THREAD = single_timer;
 
+        // metrics
+        MonitoredObject.setEnabled(monitor_objects);
+        Metrics.registerMBean();
+
         is_init = true;
     }
 
@@ -149,41 +200,14 @@ public class SipStack {
         return is_init;
     }
 
-    private static void readAll(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("SipStack", Context.MODE_PRIVATE);
-
-        // default sip provider configurations
-        default_port = prefs.getInt("default_port", default_port);
-        default_tls_port = prefs.getInt("default_tls_port", default_tls_port);
-        String dtp = prefs.getString("default_transport_protocols", TextUtils.join(",", default_transport_protocols));
-        default_transport_protocols = dtp.split(",");
-        default_nmax_connections = prefs.getInt("default_nmax_connections", default_nmax_connections);
-        use_rport = prefs.getBoolean("use_rport", use_rport);
-        force_rport = prefs.getBoolean("force_rport", force_rport);
-
-        // transaction timeouts
-        retransmission_timeout = prefs.getLong("retransmission_timeout", retransmission_timeout);
-        max_retransmission_timeout = prefs.getLong("max_retransmission_timeout", max_retransmission_timeout);
-        transaction_timeout = prefs.getLong("transaction_timeout", transaction_timeout);
-        clearing_timeout = prefs.getLong("clearing_timeout", clearing_timeout);
-
-        // general configurations
-        max_forwards = prefs.getInt("max_forwards", max_forwards);
+    private static void readAll(Preferences prefs) {
+
+        // values of the whole JVM
         single_timer = prefs.getBoolean("single_timer", single_timer);
-        auto_trying = prefs.getBoolean("auto_trying", auto_trying);
-        early_dialog = prefs.getBoolean("early_dialog", early_dialog);
-        default_expires = prefs.getInt("default_expires", default_expires);
-        ua_info = prefs.getString("ua_info", ua_info);
-        server_info = prefs.getString("server_info", server_info);
-
-        // registration client configurations
-        regc_min_attempt_timeout = prefs.getLong("regc_min_attempt_timeout", regc_min_attempt_timeout);
-        regc_max_attempt_timeout = prefs.getLong("regc_max_attempt_timeout", regc_max_attempt_timeout);
-        regc_auth_attempts = prefs.getInt("regc_auth_attempts", regc_auth_attempts);
-
-        // extensions
-        on_dialog_route = prefs.getBoolean("on_dialog_route", on_dialog_route);
-        alternative_transaction_id = prefs.getBoolean("alternative_transaction_id", alternative_transaction_id);
+        monitor_objects = prefs.getBoolean("monitor_objects", monitor_objects);
+
+        // defaults of the SipProvider configurations
+        new SipConfig(prefs).setAsDefault();
     }
 
 }
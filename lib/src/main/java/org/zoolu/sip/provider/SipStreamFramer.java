@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.sip.message.Message;
+import java.io.IOException;
+
+
+/** Class SipStreamFramer extracts SIP messages from a stream of bytes (e.g. a TCP connection),
+  * using the Content-Length header.
+  * <p> Received bytes are appended to a ring buffer; at every call of next() only the bytes
+  * that have not been scanned yet are searched for the end of the message headers,
+  * while header lines are checked for the Content-Length as soon as they are complete.
+  * Complete messages are sliced out of the ring buffer, without moving the bytes that follow.
+  * <p> Messages whose header or body exceed the given limits are rejected,
+  * as well as messages without Content-Length header: in these cases an IOException is thrown,
+  * and the stream should be closed.
+  * <p> CRLFs between messages are RFC 5626 keep-alives. The run of CRLFs is tracked across push() calls,
+  * so that a ping (CRLFCRLF) is recognized even if it is split across reads:
+  * the first CRLF of a run is counted as a pong, and every second CRLF of a run completes a ping.
+  */
+public class SipStreamFramer
+{
+    /** Initial size of the ring buffer (it must be a power of 2) */
+    static final int INITIAL_SIZE=4096;
+
+    /** Max size of the headers (start line included) */
+    int max_header_size;
+
+    /** Max size of the body */
+    int max_body_size;
+
+    /** Ring buffer */
+    byte[] ring=new byte[INITIAL_SIZE];
+
+    /** Mask for computing the buffer index (ring.length-1) */
+    int mask=INITIAL_SIZE-1;
+
+    /** Index of the first byte within the buffer */
+    int head=0;
+
+    /** Number of bytes within the buffer */
+    int count=0;
+
+    /** Whether the headers of the current message are being scanned */
+    boolean in_headers=false;
+
+    /** Number of bytes of the current message that have been already scanned */
+    int scan=0;
+
+    /** Beginning of the current header line (relative to the message) */
+    int line_start=0;
+
+    /** Size of the headers, including the empty line (0 until the end of headers has been found) */
+    int header_len=0;
+
+    /** Value of the Content-Length header (-1 if not found) */
+    int content_length=-1;
+
+    /** Number of CRLFs in the current run between messages, modulo 2 */
+    int crlf_run=0;
+
+    /** Number of keep-alive pongs (CRLF) received (see takePongs()) */
+    int pongs=0;
+
+    /** Number of keep-alive pings (CRLFCRLF) received (see takePings()) */
+    int pings=0;
+
+
+    /** Creates a new SipStreamFramer.
+      * @param max_header_size the max size of the message headers (start line included)
+      * @param max_body_size the max size of the message body */
+    public SipStreamFramer(int max_header_size, int max_body_size)
+    {  this.max_header_size=max_header_size;
+        this.max_body_size=max_body_size;
+    }
+
+
+    /** Gets the number of buffered bytes. */
+    public int available()
+    {  return count;
+    }
+
+
+    /** Appends <i>len</i> bytes of <i>data</i> starting from <i>offset</i>. */
+    public void push(byte[] data, int offset, int len)
+    {  ensureCapacity(count+len);
+        int tail=(head+count)&mask;
+        int n=Math.min(len,ring.length-tail);
+        System.arraycopy(data,offset,ring,tail,n);
+        if (n<len) System.arraycopy(data,offset+n,ring,0,len-n);
+        count+=len;
+    }
+
+
+    /** Gets the next complete message, or null if no complete message is available.
+      * Leading CRLFs (e.g. keep-alives) are skipped.
+      * @exception IOException if the message exceeds the limits or has no Content-Length */
+    public Message next() throws IOException
+    {  if (header_len==0)
+        {  if (!in_headers)
+            {  // skip any CRLF sequence
+                while (count>0 && (ring[head]=='\r' || ring[head]=='\n'))
+                {  if (ring[head]=='\n')
+                    {  if (crlf_run==0) pongs++;
+                        else pings++;
+                        crlf_run^=1;
+                    }
+                    consume(1);
+                }
+                if (count==0) return null;
+                // else
+                crlf_run=0;
+                in_headers=true;
+                scan=0;
+                line_start=0;
+                content_length=-1;
+            }
+            // scan only the new bytes
+            while (scan<count)
+            {  if (ring[(head+scan++)&mask]!='\n') continue;
+                // else
+                int line_end=scan-1;
+                if (line_end>line_start && ring[(head+line_end-1)&mask]=='\r') line_end--;
+                if (line_end==line_start)
+                {  header_len=scan;
+                    break;
+                }
+                if (content_length<0) content_length=getContentLength(line_start,line_end);
+                line_start=scan;
+            }
+            if (header_len==0)
+            {  if (scan>max_header_size) throw new IOException("SIP message headers exceed "+max_header_size+" bytes");
+                return null;
+            }
+            // else
+            in_headers=false;
+            if (header_len>max_header_size) throw new IOException("SIP message headers exceed "+max_header_size+" bytes");
+            if (content_length<0) throw new IOException("SIP message without Content-Length");
+            if (content_length>max_body_size) throw new IOException("SIP message body exceeds "+max_body_size+" bytes ("+content_length+")");
+        }
+        int len=header_len+content_length;
+        if (count<len) return null;
+        // else
+        Message msg;
+        int end=head+len;
+        if (end<=ring.length) msg=new Message(ring,head,len);
+        else
+        {  // the message wraps around the end of the buffer
+            byte[] data=new byte[len];
+            int n=ring.length-head;
+            System.arraycopy(ring,head,data,0,n);
+            System.arraycopy(ring,0,data,n,len-n);
+            msg=new Message(data,0,len);
+        }
+        consume(len);
+        header_len=0;
+        return msg;
+    }
+
+
+    /** Gets and resets the number of RFC 5626 keep-alive pongs (CRLF) received since the last call.
+      * The first half of a ping is counted as a pong as well, since it cannot be told apart until the ping is complete. */
+    public int takePongs()
+    {  int n=pongs;
+        pongs=0;
+        return n;
+    }
+
+
+    /** Gets and resets the number of RFC 5626 keep-alive pings (CRLFCRLF) received since the last call. */
+    public int takePings()
+    {  int n=pings;
+        pings=0;
+        return n;
+    }
+
+
+    /** Gets the value of the Content-Length header, if the line [<i>begin</i>,<i>end</i>) is a Content-Length header; otherwise returns -1. */
+    private int getContentLength(int begin, int end)
+    {  int i=matchName(begin,end,"Content-Length");
+        if (i<0) i=matchName(begin,end,"l");
+        if (i<0) return -1;
+        // else
+        while (i<end && isWSP(ring[(head+i)&mask])) i++;
+        int n=0;
+        int digits=0;
+        for (; i<end; i++, digits++)
+        {  byte b=ring[(head+i)&mask];
+            if (b<'0' || b>'9') break;
+            if (n>max_body_size) return n;
+            n=n*10+(b-'0');
+        }
+        return (digits>0)? n : -1;
+    }
+
+
+    /** Gets the index following the colon, if the line [<i>begin</i>,<i>end</i>) is a <i>hname</i> header; otherwise returns -1. */
+    private int matchName(int begin, int end, String hname)
+    {  int len=hname.length();
+        if (end-begin<=len) return -1;
+        for (int k=0; k<len; k++)
+        {  int b=ring[(head+begin+k)&mask];
+            int c=hname.charAt(k);
+            if (b!=c && toLowerCase(b)!=toLowerCase(c)) return -1;
+        }
+        int i=begin+len;
+        while (i<end && isWSP(ring[(head+i)&mask])) i++;
+        if (i<end && ring[(head+i)&mask]==':') return i+1;
+        else return -1;
+    }
+
+
+    /** Whether the byte is a space or a tab. */
+    private static boolean isWSP(byte b)
+    {  return b==' ' || b=='\t';
+    }
+
+
+    /** ASCII lower case. */
+    private static int toLowerCase(int c)
+    {  if (c>='A' && c<='Z') return c+('a'-'A');
+        else return c;
+    }
+
+
+    /** Removes <i>len</i> bytes from the beginning of the buffer. */
+    private void consume(int len)
+    {  count-=len;
+        if (count==0)
+        {  head=0;
+            // release the memory used by large messages
+            if (ring.length>INITIAL_SIZE*16)
+            {  ring=new byte[INITIAL_SIZE];
+                mask=INITIAL_SIZE-1;
+            }
+        }
+        else head=(head+len)&mask;
+    }
+
+
+    /** Grows the buffer, if needed, so that it can contain <i>size</i> bytes. */
+    private void ensureCapacity(int size)
+    {  if (size<=ring.length) return;
+        // else
+        int capacity=ring.length;
+        while (capacity<size) capacity<<=1;
+        byte[] aux=new byte[capacity];
+        int n=Math.min(count,ring.length-head);
+        System.arraycopy(ring,head,aux,0,n);
+        System.arraycopy(ring,0,aux,n,count-n);
+        ring=aux;
+        mask=capacity-1;
+        head=0;
+    }
+}
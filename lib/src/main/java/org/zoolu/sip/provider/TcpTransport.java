@@ -25,7 +25,7 @@ package org.zoolu.sip.provider;
 
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.net.*;
 
 import java.io.IOException;
@@ -42,8 +42,8 @@ public class TcpTransport extends ConnectedTransport {
     /** TCP protocol type */
     public static final String PROTO_TCP="tcp";
 
-    /** TCP server */
-    TcpServer tcp_server=null;
+    /** TCP provider, accepting and serving all connections */
+    NioTcpProvider tcp_provider=null;
 
 
 
@@ -61,12 +61,19 @@ public class TcpTransport extends ConnectedTransport {
     }
 
 
+    /** Creates a new TcpTransport with a given configuration */
+    public TcpTransport(int local_port, IpAddress host_ipaddr, int nmax_connections, SipConfig config) throws IOException
+    {  super(local_port,nmax_connections,config);
+        initTcp(local_port,host_ipaddr);
+    }
+
+
     /** Inits the TcpTransport */
     protected void initTcp(int local_port, IpAddress host_ipaddr) throws IOException
-    {  if (tcp_server!=null) tcp_server.halt();
+    {  if (tcp_provider!=null) tcp_provider.halt();
         // start tcp
-        if (host_ipaddr==null) tcp_server=new TcpServer(local_port,this);
-        else tcp_server=new TcpServer(local_port,host_ipaddr,this);
+        tcp_provider=new NioTcpProvider(local_port,host_ipaddr,config.tcp_io_threads,null,this);
+        tcp_provider.setConnectTimeout(config.connect_timeout);
     }
 
 
@@ -78,7 +85,7 @@ public class TcpTransport extends ConnectedTransport {
 
     /** Gets local port */
     public int getLocalPort()
-    {  if (tcp_server!=null) return tcp_server.getPort();
+    {  if (tcp_provider!=null) return tcp_provider.getPort();
     else return 0;
     }
 
@@ -86,16 +93,16 @@ public class TcpTransport extends ConnectedTransport {
     /** Stops running */
     public void halt()
     {  super.halt();
-        if (tcp_server!=null) tcp_server.halt();
+        if (tcp_provider!=null) tcp_provider.halt();
     }
 
 
-    /** From TcpServerListener. When a new incoming connection is established */
-    public void onIncomingConnection(TcpServer tcp_server, TcpSocket socket) {
-        Log.v(TAG, "incoming connection from "+socket.getAddress()+":"+socket.getPort());
-        if (tcp_server==this.tcp_server)
-        {  TransportConn conn=new TcpTransportConn(socket,this);
-            Log.v(TAG, "tcp connection "+conn+" opened");
+    /** From NioTcpProviderListener. When a new incoming connection is established */
+    public void onIncomingConnection(NioTcpProvider tcp_provider, NioTcpConnection tcp_conn) {
+        Log.v(TAG, () -> "incoming connection from "+tcp_conn.getRemoteAddress()+":"+tcp_conn.getRemotePort());
+        if (tcp_provider==this.tcp_provider)
+        {  TransportConn conn=new TcpTransportConn(tcp_conn,this,config);
+            Log.v(TAG, () -> "tcp connection "+conn+" opened");
             addConnection(conn);
         }
     }
@@ -103,14 +110,14 @@ public class TcpTransport extends ConnectedTransport {
 
     /** Creates a transport connection to the remote end-point. */
     protected TransportConn createTransportConn(IpAddress dest_ipaddr, int dest_port) throws IOException
-    {  TcpSocket tcp_socket=new TcpSocket(dest_ipaddr,dest_port);
-        return new TcpTransportConn(tcp_socket,this);
+    {  NioTcpConnection tcp_conn=tcp_provider.connect(dest_ipaddr,dest_port);
+        return new TcpTransportConn(tcp_conn,this,config);
     }
 
 
     /** Gets a String representation of the Object */
     public String toString()
-    {  if (tcp_server!=null) return tcp_server.toString();
+    {  if (tcp_provider!=null) return tcp_provider.toString();
     else return null;
     }
 
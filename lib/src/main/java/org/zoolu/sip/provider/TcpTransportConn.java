@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+import org.zoolu.tools.Log;
+import org.zoolu.net.*;
+import org.zoolu.sip.message.Message;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+
+/** TcpTransportConn provides a TCP trasport service for SIP.
+ */
+class TcpTransportConn implements TransportConn, NioTcpConnectionListener
+{
+    private static final String TAG = "Sip: TcpTransportConn";
+
+    /** TCP protocol type */
+    static final String PROTO_TCP="tcp";
+
+    /** Keep-alive pong (RFC 5626), sent in response to a keep-alive ping (CRLFCRLF) */
+    static final byte[] PONG={ (byte)'\r', (byte)'\n' };
+
+    /** Size of the buffers used for encoding the message heads */
+    static final int HEAD_BUFFER_SIZE=16384;
+
+    /** Pool of the buffers used for encoding the message heads */
+    static final ByteBufferPool head_pool=new ByteBufferPool(HEAD_BUFFER_SIZE,16,true);
+
+    /** TCP connection */
+    NioTcpConnection tcp_conn;
+
+    /** TCP connection */
+    TransportConnId connection_id;
+
+    /** The last time that has been used (in milliseconds) */
+    long last_time;
+
+    /** Framer of the received SIP messages */
+    SipStreamFramer framer;
+
+    /** The last time a keep-alive pong has been received (in milliseconds) */
+    volatile long last_pong_time=0;
+
+    /** TransportConn listener */
+    TransportConnListener listener;
+
+
+
+    /** Costructs a new TcpTransportConn, and starts receiving data from the connection. */
+    public TcpTransportConn(NioTcpConnection tcp_conn, TransportConnListener listener)
+    {  this(tcp_conn,listener,SipConfig.getDefault());
+    }
+
+
+    /** Costructs a new TcpTransportConn with a given configuration (max message size), and starts receiving data from the connection. */
+    public TcpTransportConn(NioTcpConnection tcp_conn, TransportConnListener listener, SipConfig config)
+    {  this.listener=listener;
+        this.tcp_conn=tcp_conn;
+        connection_id=new TransportConnId(this);
+        last_time=System.currentTimeMillis();
+        framer=new SipStreamFramer(config.max_header_size,config.max_body_size);
+        tcp_conn.setListener(this);
+        tcp_conn.start();
+    }
+
+
+    /** Gets protocol type */
+    public String getProtocol()
+    {  return PROTO_TCP;
+    }
+
+
+    /** Gets the remote IpAddress */
+    public IpAddress getRemoteAddress()
+    {  NioTcpConnection conn=tcp_conn;
+        if (conn!=null) return conn.getRemoteAddress();
+    else return null;
+    }
+
+
+    /** Gets the remote port */
+    public int getRemotePort()
+    {  NioTcpConnection conn=tcp_conn;
+        if (conn!=null) return conn.getRemotePort();
+    else return 0;
+    }
+
+
+    /** Gets the last time the Connection has been used (in millisconds) */
+    public long getLastTimeMillis()
+    {  return last_time;
+    }
+
+
+    /** Gets the last time a keep-alive pong (RFC 5626) has been received (in millisconds), or 0 */
+    public long getLastPongMillis()
+    {  return last_pong_time;
+    }
+
+
+    /** Sends a Message */
+    public void sendMessage(Message msg) throws IOException
+    {  NioTcpConnection conn=tcp_conn;
+        if (conn!=null)
+        {  last_time=System.currentTimeMillis();
+            // the head is encoded into a pooled buffer, and sent together with the body through a gathering write
+            ByteBuffer head=head_pool.acquire();
+            try
+            {  msg.writeHeadTo(head);
+                head.flip();
+                ByteBuffer body=msg.getBodyBuffer();
+                conn.send((body!=null)? new ByteBuffer[]{ head, body } : new ByteBuffer[]{ head });
+            }
+            catch (BufferOverflowException e)
+            {  conn.send(msg.toString().getBytes("UTF-8"));
+            }
+            finally
+            {  head_pool.release(head);
+            }
+        }
+    }
+
+
+    /** Stops running */
+    public void halt()
+    {  NioTcpConnection conn=tcp_conn;
+        if (conn!=null) conn.halt();
+    }
+
+
+    /** Gets a String representation of the Object */
+    public String toString()
+    {  NioTcpConnection conn=tcp_conn;
+        if (conn!=null) return conn.toString();
+    else return null;
+    }
+
+
+    //************************* Callback methods *************************
+
+    /** When new data is received through the TcpConnection. */
+    public void onReceivedData(NioTcpConnection tcp_conn, byte[] data, int offset, int len)
+    {  last_time=System.currentTimeMillis();
+        framer.push(data,offset,len);
+        try
+        {  Message msg;
+            while ((msg=framer.next())!=null)
+            {  msg.setRemoteAddress(tcp_conn.getRemoteAddress().toString());
+                msg.setRemotePort(tcp_conn.getRemotePort());
+                msg.setTransport(getProtocol());
+                msg.setTransportConnId(connection_id);
+                if (listener!=null) listener.onReceivedMessage(this,msg);
+            }
+            // keep-alives (RFC 5626): a CRLF is a pong, while a ping (CRLFCRLF, possibly split across reads) is answered with a pong
+            if (framer.takePongs()>0) last_pong_time=last_time;
+            if (framer.takePings()>0) tcp_conn.send(PONG);
+        }
+        catch (IOException e)
+        {  // malformed or oversized message: the stream cannot be resynchronized
+            Log.w(TAG, () -> "connection "+tcp_conn+": "+e.getMessage());
+            tcp_conn.halt();
+        }
+    }
+
+
+    /** When NioTcpConnection terminates. */
+    public void onConnectionTerminated(NioTcpConnection tcp_conn, Exception error)
+    {  if (listener!=null) listener.onConnectionTerminated(this,error);
+        this.tcp_conn=null;
+        this.listener=null;
+    }
+
+}
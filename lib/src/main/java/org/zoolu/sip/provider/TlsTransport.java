@@ -25,7 +25,7 @@ package org.zoolu.sip.provider;
 
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.net.*;
 
 import java.io.IOException;
@@ -42,11 +42,8 @@ public class TlsTransport extends ConnectedTransport {
     public static final String PROTO_TLS="tls";
 
 
-    /** TLS server */
-    TcpServer tls_server=null;
-
-    /** TLS socket factory */
-    TlsSocketFactory tls_socket_factory=null;
+    /** TLS provider, accepting and serving all connections */
+    NioTcpProvider tls_provider=null;
 
 
 
@@ -65,26 +62,26 @@ public class TlsTransport extends ConnectedTransport {
     }
 
 
+    /** Creates a new TlsTransport with a given configuration */
+    public TlsTransport(int local_port, IpAddress host_ipaddr, int nmax_connections, String key_file, String cert_file, String trust_folder, boolean trust_all, SipConfig config) throws IOException
+    {  super(local_port,nmax_connections,config);
+        initTls(local_port,host_ipaddr,key_file,cert_file,trust_folder,trust_all);
+    }
+
+
     /** Inits the TlsTransport */
     protected void initTls(int local_port, IpAddress host_ipaddr, String key_file, String cert_file, String trust_folder, boolean trust_all) throws IOException
-    {  if (tls_server!=null) tls_server.halt();
+    {  if (tls_provider!=null) tls_provider.halt();
         // start tls
         try
         {  TlsContext tls_context=new TlsContext();
             tls_context.setKeyCert(key_file,cert_file);
             if (trust_all) tls_context.setTrustAll(true);
             else tls_context.addTrustFolder(trust_folder);
-            // tls server
-            TlsServerFactory tls_server_factory=new TlsServerFactory(tls_context);
-            if (host_ipaddr==null) tls_server=tls_server_factory.createTlsServer(local_port,this);
-            else tls_server=tls_server_factory.createTlsServer(local_port,host_ipaddr,this);
-            // tls client
-            tls_socket_factory=new TlsSocketFactory(tls_context);
-            // force the newest TLS version
-            //String[] ep=tls_socket_factory.getEnabledProtocols();
-            //String[] sp={ ep[ep.length-1] };
-            //tls_socket_factory.setEnabledProtocols(sp);
-            //System.err.println("DEBUG: TlsTransport: enabled protocols: "+sp[0]);
+            // tls server and client connections
+            TlsEngineFactory tls_engine_factory=new TlsEngineFactory(tls_context);
+            tls_provider=new NioTcpProvider(local_port,host_ipaddr,config.tcp_io_threads,tls_engine_factory,this);
+            tls_provider.setConnectTimeout(config.connect_timeout);
         }
         catch (Exception e)
         {  e.printStackTrace();
@@ -101,7 +98,7 @@ public class TlsTransport extends ConnectedTransport {
 
     /** Gets local port */
     public int getLocalPort()
-    {  if (tls_server!=null) return tls_server.getPort();
+    {  if (tls_provider!=null) return tls_provider.getPort();
     else return 0;
     }
 
@@ -109,16 +106,16 @@ public class TlsTransport extends ConnectedTransport {
     /** Stops running */
     public void halt()
     {  super.halt();
-        if (tls_server!=null) tls_server.halt();
+        if (tls_provider!=null) tls_provider.halt();
     }
 
 
-    /** From TcpServerListener. When a new incoming connection is established */
-    public void onIncomingConnection(TcpServer tcp_server, TcpSocket socket)
-    {  Log.v(TAG, "incoming connection from "+socket.getAddress()+":"+socket.getPort());
-        if (tcp_server==this.tls_server)
-        {  TransportConn conn=new TlsTransportConn(socket,this);
-            Log.v(TAG, "tls connection "+conn+" opened");
+    /** From NioTcpProviderListener. When a new incoming connection is established */
+    public void onIncomingConnection(NioTcpProvider tcp_provider, NioTcpConnection tls_conn)
+    {  Log.v(TAG, () -> "incoming connection from "+tls_conn.getRemoteAddress()+":"+tls_conn.getRemotePort());
+        if (tcp_provider==this.tls_provider)
+        {  TransportConn conn=new TlsTransportConn(tls_conn,this,config);
+            Log.v(TAG, () -> "tls connection "+conn+" opened");
             addConnection(conn);
         }
     }
@@ -126,14 +123,14 @@ public class TlsTransport extends ConnectedTransport {
 
     /** Creates a transport connection to the remote end-point. */
     protected TransportConn createTransportConn(IpAddress dest_ipaddr, int dest_port) throws IOException
-    {  TcpSocket tls_socket=tls_socket_factory.createTlsSocket(dest_ipaddr,dest_port);
-        return new TlsTransportConn(tls_socket,this);
+    {  NioTcpConnection tls_conn=tls_provider.connect(dest_ipaddr,dest_port);
+        return new TlsTransportConn(tls_conn,this,config);
     }
 
 
     /** Gets a String representation of the Object */
     public String toString()
-    {  if (tls_server!=null) return tls_server.toString();
+    {  if (tls_provider!=null) return tls_provider.toString();
     else return null;
     }
 }
@@ -38,15 +38,15 @@ class TlsTransportConn extends TcpTransportConn
 
 
 
-    /** Creates a new TlsTransportConn */
-    public TlsTransportConn(IpAddress remote_ipaddr, int remote_port, TransportConnListener listener) throws IOException
-    {  super(remote_ipaddr,remote_port,listener);
+    /** Costructs a new TlsTransportConn, and starts receiving data from the connection. */
+    public TlsTransportConn(NioTcpConnection tls_conn, TransportConnListener listener)
+    {  super(tls_conn,listener);
     }
 
 
-    /** Costructs a new TlsTransportConn */
-    public TlsTransportConn(TcpSocket socket, TransportConnListener listener)
-    {  super(socket,listener);
+    /** Costructs a new TlsTransportConn with a given configuration, and starts receiving data from the connection. */
+    public TlsTransportConn(NioTcpConnection tls_conn, TransportConnListener listener, SipConfig config)
+    {  super(tls_conn,listener,config);
     }
 
 
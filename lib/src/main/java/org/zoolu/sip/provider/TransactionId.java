@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+
+
+import org.zoolu.sip.message.SipMethods;
+
+
+
+/** TransactionId is used to address specific transaction to the SipProvider.
+  * <p> A TransactionId based only on a method name is equal to the MethodId of the same method.
+ */
+public class TransactionId extends SipId
+{
+    /** Call-ID (null for TransactionIds based only on method name) */
+    final String call_id;
+
+    /** CSeq sequence number */
+    final long seqn;
+
+    /** Method (ACK is replaced by INVITE) */
+    final String method;
+
+    /** Whether it is a client transaction */
+    final boolean is_client;
+
+    /** Sent-by of the top Via (null if not used, see SipConfig.alternative_transaction_id) */
+    final String sent_by;
+
+    /** Via branch */
+    final String branch;
+
+    /** Costructs a new TransactionId. */
+    public TransactionId(TransactionId i)
+    {  super(i);
+        call_id=i.call_id;
+        seqn=i.seqn;
+        method=i.method;
+        is_client=i.is_client;
+        sent_by=i.sent_by;
+        branch=i.branch;
+    }
+
+    /** Costructs a new TransactionId based only on method rtpmap. */
+    public TransactionId(String method)
+    {  super(method);
+        this.call_id=null;
+        this.seqn=0;
+        this.method=method;
+        this.is_client=false;
+        this.sent_by=null;
+        this.branch=null;
+    }
+
+    /** Costructs a new TransactionId based on call-id, seqn, method, is_client, sent-by, and branch. */
+    public TransactionId(String call_id, long seqn, String method, boolean is_client, String sent_by, String branch)
+    {  if (branch==null) branch="";
+        if (method.equals(SipMethods.ACK)) method=SipMethods.INVITE;
+        this.call_id=call_id;
+        this.seqn=seqn;
+        this.method=method;
+        this.is_client=is_client;
+        this.sent_by=sent_by;
+        this.branch=branch;
+        int h=hash(call_id);
+        h=31*h+(int)(seqn^(seqn>>>32));
+        h=31*h+method.hashCode();
+        h=31*h+(is_client? 1 : 2);
+        h=31*h+hash(sent_by);
+        hash=31*h+branch.hashCode();
+    }
+
+    /** Gets the same TransactionId without the sent-by component (see SipConfig.alternative_transaction_id). */
+    TransactionId withoutSentBy()
+    {  if (sent_by==null) return this;
+        // else
+        return new TransactionId(call_id,seqn,method,is_client,null,branch);
+    }
+
+    /** Whether the SipId is composed of more components. */
+    boolean isComposite()
+    {  return call_id!=null;
+    }
+
+    /** Whether the components are equal to those of <i>i</i>. */
+    boolean matches(SipId i)
+    {  if (!(i instanceof TransactionId)) return false;
+        TransactionId t=(TransactionId)i;
+        return seqn==t.seqn && is_client==t.is_client && branch.equals(t.branch) && call_id.equals(t.call_id)
+            && method.equals(t.method) && equals(sent_by,t.sent_by);
+    }
+
+    /** Gets a String value for the TransactionId */
+    public String toString()
+    {  if (id==null)
+        {  String type=(is_client)? "client" : "server";
+            if (sent_by!=null) id=call_id+"-"+seqn+"-"+method+"-"+type+"-"+sent_by+"-"+branch;
+            else id=call_id+"-"+seqn+"-"+method+"-"+type+"-"+branch;
+        }
+        return id;
+    }
+}
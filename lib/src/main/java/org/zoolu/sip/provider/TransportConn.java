@@ -45,6 +45,9 @@ interface TransportConn
     /** Gets the last time the TransportConn has been used (in millisconds) */
     public long getLastTimeMillis();
 
+    /** Gets the last time a keep-alive pong (RFC 5626) has been received (in millisconds), or 0 */
+    public long getLastPongMillis();
+
     /** Sends a Message */
     public void sendMessage(Message msg) throws IOException;
 
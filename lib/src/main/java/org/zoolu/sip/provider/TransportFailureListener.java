@@ -24,19 +24,11 @@
 package org.zoolu.sip.provider;
 
 
-
-
-/** DialogId is used to address specific dialogs to the SipProvider.
- */
-public class DialogId extends SipId
+/** A TransportFailureListener listens for the failure of a transport connection
+  * (see SipProvider.addTransportFailureListener()).
+  */
+public interface TransportFailureListener
 {
-    /** Costructs a new DialogId based on call-id, local and remote tags. */
-    public DialogId(String call_id, String local_tag, String remote_tag)
-    {  id=call_id+"-"+local_tag+"-"+remote_tag;
-    }
-
-    /** Costructs a new DialogId. */
-    public DialogId(DialogId i)
-    {  super(i);
-    }
+    /** When the transport connection <i>conn_id</i> fails, or it cannot be established. */
+    public void onTransportFailure(SipProvider sip_provider, TransportConnId conn_id, Exception error);
 }
@@ -34,6 +34,9 @@ public interface TransportListener {
     /** When a new SIP message is received. */
     public void onReceivedMessage(Transport transport, Message msg);
 
+    /** When a connection of a connection-oriented Transport fails, or it cannot be established. */
+    public void onConnectionFailure(Transport transport, TransportConnId conn_id, Exception error);
+
     /** When Transport terminates. */
     public void onTransportTerminated(Transport transport, Exception error);
 }
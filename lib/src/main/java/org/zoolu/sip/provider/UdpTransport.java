@@ -27,6 +27,7 @@ package org.zoolu.sip.provider;
 import org.zoolu.net.*;
 import org.zoolu.sip.message.Message;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
 /** UdpTransport provides an UDP transport service for SIP.
@@ -36,12 +37,18 @@ public class UdpTransport implements Transport, UdpProviderListener
     /** UDP protocol type */
     public static final String PROTO_UDP="udp";
 
+    /** Pool of the buffers used for encoding the outgoing messages */
+    static final ByteBufferPool buffer_pool=new ByteBufferPool(UdpProvider.BUFFER_SIZE,8,false);
+
     /** UDP provider */
     UdpProvider udp_provider;
 
     /** Transport listener */
     TransportListener listener=null;
 
+    /** Rate limiter of the received datagrams (null if not used) */
+    FloodControl flood_control=null;
+
 
 
 
@@ -93,15 +100,31 @@ public class UdpTransport implements Transport, UdpProviderListener
     }
 
 
+    /** Sets the rate limiter of the received datagrams (null for not limiting them) */
+    public void setFloodControl(FloodControl flood_control)
+    {  this.flood_control=flood_control;
+    }
+
+
     /** Sends a Message to a destination address and port */
     public TransportConn sendMessage(Message msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException
     {  if (udp_provider!=null)
-    {  byte[] data=msg.toString().getBytes();
-        UdpPacket packet=new UdpPacket(data,data.length);
-        // if (ttl>0 && multicast_address) do something?
-        packet.setIpAddress(dest_ipaddr);
-        packet.setPort(dest_port);
-        udp_provider.send(packet);
+    {  ByteBuffer buffer=buffer_pool.acquire();
+        try
+        {  UdpPacket packet;
+            if (msg.writeTo(buffer)) packet=new UdpPacket(buffer.array(),0,buffer.position());
+            else
+            {  byte[] data=msg.toString().getBytes("UTF-8");
+                packet=new UdpPacket(data,data.length);
+            }
+            // if (ttl>0 && multicast_address) do something?
+            packet.setIpAddress(dest_ipaddr);
+            packet.setPort(dest_port);
+            udp_provider.send(packet);
+        }
+        finally
+        {  buffer_pool.release(buffer);
+        }
     }
         return null;
     }
@@ -124,7 +147,10 @@ public class UdpTransport implements Transport, UdpProviderListener
 
     /** When a new UDP datagram is received. */
     public void onReceivedPacket(UdpProvider udp, UdpPacket packet)
-    {  Message msg=new Message(packet);
+    {  FloodControl fc=flood_control;
+        if (fc!=null && !fc.admit(packet.getInetAddress(),ByteBuffer.wrap(packet.getData(),packet.getOffset(),packet.getLength()))) return;
+        // else
+        Message msg=new Message(packet);
         msg.setRemoteAddress(packet.getIpAddress().toString());
         msg.setRemotePort(packet.getPort());
         msg.setTransport(PROTO_UDP);
@@ -41,6 +41,9 @@ public class AckTransactionServer extends Transaction implements SipProviderList
     /** last response message */
     Message response;
 
+    /** the response, as sent (it caches the destination and the bytes for retransmissions) */
+    SentMessage sent_response;
+
     /** retransmission timeout */
     Timer retransmission_to;
     /** transaction timeout */
@@ -74,10 +77,11 @@ public class AckTransactionServer extends Transaction implements SipProviderList
     {  this.transaction_listener=listener;
         this.connection_id=connection_id;
         this.response=resp;
+        this.sent_response=new SentMessage(resp);
         transaction_id=invite.getTransactionServerId();
-        // init the timer just to set the timeout value and label, without listener (never started)
-        transaction_to=new Timer(SipStack.transaction_timeout,"Transaction",null);
-        retransmission_to=new Timer(SipStack.retransmission_timeout,"Retransmission",null);
+        // the timers are started when method respond() is called
+        transaction_to=new Timer(config.transaction_timeout,"Transaction",this);
+        retransmission_to=new Timer(config.retransmission_timeout,"Retransmission",this);
 
     }
 
@@ -92,16 +96,16 @@ public class AckTransactionServer extends Transaction implements SipProviderList
         transaction_to.start();
         if (connection_id==null) retransmission_to.start();
 
-        sip_provider.sendMessage(response,connection_id);
+        sip_provider.sendMessage(sent_response,connection_id);
     }
 
 
     /** From SipProviderListener. When a new Message is received by the SipProvider. */
-    public void onReceivedMessage(SipProvider sip_provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider sip_provider, Message msg)
     {  if (statusIs(STATE_PROCEEDING) && msg.isRequest())
     {  if (msg.isInvite())
     {
-        sip_provider.sendMessage(response,connection_id);
+        sip_provider.sendMessage(sent_response,connection_id);
     }
          /*else
          if (msg.isAck())
@@ -120,10 +124,10 @@ public class AckTransactionServer extends Transaction implements SipProviderList
     {  if (to.equals(retransmission_to) && statusIs(STATE_PROCEEDING))
     {
         long timeout=2*retransmission_to.getTime();
-        if (timeout>SipStack.max_retransmission_timeout) timeout=SipStack.max_retransmission_timeout;
-        retransmission_to=new Timer(timeout,retransmission_to.getLabel(),this);
+        if (timeout>config.max_retransmission_timeout) timeout=config.max_retransmission_timeout;
+        retransmission_to.setTime(timeout);
         retransmission_to.start();
-        sip_provider.sendMessage(response,connection_id);
+        sip_provider.sendMessage(sent_response,connection_id);
     }
         if (to.equals(transaction_to) && statusIs(STATE_PROCEEDING))
         {
@@ -24,9 +24,11 @@
 package org.zoolu.sip.transaction;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.provider.*;
 import org.zoolu.sip.message.*;
+import org.zoolu.tools.Counter;
+import org.zoolu.tools.Metrics;
 import org.zoolu.tools.Timer;
 
 
@@ -38,7 +40,8 @@ import org.zoolu.tools.Timer;
  * to the TransactionListener passed to the InviteTransactionClient object.
  */
 public class InviteTransactionClient extends TransactionClient {
-
+    /** Number of INVITE client transactions terminated by the transaction timeout (Timer B) */
+    static final Counter timer_b_timeouts=Metrics.counter("transaction.timeout.B");
 
     /** the TransactionClientListener that captures the events fired by the InviteTransactionClient */
     TransactionClientListener transaction_listener;
@@ -46,6 +49,9 @@ public class InviteTransactionClient extends TransactionClient {
     /** ack message */
     Message ack;
 
+    /** the ack, as sent (it caches the destination and the bytes for retransmissions) */
+    SentMessage sent_ack;
+
     /** retransmission timeout ("Timer A" in RFC 3261) */
     //Timer retransmission_to;
     /** transaction timeout ("Timer B" in RFC 3261) */
@@ -68,10 +74,10 @@ public class InviteTransactionClient extends TransactionClient {
     {  this.transaction_listener=listener;
         this.transaction_id=transaction_id;
         this.ack=null;
-        // init the timer just to set the timeout value and label, without listener (never started)
-        retransmission_to=new Timer(SipStack.retransmission_timeout,"Retransmission",null);
-        transaction_to=new Timer(SipStack.transaction_timeout,"Transaction",null);
-        end_to=new Timer(SipStack.transaction_timeout,"End",null);
+        // init the timers (they are started when needed, and restarted for retransmissions)
+        retransmission_to=new Timer(config.retransmission_timeout,"Retransmission",this);
+        transaction_to=new Timer(config.transaction_timeout,"Transaction",this);
+        end_to=new Timer(config.transaction_timeout,"End",this);
     }
 
 
@@ -81,18 +87,18 @@ public class InviteTransactionClient extends TransactionClient {
     public void request()
     {
         changeStatus(STATE_TRYING);
-        transaction_to=new Timer(transaction_to.getTime(),transaction_to.getLabel(),this);
         transaction_to.start();
         sip_provider.addSelectiveListener(transaction_id,this);
-        connection_id=sip_provider.sendMessage(request);
-        retransmission_to=new Timer(retransmission_to.getTime(),retransmission_to.getLabel(),this);
         retransmission_to.start();
+        // this is notified if the request cannot be sent, or if its connection fails
+        sent_request=new SentMessage(request,this);
+        connection_id=sip_provider.sendMessage(sent_request);
     }
 
     /** Method derived from interface SipListener.
      * It's fired from the SipProvider when a new message is catch for to the present ServerTransaction.
      */
-    public void onReceivedMessage(SipProvider provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider provider, Message msg)
     {  if (msg.isResponse())
     {  int code=msg.getStatusLine().getCode();
         if (code>=100 && code<200 && (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING)))
@@ -110,12 +116,12 @@ public class InviteTransactionClient extends TransactionClient {
             transaction_to.halt();
             ack=MessageFactory.createNon2xxAckRequest(sip_provider,request,msg);
             changeStatus(STATE_COMPLETED);
-            connection_id=sip_provider.sendMessage(ack);
+            sent_ack=new SentMessage(ack);
+            connection_id=sip_provider.sendMessage(sent_ack);
             if (transaction_listener!=null) transaction_listener.onTransFailureResponse(this,msg);
             transaction_listener=null;
             if (connection_id==null)
-            {  end_to=new Timer(end_to.getTime(),end_to.getLabel(),this);
-                end_to.start();
+            {  end_to.start();
             }
             else
             {
@@ -124,7 +130,7 @@ public class InviteTransactionClient extends TransactionClient {
         }
         else
         {  // retransmit ACK only in case of unreliable transport
-            if (connection_id==null) sip_provider.sendMessage(ack);
+            if (connection_id==null) sip_provider.sendMessage(sent_ack);
         }
             return;
         }
@@ -147,15 +153,19 @@ public class InviteTransactionClient extends TransactionClient {
     {
         // retransmission only in case of unreliable transport
         if (connection_id==null)
-        {  sip_provider.sendMessage(request);
-            long timeout=2*retransmission_to.getTime();
-            retransmission_to=new Timer(timeout,retransmission_to.getLabel(),this);
-            retransmission_to.start();
+        {  // the request may have been sent through a reliable transport, once its destination has been resolved
+            connection_id=sip_provider.sendMessage(sent_request);
+            if (connection_id==null)
+            {  long timeout=2*retransmission_to.getTime();
+                retransmission_to.setTime(timeout);
+                retransmission_to.start();
+            }
         }
 
     }
         if (to.equals(transaction_to))
         {
+            timer_b_timeouts.increment();
             doTerminate();
             if (transaction_listener!=null) transaction_listener.onTransTimeout(this);
             transaction_listener=null;
@@ -171,6 +181,17 @@ public class InviteTransactionClient extends TransactionClient {
     }
     }
 
+    /** Method derived from interface TransportFailureListener.
+     * It's fired from the SipProvider when the request cannot be sent, or when the transport connection of the transaction fails. */
+    public synchronized void onTransportFailure(SipProvider provider, TransportConnId conn_id, Exception error)
+    {  if (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING))
+        {  transport_errors.increment();
+            doTerminate();
+            if (transaction_listener!=null) transaction_listener.onTransFailureResponse(this,createTransportErrorResponse());
+            transaction_listener=null;
+        }
+    }
+
     /** Terminates the transaction. */
     public void terminate()
     {  doTerminate();
@@ -187,6 +208,8 @@ public class InviteTransactionClient extends TransactionClient {
         transaction_to.halt();
         end_to.halt();
         sip_provider.removeSelectiveListener(transaction_id);
+        TransportConnId conn_id=(sent_request!=null)? sent_request.getTransportConnId() : null;
+        if (conn_id!=null) sip_provider.removeTransportFailureListener(conn_id,this);
         changeStatus(STATE_TERMINATED);
     }
     }
@@ -80,7 +80,7 @@ public class InviteTransactionServer extends TransactionServer
         sip_provider.addSelectiveListener(transaction_id,this);
         // automatically send "100 Tryng" response and go to STATE_PROCEEDING
         if (auto_trying)
-        {  Message trying100=MessageFactory.createResponse(request,100,null,null);
+        {  Message trying100=MessageFactory.createResponse(sip_provider,request,100,null,null);
             respondWith(trying100); // this method makes it going automatically to STATE_PROCEEDING
         }
     }
@@ -96,7 +96,7 @@ public class InviteTransactionServer extends TransactionServer
         sip_provider.addSelectiveListener(transaction_id,this);
         // automatically send "100 Tryng" response and go to STATE_PROCEEDING
         if (auto_trying)
-        {  Message trying100=MessageFactory.createResponse(request,100,null,null);
+        {  Message trying100=MessageFactory.createResponse(sip_provider,request,100,null,null);
             respondWith(trying100); // this method makes it going automatically to STATE_PROCEEDING
         }
     }
@@ -106,11 +106,11 @@ public class InviteTransactionServer extends TransactionServer
     {  this.transaction_listener=listener;
         this.transaction_id=transaction_id;
         this.connection_id=connection_id;
-        auto_trying=SipStack.auto_trying;
-        // init the timer just to set the timeout value and label, without listener (never started)
-        retransmission_to=new Timer(SipStack.retransmission_timeout,"Retransmission",null);
-        end_to=new Timer(SipStack.transaction_timeout,"End",null);
-        clearing_to=new Timer(SipStack.clearing_timeout,"Clearing",null);
+        auto_trying=config.auto_trying;
+        // init the timers (they are started when needed, and restarted for retransmissions)
+        retransmission_to=new Timer(config.retransmission_timeout,"Retransmission",this);
+        end_to=new Timer(config.transaction_timeout,"End",this);
+        clearing_to=new Timer(config.clearing_timeout,"Clearing",this);
     }
 
 
@@ -134,8 +134,9 @@ public class InviteTransactionServer extends TransactionServer
     /** Sends a response message */
     public void respondWith(Message resp)
     {  response=resp;
+        sent_response=new SentMessage(resp);
         int code=response.getStatusLine().getCode();
-        if (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING)) sip_provider.sendMessage(response,connection_id);
+        if (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING)) sip_provider.sendMessage(sent_response,connection_id);
         if (code>=100 && code<200 && statusIs(STATE_TRYING))
         {  changeStatus(STATE_PROCEEDING);
             return;
@@ -149,9 +150,7 @@ public class InviteTransactionServer extends TransactionServer
         {  changeStatus(STATE_COMPLETED);
             // retransmission only in case of unreliable transport
             if (connection_id==null)
-            {  retransmission_to=new Timer(retransmission_to.getTime(),retransmission_to.getLabel(),this);
-                retransmission_to.start();
-                end_to=new Timer(end_to.getTime(),end_to.getLabel(),this);
+            {  retransmission_to.start();
                 end_to.start();
             }
             else
@@ -163,7 +162,7 @@ public class InviteTransactionServer extends TransactionServer
 
     /** Method derived from interface SipListener.
      * It's fired from the SipProvider when a new message is catch for to the present ServerTransaction. */
-    public void onReceivedMessage(SipProvider provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider provider, Message msg)
     {  if (msg.isRequest())
     {  String req_method=msg.getRequestLine().getMethod();
 
@@ -179,7 +178,7 @@ public class InviteTransactionServer extends TransactionServer
                 changeStatus(STATE_TRYING);
                 // automatically send "100 Tryng" response and go to STATE_PROCEEDING
                 if (auto_trying)
-                {  Message trying100=MessageFactory.createResponse(request,100,null,null);
+                {  Message trying100=MessageFactory.createResponse(sip_provider,request,100,null,null);
                     respondWith(trying100); // this method makes it going automatically to STATE_PROCEEDING
                 }
                 if (transaction_listener!=null) transaction_listener.onTransRequest(this,msg);
@@ -187,7 +186,7 @@ public class InviteTransactionServer extends TransactionServer
             }
             if (statusIs(STATE_PROCEEDING) || statusIs(STATE_COMPLETED))
             {  // retransmission of the last response
-                sip_provider.sendMessage(response,connection_id);
+                sip_provider.sendMessage(sent_response,connection_id);
                 return;
             }
         }
@@ -197,7 +196,6 @@ public class InviteTransactionServer extends TransactionServer
             end_to.halt();
             changeStatus(STATE_CONFIRMED);
             if (transaction_listener!=null) transaction_listener.onTransFailureAck(this,msg);
-            clearing_to=new Timer(clearing_to.getTime(),clearing_to.getLabel(),this);
             clearing_to.start();
             return;
         }
@@ -211,10 +209,10 @@ public class InviteTransactionServer extends TransactionServer
     {  if (to.equals(retransmission_to) && statusIs(STATE_COMPLETED))
     {
         long timeout=2*retransmission_to.getTime();
-        if (timeout>SipStack.max_retransmission_timeout) timeout=SipStack.max_retransmission_timeout;
-        retransmission_to=new Timer(timeout,retransmission_to.getLabel(),this);
+        if (timeout>config.max_retransmission_timeout) timeout=config.max_retransmission_timeout;
+        retransmission_to.setTime(timeout);
         retransmission_to.start();
-        sip_provider.sendMessage(response,connection_id);
+        sip_provider.sendMessage(sent_response,connection_id);
     }
         if (to.equals(end_to) && statusIs(STATE_COMPLETED))
         {
@@ -24,9 +24,11 @@
 package org.zoolu.sip.transaction;
 
 
-import android.util.Log;
+import org.zoolu.tools.Log;
 import org.zoolu.sip.provider.*;
 import org.zoolu.sip.message.*;
+import org.zoolu.tools.Counter;
+import org.zoolu.tools.Metrics;
 import org.zoolu.tools.Timer;
 import org.zoolu.tools.TimerListener;
 
@@ -46,6 +48,12 @@ public abstract class Transaction extends org.zoolu.tools.MonitoredObject implem
     /** Transactions counter */
     protected static int transaction_counter=0;
 
+    /** Number of active (started and not terminated) client transactions */
+    static final Counter active_clients=Metrics.counter("transaction.client.active");
+
+    /** Number of active (started and not terminated) server transactions */
+    static final Counter active_servers=Metrics.counter("transaction.server.active");
+
     // all transaction states:
 
     /** State Waiting (used only by server transactions) - When transaction is just created. */
@@ -87,6 +95,9 @@ public abstract class Transaction extends org.zoolu.tools.MonitoredObject implem
      * by means of the onReceivedMessage() method. */
     SipProvider sip_provider;
 
+    /** Configuration (timers) of the SipProvider */
+    SipConfig config;
+
     /** Internal state-machine status */
     int status;
 
@@ -99,10 +110,14 @@ public abstract class Transaction extends org.zoolu.tools.MonitoredObject implem
     /** Transaction connection id */
     TransportConnId connection_id;
 
+    /** Whether the transaction is counted as active */
+    boolean active=false;
+
 
     /** Costructs a new Transaction */
     protected Transaction(SipProvider sip_provider)
     {  this.sip_provider=sip_provider;
+        this.config=sip_provider.getConfig();
         this.transaction_id=null;
         this.request=null;
         this.connection_id=null;
@@ -113,8 +128,24 @@ public abstract class Transaction extends org.zoolu.tools.MonitoredObject implem
     /** Changes the internal status */
     protected void changeStatus(int newstatus) {
         status=newstatus;
+        if (newstatus==STATE_TERMINATED)
+        {  if (active)
+            {  active=false;
+                getActiveCounter().decrement();
+            }
+        }
+        else
+        if (!active && newstatus!=STATE_IDLE && newstatus!=STATE_WAITING)
+        {  active=true;
+            getActiveCounter().increment();
+        }
         //transaction_listener.onChangedTransactionStatus(status);
-        Log.v(TAG, "changed transaction state: "+getStatus());
+        Log.v(TAG, () -> "changed transaction state: "+getStatus());
+    }
+
+    /** Gets the counter of the active transactions of this kind (client or server). */
+    private Counter getActiveCounter()
+    {  return (this instanceof TransactionClient || this instanceof AckTransactionClient)? active_clients : active_servers;
     }
 
     /** Whether the internal status is equal to <i>st</i> */
@@ -177,7 +208,7 @@ public abstract class Transaction extends org.zoolu.tools.MonitoredObject implem
     /** Method derived from interface SipListener.
      * It's fired from the SipProvider when a new message is catch for to the present ServerTransaction.
      */
-    public void onReceivedMessage(SipProvider provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider provider, Message msg)
     {  //do nothing
     }
 
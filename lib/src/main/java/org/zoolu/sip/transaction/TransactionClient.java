@@ -26,19 +26,33 @@ package org.zoolu.sip.transaction;
 
 import org.zoolu.sip.provider.*;
 import org.zoolu.sip.message.*;
+import org.zoolu.tools.Counter;
+import org.zoolu.tools.Metrics;
 import org.zoolu.tools.Timer;
 
 
 /** Generic client transaction as defined in RFC 3261 (Section 17.1.2).
  *  A TransactionClient is responsible to create a new SIP transaction, starting with a request message sent through the SipProvider and ending with a final response.<BR>
  *  The changes of the internal status and the received messages are fired to the TransactionListener passed to the TransactionClient object.<BR>
+ *  If the request cannot be sent (e.g. its destination cannot be resolved), or if its transport connection fails,
+ *  the transaction terminates immediately, and the transport error is reported as a 503 (Service Unavailable) response
+ *  (RFC 3261, section 8.1.3.1).<BR>
  */
 
-public class TransactionClient extends Transaction
+public class TransactionClient extends Transaction implements TransportFailureListener
 {
+    /** Number of non-INVITE client transactions terminated by the transaction timeout (Timer F) */
+    static final Counter timer_f_timeouts=Metrics.counter("transaction.timeout.F");
+
+    /** Number of client transactions terminated by a transport error */
+    static final Counter transport_errors=Metrics.counter("transaction.transport.error");
+
     /** the TransactionClientListener that captures the events fired by the TransactionClient */
     TransactionClientListener transaction_listener;
 
+    /** the request, as sent (it caches the destination and the bytes for retransmissions) */
+    SentMessage sent_request;
+
     /** retransmission timeout ("Timer E" in RFC 3261) */
     Timer retransmission_to;
     /** transaction timeout ("Timer F" in RFC 3261) */
@@ -66,10 +80,10 @@ public class TransactionClient extends Transaction
     void init(TransactionClientListener listener, TransactionId transaction_id)
     {  this.transaction_listener=listener;
         this.transaction_id=transaction_id;
-        // init the timer just to set the timeout value and label, without listener (never started)
-        retransmission_to=new Timer(SipStack.retransmission_timeout,"Retransmission",null);
-        transaction_to=new Timer(SipStack.transaction_timeout,"Transaction",null);
-        clearing_to=new Timer(SipStack.clearing_timeout,"Clearing",null);
+        // init the timers (they are started when needed, and restarted for retransmissions)
+        retransmission_to=new Timer(config.retransmission_timeout,"Retransmission",this);
+        transaction_to=new Timer(config.transaction_timeout,"Transaction",this);
+        clearing_to=new Timer(config.clearing_timeout,"Clearing",this);
     }
 
 
@@ -79,17 +93,17 @@ public class TransactionClient extends Transaction
     public void request()
     {
         changeStatus(STATE_TRYING);
-        transaction_to=new Timer(transaction_to.getTime(),transaction_to.getLabel(),this);
         transaction_to.start();
         sip_provider.addSelectiveListener(transaction_id,this);
-        connection_id=sip_provider.sendMessage(request);
-        retransmission_to=new Timer(retransmission_to.getTime(),retransmission_to.getLabel(),this);
         retransmission_to.start();
+        // this is notified if the request cannot be sent, or if its connection fails
+        sent_request=new SentMessage(request,this);
+        connection_id=sip_provider.sendMessage(sent_request);
     }
 
     /** Method derived from interface SipListener.
      * It's fired from the SipProvider when a new message is received for to the present TransactionClient. */
-    public void onReceivedMessage(SipProvider provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider provider, Message msg)
     {  if (msg.isResponse())
     {  int code=msg.getStatusLine().getCode();
         if (code>=100 && code<200 && (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING)))
@@ -105,9 +119,9 @@ public class TransactionClient extends Transaction
             {  if (code<300) transaction_listener.onTransSuccessResponse(this,msg);
             else transaction_listener.onTransFailureResponse(this,msg);
             }
+            if (connection_id==null) connection_id=sent_request.getTransportConnId();
             if (connection_id==null)
-            {  clearing_to=new Timer(clearing_to.getTime(),clearing_to.getLabel(),this);
-                clearing_to.start();
+            {  clearing_to.start();
             }
             else
             {
@@ -126,16 +140,20 @@ public class TransactionClient extends Transaction
     {
         // retransmission only for unreliable transport
         if (connection_id==null)
-        {  sip_provider.sendMessage(request);
-            long timeout=2*retransmission_to.getTime();
-            if (timeout>SipStack.max_retransmission_timeout || statusIs(STATE_PROCEEDING)) timeout=SipStack.max_retransmission_timeout;
-            retransmission_to=new Timer(timeout,retransmission_to.getLabel(),this);
-            retransmission_to.start();
+        {  // the request may have been sent through a reliable transport, once its destination has been resolved
+            connection_id=sip_provider.sendMessage(sent_request);
+            if (connection_id==null)
+            {  long timeout=2*retransmission_to.getTime();
+                if (timeout>config.max_retransmission_timeout || statusIs(STATE_PROCEEDING)) timeout=config.max_retransmission_timeout;
+                retransmission_to.setTime(timeout);
+                retransmission_to.start();
+            }
         }
 
     }
         if (to.equals(transaction_to))
         {
+            timer_f_timeouts.increment();
             doTerminate();
             if (transaction_listener!=null) transaction_listener.onTransTimeout(this);
             transaction_listener=null;
@@ -150,6 +168,17 @@ public class TransactionClient extends Transaction
     }
     }
 
+    /** Method derived from interface TransportFailureListener.
+     * It's fired from the SipProvider when the request cannot be sent, or when the transport connection of the transaction fails. */
+    public synchronized void onTransportFailure(SipProvider provider, TransportConnId conn_id, Exception error)
+    {  if (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING))
+        {  transport_errors.increment();
+            doTerminate();
+            if (transaction_listener!=null) transaction_listener.onTransFailureResponse(this,createTransportErrorResponse());
+            transaction_listener=null;
+        }
+    }
+
     /** Terminates the transaction. */
     public void terminate()
     {  doTerminate();
@@ -159,6 +188,11 @@ public class TransactionClient extends Transaction
 
     // *********************** Protected methods ***********************
 
+    /** Creates the response that reports a transport error to the TU, that is a 503 (Service Unavailable) response (RFC 3261, section 8.1.3.1). */
+    protected Message createTransportErrorResponse()
+    {  return MessageFactory.createResponse(sip_provider,request,503,null,null,null,null,null);
+    }
+
     /** Moves to terminate state. */
     protected void doTerminate()
     {  if (!statusIs(STATE_TERMINATED))
@@ -166,6 +200,8 @@ public class TransactionClient extends Transaction
         transaction_to.halt();
         clearing_to.halt();
         sip_provider.removeSelectiveListener(transaction_id);
+        TransportConnId conn_id=(sent_request!=null)? sent_request.getTransportConnId() : null;
+        if (conn_id!=null) sip_provider.removeTransportFailureListener(conn_id,this);
         changeStatus(STATE_TERMINATED);
     }
     }
@@ -43,6 +43,9 @@ public class TransactionServer extends Transaction
     /** last response message */
     Message response;
 
+    /** last response, as sent (it caches the destination and the bytes for retransmissions) */
+    SentMessage sent_response;
+
     /** clearing timeout ("Timer J" in RFC 3261) */
     Timer clearing_to;
 
@@ -78,8 +81,8 @@ public class TransactionServer extends Transaction
         this.transaction_id=transaction_id;
         this.connection_id=connection_id;
         this.response=null;
-        // init the timer just to set the timeout value and label, without listener (never started)
-        clearing_to=new Timer(SipStack.transaction_timeout,"Clearing",null);
+        // init the timer (it is started when needed)
+        clearing_to=new Timer(config.transaction_timeout,"Clearing",this);
     }
 
 
@@ -96,15 +99,16 @@ public class TransactionServer extends Transaction
 
     /** Sends a response message */
     public void respondWith(int code)
-    {  Message resp=MessageFactory.createResponse(request,code,null,null);
+    {  Message resp=MessageFactory.createResponse(sip_provider,request,code,null,null);
         respondWith(resp);
     }
 
     /** Sends a response message */
     public void respondWith(Message resp)
     {  response=resp;
+        sent_response=new SentMessage(resp);
         if (statusIs(STATE_TRYING) || statusIs(STATE_PROCEEDING))
-        {  sip_provider.sendMessage(response,connection_id);
+        {  sip_provider.sendMessage(sent_response,connection_id);
             int code=response.getStatusLine().getCode();
             if (code>=100 && code<200 && statusIs(STATE_TRYING))
             {  changeStatus(STATE_PROCEEDING);
@@ -112,8 +116,7 @@ public class TransactionServer extends Transaction
             if (code>=200 && code<700)
             {  changeStatus(STATE_COMPLETED);
                 if (connection_id==null)
-                {  clearing_to=new Timer(clearing_to.getTime(),clearing_to.getLabel(),this);
-                    clearing_to.start();
+                {  clearing_to.start();
                 }
                 else
                 {
@@ -125,7 +128,7 @@ public class TransactionServer extends Transaction
 
     /** Method derived from interface SipListener.
      * It's fired from the SipProvider when a new message is received for to the present TransactionServer. */
-    public void onReceivedMessage(SipProvider provider, Message msg)
+    public synchronized void onReceivedMessage(SipProvider provider, Message msg)
     {  if (msg.isRequest())
     {  if (statusIs(STATE_WAITING))
     {  request=new Message(msg);
@@ -139,7 +142,7 @@ public class TransactionServer extends Transaction
     }
         if (statusIs(STATE_PROCEEDING) || statusIs(STATE_COMPLETED))
         {  // retransmission of the last response
-            sip_provider.sendMessage(response,connection_id);
+            sip_provider.sendMessage(sent_response,connection_id);
             return;
         }
     }
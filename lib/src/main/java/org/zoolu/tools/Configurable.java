@@ -24,11 +24,9 @@
 package org.zoolu.tools;
 
 
-import android.content.Context;
-
-/** Configurable is the base interface for classes that can be configurated by a text file.
+/** Configurable is the base interface for classes that can be configurated by Preferences.
   */
 public interface Configurable {
-   /** Parses a single text line. */
-   void readAll(Context context);
+   /** Reads all the configuration values. */
+   void readAll(Preferences prefs);
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/** Class Counter is a counter that can be updated by many threads with low contention.
+  * <p/>
+  * The count is split into a few cells, each one on its own cache line,
+  * and each thread updates the cell selected by its id; the value is the sum of all cells.
+  * It is a simpler form of java.util.concurrent.atomic.LongAdder, that is not available
+  * on all the supported platforms (Android API level lower than 24).
+  * <p/>
+  * A Counter may also be decremented, and then used as a gauge (e.g. for active objects).
+  */
+public class Counter
+{
+   /** Number of cells (it must be a power of 2) */
+   static final int CELLS=8;
+
+   /** Distance between two cells, in longs (one 64-byte cache line) */
+   static final int PAD=8;
+
+
+   /** Counter name */
+   final String name;
+
+   /** The cells */
+   final AtomicLongArray cells=new AtomicLongArray(CELLS*PAD);
+
+
+   /** Creates a new Counter. */
+   public Counter(String name)
+   {  this.name=name;
+   }
+
+
+   /** Gets the counter name. */
+   public String getName()
+   {  return name;
+   }
+
+   /** Adds one. */
+   public void increment()
+   {  cells.getAndIncrement(cell());
+   }
+
+   /** Subtracts one. */
+   public void decrement()
+   {  cells.getAndDecrement(cell());
+   }
+
+   /** Adds <i>n</i>. */
+   public void add(long n)
+   {  cells.getAndAdd(cell(),n);
+   }
+
+   /** Gets the current value. */
+   public long get()
+   {  long sum=0;
+      for (int i=0; i<CELLS; i++) sum+=cells.get(i*PAD);
+      return sum;
+   }
+
+   /** Gets a String representation of this object. */
+   public String toString()
+   {  return name+"="+get();
+   }
+
+
+   /** Gets the cell of the current thread. */
+   private static int cell()
+   {  return ((int)Thread.currentThread().getId()&(CELLS-1))*PAD;
+   }
+}
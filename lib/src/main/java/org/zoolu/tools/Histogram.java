@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/** Class Histogram records the distribution of non-negative values (e.g. latencies), with bounded relative error.
+  * <p/>
+  * Values are counted in log-linear buckets, as in HDR histograms: each power of 2 is split
+  * into 2^SUB_BITS linear sub-buckets, so that a value is reported within 1/2^SUB_BITS (12.5%) of its actual value,
+  * whatever its magnitude. The memory used is fixed, and recording a value is a few atomic additions.
+  */
+public class Histogram
+{
+   /** Number of bits of the sub-bucket index */
+   static final int SUB_BITS=3;
+
+   /** Number of sub-buckets for each power of 2 */
+   static final int SUB_BUCKETS=1<<SUB_BITS;
+
+   /** Number of buckets (enough for any long value) */
+   static final int BUCKETS=(64-SUB_BITS)*SUB_BUCKETS;
+
+
+   /** Histogram name */
+   final String name;
+
+   /** Bucket counts */
+   final AtomicLongArray counts=new AtomicLongArray(BUCKETS);
+
+   /** Number of recorded values */
+   final Counter count;
+
+   /** Sum of the recorded values */
+   final Counter sum;
+
+   /** Max recorded value */
+   final AtomicLong max=new AtomicLong();
+
+
+   /** Creates a new Histogram. */
+   public Histogram(String name)
+   {  this.name=name;
+      count=new Counter(name);
+      sum=new Counter(name);
+   }
+
+
+   /** Gets the histogram name. */
+   public String getName()
+   {  return name;
+   }
+
+   /** Records a value (negative values are recorded as 0). */
+   public void record(long value)
+   {  if (value<0) value=0;
+      counts.getAndIncrement(bucket(value));
+      count.increment();
+      sum.add(value);
+      long current;
+      while (value>(current=max.get()) && !max.compareAndSet(current,value));
+   }
+
+   /** Gets the number of recorded values. */
+   public long getCount()
+   {  return count.get();
+   }
+
+   /** Gets the average of the recorded values. */
+   public long getMean()
+   {  long n=count.get();
+      return (n>0)? sum.get()/n : 0;
+   }
+
+   /** Gets the max recorded value. */
+   public long getMax()
+   {  return max.get();
+   }
+
+   /** Gets the value below which the given <i>percentile</i> (between 0 and 100) of the recorded values fall.
+     * The value is the highest value of its bucket, that is it may exceed the actual one by 12.5% at most. */
+   public long getPercentile(double percentile)
+   {  long[] snapshot=new long[BUCKETS];
+      long n=0;
+      for (int i=0; i<BUCKETS; i++) n+=(snapshot[i]=counts.get(i));
+      if (n==0) return 0;
+      long rank=(long)Math.ceil(n*percentile/100);
+      if (rank<1) rank=1;
+      long seen=0;
+      for (int i=0; i<BUCKETS; i++)
+      {  seen+=snapshot[i];
+         if (seen>=rank) return Math.min(highestValue(i),max.get());
+      }
+      return max.get();
+   }
+
+   /** Gets a String representation of this object. */
+   public String toString()
+   {  return name+": count="+getCount()+" mean="+getMean()+" p50="+getPercentile(50)+" p90="+getPercentile(90)+" p99="+getPercentile(99)+" max="+getMax();
+   }
+
+
+   /** Gets the bucket of a value. */
+   static int bucket(long value)
+   {  if (value<SUB_BUCKETS) return (int)value;
+      int exp=63-Long.numberOfLeadingZeros(value);
+      int sub=(int)(value>>>(exp-SUB_BITS))&(SUB_BUCKETS-1);
+      return (exp-SUB_BITS+1)*SUB_BUCKETS+sub;
+   }
+
+   /** Gets the highest value of a bucket. */
+   static long highestValue(int bucket)
+   {  if (bucket<SUB_BUCKETS) return bucket;
+      int exp=bucket/SUB_BUCKETS+SUB_BITS-1;
+      int sub=bucket%SUB_BUCKETS;
+      long lowest=((long)(SUB_BUCKETS+sub))<<(exp-SUB_BITS);
+      return lowest+(1L<<(exp-SUB_BITS))-1;
+   }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/** IdGenerator generates unpredictable identifiers, such as SIP branches, tags, and Call-IDs,
+ * without any contention between threads.
+ * <p> Each thread takes a slot number the first time it generates an identifier,
+ * and then counts the identifiers it generates. The 64-bit pair (slot,counter) is never repeated
+ * within the process, and it is passed through SipHash-2-4, a pseudorandom function keyed
+ * by 128 bits taken from SecureRandom at startup. Without the key, the identifiers cannot be
+ * predicted from the ones already seen; since they are the outputs of a PRF on distinct inputs,
+ * any two of them (also of different runs) are equal with probability 2^-64.
+ * <p> Identifiers are encoded with 13 base32 characters (digits and lowercase letters 'a'-'v'),
+ * directly into a per-thread char buffer.
+ */
+public class IdGenerator
+{
+    /** Base32 digits (RFC 4648 "extended hex" alphabet, lowercase) */
+    static final char[] DIGITS="0123456789abcdefghijklmnopqrstuv".toCharArray();
+
+    /** Number of base32 characters of an identifier */
+    public static final int ID_LENGTH=13;
+
+    /** Number of bits of the per-thread counter */
+    static final int COUNTER_BITS=40;
+
+    /** SipHash key, picked at startup */
+    static final long KEY1, KEY2;
+
+    static
+    {  SecureRandom rand=new SecureRandom();
+        KEY1=rand.nextLong();
+        KEY2=rand.nextLong();
+    }
+
+    /** Next thread slot. Slots take the 24 high bits of the (slot,counter) pair,
+     * so uniqueness holds for the first 2^24 slots (i.e. threads, or 2^40 identifiers per thread). */
+    static final AtomicInteger next_slot=new AtomicInteger();
+
+    /** Per-thread state */
+    static final ThreadLocal<State> state=new ThreadLocal<State>()
+    {  protected State initialValue()
+        {  return new State();
+        }
+    };
+
+
+    /** State of a thread: slot, counter, and encoding buffer. */
+    static final class State
+    {
+        /** The slot, shifted in the high bits */
+        long slot;
+
+        /** Identifiers generated with the current slot */
+        long counter;
+
+        /** Encoding buffer */
+        char[] buf=new char[64];
+
+        State()
+        {  nextSlot();
+        }
+
+        /** Takes a new slot. */
+        void nextSlot()
+        {  slot=((long)next_slot.getAndIncrement())<<COUNTER_BITS;
+            counter=0;
+        }
+
+        /** Gets the next value. */
+        long next()
+        {  if (counter==(1L<<COUNTER_BITS)) nextSlot();
+            return sipHash(KEY1,KEY2,slot|counter++);
+        }
+
+        /** Gets a buffer of at least <i>len</i> chars. */
+        char[] buffer(int len)
+        {  if (buf.length<len) buf=new char[Math.max(len,buf.length*2)];
+            return buf;
+        }
+    }
+
+
+    /** SipHash-2-4 of an 8-byte message, that is the little-endian encoding of <i>m</i>.
+     * @param k0 the first half of the key (little-endian)
+     * @param k1 the second half of the key (little-endian) */
+    static long sipHash(long k0, long k1, long m)
+    {  long v0=k0^0x736f6d6570736575L;
+        long v1=k1^0x646f72616e646f6dL;
+        long v2=k0^0x6c7967656e657261L;
+        long v3=k1^0x7465646279746573L;
+        // the message block
+        v3^=m;
+        for (int i=0; i<2; i++)
+        {  v0+=v1; v1=Long.rotateLeft(v1,13); v1^=v0; v0=Long.rotateLeft(v0,32);
+            v2+=v3; v3=Long.rotateLeft(v3,16); v3^=v2;
+            v0+=v3; v3=Long.rotateLeft(v3,21); v3^=v0;
+            v2+=v1; v1=Long.rotateLeft(v1,17); v1^=v2; v2=Long.rotateLeft(v2,32);
+        }
+        v0^=m;
+        // the last block, with only the length
+        long b=8L<<56;
+        v3^=b;
+        for (int i=0; i<2; i++)
+        {  v0+=v1; v1=Long.rotateLeft(v1,13); v1^=v0; v0=Long.rotateLeft(v0,32);
+            v2+=v3; v3=Long.rotateLeft(v3,16); v3^=v2;
+            v0+=v3; v3=Long.rotateLeft(v3,21); v3^=v0;
+            v2+=v1; v1=Long.rotateLeft(v1,17); v1^=v2; v2=Long.rotateLeft(v2,32);
+        }
+        v0^=b;
+        // finalization
+        v2^=0xff;
+        for (int i=0; i<4; i++)
+        {  v0+=v1; v1=Long.rotateLeft(v1,13); v1^=v0; v0=Long.rotateLeft(v0,32);
+            v2+=v3; v3=Long.rotateLeft(v3,16); v3^=v2;
+            v0+=v3; v3=Long.rotateLeft(v3,21); v3^=v0;
+            v2+=v1; v1=Long.rotateLeft(v1,17); v1^=v2; v2=Long.rotateLeft(v2,32);
+        }
+        return v0^v1^v2^v3;
+    }
+
+
+    /** Returns a new unpredictable 64-bit value. */
+    public static long nextLong()
+    {  return state.get().next();
+    }
+
+    /** Returns a new identifier of ID_LENGTH characters. */
+    public static String nextId()
+    {  return nextId(null,null);
+    }
+
+    /** Returns a new identifier of ID_LENGTH characters, between a given prefix and suffix.
+     * @param prefix the prefix (or null)
+     * @param suffix the suffix (or null) */
+    public static String nextId(String prefix, String suffix)
+    {  State s=state.get();
+        int prefix_len=(prefix!=null)? prefix.length() : 0;
+        int suffix_len=(suffix!=null)? suffix.length() : 0;
+        int len=prefix_len+ID_LENGTH+suffix_len;
+        char[] buf=s.buffer(len);
+        if (prefix_len>0) prefix.getChars(0,prefix_len,buf,0);
+        encode(s.next(),buf,prefix_len);
+        if (suffix_len>0) suffix.getChars(0,suffix_len,buf,prefix_len+ID_LENGTH);
+        return new String(buf,0,len);
+    }
+
+    /** Encodes a 64-bit value with ID_LENGTH base32 characters. */
+    public static String toBase32(long value)
+    {  char[] buf=new char[ID_LENGTH];
+        encode(value,buf,0);
+        return new String(buf);
+    }
+
+    /** Encodes a 64-bit value with ID_LENGTH base32 characters, starting from <i>buf[offset]</i>. */
+    static void encode(long value, char[] buf, int offset)
+    {  for (int i=offset+ID_LENGTH-1; i>=offset; i--)
+        {  buf[i]=DIGITS[(int)value&31];
+            value>>>=5;
+        }
+    }
+}
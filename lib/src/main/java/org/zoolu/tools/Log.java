@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+import java.io.PrintStream;
+
+
+/** Log is the logging facade of the stack.
+  * <p/>
+  * Records are written by a pluggable Logger (see setLogger()); by default they are printed to
+  * the standard error. Records below the current level (see setLevel()), or that the Logger
+  * does not want (see Logger.isLoggable()), are discarded before reaching the Logger.
+  * <p/>
+  * Methods have the same names and levels of android.util.Log. Each method has also a variant that
+  * takes a Log.Supplier, that builds the record text only if the record is logged; it should be used
+  * (as a lambda expression) for records built by concatenating strings on frequent paths,
+  * so that nothing is built, and nothing is allocated, when the level is disabled:
+  * <pre>
+  *    Log.v(TAG, () -> "transaction "+id+" terminated");
+  * </pre>
+  */
+public class Log
+{
+   /** Verbose level */
+   public static final int VERBOSE=2;
+
+   /** Debug level */
+   public static final int DEBUG=3;
+
+   /** Info level */
+   public static final int INFO=4;
+
+   /** Warning level */
+   public static final int WARN=5;
+
+   /** Error level */
+   public static final int ERROR=6;
+
+   /** Level that disables all records */
+   public static final int NONE=Integer.MAX_VALUE;
+
+
+   /** Builder of the text of a log record. */
+   public interface Supplier
+   {  /** Gets the record text. */
+      public String get();
+   }
+
+
+   /** The Logger */
+   private static volatile Logger logger=new StreamLogger(System.err);
+
+   /** The lowest level that is logged */
+   private static volatile int level=INFO;
+
+
+   /** Sets the Logger. */
+   public static void setLogger(Logger logger)
+   {  Log.logger=logger;
+   }
+
+   /** Gets the Logger. */
+   public static Logger getLogger()
+   {  return logger;
+   }
+
+   /** Sets the lowest level that is logged (Log.NONE disables all records). */
+   public static void setLevel(int level)
+   {  Log.level=level;
+   }
+
+   /** Gets the lowest level that is logged. */
+   public static int getLevel()
+   {  return level;
+   }
+
+   /** Whether records of the given <i>level</i> with the given <i>tag</i> are logged. */
+   public static boolean isLoggable(String tag, int level)
+   {  return level>=Log.level && logger.isLoggable(tag,level);
+   }
+
+
+   /** Logs a verbose record. */
+   public static void v(String tag, String msg)
+   {  if (isLoggable(tag,VERBOSE)) logger.log(VERBOSE,tag,msg,null);
+   }
+
+   /** Logs a verbose record, built only if it is logged. */
+   public static void v(String tag, Supplier msg)
+   {  if (isLoggable(tag,VERBOSE)) logger.log(VERBOSE,tag,msg.get(),null);
+   }
+
+   /** Logs a debug record. */
+   public static void d(String tag, String msg)
+   {  if (isLoggable(tag,DEBUG)) logger.log(DEBUG,tag,msg,null);
+   }
+
+   /** Logs a debug record, built only if it is logged. */
+   public static void d(String tag, Supplier msg)
+   {  if (isLoggable(tag,DEBUG)) logger.log(DEBUG,tag,msg.get(),null);
+   }
+
+   /** Logs an info record. */
+   public static void i(String tag, String msg)
+   {  if (isLoggable(tag,INFO)) logger.log(INFO,tag,msg,null);
+   }
+
+   /** Logs an info record, built only if it is logged. */
+   public static void i(String tag, Supplier msg)
+   {  if (isLoggable(tag,INFO)) logger.log(INFO,tag,msg.get(),null);
+   }
+
+   /** Logs a warning record. */
+   public static void w(String tag, String msg)
+   {  if (isLoggable(tag,WARN)) logger.log(WARN,tag,msg,null);
+   }
+
+   /** Logs a warning record, built only if it is logged. */
+   public static void w(String tag, Supplier msg)
+   {  if (isLoggable(tag,WARN)) logger.log(WARN,tag,msg.get(),null);
+   }
+
+   /** Logs a warning record with a Throwable. */
+   public static void w(String tag, String msg, Throwable t)
+   {  if (isLoggable(tag,WARN)) logger.log(WARN,tag,msg,t);
+   }
+
+   /** Logs an error record. */
+   public static void e(String tag, String msg)
+   {  if (isLoggable(tag,ERROR)) logger.log(ERROR,tag,msg,null);
+   }
+
+   /** Logs an error record, built only if it is logged. */
+   public static void e(String tag, Supplier msg)
+   {  if (isLoggable(tag,ERROR)) logger.log(ERROR,tag,msg.get(),null);
+   }
+
+   /** Logs an error record with a Throwable. */
+   public static void e(String tag, String msg, Throwable t)
+   {  if (isLoggable(tag,ERROR)) logger.log(ERROR,tag,msg,t);
+   }
+
+
+   /** Logger that prints the records to a PrintStream, as "<i>L</i>/<i>tag</i>: <i>msg</i>". */
+   public static class StreamLogger implements Logger
+   {  /** Level letters, by level */
+      private static final char[] LETTERS={ '?', '?', 'V', 'D', 'I', 'W', 'E' };
+
+      /** The stream */
+      final PrintStream out;
+
+      /** Creates a new StreamLogger. */
+      public StreamLogger(PrintStream out)
+      {  this.out=out;
+      }
+
+      /** Whether records of the given level and tag are written (always true). */
+      public boolean isLoggable(String tag, int level)
+      {  return true;
+      }
+
+      /** Writes a log record. */
+      public void log(int level, String tag, String msg, Throwable t)
+      {  char letter=(level>=0 && level<LETTERS.length)? LETTERS[level] : '?';
+         synchronized (out)
+         {  out.println(letter+"/"+tag+": "+msg);
+            if (t!=null) t.printStackTrace(out);
+         }
+      }
+   }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+/** Logger is the backend that actually writes the log records of the stack (see Log).
+  * <p/>
+  * The Android application uses a Logger that forwards the records to android.util.Log;
+  * other platforms may forward them to their own logging system.
+  */
+public interface Logger
+{
+   /** Whether records of the given <i>level</i> with the given <i>tag</i> are written.
+     * It is used for skipping the building of large log records (e.g. whole messages). */
+   public boolean isLoggable(String tag, int level);
+
+   /** Writes a log record.
+     * @param level the record level (Log.VERBOSE, Log.DEBUG, Log.INFO, Log.WARN, or Log.ERROR)
+     * @param tag the record tag (the source of the record)
+     * @param msg the record text
+     * @param t the Throwable to be logged with the record (or null) */
+   public void log(int level, String tag, String msg, Throwable t);
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/** Class Metrics is the registry of all Counters and Histograms of the stack.
+  * <p/>
+  * Metrics are created the first time they are looked up, and then never removed;
+  * code that updates a metric often should look it up once and keep it (e.g. in a static field).
+  * <p/>
+  * snapshot() gets the current values of all metrics. The same values are exposed
+  * through JMX, where available (see registerMBean()).
+  */
+public class Metrics implements MetricsMXBean
+{
+   /** JMX name of the registry */
+   public static final String MBEAN_NAME="org.zoolu.sip:type=Metrics";
+
+   /** Counters, as table:(String)name-->(Counter)counter */
+   static final ConcurrentHashMap<String,Counter> counters=new ConcurrentHashMap<String,Counter>();
+
+   /** Histograms, as table:(String)name-->(Histogram)histogram */
+   static final ConcurrentHashMap<String,Histogram> histograms=new ConcurrentHashMap<String,Histogram>();
+
+   /** The registry instance, exposed through JMX */
+   static final Metrics instance=new Metrics();
+
+   /** Whether the registry has been registered to the JMX platform server */
+   static boolean registered=false;
+
+
+   /** Creates a new Metrics. */
+   private Metrics()
+   {
+   }
+
+
+   /** Gets the Counter <i>name</i>, creating it if needed. */
+   public static Counter counter(String name)
+   {  Counter c=counters.get(name);
+      if (c==null)
+      {  Counter prev=counters.putIfAbsent(name,c=new Counter(name));
+         if (prev!=null) c=prev;
+      }
+      return c;
+   }
+
+   /** Gets the Histogram <i>name</i>, creating it if needed. */
+   public static Histogram histogram(String name)
+   {  Histogram h=histograms.get(name);
+      if (h==null)
+      {  Histogram prev=histograms.putIfAbsent(name,h=new Histogram(name));
+         if (prev!=null) h=prev;
+      }
+      return h;
+   }
+
+   /** Gets a new Family of Counters named <i>name</i>.<i>label</i>, with at most <i>max_labels</i> labels. */
+   public static Family family(String name, int max_labels)
+   {  return new Family(name,max_labels);
+   }
+
+
+   /** Gets the current values of all metrics, sorted by name.
+     * Each Histogram is reported as <i>name</i>.count, .mean, .p50, .p90, .p99, and .max. */
+   public static Map<String,Long> snapshot()
+   {  TreeMap<String,Long> values=new TreeMap<String,Long>();
+      for (Counter c : counters.values()) values.put(c.getName(),c.get());
+      for (Histogram h : histograms.values())
+      {  String name=h.getName();
+         values.put(name+".count",h.getCount());
+         values.put(name+".mean",h.getMean());
+         values.put(name+".p50",h.getPercentile(50));
+         values.put(name+".p90",h.getPercentile(90));
+         values.put(name+".p99",h.getPercentile(99));
+         values.put(name+".max",h.getMax());
+      }
+      return values;
+   }
+
+
+   /** Registers the registry to the platform MBeanServer, as MBEAN_NAME.
+     * JMX is accessed by reflection, since it is not available on all platforms (e.g. Android).
+     * @return true if registered, false if JMX is not available */
+   public static synchronized boolean registerMBean()
+   {  if (registered) return true;
+      try
+      {  Object server=Class.forName("java.lang.management.ManagementFactory").getMethod("getPlatformMBeanServer").invoke(null);
+         Class<?> object_name=Class.forName("javax.management.ObjectName");
+         Object name=object_name.getConstructor(String.class).newInstance(MBEAN_NAME);
+         Class.forName("javax.management.MBeanServer").getMethod("registerMBean",Object.class,object_name).invoke(server,instance,name);
+         registered=true;
+      }
+      catch (Exception e)
+      {  // JMX not available
+      }
+      return registered;
+   }
+
+
+   // ************************* MetricsMXBean *************************
+
+   /** From MetricsMXBean. Gets the current values of all metrics. */
+   public Map<String,Long> getSnapshot()
+   {  return snapshot();
+   }
+
+   /** From MetricsMXBean. Gets the current value of a metric (or -1 if not found). */
+   public long getValue(String name)
+   {  Long value=snapshot().get(name);
+      return (value!=null)? value : -1;
+   }
+
+
+   // ************************* Inner classes *************************
+
+   /** A set of Counters with the same name and different labels (e.g. one for each SIP method).
+     * Since labels may come from received messages, their number is limited:
+     * further labels are all counted by the <i>name</i>.other Counter. */
+   public static class Family
+   {  final String name;
+      final int max_labels;
+      final ConcurrentHashMap<String,Counter> labels=new ConcurrentHashMap<String,Counter>();
+      final Counter other;
+
+      Family(String name, int max_labels)
+      {  this.name=name;
+         this.max_labels=max_labels;
+         other=counter(name+".other");
+      }
+
+      /** Gets the Counter of a label. */
+      public Counter get(String label)
+      {  Counter c=labels.get(label);
+         if (c!=null) return c;
+         // else
+         synchronized (labels)
+         {  c=labels.get(label);
+            if (c==null)
+            {  if (labels.size()>=max_labels) return other;
+               // else
+               c=counter(name+"."+label);
+               labels.put(label,c);
+            }
+            return c;
+         }
+      }
+   }
+}
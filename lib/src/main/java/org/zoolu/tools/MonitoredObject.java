@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2006 Luca Veltri - University of Parma - Italy
+ * 
+ * This file is part of MjSip (http://www.mjsip.org)
+ * 
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.tools;
+
+
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Hashtable;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/** MonitoredObject is the base class for all objects that have to be monitored.
+  * It keeps trace of the number of instances allocated into the heap.
+  * <p/>
+  * Monitoring is disabled by default (see setEnabled()): a new MonitoredObject then costs
+  * just a volatile read. When enabled, each new instance increments the counter of its class,
+  * and it is tracked through a PhantomReference, so that the counter is decremented
+  * when the instance is garbage collected. Counters are updated without locks,
+  * and no finalizer is used; references are kept in a few linked lists,
+  * selected by thread, each one locked only for linking or unlinking a reference.
+  */
+public class MonitoredObject
+{
+   /** Whether new instances are monitored */
+   static volatile boolean enabled=false;
+
+   /** Table of class occurences, that is: (String)class_name-->(AtomicLong)class_occurences */
+   static final ConcurrentHashMap<String,AtomicLong> class_occurences=new ConcurrentHashMap<String,AtomicLong>();
+
+   /** Number of lists of references (it must be a power of 2) */
+   static final int LISTS=8;
+
+   /** Lists of the references to the monitored instances (the references must be kept reachable until they are enqueued) */
+   static final Tracker[] trackers=new Tracker[LISTS];
+
+   /** Queue of the references to the collected instances */
+   static final ReferenceQueue<Object> collected=new ReferenceQueue<Object>();
+
+   /** Total number of thrown exceptions */
+   static final AtomicLong exception_counter=new AtomicLong();
+
+   static
+   {  for (int i=0; i<LISTS; i++) trackers[i]=new Tracker(null,null,i);
+   }
+
+
+   /** Creates a new MonitoredObject. */
+   public MonitoredObject()
+   {  if (enabled)
+      {  try
+         {  String class_name=getClass().getName();
+            if (class_name==null) throw new MonitoredObjectException("Unknown class rtpmap.");
+            else addObject(this,class_name);
+         }
+         catch (Exception e)
+         {  exception_counter.incrementAndGet();
+         }
+      }
+   }
+
+
+   /** Enables or disables the monitoring of the new instances.
+     * Instances created while monitoring is disabled are not counted. */
+   public static void setEnabled(boolean enable)
+   {  enabled=enable;
+   }
+
+
+   /** Whether the new instances are monitored. */
+   public static boolean isEnabled()
+   {  return enabled;
+   }
+
+
+   /** Adds a new MonitoredObject instance. */
+   private static void addObject(Object obj, String class_name)
+   {  expunge();
+      AtomicLong counter=class_occurences.get(class_name);
+      if (counter==null)
+      {  AtomicLong prev=class_occurences.putIfAbsent(class_name,counter=new AtomicLong());
+         if (prev!=null) counter=prev;
+      }
+      counter.incrementAndGet();
+      Tracker t=new Tracker(obj,counter,(int)Thread.currentThread().getId()&(LISTS-1));
+      synchronized (trackers[t.list])
+      {  Tracker head=trackers[t.list];
+         t.next=head.next;
+         t.prev=head;
+         if (head.next!=null) head.next.prev=t;
+         head.next=t;
+      }
+   }
+
+
+   /** Removes the collected MonitoredObject instances. */
+   private static void expunge()
+   {  Tracker t;
+      while ((t=(Tracker)collected.poll())!=null)
+      {  synchronized (trackers[t.list])
+         {  t.prev.next=t.next;
+            if (t.next!=null) t.next.prev=t.prev;
+            t.prev=null;
+            t.next=null;
+         }
+         t.counter.decrementAndGet();
+      }
+   }
+
+
+   /** Gets occurrences of all monitored classes.
+     * @return It returns a Hashtable mapping class names (String) onto the number of their occurrences (Long). */
+   public static Hashtable getAllClassOccurences()
+   {  expunge();
+      Hashtable occurences=new Hashtable();
+      for (Map.Entry<String,AtomicLong> e : class_occurences.entrySet()) occurences.put(e.getKey(),Long.valueOf(e.getValue().get()));
+      return occurences;
+   }
+
+
+   /** Gets occurrences of a specific class. */
+   public static long getClassOccurences(String class_name)
+   {  expunge();
+      AtomicLong counter=class_occurences.get(class_name);
+      return (counter!=null)? counter.get() : 0;
+   }
+
+
+   /** Gets all monitored classes.
+     * @return It returns an Enumeration of all class names (String). */
+   public static Enumeration getAllClasses()
+   {  return getAllClassOccurences().keys();
+   }
+
+
+   /** Gets the total number of thrown exceptions. */
+   public static long getExceptionCounter()
+   {  return exception_counter.get();
+   }
+
+
+   /** Prints dump. */
+   public static String getDump()
+   {  Hashtable occurences=getAllClassOccurences();
+      StringBuffer dump=new StringBuffer();
+      for (Enumeration e=occurences.keys(); e.hasMoreElements(); )
+      {  String name=(String)e.nextElement();
+         dump.append(name).append(": ").append(occurences.get(name)).append("\r\n");
+      }
+      return dump.toString();
+   }
+
+
+   /** Reference to a monitored instance, with the counter of its class.
+     * It is a node of a doubly-linked list, whose head is a Tracker with no referent. */
+   static class Tracker extends PhantomReference<Object>
+   {  final AtomicLong counter;
+      final int list;
+      Tracker prev, next;
+
+      Tracker(Object obj, AtomicLong counter, int list)
+      {  super(obj,(obj!=null)? collected : null);
+         this.counter=counter;
+         this.list=list;
+      }
+   }
+
+
+   /** MonitoredObjectException. */
+   public class MonitoredObjectException extends Exception
+   {  
+      /* Creates a new MonitoredObjectException. */
+      public MonitoredObjectException(String name)
+      {  super(name);
+      }
+   }
+}
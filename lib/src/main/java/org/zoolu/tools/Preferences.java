@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+/** Preferences is a source of configuration values, read by Configurable objects.
+  * <p/>
+  * Values are accessed by key, and a default value is returned for missing keys.
+  * Only getString() has to be implemented: the other getters parse the string value,
+  * and may be overridden by sources that store typed values (e.g. Android SharedPreferences).
+  */
+public abstract class Preferences
+{
+   /** Gets a string value, or <i>default_value</i> if not present. */
+   public abstract String getString(String key, String default_value);
+
+
+   /** Gets an int value, or <i>default_value</i> if not present or not valid. */
+   public int getInt(String key, int default_value)
+   {  String value=getString(key,null);
+      if (value==null) return default_value;
+      try {  return Integer.parseInt(value.trim());  } catch (NumberFormatException e) {  return default_value;  }
+   }
+
+   /** Gets a long value, or <i>default_value</i> if not present or not valid. */
+   public long getLong(String key, long default_value)
+   {  String value=getString(key,null);
+      if (value==null) return default_value;
+      try {  return Long.parseLong(value.trim());  } catch (NumberFormatException e) {  return default_value;  }
+   }
+
+   /** Gets a boolean value ("true"/"yes" or "false"/"no"), or <i>default_value</i> if not present or not valid. */
+   public boolean getBoolean(String key, boolean default_value)
+   {  String value=getString(key,null);
+      if (value==null) return default_value;
+      value=value.trim();
+      if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")) return true;
+      if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")) return false;
+      return default_value;
+   }
+
+   /** Gets a list of comma-separated values, or <i>default_value</i> if not present.
+     * An empty string is an empty list. */
+   public String[] getStrings(String key, String[] default_value)
+   {  String value=getString(key,null);
+      if (value==null) return default_value;
+      value=value.trim();
+      if (value.length()==0) return new String[0];
+      String[] values=value.split(",");
+      for (int i=0; i<values.length; i++) values[i]=values[i].trim();
+      return values;
+   }
+
+   /** Gets a list of comma-separated int values, or <i>default_value</i> if not present or not valid. */
+   public int[] getInts(String key, int[] default_value)
+   {  String[] values=getStrings(key,null);
+      if (values==null) return default_value;
+      int[] ints=new int[values.length];
+      try
+      {  for (int i=0; i<values.length; i++) ints[i]=Integer.parseInt(values[i]);
+      }
+      catch (NumberFormatException e) {  return default_value;  }
+      return ints;
+   }
+}
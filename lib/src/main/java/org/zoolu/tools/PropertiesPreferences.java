@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+
+/** PropertiesPreferences are Preferences read from a java.util.Properties
+  * (e.g. a configuration file of "key=value" lines).
+  */
+public class PropertiesPreferences extends Preferences
+{
+   /** The properties */
+   final Properties properties;
+
+
+   /** Creates new PropertiesPreferences. */
+   public PropertiesPreferences(Properties properties)
+   {  this.properties=properties;
+   }
+
+   /** Creates new PropertiesPreferences read from a file. */
+   public PropertiesPreferences(String file) throws IOException
+   {  properties=new Properties();
+      InputStream in=new FileInputStream(file);
+      try {  properties.load(in);  } finally {  in.close();  }
+   }
+
+
+   /** Gets a string value, or <i>default_value</i> if not present. */
+   public String getString(String key, String default_value)
+   {  return properties.getProperty(key,default_value);
+   }
+}
@@ -23,14 +23,32 @@
 
 package org.zoolu.tools;
 
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
 /** A Timer is a simple object that fires an onTimeout() method to its TimerListener when the time expires.
  * A Timer have to be explicitely started, and can be halted before it expires.
+ * <p> All Timers are scheduled by a single hashed timing wheel (see TimingWheel),
+ * so starting and halting a Timer is O(1) and does not create any thread or task.
+ * A Timer can be started again (also with a different time, see setTime())
+ * after it is expired or halted.
  */
-public class Timer extends org.zoolu.tools.MonitoredObject implements InnerTimerListener {
+public class Timer extends org.zoolu.tools.MonitoredObject {
 
-    /** Whether using single thread for all timer instances. */
+    /** Whether all timeouts are fired by the single timer thread.
+     * If false, and no executor has been set, timeouts are fired through a shared thread pool. */
     public static boolean SINGLE_THREAD=true;
 
+    /** Executor used to fire timeouts (null for using the timer thread) */
+    private static Executor executor=null;
+
+    /** Shared thread pool used when not in SINGLE_THREAD mode */
+    private static ExecutorService thread_pool=null;
+
     //HashSet listener_list=null;
 
     /** Timer listener */
@@ -48,6 +66,50 @@ public class Timer extends org.zoolu.tools.MonitoredObject implements InnerTimer
     /** Whether the Timer is (still) active */
     boolean active;
 
+    /** Incremented at every start() or halt(), in order to ignore timeouts of previous runs */
+    int generation=0;
+
+    // the following attributes are managed by TimingWheel
+
+    /** Expiration tick */
+    long deadline;
+
+    /** Wheel slot, or -1 if not scheduled */
+    int slot=-1;
+
+    /** Generation of the scheduled run */
+    int scheduled_generation;
+
+    /** Previous Timer within the same slot */
+    Timer prev;
+
+    /** Next Timer within the same slot */
+    Timer next;
+
+
+    /** Sets the Executor used to fire the timeouts of all Timers.
+     * If null, timeouts are fired by the timer thread (SINGLE_THREAD mode) or by a shared thread pool. */
+    public static synchronized void setExecutor(Executor e)
+    {  executor=e;
+    }
+
+    /** Gets the Executor used to fire the timeouts (null for firing them from the timer thread). */
+    static synchronized Executor getExecutor()
+    {  if (executor!=null) return executor;
+        if (SINGLE_THREAD) return null;
+        // else
+        if (thread_pool==null)
+        {  thread_pool=Executors.newCachedThreadPool(new ThreadFactory()
+            {  public Thread newThread(Runnable r)
+                {  Thread t=new Thread(r,"Timer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return thread_pool;
+    }
+
 
     /** Inits the Timer. */
     void init(long time, String label, TimerListener listener) {
@@ -93,6 +155,11 @@ public class Timer extends org.zoolu.tools.MonitoredObject implements InnerTimer
     {  return time;
     }
 
+    /** Sets the time (in milliseconds) used by the next start(). */
+    public synchronized void setTime(long t_msec)
+    {  time=t_msec;
+    }
+
     /** Gets the remaining time (in milliseconds). */
     public long getExpirationTime()
     {  if (active)
@@ -112,28 +179,31 @@ public class Timer extends org.zoolu.tools.MonitoredObject implements InnerTimer
    {  listener_list.remove(listener);
    }*/
 
-    /** Stops the Timer. The onTimeout() method will not be fired. */
+    /** Stops the Timer. The onTimeout() method will not be fired.
+     * The Timer can be started again. */
     public synchronized void halt()
-    {  active=false;
-        // (CHANGE-040421) now it can free the link to Timer listeners
-        //listener_list=null;
-        listener=null;
+    {  if (active) TimingWheel.getDefault().cancel(this);
+        active=false;
+        generation++;
     }
 
-    /** Starts the timer. */
-    public synchronized void start()
-    {  if (time<0) return;
-        // else
-        start_time=System.currentTimeMillis();
-        active=true;
-        if (time>0)
-        {  if (SINGLE_THREAD) new InnerTimerST(time,this);
-        else new InnerTimerMT(time,this);
-        }
-        else
-        {  // fire now!
-            onInnerTimeout();
+    /** Starts the timer. If the timer is already running, it is restarted. */
+    public void start()
+    {  int gen;
+        synchronized (this)
+        {  if (time<0) return;
+            // else
+            if (active) TimingWheel.getDefault().cancel(this);
+            start_time=System.currentTimeMillis();
+            active=true;
+            gen=++generation;
+            if (time>0)
+            {  TimingWheel.getDefault().schedule(this,time,gen);
+                return;
+            }
         }
+        // fire now!
+        expire(gen);
     }
 
 
@@ -143,18 +213,21 @@ public class Timer extends org.zoolu.tools.MonitoredObject implements InnerTimer
     }
 
 
-    /** From InnerTimerListener. When the Timeout fires. */
-    public synchronized void onInnerTimeout()
-    {  //if (active && !listener_list.isEmpty())
+    /** When the Timeout of the run <i>gen</i> fires.
+     * The listener is called only if the timer has not been halted or restarted in the meantime. */
+    void expire(int gen)
+    {  TimerListener l;
+        synchronized (this)
+        {  if (!active || gen!=generation) return;
+            // else
+            active=false;
+            l=listener;
+        }
+        //if (active && !listener_list.isEmpty())
         //{  for (Iterator i=listener_list.iterator(); i.hasNext(); )
         //   {  ((TimerListener)i.next()).onTimeout(this);
         //   }
         //}
-        if (active && listener!=null) listener.onTimeout(this);
-        active=false;
-        // (CHANGE-040421) now it can free the link to Timer listeners
-        //listener_list=null;
-        listener=null;
+        if (l!=null) l.onTimeout(this);
     }
 }
-
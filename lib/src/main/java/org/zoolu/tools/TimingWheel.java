@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2006 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.tools;
+
+
+import java.util.concurrent.Executor;
+
+
+/** Class TimingWheel is a hashed timing wheel that schedules all Timers with a single thread.
+  * <p/>
+  * The wheel has a fixed number of slots, each one covering one tick.
+  * A Timer is linked (as a node of a doubly-linked list) into the slot of its expiration tick,
+  * so that starting and halting a Timer are O(1) operations that do not allocate any object.
+  * At every tick, the thread walks only the current slot and fires the Timers that are expired;
+  * Timers that expire after one or more wheel rounds are simply left in the slot.
+  * <p/>
+  * Timeouts are fired either by the wheel thread itself or through an Executor (see Timer.setExecutor()).
+  */
+class TimingWheel extends Thread
+{
+    /** Tick duration, in milliseconds */
+    static final long TICK=10;
+
+    /** Number of slots (it must be a power of 2) */
+    static final int SLOTS=1024;
+
+    /** Mask for computing the slot of a tick */
+    static final int MASK=SLOTS-1;
+
+    /** The default TimingWheel */
+    private static TimingWheel default_wheel=null;
+
+
+    /** Slots, each one containing the first Timer of a list */
+    Timer[] slots=new Timer[SLOTS];
+
+    /** Start time, in nanoseconds */
+    long origin=System.nanoTime();
+
+    /** Last processed tick */
+    long last_tick=0;
+
+    /** Number of scheduled Timers */
+    int size=0;
+
+    /** Timers expired within the last processed ticks (used only by the wheel thread) */
+    Timer[] expired=new Timer[16];
+
+    /** Generations of the expired Timers, at the time they have been scheduled */
+    int[] expired_generation=new int[16];
+
+    /** Number of expired Timers */
+    int n_expired=0;
+
+
+    /** Gets the default TimingWheel (it is started the first time it is used). */
+    static synchronized TimingWheel getDefault()
+    {  if (default_wheel==null || !default_wheel.isAlive())
+        {  default_wheel=new TimingWheel();
+            default_wheel.start();
+        }
+        return default_wheel;
+    }
+
+
+    /** Creates a new TimingWheel. */
+    TimingWheel()
+    {  super("TimingWheel");
+        setDaemon(true);
+    }
+
+
+    /** Gets the current tick. */
+    private long currentTick()
+    {  return (System.nanoTime()-origin)/(TICK*1000000L);
+    }
+
+
+    /** Schedules a Timer to expire after <i>delay</i> milliseconds.
+      * @param generation the Timer generation, that is checked when the timeout is fired */
+    synchronized void schedule(Timer t, long delay, int generation)
+    {  if (t.slot>=0) unlink(t);
+        long ticks=(delay+TICK-1)/TICK;
+        if (ticks<1) ticks=1;
+        t.deadline=currentTick()+ticks;
+        t.scheduled_generation=generation;
+        int i=(int)(t.deadline&MASK);
+        t.slot=i;
+        t.prev=null;
+        t.next=slots[i];
+        if (t.next!=null) t.next.prev=t;
+        slots[i]=t;
+        if (size++==0) notify();
+    }
+
+
+    /** Removes a Timer, if scheduled. */
+    synchronized void cancel(Timer t)
+    {  if (t.slot>=0) unlink(t);
+    }
+
+
+    /** Unlinks a Timer from its slot. */
+    private void unlink(Timer t)
+    {  if (t.prev!=null) t.prev.next=t.next;
+        else slots[t.slot]=t.next;
+        if (t.next!=null) t.next.prev=t.prev;
+        t.prev=null;
+        t.next=null;
+        t.slot=-1;
+        size--;
+    }
+
+
+    /** Processes all ticks up to the current one, collecting the expired Timers. */
+    private synchronized void advance() throws InterruptedException
+    {  while (size==0)
+        {  wait();
+            last_tick=currentTick();
+        }
+        long now=currentTick();
+        if (now==last_tick)
+        {  long sleep=TICK-((System.nanoTime()-origin)/1000000L)%TICK;
+            wait(sleep>0? sleep : 1);
+            now=currentTick();
+        }
+        // if late by more than a round, each slot is processed only once
+        long first=Math.max(last_tick+1,now-MASK);
+        for (long tick=first; tick<=now && size>0; tick++)
+        {  Timer t=slots[(int)(tick&MASK)];
+            while (t!=null)
+            {  Timer next=t.next;
+                if (t.deadline<=now)
+                {  if (n_expired==expired.length)
+                    {  Timer[] aux=new Timer[n_expired*2];
+                        System.arraycopy(expired,0,aux,0,n_expired);
+                        expired=aux;
+                        int[] aux_gen=new int[n_expired*2];
+                        System.arraycopy(expired_generation,0,aux_gen,0,n_expired);
+                        expired_generation=aux_gen;
+                    }
+                    expired[n_expired]=t;
+                    expired_generation[n_expired]=t.scheduled_generation;
+                    n_expired++;
+                    unlink(t);
+                }
+                t=next;
+            }
+        }
+        last_tick=now;
+    }
+
+
+    /** Runs the wheel. */
+    public void run()
+    {  try
+        {  while (true)
+            {  advance();
+                for (int i=0; i<n_expired; i++)
+                {  fire(expired[i],expired_generation[i]);
+                    expired[i]=null;
+                }
+                n_expired=0;
+            }
+        }
+        catch (InterruptedException e) {}
+    }
+
+
+    /** Fires the timeout of a Timer. */
+    private static void fire(final Timer t, final int generation)
+    {  Executor executor=Timer.getExecutor();
+        if (executor==null)
+        {  try {  t.expire(generation);  } catch (RuntimeException e) {  e.printStackTrace();  }
+        }
+        else executor.execute(new Runnable()
+        {  public void run()
+            {  t.expire(generation);
+            }
+        });
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.tools;
+
+
+
+/** Class TokenBucketSketch is a set of token buckets, one for each key, kept in a fixed amount of memory.
+  * <p/>
+  * The buckets are arranged as a count-min sketch: <i>depth</i> rows of <i>width</i> buckets,
+  * and each key is hashed to one bucket of each row.
+  * A key is let through if at least one of its buckets has a token; then one token is taken from all of them.
+  * Keys that collide with busy keys may be limited earlier than they should, but never later,
+  * and the memory used does not depend on the number of keys.
+  * <p/>
+  * Buckets are refilled lazily, when they are used. Tokens are kept in thousandths,
+  * so that a bucket is refilled by <i>rate</i> thousandths of token per millisecond.
+  */
+public class TokenBucketSketch
+{
+   /** Number of thousandths in a token */
+   static final long TOKEN=1000;
+
+   /** Number of rows */
+   int depth;
+
+   /** Mask for computing the bucket of a row (the width minus 1) */
+   int mask;
+
+   /** Refill rate, in tokens per second */
+   long rate;
+
+   /** Bucket size, in thousandths of token */
+   long max_tokens;
+
+   /** Tokens of each bucket, in thousandths */
+   long[] tokens;
+
+   /** Time of the last refill of each bucket, in milliseconds since <i>origin</i> */
+   long[] time;
+
+   /** Start time, in nanoseconds */
+   long origin=System.nanoTime();
+
+
+   /** Creates a new TokenBucketSketch.
+     * @param depth the number of rows (that is the number of buckets of each key)
+     * @param width the number of buckets of each row (rounded up to a power of 2)
+     * @param rate the number of tokens added to each bucket per second
+     * @param burst the max number of tokens of each bucket */
+   public TokenBucketSketch(int depth, int width, int rate, int burst)
+   {  if (depth<1) depth=1;
+      int w=1;
+      while (w<width) w<<=1;
+      this.depth=depth;
+      this.mask=w-1;
+      this.rate=rate;
+      this.max_tokens=Math.max(burst,1)*TOKEN;
+      tokens=new long[depth*w];
+      time=new long[depth*w];
+      for (int i=0; i<tokens.length; i++) tokens[i]=max_tokens;
+   }
+
+
+   /** Takes a token for the key with hash <i>hash</i>.
+     * @return true if a token was available, false if the key has exceeded its rate */
+   public synchronized boolean take(long hash)
+   {  long now=(System.nanoTime()-origin)/1000000L;
+      int h1=(int)hash;
+      int h2=(int)(hash>>>32)|1;
+      long available=0;
+      for (int row=0; row<depth; row++)
+      {  int i=row*(mask+1)+((h1+row*h2)&mask);
+         long t=tokens[i]+(now-time[i])*rate;
+         tokens[i]=(t<max_tokens)? t : max_tokens;
+         time[i]=now;
+         if (tokens[i]>available) available=tokens[i];
+      }
+      if (available<TOKEN) return false;
+      // else
+      for (int row=0; row<depth; row++)
+      {  int i=row*(mask+1)+((h1+row*h2)&mask);
+         tokens[i]=(tokens[i]>TOKEN)? tokens[i]-TOKEN : 0;
+      }
+      return true;
+   }
+
+
+   /** Gets the memory used by the buckets, in bytes. */
+   public int getMemorySize()
+   {  return tokens.length*16;
+   }
+
+
+   /** Gets a 64-bit hash of <i>len</i> bytes starting from <i>offset</i>, with the given <i>seed</i>.
+     * Using a random seed makes the buckets of a key unpredictable. */
+   public static long hash(byte[] data, int offset, int len, long seed)
+   {  long h=seed^0xcbf29ce484222325L;
+      for (int i=offset; i<offset+len; i++) h=(h^(data[i]&0xff))*0x100000001b3L;
+      return mix(h);
+   }
+
+
+   /** Mixes the bits of a hash (MurmurHash3 finalizer). */
+   public static long mix(long h)
+   {  h^=h>>>33;
+      h*=0xff51afd7ed558ccdL;
+      h^=h>>>33;
+      h*=0xc4ceb9fe1a85ec53L;
+      h^=h>>>33;
+      return h;
+   }
+}
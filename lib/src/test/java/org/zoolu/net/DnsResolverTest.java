@@ -0,0 +1,168 @@
+package org.zoolu.net;
+
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+
+/** Tests of DnsResolver and DnsClient, against a stub DNS server. */
+public class DnsResolverTest
+{
+    DnsStubServer server;
+    DnsResolver resolver;
+
+    @Before
+    public void start() throws Exception
+    {  server=new DnsStubServer();
+        resolver=new DnsResolver(new String[]{ server.getAddress() },1000);
+    }
+
+    @After
+    public void halt()
+    {  resolver.halt();
+        server.halt();
+    }
+
+    static String toString(DnsResolver.Target[] targets)
+    {  StringBuilder sb=new StringBuilder();
+        for (int i=0; i<targets.length; i++)
+        {  if (i>0) sb.append(',');
+            sb.append(targets[i].getProtocol()).append(':').append(targets[i].getAddress()).append(':').append(targets[i].getPort());
+        }
+        return sb.toString();
+    }
+
+
+    @Test
+    public void followsNaptrThenSrvThenAddresses() throws Exception
+    {  // NAPTR order wins over preference; unsupported services are skipped
+        server.addNaptr("example.com",20,10,"s","SIP+D2U","_sip._udp.example.com",300);
+        server.addNaptr("example.com",10,50,"s","SIP+D2T","_sip._tcp.example.com",300);
+        server.addNaptr("example.com",5,10,"s","SIPS+D2T","_sips._tcp.example.com",300);
+        server.addSrv("_sip._tcp.example.com",20,0,5080,"b.example.com",300);
+        server.addSrv("_sip._tcp.example.com",10,0,5070,"a.example.com",300);
+        server.addSrv("_sip._udp.example.com",10,0,5090,"c.example.com",300);
+        server.addAddress("a.example.com","10.0.0.1",300);
+        server.addAddress("a.example.com","fd00::1",300);
+        server.addAddress("b.example.com","10.0.0.2",300);
+        server.addAddress("c.example.com","10.0.0.3",300);
+        DnsResolver.Target[] targets=resolver.resolve("example.com",0,null,false);
+        assertEquals("tcp:10.0.0.1:5070,tcp:fd00:0:0:0:0:0:0:1:5070,tcp:10.0.0.2:5080,udp:10.0.0.3:5090",toString(targets));
+        // a transport or a port skip NAPTR, a port skips also SRV
+        assertEquals("udp:10.0.0.3:5090",toString(resolver.resolve("example.com",0,"udp",false)));
+        assertEquals(0,server.getQueries("_sips._tcp.example.com",DnsRecord.SRV));
+        server.addAddress("example.com","10.0.0.9",300);
+        assertEquals("tcp:10.0.0.9:5062",toString(resolver.resolve("example.com",5062,"tcp",false)));
+    }
+
+    @Test
+    public void cachesRecordsForTheirTtl() throws Exception
+    {  server.addAddress("host.example.com","10.0.0.1",1);
+        assertNull(resolver.getCached("host.example.com",5060,"udp",false));
+        assertEquals("udp:10.0.0.1:5060",toString(resolver.resolve("host.example.com",5060,"udp",false)));
+        assertEquals("udp:10.0.0.1:5060",toString(resolver.getCached("host.example.com",5060,"udp",false)));
+        resolver.resolve("host.example.com",5060,"udp",false);
+        assertEquals(1,server.getQueries("host.example.com",DnsRecord.A));
+        // no AAAA: cached as a negative response, for the SOA minimum
+        assertEquals(1,server.getQueries("host.example.com",DnsRecord.AAAA));
+        Thread.sleep(1100);
+        assertNull(resolver.getCached("host.example.com",5060,"udp",false));
+        resolver.resolve("host.example.com",5060,"udp",false);
+        assertEquals(2,server.getQueries("host.example.com",DnsRecord.A));
+        assertEquals(1,server.getQueries("host.example.com",DnsRecord.AAAA));
+    }
+
+    @Test
+    public void cachesNegativeResponses() throws Exception
+    {  server.setNegativeTtl(1);
+        for (int i=0; i<2; i++)
+        {  try
+            {  resolver.resolve("missing.example.com",5060,"udp",false);
+                fail();
+            }
+            catch (UnknownHostException e) {}
+        }
+        assertEquals(1,server.getQueries("missing.example.com",DnsRecord.A));
+        try
+        {  resolver.getCached("missing.example.com",5060,"udp",false);
+            fail();
+        }
+        catch (UnknownHostException e) {}
+        Thread.sleep(1100);
+        assertNull(resolver.getCached("missing.example.com",5060,"udp",false));
+    }
+
+    @Test
+    public void ordersSrvByPriorityAndWeight()
+    {  DnsRecord heavy=new DnsRecord("_sip._udp.example.com",10,90,5060,"heavy.example.com",300);
+        DnsRecord light=new DnsRecord("_sip._udp.example.com",10,10,5060,"light.example.com",300);
+        DnsRecord backup=new DnsRecord("_sip._udp.example.com",20,100,5060,"backup.example.com",300);
+        int heavy_first=0, n=2000;
+        for (int i=0; i<n; i++)
+        {  DnsRecord[] ordered=resolver.orderSrv(new DnsRecord[]{ backup, light, heavy });
+            assertSame(backup,ordered[2]);
+            if (ordered[0]==heavy) heavy_first++;
+        }
+        // expected 90%
+        assertTrue("heavy first "+heavy_first+" times",heavy_first>n*80/100 && heavy_first<n*97/100);
+    }
+
+    @Test
+    public void movesFailedTargetsToTheEnd() throws Exception
+    {  server.addSrv("_sip._udp.example.com",10,0,5060,"a.example.com",300);
+        server.addSrv("_sip._udp.example.com",20,0,5060,"b.example.com",300);
+        server.addAddress("a.example.com","10.0.0.1",300);
+        server.addAddress("b.example.com","10.0.0.2",300);
+        DnsResolver.Target[] targets=resolver.resolve("example.com",0,"udp",false);
+        assertEquals("udp:10.0.0.1:5060,udp:10.0.0.2:5060",toString(targets));
+        resolver.reportFailure(targets[0]);
+        assertEquals("udp:10.0.0.2:5060,udp:10.0.0.1:5060",toString(resolver.resolve("example.com",0,"udp",false)));
+        resolver.failures.put("10.0.0.1:5060",Long.valueOf(System.currentTimeMillis()-1));
+        assertEquals("udp:10.0.0.1:5060,udp:10.0.0.2:5060",toString(resolver.resolve("example.com",0,"udp",false)));
+    }
+
+    @Test
+    public void retriesTruncatedResponsesThroughTcp() throws Exception
+    {  Assume.assumeTrue(server.hasTcp());
+        server.addAddress("big.example.com","10.0.0.7",300);
+        server.setTruncated("big.example.com");
+        assertEquals("udp:10.0.0.7:5060",toString(resolver.resolve("big.example.com",5060,"udp",false)));
+        // one through UDP, one through TCP
+        assertEquals(2,server.getQueries("big.example.com",DnsRecord.A));
+    }
+
+    @Test
+    public void resolvesAsynchronously() throws Exception
+    {  server.addAddress("host.example.com","10.0.0.1",300);
+        final DnsResolver.Target[][] result=new DnsResolver.Target[1][];
+        final Thread[] thread=new Thread[1];
+        final CountDownLatch done=new CountDownLatch(2);
+        DnsResolverListener listener=new DnsResolverListener()
+        {  public void onResolved(DnsResolver resolver, String host, DnsResolver.Target[] targets)
+            {  result[0]=targets;
+                thread[0]=Thread.currentThread();
+                done.countDown();
+            }
+            public void onResolutionFailure(DnsResolver resolver, String host, Exception error)
+            {  thread[0]=Thread.currentThread();
+                done.countDown();
+            }
+        };
+        resolver.resolve("host.example.com",5060,"udp",false,listener);
+        resolver.resolve("missing.example.com",5060,"udp",false,listener);
+        assertTrue(done.await(5,TimeUnit.SECONDS));
+        assertEquals("udp:10.0.0.1:5060",toString(result[0]));
+        assertNotSame(Thread.currentThread(),thread[0]);
+        // once cached, the listener is called immediately
+        result[0]=null;
+        resolver.resolve("host.example.com",5060,"udp",false,listener);
+        assertNotNull(result[0]);
+        assertSame(Thread.currentThread(),thread[0]);
+    }
+}
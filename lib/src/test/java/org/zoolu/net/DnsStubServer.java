@@ -0,0 +1,270 @@
+package org.zoolu.net;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** Stub DNS server for tests, answering through UDP (and TCP) with the records that have been added.
+  * Names without records are answered with NXDOMAIN; names with records of other types, with no data.
+  * Both negative responses carry an SOA record. */
+public class DnsStubServer
+{
+    /** Encoded records, as table:(String)name-->(List)records */
+    final Map<String,List<Record>> records=new HashMap<String,List<Record>>();
+
+    /** Number of queries, as table:(String)type:name-->(AtomicInteger)count */
+    final Map<String,AtomicInteger> queries=new HashMap<String,AtomicInteger>();
+
+    /** Names answered with truncated UDP responses */
+    final Set<String> truncated=new HashSet<String>();
+
+    /** TTL of the SOA of negative responses */
+    long negative_ttl=60;
+
+    DatagramSocket udp;
+    ServerSocket tcp;
+
+
+    /** Creates and starts a new DnsStubServer on a random local port. */
+    public DnsStubServer() throws IOException
+    {  udp=new DatagramSocket(0,InetAddress.getByName("127.0.0.1"));
+        try
+        {  tcp=new ServerSocket(udp.getLocalPort(),10,InetAddress.getByName("127.0.0.1"));
+        }
+        catch (IOException e)
+        {  tcp=null;
+        }
+        start(new Runnable()
+        {  public void run()
+            {  serveUdp();
+            }
+        });
+        if (tcp!=null) start(new Runnable()
+        {  public void run()
+            {  serveTcp();
+            }
+        });
+    }
+
+    private static void start(Runnable r)
+    {  Thread t=new Thread(r,"DnsStubServer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Gets the address of the server, as "address:port". */
+    public String getAddress()
+    {  return "127.0.0.1:"+udp.getLocalPort();
+    }
+
+    /** Whether TCP queries are served too. */
+    public boolean hasTcp()
+    {  return tcp!=null;
+    }
+
+    /** Stops the server. */
+    public void halt()
+    {  udp.close();
+        try {  if (tcp!=null) tcp.close();  } catch (IOException e) {}
+    }
+
+    /** Sets the TTL of the SOA of negative responses. */
+    public synchronized void setNegativeTtl(long ttl)
+    {  negative_ttl=ttl;
+    }
+
+    /** Answers the UDP queries for <i>name</i> with truncated responses without records. */
+    public synchronized void setTruncated(String name)
+    {  truncated.add(name.toLowerCase());
+    }
+
+    /** Gets the number of queries of type <i>type</i> for <i>name</i>. */
+    public synchronized int getQueries(String name, int type)
+    {  AtomicInteger count=queries.get(type+":"+name.toLowerCase());
+        return (count!=null)? count.get() : 0;
+    }
+
+    /** Adds an A or AAAA record. */
+    public void addAddress(String name, String address, long ttl) throws IOException
+    {  byte[] addr=InetAddress.getByName(address).getAddress();
+        add(name,(addr.length==4)? DnsRecord.A : DnsRecord.AAAA,ttl,addr);
+    }
+
+    /** Adds an SRV record. */
+    public void addSrv(String name, int priority, int weight, int port, String target, long ttl)
+    {  ByteArrayOutputStream rdata=new ByteArrayOutputStream();
+        writeShort(rdata,priority);
+        writeShort(rdata,weight);
+        writeShort(rdata,port);
+        writeName(rdata,target);
+        add(name,DnsRecord.SRV,ttl,rdata.toByteArray());
+    }
+
+    /** Adds a NAPTR record. */
+    public void addNaptr(String name, int order, int preference, String flags, String service, String replacement, long ttl)
+    {  ByteArrayOutputStream rdata=new ByteArrayOutputStream();
+        writeShort(rdata,order);
+        writeShort(rdata,preference);
+        writeString(rdata,flags);
+        writeString(rdata,service);
+        writeString(rdata,"");
+        writeName(rdata,replacement);
+        add(name,DnsRecord.NAPTR,ttl,rdata.toByteArray());
+    }
+
+    /** Adds a record. */
+    private synchronized void add(String name, int type, long ttl, byte[] rdata)
+    {  ByteArrayOutputStream rr=new ByteArrayOutputStream();
+        writeName(rr,name);
+        writeShort(rr,type);
+        writeShort(rr,1);
+        writeShort(rr,(int)(ttl>>16));
+        writeShort(rr,(int)ttl);
+        writeShort(rr,rdata.length);
+        rr.write(rdata,0,rdata.length);
+        String key=name.toLowerCase();
+        List<Record> list=records.get(key);
+        if (list==null) records.put(key,list=new ArrayList<Record>());
+        list.add(new Record(type,rr.toByteArray()));
+    }
+
+
+    /** Serves the UDP queries. */
+    private void serveUdp()
+    {  byte[] buf=new byte[512];
+        try
+        {  while (true)
+            {  DatagramPacket packet=new DatagramPacket(buf,buf.length);
+                udp.receive(packet);
+                byte[] resp=answer(buf,packet.getLength(),true);
+                udp.send(new DatagramPacket(resp,resp.length,packet.getSocketAddress()));
+            }
+        }
+        catch (IOException e) {}
+    }
+
+    /** Serves the TCP queries. */
+    private void serveTcp()
+    {  try
+        {  while (true)
+            {  Socket socket=tcp.accept();
+                try
+                {  DataInputStream in=new DataInputStream(socket.getInputStream());
+                    byte[] query=new byte[in.readUnsignedShort()];
+                    in.readFully(query);
+                    byte[] resp=answer(query,query.length,false);
+                    OutputStream out=socket.getOutputStream();
+                    out.write(resp.length>>8);
+                    out.write(resp.length);
+                    out.write(resp);
+                    out.flush();
+                }
+                finally
+                {  socket.close();
+                }
+            }
+        }
+        catch (IOException e) {}
+    }
+
+    /** Builds the response to a query. */
+    private synchronized byte[] answer(byte[] query, int len, boolean udp)
+    {  // question
+        StringBuilder sb=new StringBuilder();
+        int i=12;
+        while (query[i]!=0)
+        {  int n=query[i]&0xff;
+            if (sb.length()>0) sb.append('.');
+            sb.append(new String(query,i+1,n));
+            i+=n+1;
+        }
+        i++;
+        int type=(query[i]&0xff)<<8|(query[i+1]&0xff);
+        int qend=i+4;
+        String name=sb.toString().toLowerCase();
+        String key=type+":"+name;
+        AtomicInteger count=queries.get(key);
+        if (count==null) queries.put(key,count=new AtomicInteger());
+        count.incrementAndGet();
+        // answers
+        List<byte[]> answers=new ArrayList<byte[]>();
+        boolean trunc=udp && truncated.contains(name);
+        if (!trunc && records.containsKey(name))
+        {  for (Record rr : records.get(name)) if (rr.type==type) answers.add(rr.data);
+        }
+        boolean nxdomain=!trunc && !records.containsKey(name);
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        out.write(query[0]);
+        out.write(query[1]);
+        out.write(0x81|(trunc? 0x02 : 0)); // QR, RD, TC
+        out.write(0x80|(nxdomain? 3 : 0)); // RA, RCODE
+        writeShort(out,1);
+        writeShort(out,answers.size());
+        writeShort(out,(answers.size()==0 && !trunc)? 1 : 0);
+        writeShort(out,0);
+        out.write(query,12,qend-12);
+        for (byte[] rr : answers) out.write(rr,0,rr.length);
+        if (answers.size()==0 && !trunc)
+        {  ByteArrayOutputStream soa=new ByteArrayOutputStream();
+            writeName(soa,"ns.example.com");
+            writeName(soa,"admin.example.com");
+            for (int k=0; k<4; k++) {  writeShort(soa,0); writeShort(soa,1);  }
+            writeShort(soa,(int)(negative_ttl>>16));
+            writeShort(soa,(int)negative_ttl);
+            byte[] rdata=soa.toByteArray();
+            writeName(out,"example.com");
+            writeShort(out,DnsRecord.SOA);
+            writeShort(out,1);
+            writeShort(out,0);
+            writeShort(out,3600);
+            writeShort(out,rdata.length);
+            out.write(rdata,0,rdata.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value)
+    {  out.write(value>>8);
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String str)
+    {  out.write(str.length());
+        for (int i=0; i<str.length(); i++) out.write(str.charAt(i));
+    }
+
+    private static void writeName(ByteArrayOutputStream out, String name)
+    {  if (name.length()>0 && !name.equals("."))
+        {  String[] labels=name.split("\\.");
+            for (String label : labels) writeString(out,label);
+        }
+        out.write(0);
+    }
+
+
+    /** Encoded record. */
+    static class Record
+    {  int type;
+        byte[] data;
+
+        Record(int type, byte[] data)
+        {  this.type=type;
+            this.data=data;
+        }
+    }
+}
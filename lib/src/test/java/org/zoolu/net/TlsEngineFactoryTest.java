@@ -0,0 +1,131 @@
+package org.zoolu.net;
+
+
+import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.security.Key;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import static org.junit.Assert.*;
+
+
+/** Tests of the server certificate verification of TlsEngineFactory.
+  * <br> san.pem has CN=wrong.example.net and subjectAltNames DNS:example.com, URI:sip:sip.example.org, IP:127.0.0.1;
+  * cn.pem has CN=cn.example.com and no subjectAltName; wildcard.pem has CN and DNS *.example.com. */
+public class TlsEngineFactoryTest
+{
+    static X509Certificate certificate(String name) throws Exception
+    {  InputStream is=TlsEngineFactoryTest.class.getResourceAsStream(name);
+        try
+        {  return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(is);
+        }
+        finally
+        {  is.close();
+        }
+    }
+
+
+    @Test
+    public void matchesDnsAndUriSubjectAltNames() throws Exception
+    {  X509Certificate cert=certificate("san.pem");
+        assertTrue(TlsEngineFactory.matches("example.com",cert));
+        assertTrue(TlsEngineFactory.matches("EXAMPLE.com",cert));
+        assertTrue(TlsEngineFactory.matches("sip.example.org",cert));
+        assertFalse(TlsEngineFactory.matches("other.example.com",cert));
+        assertFalse(TlsEngineFactory.matches(null,cert));
+    }
+
+    @Test
+    public void ignoresTheCommonNameWhenThereAreSubjectAltNames() throws Exception
+    {  assertFalse(TlsEngineFactory.matches("wrong.example.net",certificate("san.pem")));
+    }
+
+    @Test
+    public void matchesAddressesOnlyAgainstIpSubjectAltNames() throws Exception
+    {  assertTrue(TlsEngineFactory.matches("127.0.0.1",certificate("san.pem")));
+        assertFalse(TlsEngineFactory.matches("127.0.0.2",certificate("san.pem")));
+        assertFalse(TlsEngineFactory.matches("127.0.0.1",certificate("cn.pem")));
+    }
+
+    @Test
+    public void fallsBackToTheCommonName() throws Exception
+    {  X509Certificate cert=certificate("cn.pem");
+        assertTrue(TlsEngineFactory.matches("cn.example.com",cert));
+        assertFalse(TlsEngineFactory.matches("example.com",cert));
+    }
+
+    @Test
+    public void doesNotMatchWildcards() throws Exception
+    {  X509Certificate cert=certificate("wildcard.pem");
+        assertFalse(TlsEngineFactory.matches("a.example.com",cert));
+        assertFalse(TlsEngineFactory.matches("example.com",cert));
+    }
+
+    @Test
+    public void parsesTheCommonName()
+    {  assertEquals("cn.example.com",TlsEngineFactory.getCommonName("CN=cn.example.com,O=Example\\, Inc."));
+        assertEquals("a,b",TlsEngineFactory.getCommonName("O=Example\\, Inc.,CN=a\\,b,CN=c"));
+        assertEquals("x",TlsEngineFactory.getCommonName("OU=a+CN=x"));
+        assertNull(TlsEngineFactory.getCommonName("O=Example"));
+    }
+
+
+    /** Connects to a TLS server with the san.pem certificate, as if resolved from the given domain,
+      * and returns the data received by the server or the exception that terminated the client connection. */
+    static Object connect(String domain) throws Exception
+    {  TlsContext server_context=new TlsContext();
+        InputStream is=TlsEngineFactoryTest.class.getResourceAsStream("san.key");
+        Key key=TlsTool.importPrivateKeyBASE64(new BufferedReader(new InputStreamReader(is,"US-ASCII")));
+        is.close();
+        server_context.setKeyCert(key,certificate("san.pem"));
+        TlsContext client_context=new TlsContext();
+        client_context.addTrustCert(certificate("san.pem"));
+
+        final BlockingQueue<Object> results=new ArrayBlockingQueue<Object>(4);
+        final NioTcpConnectionListener server_listener=new NioTcpConnectionListener()
+        {  public void onReceivedData(NioTcpConnection conn, byte[] data, int off, int len) {  results.offer(new String(data,off,len));  }
+            public void onConnectionTerminated(NioTcpConnection conn, Exception error) {}
+        };
+        // a port of 0 means no server
+        java.net.ServerSocket socket=new java.net.ServerSocket(0);
+        int port=socket.getLocalPort();
+        socket.close();
+        NioTcpProvider server=new NioTcpProvider(port,IpAddress.getByName("127.0.0.1"),1,new TlsEngineFactory(server_context),new NioTcpProviderListener()
+        {  public void onIncomingConnection(NioTcpProvider provider, NioTcpConnection conn) {  conn.setListener(server_listener);  }
+            public void onServerTerminated(NioTcpProvider provider, Exception error) {}
+        });
+        NioTcpProvider client=new NioTcpProvider(0,null,1,new TlsEngineFactory(client_context),null);
+        try
+        {  NioTcpConnection conn=client.connect(new IpAddress(InetAddress.getByName("127.0.0.1"),domain),port);
+            conn.setListener(new NioTcpConnectionListener()
+            {  public void onReceivedData(NioTcpConnection conn, byte[] data, int off, int len) {}
+                public void onConnectionTerminated(NioTcpConnection conn, Exception error) {  if (error!=null) results.offer(error);  }
+            });
+            conn.send("hello".getBytes());
+            conn.start();
+            return results.poll(10,TimeUnit.SECONDS);
+        }
+        finally
+        {  client.halt();
+            server.halt();
+        }
+    }
+
+    @Test
+    public void acceptsTheServerOfTheSipDomain() throws Exception
+    {  assertEquals("hello",connect("example.com"));
+    }
+
+    @Test
+    public void rejectsTheServerOfAnotherDomain() throws Exception
+    {  assertTrue(connect("other.example.com") instanceof SSLPeerUnverifiedException);
+    }
+
+}
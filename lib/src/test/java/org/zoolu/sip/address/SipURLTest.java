@@ -0,0 +1,71 @@
+package org.zoolu.sip.address;
+
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+/** Tests of SipURL parsing and comparison. */
+public class SipURLTest
+{
+    static void assertEquivalent(String url1, String url2)
+    {  SipURL u1=new SipURL(url1), u2=new SipURL(url2);
+        assertTrue(url1+" = "+url2,u1.equals(u2));
+        assertTrue(url2+" = "+url1,u2.equals(u1));
+        assertEquals(url1+" = "+url2,u1.hashCode(),u2.hashCode());
+    }
+
+    static void assertNotEquivalent(String url1, String url2)
+    {  SipURL u1=new SipURL(url1), u2=new SipURL(url2);
+        assertFalse(url1+" != "+url2,u1.equals(u2));
+        assertFalse(url2+" != "+url1,u2.equals(u1));
+    }
+
+
+    @Test
+    public void parsesComponents()
+    {  SipURL url=new SipURL("sip:alice@[2001:db8::1]:5070;transport=tcp;lr?subject=hi");
+        assertEquals("alice",url.getUserName());
+        assertEquals("[2001:db8::1]",url.getHost());
+        assertEquals(5070,url.getPort());
+        assertEquals("tcp",url.getTransport());
+        assertTrue(url.hasLr());
+        assertFalse(url.hasMaddr());
+        SipURL url2=new SipURL("sips:bob@example.com");
+        assertTrue(url2.isSecure());
+        assertEquals(-1,url2.getPort());
+        assertFalse(url2.hasParameters());
+    }
+
+    @Test
+    public void comparesAsRfc3261()
+    {  // equivalent URIs (RFC 3261, section 19.1.4)
+        assertEquivalent("sip:%61lice@atlanta.com;transport=TCP","sip:alice@AtLanTa.CoM;Transport=tcp");
+        assertEquivalent("sip:carol@chicago.com","sip:carol@chicago.com;newparam=5");
+        assertEquivalent("sip:carol@chicago.com","sip:carol@chicago.com;security=on");
+        assertEquivalent("sip:carol@chicago.com;security=on","sip:carol@chicago.com;newparam=5");
+        assertEquivalent("sip:biloxi.com;transport=tcp;method=REGISTER?to=sip:bob%40biloxi.com","sip:biloxi.com;method=REGISTER;transport=tcp?to=sip:bob%40biloxi.com");
+        assertEquivalent("sip:alice@atlanta.com?subject=project%20x&priority=urgent","sip:alice@atlanta.com?priority=urgent&subject=project%20x");
+        assertEquivalent("sip:alice@atlanta.com?Subject=x","sip:alice@atlanta.com?subject=x");
+        // not equivalent URIs (RFC 3261, section 19.1.4)
+        assertNotEquivalent("SIP:ALICE@AtLanTa.CoM;Transport=udp","sip:alice@AtLanTa.CoM;Transport=UDP");
+        assertNotEquivalent("sip:bob@biloxi.com","sip:bob@biloxi.com:5060");
+        assertNotEquivalent("sip:bob@biloxi.com","sip:bob@biloxi.com;transport=udp");
+        assertNotEquivalent("sip:bob@biloxi.com","sip:bob@biloxi.com:6000;transport=tcp");
+        assertNotEquivalent("sip:carol@chicago.com","sip:carol@chicago.com?Subject=next%20meeting");
+        assertNotEquivalent("sip:bob@phone21.boxesbybob.com","sip:bob@192.0.2.4");
+        assertNotEquivalent("sip:carol@chicago.com;security=on","sip:carol@chicago.com;security=off");
+        assertNotEquivalent("sip:carol@chicago.com;user=phone","sip:carol@chicago.com");
+        assertNotEquivalent("sip:carol@chicago.com","sip:carol@chicago.com;maddr=239.255.255.1");
+        assertNotEquivalent("sip:carol@chicago.com;ttl=15","sip:carol@chicago.com;method=INVITE");
+        assertNotEquivalent("sips:carol@chicago.com","sip:carol@chicago.com");
+    }
+
+    @Test
+    public void decodesUtf8Escapes()
+    {  assertEquals("a\u00e8b",SipURL.Fields.unescape("a%C3%A8b"));
+        assertEquals("100%",SipURL.Fields.unescape("100%"));
+        assertEquals("%zz",SipURL.Fields.unescape("%zz"));
+        assertEquivalent("sip:%C3%A8@example.com","sip:\u00e8@example.com");
+    }
+}
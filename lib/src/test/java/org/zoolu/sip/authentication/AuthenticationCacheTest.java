@@ -0,0 +1,108 @@
+package org.zoolu.sip.authentication;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.sip.header.AuthorizationHeader;
+import org.zoolu.sip.header.WwwAuthenticateHeader;
+import org.zoolu.sip.message.Message;
+import static org.junit.Assert.*;
+import static org.zoolu.sip.authentication.DigestAuthenticator.*;
+
+
+/** Tests of the preemptive authorization of AuthenticationCache, against DigestAuthenticator. */
+public class AuthenticationCacheTest
+{
+    static final CredentialStore STORE=new CredentialStore()
+    {  public String getHA1(String username, String realm)
+        {  return (username.equals("alice"))? DigestAuthentication.getHA1(username,realm,"secret") : null;
+        }
+    };
+
+    static Message request()
+    {  return DigestAuthenticatorTest.request();
+    }
+
+    AuthenticationCache cache;
+    DigestAuthenticator registrar;
+
+    @Before
+    public void start()
+    {  cache=new AuthenticationCache();
+        registrar=new DigestAuthenticator("example.com",STORE);
+    }
+
+
+    @Test
+    public void authorizesPreemptively()
+    {  Message req=request();
+        assertFalse(cache.authorize(req,"alice","example.com","secret"));
+        assertFalse(req.hasAuthorizationHeader());
+        cache.update(registrar.getChallenge(false),false,"alice","secret");
+        assertTrue(cache.authorize(req,"alice","example.com","secret"));
+        assertFalse(req.hasProxyAuthorizationHeader());
+        assertEquals("auth",req.getAuthorizationHeader().getQopParam());
+        assertEquals(ACCEPTED,registrar.authenticate(req));
+        // not with another password or realm
+        assertFalse(cache.authorize(request(),"alice","example.com","other"));
+        assertFalse(cache.authorize(request(),"alice","example.org","secret"));
+    }
+
+    @Test
+    public void incrementsTheNonceCount()
+    {  cache.update(registrar.getChallenge(false),false,"alice","secret");
+        for (int i=1; i<=3; i++)
+        {  Message req=request();
+            cache.authorize(req,"alice","example.com","secret");
+            assertEquals("0000000"+i,req.getAuthorizationHeader().getNcParam());
+            assertEquals(ACCEPTED,registrar.authenticate(req));
+        }
+    }
+
+    @Test
+    public void takesTheNewChallengeOfAStaleNonce()
+    {  // a nonce of another authenticator, e.g. before the registrar restarted
+        cache.update(new DigestAuthenticator("example.com",STORE).getChallenge(false),false,"alice","secret");
+        Message req=request();
+        cache.authorize(req,"alice","example.com","secret");
+        assertEquals(STALE,registrar.authenticate(req));
+        WwwAuthenticateHeader challenge=registrar.getChallenge(true);
+        cache.update(challenge,false,"alice","secret");
+        req=request();
+        cache.authorize(req,"alice","example.com","secret");
+        assertEquals(challenge.getNonceParam(),req.getAuthorizationHeader().getNonceParam());
+        assertEquals("00000001",req.getAuthorizationHeader().getNcParam());
+        assertEquals(ACCEPTED,registrar.authenticate(req));
+    }
+
+    @Test
+    public void keepsRegistrarAndProxyChallengesApart()
+    {  DigestAuthenticator proxy=new DigestAuthenticator("example.com",true,STORE,DEFAULT_NONCE_LIFETIME,DEFAULT_MAX_NONCES,DEFAULT_MAX_CREDENTIALS);
+        cache.update(registrar.getChallenge(false),false,"alice","secret");
+        cache.update(proxy.getChallenge(false),true,"alice","secret");
+        Message req=request();
+        assertTrue(cache.authorize(req,"alice","example.com","secret"));
+        assertEquals(ACCEPTED,registrar.authenticate(req));
+        assertEquals(ACCEPTED,proxy.authenticate(req));
+        cache.remove("alice","example.com");
+        assertFalse(cache.authorize(request(),"alice","example.com","secret"));
+    }
+
+    @Test
+    public void selectsAnOfferedQop()
+    {  assertEquals("auth",AuthenticationCache.selectQop("auth-int, auth"));
+        assertEquals("auth-int",AuthenticationCache.selectQop("auth-int"));
+        assertNull(AuthenticationCache.selectQop("other"));
+        assertNull(AuthenticationCache.selectQop(null));
+        // the digest of auth-int covers the body
+        cache.update(new WwwAuthenticateHeader("Digest realm=\"example.com\", nonce=\"dcd98b7102dd2f0e8b11d0f600bfb0c093\", qop=\"auth-int\""),false,"alice","secret");
+        Message req=request();
+        req.setBody("text/plain","hello");
+        cache.authorize(req,"alice","example.com","secret");
+        AuthorizationHeader ah=req.getAuthorizationHeader();
+        assertEquals("auth-int",ah.getQopParam());
+        String ha1=DigestAuthentication.getHA1("alice","example.com","secret");
+        assertTrue(new DigestAuthentication("REGISTER",ah,"hello",null).checkResponse(ha1));
+        assertFalse(new DigestAuthentication("REGISTER",ah,"other",null).checkResponse(ha1));
+    }
+}
@@ -0,0 +1,125 @@
+package org.zoolu.sip.authentication;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.sip.header.AuthorizationHeader;
+import org.zoolu.sip.header.WwwAuthenticateHeader;
+import org.zoolu.sip.message.Message;
+import static org.junit.Assert.*;
+import static org.zoolu.sip.authentication.DigestAuthenticator.*;
+
+
+/** Tests of DigestAuthenticator and of the server side of DigestAuthentication. */
+public class DigestAuthenticatorTest
+{
+    static Message request()
+    {  return new Message(
+            "REGISTER sip:example.com SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 192.168.1.1:5060;branch=z9hG4bK1234\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:alice@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+            "CSeq: 1 REGISTER\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+    }
+
+    /** Creates the credentials for a challenge. */
+    static AuthorizationHeader credentials(WwwAuthenticateHeader challenge, int nc, String passwd)
+    {  return new DigestAuthentication("REGISTER","sip:example.com",challenge,"auth","0a4f113b",nc,null,"alice",passwd).getAuthorizationHeader();
+    }
+
+    /** Creates a request with the credentials for a challenge. */
+    static Message request(WwwAuthenticateHeader challenge, int nc, String passwd)
+    {  Message req=request();
+        req.setAuthorizationHeader(credentials(challenge,nc,passwd));
+        return req;
+    }
+
+    DigestAuthenticator authenticator;
+    WwwAuthenticateHeader challenge;
+
+    @Before
+    public void start()
+    {  authenticator=new DigestAuthenticator("example.com",new CredentialStore()
+        {  public String getHA1(String username, String realm)
+            {  return (username.equals("alice"))? DigestAuthentication.getHA1(username,realm,"secret") : null;
+            }
+        });
+        challenge=authenticator.getChallenge(false);
+    }
+
+
+    @Test
+    public void checksTheCredentials()
+    {  assertEquals(MISSING,authenticator.authenticate(request()));
+        assertEquals(REJECTED,authenticator.authenticate(request(challenge,1,"wrong")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,1,"secret")));
+        // a nonce issued by another authenticator (e.g. before a restart)
+        DigestAuthenticator other=new DigestAuthenticator("example.com",authenticator.store);
+        assertEquals(STALE,authenticator.authenticate(request(other.getChallenge(false),1,"secret")));
+    }
+
+    @Test
+    public void comparesTheResponseRegardlessOfCase()
+    {  AuthorizationHeader ah=credentials(challenge,1,"secret");
+        String response=ah.getResponseParam();
+        AuthorizationHeader upper=new AuthorizationHeader(ah.getValue().replace(response,response.toUpperCase()));
+        String ha1=DigestAuthentication.getHA1("alice","example.com","secret");
+        assertTrue(new DigestAuthentication("REGISTER",upper,null,null).checkResponse(ha1));
+        AuthorizationHeader wrong=new AuthorizationHeader(ah.getValue().replace(response,response.substring(0,31)+"x"));
+        assertFalse(new DigestAuthentication("REGISTER",wrong,null,null).checkResponse(ha1));
+    }
+
+    @Test
+    public void acceptsNonceCountsOutOfOrderOnce()
+    {  assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,1,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,3,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,2,"secret")));
+        assertEquals(REJECTED,authenticator.authenticate(request(challenge,2,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,6,"secret")));
+        assertEquals(REJECTED,authenticator.authenticate(request(challenge,3,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,5,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,4,"secret")));
+        assertEquals(REJECTED,authenticator.authenticate(request(challenge,6,"secret")));
+    }
+
+    @Test
+    public void reportsNonceCountsBeyondTheWindowAsStale()
+    {  assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,1,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,20,"secret")));
+        assertEquals(STALE,authenticator.authenticate(request(challenge,20-WINDOW,"secret")));
+        assertEquals(ACCEPTED,authenticator.authenticate(request(challenge,20-WINDOW+1,"secret")));
+        assertEquals(STALE,authenticator.authenticate(request(challenge,(int)MAX_NC+1,"secret")));
+    }
+
+    @Test
+    public void issuesDistinctNonces()
+    {  // nonces are issued in the same millisecond, most likely
+        assertNotEquals(authenticator.createNonce(),authenticator.createNonce());
+        WwwAuthenticateHeader fresh=authenticator.getChallenge(false);
+        assertEquals(ACCEPTED,authenticator.authenticate(request(fresh,1,"secret")));
+    }
+
+    @Test
+    public void reportsNoncesNoLongerTrackedAsStale()
+    {  DigestAuthenticator small=new DigestAuthenticator("example.com",false,authenticator.store,DEFAULT_NONCE_LIFETIME,1,1);
+        WwwAuthenticateHeader first=small.getChallenge(false);
+        assertEquals(ACCEPTED,small.authenticate(request(first,1,"secret")));
+        // the first nonce is evicted by the second one, so its use cannot be told from a replay
+        WwwAuthenticateHeader second=small.getChallenge(false);
+        assertEquals(STALE,small.authenticate(request(first,1,"secret")));
+        assertEquals(STALE,small.authenticate(request(first,2,"secret")));
+        assertEquals(ACCEPTED,small.authenticate(request(second,1,"secret")));
+    }
+
+    @Test
+    public void acceptsNoncesWithoutQopOnce()
+    {  Message req=request();
+        req.setAuthorizationHeader(new DigestAuthentication("REGISTER","sip:example.com",challenge,null,null,0,null,"alice","secret").getAuthorizationHeader());
+        assertNull(req.getAuthorizationHeader().getQopParam());
+        assertEquals(ACCEPTED,authenticator.authenticate(req));
+        assertEquals(REJECTED,authenticator.authenticate(req));
+    }
+}
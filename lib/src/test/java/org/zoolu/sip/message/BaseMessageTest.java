@@ -0,0 +1,105 @@
+package org.zoolu.sip.message;
+
+
+import org.junit.Test;
+import org.zoolu.sip.address.NameAddress;
+import org.zoolu.sip.header.Header;
+import org.zoolu.sip.header.SipHeaders;
+import org.zoolu.sip.header.ToHeader;
+import org.zoolu.sip.header.ViaHeader;
+import org.zoolu.sip.provider.DialogId;
+import static org.junit.Assert.*;
+
+
+/** Tests of the header index of BaseMessage. */
+public class BaseMessageTest
+{
+    static final String INVITE=
+        "INVITE sip:bob@example.com SIP/2.0\r\n"+
+        "Via: SIP/2.0/UDP 192.168.1.34:5060;branch=z9hG4bK776asdhds\r\n"+
+        "Max-Forwards: 70\r\n"+
+        "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+        "To: <sip:bob@example.com>\r\n"+
+        "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+        "CSeq: 314159 INVITE\r\n"+
+        "Content-Length: 0\r\n"+
+        "\r\n";
+
+    static final String COMPACT=
+        "INVITE sip:bob@example.com SIP/2.0\r\n"+
+        "v: SIP/2.0/UDP 192.168.1.34:5060;branch=z9hG4bK776asdhds\r\n"+
+        "f: <sip:alice@example.com>;tag=1928301774\r\n"+
+        "T: <sip:bob@example.com>\r\n"+
+        "i: a84b4c76e66710@192.168.1.34\r\n"+
+        "CSeq: 314159 INVITE\r\n"+
+        "m: <sip:alice@192.168.1.34>\r\n"+
+        "l: 0\r\n"+
+        "\r\n";
+
+
+    @Test
+    public void findsHeadersRegardlessOfCase()
+    {  Message msg=new Message(INVITE.replace("Call-ID:","call-ID :").replace("Max-Forwards","MAX-FORWARDS"));
+        assertTrue(msg.hasHeader("CALL-ID"));
+        assertEquals("a84b4c76e66710@192.168.1.34",msg.getCallIdHeader().getCallId());
+        assertEquals(70,msg.getMaxForwardsHeader().getNumber());
+        assertNull(msg.getHeader("Subject"));
+    }
+
+    @Test
+    public void findsCompactHeaders()
+    {  Message[] msgs={ new Message(COMPACT), new Message(COMPACT.getBytes(),0,COMPACT.length()) };
+        for (Message msg : msgs)
+        {  assertEquals("z9hG4bK776asdhds",msg.getViaHeader().getBranch());
+            assertEquals("1928301774",msg.getFromHeader().getTag());
+            assertEquals("sip:bob@example.com",msg.getToHeader().getNameAddress().getAddress().toString());
+            assertEquals("a84b4c76e66710@192.168.1.34",msg.getCallIdHeader().getCallId());
+            assertTrue(msg.hasHeader(SipHeaders.Contact));
+            assertEquals("0",msg.getHeader(SipHeaders.Content_Length).getValue());
+            assertEquals(new DialogId("a84b4c76e66710@192.168.1.34",null,"1928301774"),msg.getDialogId());
+            assertEquals(new Message(INVITE).getTransactionServerId(),msg.getTransactionServerId());
+            // the compact names are kept
+            assertEquals(COMPACT,msg.toString());
+        }
+    }
+
+    @Test
+    public void rebuildsTheMessageAfterChanges()
+    {  Message msg=new Message(INVITE);
+        msg.addHeader(new Header("Subject","lunch"),false);
+        msg.addViaHeader(new ViaHeader("SIP/2.0/UDP 10.0.0.1:5070;branch=z9hG4bK1"));
+        msg.removeHeader(SipHeaders.Max_Forwards);
+        msg.setHeader(new Header("cseq","314160 INVITE"));
+        String expected=
+            "INVITE sip:bob@example.com SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 10.0.0.1:5070;branch=z9hG4bK1\r\n"+
+            "Via: SIP/2.0/UDP 192.168.1.34:5060;branch=z9hG4bK776asdhds\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+            "cseq: 314160 INVITE\r\n"+
+            "Subject: lunch\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n";
+        assertEquals(expected,msg.toString());
+        // the rebuilt message is indexed again
+        Message copy=new Message(msg.toString());
+        assertEquals(2,copy.getVias().size());
+        assertEquals(314160,copy.getCSeqHeader().getSequenceNumber());
+        assertEquals(expected,copy.toString());
+        msg.removeViaHeader();
+        assertEquals(INVITE.replace("Max-Forwards: 70\r\n","").replace("CSeq: 314159","cseq: 314160").replace("Content-Length","Subject: lunch\r\nContent-Length"),msg.toString());
+    }
+
+    @Test
+    public void clearsTheCachedIdsAfterChanges()
+    {  Message msg=new Message(INVITE);
+        assertEquals(new DialogId("a84b4c76e66710@192.168.1.34",null,"1928301774"),msg.getDialogId());
+        msg.setToHeader(new ToHeader(new NameAddress("sip:bob@example.com"),"a6c85cf"));
+        assertEquals(new DialogId("a84b4c76e66710@192.168.1.34","a6c85cf","1928301774"),msg.getDialogId());
+        String id=msg.getTransactionServerId().toString();
+        msg.addViaHeader(new ViaHeader("SIP/2.0/UDP 10.0.0.1:5070;branch=z9hG4bK1"));
+        assertFalse(id.equals(msg.getTransactionServerId().toString()));
+        assertTrue(msg.getTransactionServerId().toString().indexOf("z9hG4bK1")>=0);
+    }
+}
@@ -0,0 +1,93 @@
+package org.zoolu.sip.message;
+
+
+import org.junit.Test;
+import org.zoolu.sip.provider.SipStreamFramer;
+import java.nio.ByteBuffer;
+import static org.junit.Assert.*;
+
+
+/** Tests of SipByteParser, and of messages parsed from bytes. */
+public class SipByteParserTest
+{
+    static final String OPTIONS=
+        "OPTIONS sip:bob@example.com SIP/2.0\r\n"+
+        "Via: SIP/2.0/UDP 192.168.1.34:5060;branch=z9hG4bK776asdhds\r\n"+
+        "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+        "To: <sip:bob@example.com>\r\n"+
+        "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+        "CSeq: 63104 OPTIONS\r\n"+
+        "Subject: first\r\n"+
+        " line\r\n"+
+        "content-length:  5\r\n"+
+        "\r\n"+
+        "hello";
+
+    static byte[] bytes(String str)
+    {  try
+        {  return str.getBytes("UTF-8");
+        }
+        catch (java.io.UnsupportedEncodingException e)
+        {  throw new RuntimeException(e);
+        }
+    }
+
+
+    @Test
+    public void parsesFramedMessages() throws java.io.IOException
+    {  byte[] data=bytes("\r\n\r\n"+OPTIONS+OPTIONS);
+        SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        framer.push(data,0,data.length);
+        Message msg1=framer.next();
+        Message msg2=framer.next();
+        assertNotNull(msg1);
+        assertNotNull(msg2);
+        assertEquals(0,framer.available());
+        assertEquals("hello",msg1.getBody());
+        assertEquals("a84b4c76e66710@192.168.1.34",msg2.getCallIdHeader().getCallId());
+        assertEquals(63104,msg2.getCSeqHeader().getSequenceNumber());
+        assertEquals("z9hG4bK776asdhds",msg1.getViaHeader().getBranch());
+    }
+
+    @Test
+    public void readsFoldedHeaders()
+    {  byte[] data=bytes(OPTIONS);
+        Message msg=new Message(data,0,data.length);
+        assertTrue(msg.getHeader("Subject").getValue().startsWith("first"));
+        assertTrue(msg.getHeader("Subject").getValue().endsWith("line"));
+    }
+
+    @Test
+    public void matchesHeaderNames()
+    {  byte[] data=bytes("content-LENGTH : 12\r\n");
+        assertTrue(SipByteParser.regionMatchesIgnoreCase(data,0,data.length,"Content-Length"));
+        assertEquals(16,SipByteParser.indexOfValue(data,0,19,"Content-Length"));
+        assertEquals(-1,SipByteParser.indexOfValue(data,0,19,"Content-Type"));
+        assertEquals(12,SipByteParser.parseInt(data,16,19));
+        assertEquals(-1,SipByteParser.parseInt(data,0,3));
+    }
+
+    @Test
+    public void findsLineEnds()
+    {  byte[] data=bytes("ab\r\n c\nd");
+        assertEquals(2,SipByteParser.indexOfEOL(data,0,data.length));
+        assertEquals(4,SipByteParser.skipEOL(data,2,data.length));
+        assertEquals(6,SipByteParser.indexOfEOH(data,0,data.length));
+        assertEquals(data.length,SipByteParser.indexOfEOL(data,7,data.length));
+    }
+
+    @Test
+    public void encodesAndDecodesUtf8()
+    {  String str="caf\u00e9 \u20ac \ud83d\ude00 ascii";
+        ByteBuffer buffer=ByteBuffer.allocate(64);
+        SipByteParser.encode(str,0,str.length(),buffer);
+        byte[] expected=bytes(str);
+        assertEquals(expected.length,buffer.position());
+        byte[] data=new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(data);
+        assertArrayEquals(expected,data);
+        assertEquals(str,SipByteParser.decode(data,0,data.length));
+        assertEquals("ascii",SipByteParser.decode(data,data.length-5,5));
+    }
+}
@@ -0,0 +1,85 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.NioTcpConnection;
+import org.zoolu.net.NioTcpProvider;
+import org.zoolu.sip.message.Message;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+
+/** Tests of the connection failures of ConnectedTransport. */
+public class ConnectedTransportTest
+{
+    /** TCP transport whose connections cannot be set up. */
+    static class UnreachableTransport extends ConnectedTransport
+    {  int attempts=0;
+
+        UnreachableTransport() throws IOException {  super(0,8);  }
+
+        public String getProtocol() {  return "tcp";  }
+        public int getLocalPort() {  return 5060;  }
+        public void onIncomingConnection(NioTcpProvider tcp_provider, NioTcpConnection conn) {}
+        public void onServerTerminated(NioTcpProvider tcp_provider, Exception error) {}
+
+        protected TransportConn createTransportConn(IpAddress dest_ipaddr, int dest_port) throws IOException
+        {  attempts++;
+            throw new IOException("connection refused");
+        }
+    }
+
+    /** TransportFailureListener that records the failures. */
+    static class FailureRecorder implements TransportFailureListener
+    {  final BlockingQueue<Exception> errors=new ArrayBlockingQueue<Exception>(16);
+
+        public void onTransportFailure(SipProvider sip_provider, TransportConnId conn_id, Exception error) {  errors.add(error);  }
+    }
+
+    static Message request()
+    {  return new Message(
+            "OPTIONS sip:bob@127.0.0.1;transport=tcp SIP/2.0\r\n"+
+            "Via: SIP/2.0/TCP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@127.0.0.1\r\n"+
+            "CSeq: 1 OPTIONS\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+    }
+
+    UnreachableTransport transport;
+    SipProvider provider;
+
+    @Before
+    public void start() throws Exception
+    {  transport=new UnreachableTransport();
+        provider=new SipProvider(SipConfig.getDefault(),"127.0.0.1",5060,new Transport[]{ transport });
+    }
+
+    @After
+    public void halt()
+    {  provider.halt();
+    }
+
+
+    @Test(expected=IOException.class)
+    public void throwsWhenTheConnectionCannotBeSetUp() throws Exception
+    {  transport.sendMessage(request(),IpAddress.getByName("127.0.0.1"),5060,0);
+    }
+
+    @Test
+    public void notifiesTheFailureOfTheConnection() throws Exception
+    {  FailureRecorder recorder=new FailureRecorder();
+        assertNull(provider.sendMessage(new SentMessage(request(),recorder)));
+        assertNotNull(recorder.errors.poll(5,TimeUnit.SECONDS));
+        assertEquals(1,transport.attempts);
+        assertEquals(0,transport.getConnectionCount());
+    }
+}
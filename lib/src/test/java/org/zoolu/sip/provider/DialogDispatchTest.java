@@ -0,0 +1,109 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.net.IpAddress;
+import org.zoolu.sip.address.NameAddress;
+import org.zoolu.sip.dialog.InviteDialog;
+import org.zoolu.sip.dialog.InviteDialogListener;
+import org.zoolu.sip.header.MultipleHeader;
+import org.zoolu.sip.message.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+
+/** Tests of the dispatching of received requests to dialogs. */
+public class DialogDispatchTest
+{
+    /** UDP transport that records the first line of the sent messages. */
+    static class RecordingTransport implements Transport
+    {  final BlockingQueue<String> sent=new ArrayBlockingQueue<String>(16);
+
+        public String getProtocol() {  return "udp";  }
+        public int getLocalPort() {  return 5060;  }
+        public void halt() {}
+        public void setListener(TransportListener listener) {}
+
+        public TransportConn sendMessage(Message msg, IpAddress dest_ipaddr, int dest_port, int ttl)
+        {  sent.add(msg.getFirstLine().trim());
+            return null;
+        }
+    }
+
+    /** InviteDialogListener that records the events. */
+    static class Recorder implements InviteDialogListener
+    {  final List<String> events=new ArrayList<String>();
+
+        public void onDlgInvite(InviteDialog dialog, NameAddress callee, NameAddress caller, String body, Message msg) {  events.add("invite");  }
+        public void onDlgReInvite(InviteDialog dialog, String body, Message msg) {  events.add("reinvite");  }
+        public void onDlgInviteProvisionalResponse(InviteDialog dialog, int code, String reason, String body, Message msg) {}
+        public void onDlgInviteSuccessResponse(InviteDialog dialog, int code, String reason, String body, Message msg) {}
+        public void onDlgInviteRedirectResponse(InviteDialog dialog, int code, String reason, MultipleHeader contacts, Message msg) {}
+        public void onDlgInviteFailureResponse(InviteDialog dialog, int code, String reason, Message msg) {}
+        public void onDlgTimeout(InviteDialog dialog) {}
+        public void onDlgReInviteProvisionalResponse(InviteDialog dialog, int code, String reason, String body, Message msg) {}
+        public void onDlgReInviteSuccessResponse(InviteDialog dialog, int code, String reason, String body, Message msg) {}
+        public void onDlgReInviteFailureResponse(InviteDialog dialog, int code, String reason, Message msg) {}
+        public void onDlgReInviteTimeout(InviteDialog dialog) {}
+        public void onDlgAck(InviteDialog dialog, String body, Message msg) {}
+        public void onDlgCall(InviteDialog dialog) {}
+        public void onDlgCancel(InviteDialog dialog, Message msg) {  events.add("cancel");  }
+        public void onDlgBye(InviteDialog dialog, Message msg) {}
+        public void onDlgByeSuccessResponse(InviteDialog dialog, int code, String reason, Message msg) {}
+        public void onDlgByeFailureResponse(InviteDialog dialog, int code, String reason, Message msg) {}
+        public void onDlgClosed(InviteDialog dialog) {}
+    }
+
+    /** Creates a request received from 127.0.0.1:5070, without To tag. */
+    static Message request(String method)
+    {  Message msg=new Message(
+            method+" sip:bob@127.0.0.1 SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK776asdhds\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@127.0.0.1\r\n"+
+            "CSeq: 1 "+method+"\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+        msg.setRemoteAddress("127.0.0.1");
+        msg.setRemotePort(5070);
+        msg.setTransport("udp");
+        return msg;
+    }
+
+    RecordingTransport transport;
+    SipProvider provider;
+
+    @Before
+    public void start()
+    {  transport=new RecordingTransport();
+        provider=new SipProvider(SipConfig.getDefault(),"127.0.0.1",5060,new Transport[]{ transport });
+    }
+
+    @After
+    public void halt()
+    {  provider.halt();
+    }
+
+
+    @Test
+    public void answersCancelBeforeAnyTaggedResponse() throws Exception
+    {  Recorder recorder=new Recorder();
+        InviteDialog dialog=new InviteDialog(provider,recorder);
+        dialog.listen();
+        provider.onReceivedMessage(transport,request("INVITE"));
+        assertEquals("[invite]",recorder.events.toString());
+        assertEquals("SIP/2.0 100 Trying",transport.sent.poll(5,TimeUnit.SECONDS));
+        // the CANCEL has no To tag, as the INVITE
+        provider.onReceivedMessage(transport,request("CANCEL"));
+        assertEquals("[invite, cancel]",recorder.events.toString());
+        assertEquals("SIP/2.0 200 OK",transport.sent.poll(5,TimeUnit.SECONDS));
+        assertEquals("SIP/2.0 487 Request Terminated",transport.sent.poll(5,TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,87 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.Test;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import static org.junit.Assert.*;
+
+
+/** Tests of FloodControl. */
+public class FloodControlTest
+{
+    static ByteBuffer request(String user)
+    {  return ByteBuffer.wrap((
+            "\r\nINVITE sip:bob@example.com SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 192.168.1.1:5060;branch=z9hG4bK1234\r\n"+
+            "f: \"Alice\" <sip:"+user+"@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+            "CSeq: 1 INVITE\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n").getBytes());
+    }
+
+    static ByteBuffer response()
+    {  return ByteBuffer.wrap((
+            "SIP/2.0 200 OK\r\n"+
+            "Via: SIP/2.0/UDP 192.168.1.1:5060;branch=z9hG4bK1234\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>;tag=a6c85cf\r\n"+
+            "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+            "CSeq: 1 INVITE\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n").getBytes());
+    }
+
+    static InetAddress address(String addr) throws Exception
+    {  return InetAddress.getByName(addr);
+    }
+
+
+    @Test
+    public void limitsEachSource() throws Exception
+    {  FloodControl flood_control=new FloodControl(1,3,0,0);
+        for (int i=0; i<3; i++) assertTrue(flood_control.admit(address("10.0.0.1"),request("alice")));
+        assertFalse(flood_control.admit(address("10.0.0.1"),request("alice")));
+        assertFalse(flood_control.admit(address("10.0.0.1"),response()));
+        assertTrue(flood_control.admit(address("10.0.0.2"),request("alice")));
+        assertEquals(4,flood_control.getAdmittedCount());
+        assertEquals(2,flood_control.getDroppedCount(FloodControl.DROP_SOURCE_RATE));
+        assertEquals(2,flood_control.getDroppedCount());
+    }
+
+    @Test
+    public void limitsEachFromUser() throws Exception
+    {  FloodControl flood_control=new FloodControl(100,100,1,2);
+        assertTrue(flood_control.admit(address("10.0.0.1"),request("alice")));
+        assertTrue(flood_control.admit(address("10.0.0.2"),request("alice")));
+        assertFalse(flood_control.admit(address("10.0.0.3"),request("alice")));
+        assertTrue(flood_control.admit(address("10.0.0.3"),request("carol")));
+        // responses are not limited by user
+        for (int i=0; i<5; i++) assertTrue(flood_control.admit(address("10.0.0.4"),response()));
+        assertEquals(1,flood_control.getDroppedCount(FloodControl.DROP_USER_RATE));
+    }
+
+    @Test
+    public void dropsMalformedDatagrams() throws Exception
+    {  FloodControl flood_control=new FloodControl(100,100,0,0);
+        assertFalse(flood_control.admit(address("10.0.0.1"),ByteBuffer.wrap(new byte[]{ 0x16, 0x03, 0x01 })));
+        assertFalse(flood_control.admit(address("10.0.0.1"),ByteBuffer.wrap("\r\ninvite".getBytes())));
+        // keep-alives are fine
+        assertTrue(flood_control.admit(address("10.0.0.1"),ByteBuffer.wrap("\r\n\r\n".getBytes())));
+        assertEquals(2,flood_control.getDroppedCount(FloodControl.DROP_MALFORMED));
+        assertEquals(0,flood_control.getDroppedCount(FloodControl.DROP_SOURCE_RATE));
+    }
+
+    @Test
+    public void leavesTheBufferUnchanged() throws Exception
+    {  FloodControl flood_control=new FloodControl(100,100,100,100);
+        ByteBuffer buffer=request("alice");
+        buffer.position(2);
+        int limit=buffer.limit();
+        assertTrue(flood_control.admit(address("10.0.0.1"),buffer));
+        assertEquals(2,buffer.position());
+        assertEquals(limit,buffer.limit());
+    }
+}
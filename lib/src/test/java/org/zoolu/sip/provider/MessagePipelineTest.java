@@ -0,0 +1,134 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.After;
+import org.junit.Test;
+import org.zoolu.sip.message.Message;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+
+/** Tests of MessagePipeline. */
+public class MessagePipelineTest
+{
+    /** SipProvider without transports, recording the processed messages. */
+    static class RecordingProvider extends SipProvider
+    {  final Map<String,List<Long>> calls=new HashMap<String,List<Long>>();
+        final List<String> order=new ArrayList<String>();
+        final List<Thread> threads=new ArrayList<Thread>();
+        CountDownLatch done;
+        CountDownLatch blocked;
+
+        RecordingProvider(int n_messages)
+        {  super(SipConfig.getDefault(),"127.0.0.1",5060,null);
+            done=new CountDownLatch(n_messages);
+        }
+
+        void processReceivedMessage(Transport transport, Message msg)
+        {  try
+            {  if (blocked!=null) blocked.await();
+            }
+            catch (InterruptedException e) {}
+            synchronized (calls)
+            {  String call_id=msg.getCallIdHeader().getCallId();
+                List<Long> list=calls.get(call_id);
+                if (list==null) calls.put(call_id,list=new ArrayList<Long>());
+                list.add(msg.getCSeqHeader().getSequenceNumber());
+                order.add(call_id+":"+msg.getCSeqHeader().getSequenceNumber());
+                if (!threads.contains(Thread.currentThread())) threads.add(Thread.currentThread());
+            }
+            done.countDown();
+        }
+    }
+
+    static Message request(String call_id, long cseq)
+    {  return request(call_id,cseq,null);
+    }
+
+    /** Creates a request, that is an in-dialog request if <i>to_tag</i> is not null. */
+    static Message request(String call_id, long cseq, String to_tag)
+    {  return new Message(
+            "OPTIONS sip:bob@example.com SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 192.168.1.34:5060;branch=z9hG4bK"+call_id+"."+cseq+"\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>"+((to_tag!=null)? ";tag="+to_tag : "")+"\r\n"+
+            "Call-ID: "+call_id+"\r\n"+
+            "CSeq: "+cseq+" OPTIONS\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+    }
+
+    MessagePipeline pipeline;
+
+    @After
+    public void halt()
+    {  if (pipeline!=null) pipeline.halt();
+    }
+
+
+    @Test
+    public void keepsOrderOfEachCall() throws Exception
+    {  int n_calls=50, n_messages=20;
+        RecordingProvider provider=new RecordingProvider(n_calls*n_messages);
+        pipeline=new MessagePipeline(provider,4,0);
+        for (int i=0; i<n_messages; i++)
+        {  for (int c=0; c<n_calls; c++) assertTrue(pipeline.enqueue(null,request("call"+c,i+1)));
+        }
+        assertTrue(provider.done.await(10,TimeUnit.SECONDS));
+        assertEquals(n_calls,provider.calls.size());
+        for (List<Long> list : provider.calls.values())
+        {  assertEquals(n_messages,list.size());
+            for (int i=0; i<n_messages; i++) assertEquals(i+1,list.get(i).longValue());
+        }
+        assertTrue(provider.threads.size()>1);
+        assertEquals(n_calls*n_messages,pipeline.getEnqueuedCount());
+        // the counter is updated right after processing
+        long deadline=System.currentTimeMillis()+5000;
+        while (pipeline.getProcessedCount()<n_calls*n_messages && System.currentTimeMillis()<deadline) Thread.sleep(10);
+        assertEquals(n_calls*n_messages,pipeline.getProcessedCount());
+        assertEquals(0,pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void dropsWhenQueueIsFull() throws Exception
+    {  RecordingProvider provider=new RecordingProvider(4);
+        provider.blocked=new CountDownLatch(1);
+        pipeline=new MessagePipeline(provider,1,3);
+        // the first message is taken by the (blocked) worker, the next three fill the queue
+        assertTrue(pipeline.enqueue(null,request("call",1)));
+        long deadline=System.currentTimeMillis()+5000;
+        while (pipeline.getQueueDepth()>0 && System.currentTimeMillis()<deadline) Thread.sleep(10);
+        for (int i=2; i<=4; i++) assertTrue(pipeline.enqueue(null,request("call",i)));
+        assertEquals(3,pipeline.getQueueDepth());
+        assertFalse(pipeline.enqueue(null,request("call",5)));
+        assertEquals(1,pipeline.getDroppedCount());
+        provider.blocked.countDown();
+        assertTrue(provider.done.await(10,TimeUnit.SECONDS));
+        assertEquals(4,provider.calls.get("call").size());
+    }
+
+    @Test
+    public void processesPriorityMessagesFirstKeepingTheOrderOfEachCall() throws Exception
+    {  RecordingProvider provider=new RecordingProvider(7);
+        provider.blocked=new CountDownLatch(1);
+        pipeline=new MessagePipeline(provider,1,0);
+        assertTrue(pipeline.enqueue(null,request("first",1)));
+        long deadline=System.currentTimeMillis()+5000;
+        while (pipeline.getQueueDepth()>0 && System.currentTimeMillis()<deadline) Thread.sleep(10);
+        // a new call, followed by in-dialog requests of the same call, and by another established call
+        pipeline.enqueue(null,request("new",1));
+        pipeline.enqueue(null,request("dialog",1,"a6c85cf"));
+        pipeline.enqueue(null,request("new",2,"a6c85cf"));
+        pipeline.enqueue(null,request("dialog",2,"a6c85cf"));
+        pipeline.enqueue(null,request("new",3,"a6c85cf"));
+        pipeline.enqueue(null,request("dialog",3,"a6c85cf"));
+        provider.blocked.countDown();
+        assertTrue(provider.done.await(10,TimeUnit.SECONDS));
+        assertEquals("[first:1, dialog:1, dialog:2, dialog:3, new:1, new:2, new:3]",provider.order.toString());
+    }
+}
@@ -0,0 +1,76 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.sip.header.ViaHeader;
+import org.zoolu.sip.message.Message;
+import static org.junit.Assert.*;
+
+
+/** Tests of OverloadControl. */
+public class OverloadControlTest
+{
+    static Message request(String method, String to_tag)
+    {  Message msg=new Message(
+            method+" sip:bob@example.com SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP host.example.com:5070;rport;oc;branch=z9hG4bK776asdhds\r\n"+
+            "Via: SIP/2.0/UDP 192.168.1.1:5060;branch=z9hG4bK1234\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>"+((to_tag!=null)? ";tag="+to_tag : "")+"\r\n"+
+            "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+            "CSeq: 1 "+method+"\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+        msg.setRemoteAddress("10.0.0.1");
+        msg.setRemotePort(6000);
+        return msg;
+    }
+
+    SipProvider provider;
+    MessagePipeline pipeline;
+
+    @Before
+    public void start()
+    {  provider=new SipProvider(SipConfig.getDefault(),"127.0.0.1",5060,null);
+        pipeline=new MessagePipeline(provider,1,0);
+    }
+
+    @After
+    public void halt()
+    {  pipeline.halt();
+        provider.halt();
+    }
+
+
+    @Test
+    public void rejectionCanBeRoutedByTheVia()
+    {  OverloadControl oc=new OverloadControl(provider,pipeline,100,200,5);
+        Message resp=oc.createRejection(request("INVITE",null),40);
+        assertEquals(503,resp.getStatusLine().getCode());
+        assertEquals(2,resp.getVias().size());
+        ViaHeader vh=resp.getViaHeader();
+        assertEquals("10.0.0.1",vh.getReceived());
+        assertEquals(6000,vh.getRport());
+        assertEquals("40",vh.getParameter("oc"));
+        assertEquals("z9hG4bK776asdhds",vh.getBranch());
+        assertTrue(resp.getToHeader().hasTag());
+        assertEquals("a84b4c76e66710@192.168.1.34",resp.getCallIdHeader().getCallId());
+        assertEquals("INVITE",resp.getCSeqHeader().getMethod());
+        assertEquals("5",resp.getHeader("Retry-After").getValue());
+        assertFalse(resp.hasBody());
+    }
+
+    @Test
+    public void classifiesMessages()
+    {  assertTrue(OverloadControl.isNewRequest(request("INVITE",null)));
+        assertFalse(OverloadControl.isPriority(request("INVITE",null)));
+        assertFalse(OverloadControl.isNewRequest(request("CANCEL",null)));
+        assertTrue(OverloadControl.isPriority(request("CANCEL",null)));
+        assertFalse(OverloadControl.isNewRequest(request("ACK",null)));
+        assertTrue(OverloadControl.isPriority(request("ACK",null)));
+        assertFalse(OverloadControl.isNewRequest(request("BYE","a6c85cf")));
+        assertTrue(OverloadControl.isPriority(request("BYE","a6c85cf")));
+    }
+}
@@ -0,0 +1,113 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.net.DnsStubServer;
+import org.zoolu.net.IpAddress;
+import org.zoolu.sip.message.Message;
+import org.zoolu.tools.Preferences;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+
+/** Tests of the SentMessages sent through a SipProvider, with destinations resolved by a stub DNS server. */
+public class SentMessageTest
+{
+    /** UDP transport that records the sent messages. */
+    static class RecordingTransport implements Transport
+    {  final BlockingQueue<String> sent=new ArrayBlockingQueue<String>(16);
+        final BlockingQueue<Thread> threads=new ArrayBlockingQueue<Thread>(16);
+
+        public String getProtocol() {  return "udp";  }
+        public int getLocalPort() {  return 5060;  }
+        public void halt() {}
+        public void setListener(TransportListener listener) {}
+
+        public TransportConn sendMessage(Message msg, IpAddress dest_ipaddr, int dest_port, int ttl)
+        {  sent.add(dest_ipaddr+":"+dest_port);
+            threads.add(Thread.currentThread());
+            return null;
+        }
+    }
+
+    /** TransportFailureListener that records the failures. */
+    static class FailureRecorder implements TransportFailureListener
+    {  final BlockingQueue<Exception> errors=new ArrayBlockingQueue<Exception>(16);
+
+        public void onTransportFailure(SipProvider sip_provider, TransportConnId conn_id, Exception error)
+        {  assertNull(conn_id);
+            errors.add(error);
+        }
+    }
+
+    static Message request(String host)
+    {  return new Message(
+            "OPTIONS sip:bob@"+host+";transport=udp SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@127.0.0.1\r\n"+
+            "CSeq: 1 OPTIONS\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+    }
+
+    DnsStubServer server;
+    RecordingTransport transport;
+    SipProvider provider;
+
+    @Before
+    public void start() throws Exception
+    {  server=new DnsStubServer();
+        final String dns_servers=server.getAddress();
+        SipConfig config=new SipConfig(new Preferences()
+        {  public String getString(String key, String default_value)
+            {  if (key.equals("dns_servers")) return dns_servers;
+                return default_value;
+            }
+        });
+        transport=new RecordingTransport();
+        provider=new SipProvider(config,"127.0.0.1",5060,new Transport[]{ transport });
+    }
+
+    @After
+    public void halt()
+    {  provider.halt();
+        server.halt();
+    }
+
+
+    @Test
+    public void isQueuedUntilItsDestinationIsResolved() throws Exception
+    {  server.addAddress("host.example.com","10.0.0.5",300);
+        FailureRecorder recorder=new FailureRecorder();
+        SentMessage sent=new SentMessage(request("host.example.com"),recorder);
+        assertNull(provider.sendMessage(sent));
+        assertEquals("10.0.0.5:5060",transport.sent.poll(5,TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(),transport.threads.take());
+        // retransmissions send the cached bytes
+        assertTrue(sent.isCached());
+        provider.sendMessage(sent);
+        assertEquals("10.0.0.5:5060",transport.sent.poll(5,TimeUnit.SECONDS));
+        assertSame(Thread.currentThread(),transport.threads.take());
+        assertTrue(recorder.errors.isEmpty());
+        assertNull(transport.sent.poll());
+    }
+
+    @Test
+    public void notifiesTheFailureOfTheLookup() throws Exception
+    {  FailureRecorder recorder=new FailureRecorder();
+        SentMessage sent=new SentMessage(request("missing.example.com"),recorder);
+        assertNull(provider.sendMessage(sent));
+        assertNotNull(recorder.errors.poll(5,TimeUnit.SECONDS));
+        assertNull(transport.sent.poll());
+        // once the failure is cached, it is notified immediately
+        SentMessage again=new SentMessage(request("missing.example.com"),recorder);
+        assertNull(provider.sendMessage(again));
+        assertNotNull(recorder.errors.poll());
+    }
+}
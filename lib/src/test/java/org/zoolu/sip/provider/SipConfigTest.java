@@ -0,0 +1,36 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.Test;
+import org.zoolu.tools.Preferences;
+import static org.junit.Assert.*;
+
+
+/** Tests of SipConfig. */
+public class SipConfigTest
+{
+    static SipConfig config(final String key, final String value)
+    {  return new SipConfig(new Preferences()
+        {  public String getString(String k, String default_value)
+            {  return (k.equals(key))? value : default_value;
+            }
+        });
+    }
+
+
+    @Test
+    public void defaultPortsArePerProvider()
+    {  SipProvider custom=new SipProvider(config("default_port","5080"),"127.0.0.1",0,null);
+        SipProvider standard=new SipProvider(SipConfig.getDefault(),"127.0.0.1",0,null);
+        try
+        {  assertEquals(5080,custom.getPort());
+            assertEquals(5080,custom.getConfig().default_port);
+            assertEquals(5060,standard.getPort());
+            assertEquals(5060,SipStack.default_port);
+        }
+        finally
+        {  custom.halt();
+            standard.halt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.Test;
+import org.zoolu.sip.message.Message;
+import java.io.IOException;
+import static org.junit.Assert.*;
+
+
+/** Tests of SipStreamFramer. */
+public class SipStreamFramerTest
+{
+    static String request(int cseq, String body)
+    {  return "MESSAGE sip:bob@example.com SIP/2.0\r\n"+
+            "Via: SIP/2.0/TCP 192.168.1.34:5060;branch=z9hG4bK776asdhds"+cseq+"\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+            "CSeq: "+cseq+" MESSAGE\r\n"+
+            "Content-Length: "+body.length()+"\r\n"+
+            "\r\n"+
+            body;
+    }
+
+    static byte[] bytes(String str)
+    {  try
+        {  return str.getBytes("UTF-8");
+        }
+        catch (java.io.UnsupportedEncodingException e)
+        {  throw new RuntimeException(e);
+        }
+    }
+
+    static void push(SipStreamFramer framer, String str)
+    {  byte[] data=bytes(str);
+        framer.push(data,0,data.length);
+    }
+
+
+    @Test
+    public void framesMessagesSplitAtAnyByte() throws IOException
+    {  byte[] data=bytes(request(1,"hello")+request(2,"world!"));
+        for (int split=0; split<=data.length; split++)
+        {  SipStreamFramer framer=new SipStreamFramer(8192,8192);
+            framer.push(data,0,split);
+            Message msg1=framer.next();
+            framer.push(data,split,data.length-split);
+            if (msg1==null) msg1=framer.next();
+            Message msg2=framer.next();
+            assertNotNull("split "+split,msg1);
+            assertNotNull("split "+split,msg2);
+            assertNull(framer.next());
+            assertEquals("hello",msg1.getBody());
+            assertEquals(2,msg2.getCSeqHeader().getSequenceNumber());
+            assertEquals("world!",msg2.getBody());
+            assertEquals(0,framer.available());
+        }
+    }
+
+    @Test
+    public void framesOneByteAtATime() throws IOException
+    {  byte[] data=bytes(request(1,"hello")+request(2,""));
+        SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        int n=0;
+        for (int i=0; i<data.length; i++)
+        {  framer.push(data,i,1);
+            Message msg;
+            while ((msg=framer.next())!=null) assertEquals(++n,msg.getCSeqHeader().getSequenceNumber());
+        }
+        assertEquals(2,n);
+    }
+
+    @Test
+    public void framesAcrossTheEndOfTheRing() throws IOException
+    {  SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        // many messages, never leaving the buffer empty, so that they wrap around the end of the ring
+        int received=0;
+        for (int i=1; i<=200; i++)
+        {  String msg=request(i,"body "+i);
+            int half=msg.length()/2;
+            push(framer,msg.substring(0,half));
+            Message m=framer.next();
+            if (m!=null) assertEquals(++received,m.getCSeqHeader().getSequenceNumber());
+            push(framer,msg.substring(half));
+            while ((m=framer.next())!=null)
+            {  received++;
+                assertEquals(received,m.getCSeqHeader().getSequenceNumber());
+                assertEquals("body "+received,m.getBody());
+            }
+        }
+        assertEquals(200,received);
+        assertEquals(SipStreamFramer.INITIAL_SIZE,framer.ring.length);
+    }
+
+    @Test
+    public void growsForLargeMessages() throws IOException
+    {  StringBuilder sb=new StringBuilder();
+        for (int i=0; i<20000; i++) sb.append((char)('a'+i%26));
+        String body=sb.toString();
+        SipStreamFramer framer=new SipStreamFramer(8192,65536);
+        push(framer,request(1,body)+request(2,"x"));
+        assertEquals(body,framer.next().getBody());
+        assertEquals("x",framer.next().getBody());
+        assertNull(framer.next());
+    }
+
+    @Test
+    public void acceptsCompactContentLength() throws IOException
+    {  SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        push(framer,request(1,"hello").replace("Content-Length: 5","l :5")+request(2,""));
+        assertEquals(1,framer.next().getCSeqHeader().getSequenceNumber());
+        assertEquals(2,framer.next().getCSeqHeader().getSequenceNumber());
+        assertEquals(0,framer.available());
+    }
+
+    @Test
+    public void countsKeepAlives() throws IOException
+    {  SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        push(framer,"\r\n\r\n");
+        assertNull(framer.next());
+        assertEquals(1,framer.takePings());
+        assertEquals(0,framer.takePings());
+        push(framer,"\r\n"+request(1,""));
+        assertNotNull(framer.next());
+        assertEquals(0,framer.takePings());
+        assertEquals(2,framer.takePongs());
+    }
+
+    @Test
+    public void recognizesPingsSplitAcrossReads() throws IOException
+    {  SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        push(framer,"\r\n");
+        assertNull(framer.next());
+        assertEquals(1,framer.takePongs());
+        assertEquals(0,framer.takePings());
+        push(framer,"\r");
+        assertNull(framer.next());
+        push(framer,"\n");
+        assertNull(framer.next());
+        assertEquals(0,framer.takePongs());
+        assertEquals(1,framer.takePings());
+        // a message ends the run: the next CRLF is a pong again
+        push(framer,request(1,"")+"\r\n");
+        assertNotNull(framer.next());
+        assertNull(framer.next());
+        assertEquals(1,framer.takePongs());
+        assertEquals(0,framer.takePings());
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectsMissingContentLength() throws IOException
+    {  SipStreamFramer framer=new SipStreamFramer(8192,8192);
+        push(framer,request(1,"").replace("Content-Length: 0\r\n",""));
+        framer.next();
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectsOversizedBody() throws IOException
+    {  SipStreamFramer framer=new SipStreamFramer(8192,4);
+        push(framer,request(1,"hello"));
+        framer.next();
+    }
+
+    @Test
+    public void rejectsOversizedHeadersBeforeTheyEnd()
+    {  SipStreamFramer framer=new SipStreamFramer(256,8192);
+        StringBuilder sb=new StringBuilder("OPTIONS sip:bob@example.com SIP/2.0\r\n");
+        while (sb.length()<1024) sb.append("Subject: padding\r\n");
+        push(framer,sb.toString());
+        try
+        {  framer.next();
+            fail();
+        }
+        catch (IOException e) {}
+    }
+}
@@ -0,0 +1,63 @@
+package org.zoolu.sip.provider;
+
+
+import org.junit.Test;
+import org.zoolu.sip.header.ViaHeader;
+import org.zoolu.sip.message.Message;
+import static org.junit.Assert.*;
+
+
+/** Tests of the TransactionIds and DialogIds of received messages. */
+public class TransactionIdTest
+{
+    static final String INVITE=
+        "INVITE sip:bob@example.com SIP/2.0\r\n"+
+        "Via: SIP/2.0/UDP 192.168.1.34:5060 ;rport; branch=z9hG4bKnashds8, SIP/2.0/TCP proxy.example.com;branch=z9hG4bKother\r\n"+
+        "From: \"Alice <;tag=no>\" <sip:alice@example.com;tag=no>;tag=1928301774\r\n"+
+        "To: sip:bob@example.com;tag=a6c85cf\r\n"+
+        "Call-ID: a84b4c76e66710@192.168.1.34\r\n"+
+        "CSeq:  314159   INVITE\r\n"+
+        "Content-Length: 0\r\n"+
+        "\r\n";
+
+    @Test
+    public void readsIdsFromHeaderIndex()
+    {  Message msg=new Message(INVITE);
+        TransactionId tid=msg.getTransactionServerId();
+        assertEquals("a84b4c76e66710@192.168.1.34",tid.call_id);
+        assertEquals(314159,tid.seqn);
+        assertEquals("INVITE",tid.method);
+        assertEquals("192.168.1.34:5060",tid.sent_by);
+        assertEquals("z9hG4bKnashds8",tid.branch);
+        assertFalse(tid.is_client);
+        DialogId did=msg.getDialogId();
+        assertEquals("a6c85cf",did.local_tag);
+        assertEquals("1928301774",did.remote_tag);
+        // the same ids are obtained from the parsed headers
+        ViaHeader via=msg.getViaHeader();
+        assertEquals(new TransactionId(msg.getCallIdHeader().getCallId(),msg.getCSeqHeader().getSequenceNumber(),msg.getCSeqHeader().getMethod(),false,via.getSentBy(),via.getBranch()),tid);
+        assertEquals(new DialogId(msg.getCallIdHeader().getCallId(),msg.getToHeader().getTag(),msg.getFromHeader().getTag()),did);
+    }
+
+    @Test
+    public void matchesAckWithInvite()
+    {  Message ack=new Message(INVITE.replace("INVITE sip","ACK sip").replace("314159   INVITE","314159 ACK"));
+        assertEquals(new Message(INVITE).getTransactionServerId(),ack.getTransactionServerId());
+    }
+
+    @Test
+    public void requestWithoutToTagHasNoLocalTag()
+    {  Message msg=new Message(INVITE.replace(";tag=a6c85cf",""));
+        assertNull(msg.getDialogId().local_tag);
+        assertEquals("",new Message(INVITE.replace(" ;rport; branch=z9hG4bKnashds8","")).getTransactionServerId().branch);
+    }
+
+    @Test
+    public void alternativeIdIgnoresSentBy()
+    {  TransactionId tid=new Message(INVITE).getTransactionServerId();
+        TransactionId tid2=new Message(INVITE.replace("192.168.1.34:5060","10.0.0.1")).getTransactionServerId();
+        assertNotEquals(tid,tid2);
+        assertEquals(tid.withoutSentBy(),tid2.withoutSentBy());
+        assertEquals(tid.withoutSentBy().hashCode(),tid2.withoutSentBy().hashCode());
+    }
+}
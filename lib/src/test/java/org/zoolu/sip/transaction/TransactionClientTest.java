@@ -0,0 +1,78 @@
+package org.zoolu.sip.transaction;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.provider.*;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+
+
+/** Tests of the transport errors of TransactionClient and InviteTransactionClient. */
+public class TransactionClientTest
+{
+    /** TransactionClientListener that records the events. */
+    static class Recorder implements TransactionClientListener
+    {  final List<String> events=new ArrayList<String>();
+
+        public void onTransProvisionalResponse(TransactionClient tc, Message resp) {  events.add("provisional");  }
+        public void onTransSuccessResponse(TransactionClient tc, Message resp) {  events.add("success");  }
+        public void onTransFailureResponse(TransactionClient tc, Message resp) {  events.add("failure "+resp.getStatusLine().getCode());  }
+        public void onTransTimeout(TransactionClient tc) {  events.add("timeout");  }
+    }
+
+    /** Creates a request (that cannot be sent, since the SipProvider has no transport). */
+    static Message request(String method)
+    {  return new Message(
+            method+" sip:bob@127.0.0.1 SIP/2.0\r\n"+
+            "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds"+method+"\r\n"+
+            "From: <sip:alice@example.com>;tag=1928301774\r\n"+
+            "To: <sip:bob@example.com>\r\n"+
+            "Call-ID: a84b4c76e66710@127.0.0.1\r\n"+
+            "CSeq: 1 "+method+"\r\n"+
+            "Content-Length: 0\r\n"+
+            "\r\n");
+    }
+
+    SipProvider provider;
+
+    @Before
+    public void start()
+    {  provider=new SipProvider(SipConfig.getDefault(),"127.0.0.1",5060,null);
+    }
+
+    @After
+    public void halt()
+    {  provider.halt();
+    }
+
+
+    @Test
+    public void reportsTransportErrorAs503() throws Exception
+    {  long errors=TransactionClient.transport_errors.get();
+        long timeouts=TransactionClient.timer_f_timeouts.get();
+        Recorder recorder=new Recorder();
+        TransactionClient tc=new TransactionClient(provider,request("OPTIONS"),recorder);
+        tc.request();
+        assertEquals("[failure 503]",recorder.events.toString());
+        assertTrue(tc.isTerminated());
+        assertEquals(errors+1,TransactionClient.transport_errors.get());
+        assertEquals(timeouts,TransactionClient.timer_f_timeouts.get());
+    }
+
+    @Test
+    public void reportsInviteTransportErrorAs503() throws Exception
+    {  long errors=TransactionClient.transport_errors.get();
+        long timeouts=InviteTransactionClient.timer_b_timeouts.get();
+        Recorder recorder=new Recorder();
+        InviteTransactionClient tc=new InviteTransactionClient(provider,request("INVITE"),recorder);
+        tc.request();
+        assertEquals("[failure 503]",recorder.events.toString());
+        assertTrue(tc.isTerminated());
+        assertEquals(errors+1,TransactionClient.transport_errors.get());
+        assertEquals(timeouts,InviteTransactionClient.timer_b_timeouts.get());
+    }
+}
@@ -0,0 +1,59 @@
+package org.zoolu.tools;
+
+
+import org.junit.Test;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.*;
+
+
+/** Tests of IdGenerator. */
+public class IdGeneratorTest
+{
+    @Test
+    public void computesSipHash()
+    {  // reference test vector: key 00..0f, message 00..07
+        assertEquals(0x93f5f5799a932462L,IdGenerator.sipHash(0x0706050403020100L,0x0f0e0d0c0b0a0908L,0x0706050403020100L));
+    }
+
+    @Test
+    public void formatsIdentifiers()
+    {  String id=IdGenerator.nextId();
+        assertTrue(id,id.matches("[0-9a-v]{13}"));
+        String call_id=IdGenerator.nextId("z9hG4bK","@127.0.0.1");
+        assertTrue(call_id,call_id.matches("z9hG4bK[0-9a-v]{13}@127\\.0\\.0\\.1"));
+        assertEquals("0000000000000",IdGenerator.toBase32(0));
+        assertEquals("fvvvvvvvvvvvv",IdGenerator.toBase32(-1));
+    }
+
+    @Test
+    public void generatesDistinctIdentifiersInManyThreads() throws Exception
+    {  final Set<String> ids=Collections.synchronizedSet(new HashSet<String>());
+        final int n=20000;
+        Thread[] threads=new Thread[8];
+        for (int t=0; t<threads.length; t++)
+        {  threads[t]=new Thread()
+            {  public void run()
+                {  for (int i=0; i<n; i++) ids.add(IdGenerator.nextId());
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(threads.length*n,ids.size());
+    }
+
+    @Test
+    public void doesNotShowTheCounter()
+    {  // consecutive values look independent: about half of the bits differ
+        long prev=IdGenerator.nextLong();
+        int diff=0, n=1000;
+        for (int i=0; i<n; i++)
+        {  long next=IdGenerator.nextLong();
+            diff+=Long.bitCount(prev^next);
+            prev=next;
+        }
+        assertTrue("average "+diff/n+" bits",diff>n*28 && diff<n*36);
+    }
+}
@@ -0,0 +1,75 @@
+package org.zoolu.tools;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+
+
+/** Tests of Log. */
+public class LogTest
+{
+    /** Logger that records the records, and accepts only the tag "Sip: A". */
+    static class Recorder implements Logger
+    {  final List<String> records=new ArrayList<String>();
+
+        public boolean isLoggable(String tag, int level) {  return tag.equals("Sip: A");  }
+        public void log(int level, String tag, String msg, Throwable t) {  records.add(level+" "+tag+" "+msg);  }
+    }
+
+    Logger logger;
+    int level;
+
+    @Before
+    public void save()
+    {  logger=Log.getLogger();
+        level=Log.getLevel();
+    }
+
+    @After
+    public void restore()
+    {  Log.setLogger(logger);
+        Log.setLevel(level);
+    }
+
+
+    @Test
+    public void asksTheLoggerBeforeLogging()
+    {  Recorder recorder=new Recorder();
+        Log.setLogger(recorder);
+        Log.setLevel(Log.VERBOSE);
+        final int[] built={ 0 };
+        Log.Supplier msg=new Log.Supplier()
+        {  public String get()
+            {  built[0]++;
+                return "built";
+            }
+        };
+        Log.v("Sip: B","v");
+        Log.d("Sip: B",msg);
+        Log.i("Sip: B","i");
+        Log.w("Sip: B",msg);
+        Log.e("Sip: B","e",null);
+        assertTrue(recorder.records.isEmpty());
+        assertEquals(0,built[0]);
+        Log.d("Sip: A",msg);
+        Log.e("Sip: A","e");
+        assertEquals("[3 Sip: A built, 6 Sip: A e]",recorder.records.toString());
+        assertEquals(1,built[0]);
+    }
+
+    @Test
+    public void discardsRecordsBelowTheLevel()
+    {  Recorder recorder=new Recorder();
+        Log.setLogger(recorder);
+        Log.setLevel(Log.WARN);
+        Log.i("Sip: A","i");
+        Log.w("Sip: A","w");
+        Log.setLevel(Log.NONE);
+        Log.e("Sip: A","e");
+        assertEquals("[5 Sip: A w]",recorder.records.toString());
+    }
+}
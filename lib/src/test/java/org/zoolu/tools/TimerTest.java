@@ -0,0 +1,120 @@
+package org.zoolu.tools;
+
+
+import org.junit.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+
+
+/** Tests of Timer and TimingWheel. */
+public class TimerTest
+{
+    /** TimerListener counting the timeouts. */
+    static class Counter implements TimerListener
+    {  final AtomicInteger count=new AtomicInteger();
+        final CountDownLatch fired;
+        volatile long time=0;
+
+        Counter(int n)
+        {  fired=new CountDownLatch(n);
+        }
+
+        public void onTimeout(Timer t)
+        {  time=System.currentTimeMillis();
+            count.incrementAndGet();
+            fired.countDown();
+        }
+    }
+
+
+    @Test
+    public void firesAfterItsTime() throws Exception
+    {  Counter counter=new Counter(1);
+        Timer t=new Timer(100,"test",counter);
+        long start=System.currentTimeMillis();
+        t.start();
+        assertTrue(t.isRunning());
+        assertTrue(counter.fired.await(5,TimeUnit.SECONDS));
+        assertTrue(counter.time-start>=100-TimingWheel.TICK);
+        assertFalse(t.isRunning());
+        Thread.sleep(100);
+        assertEquals(1,counter.count.get());
+    }
+
+    @Test
+    public void haltedTimerDoesNotFire() throws Exception
+    {  Counter counter=new Counter(1);
+        Timer t=new Timer(50,"test",counter);
+        t.start();
+        t.halt();
+        assertFalse(t.isRunning());
+        Thread.sleep(200);
+        assertEquals(0,counter.count.get());
+    }
+
+    @Test
+    public void restartFiresOnce() throws Exception
+    {  Counter counter=new Counter(1);
+        Timer t=new Timer(50,"test",counter);
+        t.start();
+        t.setTime(150);
+        t.start();
+        Thread.sleep(100);
+        assertEquals(0,counter.count.get());
+        assertTrue(counter.fired.await(5,TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(1,counter.count.get());
+        // it can be started again after it is expired
+        t.setTime(20);
+        t.start();
+        Thread.sleep(200);
+        assertEquals(2,counter.count.get());
+    }
+
+    @Test
+    public void zeroTimeFiresImmediately()
+    {  Counter counter=new Counter(1);
+        new Timer(0,"test",counter).start();
+        assertEquals(1,counter.count.get());
+    }
+
+    @Test
+    public void firesManyTimersInOrderOfTime() throws Exception
+    {  int n=1000;
+        final long[] fired=new long[n];
+        final CountDownLatch done=new CountDownLatch(n);
+        long start=System.currentTimeMillis();
+        for (int i=0; i<n; i++)
+        {  final int index=i;
+            new Timer(10+(i%20)*10,new TimerListener()
+            {  public void onTimeout(Timer t)
+                {  fired[index]=System.currentTimeMillis();
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(5,TimeUnit.SECONDS));
+        for (int i=0; i<n; i++) assertTrue(fired[i]-start>=(10+(i%20)*10)-TimingWheel.TICK);
+    }
+
+    @Test
+    public void timerBeyondOneRoundWaitsForItsRound() throws Exception
+    {  Counter counter=new Counter(1);
+        // its slot is passed a few ticks after it is started, one round before it expires
+        Timer t=new Timer(TimingWheel.SLOTS*TimingWheel.TICK+5*TimingWheel.TICK,"test",counter);
+        TimingWheel wheel=TimingWheel.getDefault();
+        t.start();
+        Thread.sleep(20*TimingWheel.TICK);
+        assertEquals(0,counter.count.get());
+        assertTrue(t.isRunning());
+        synchronized (wheel)
+        {  assertTrue(t.slot>=0);
+        }
+        t.halt();
+        synchronized (wheel)
+        {  assertEquals(-1,t.slot);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.zoolu.tools;
+
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+/** Tests of TokenBucketSketch. */
+public class TokenBucketSketchTest
+{
+    static long hash(String key, long seed)
+    {  byte[] data=key.getBytes();
+        return TokenBucketSketch.hash(data,0,data.length,seed);
+    }
+
+
+    @Test
+    public void letsThroughTheBurstThenLimits()
+    {  TokenBucketSketch buckets=new TokenBucketSketch(4,1024,1,5);
+        long key=hash("10.0.0.1",1);
+        for (int i=0; i<5; i++) assertTrue(buckets.take(key));
+        assertFalse(buckets.take(key));
+        assertFalse(buckets.take(key));
+    }
+
+    @Test
+    public void keepsKeysApart()
+    {  TokenBucketSketch buckets=new TokenBucketSketch(4,1024,1,2);
+        long busy=hash("10.0.0.1",1);
+        while (buckets.take(busy));
+        for (int n=2; n<100; n++)
+        {  long key=hash("10.0.0."+n,1);
+            assertTrue(buckets.take(key));
+            assertTrue(buckets.take(key));
+        }
+        assertFalse(buckets.take(busy));
+    }
+
+    @Test
+    public void refillsWithTime() throws Exception
+    {  TokenBucketSketch buckets=new TokenBucketSketch(4,1024,100,1);
+        long key=hash("10.0.0.1",1);
+        assertTrue(buckets.take(key));
+        assertFalse(buckets.take(key));
+        // 100 tokens per second: one every 10ms
+        Thread.sleep(50);
+        assertTrue(buckets.take(key));
+        // the bucket size is 1
+        assertFalse(buckets.take(key));
+    }
+
+    @Test
+    public void hasFixedMemory()
+    {  TokenBucketSketch buckets=new TokenBucketSketch(4,1000,1,1);
+        // the width is rounded up to 1024
+        assertEquals(4*1024*16,buckets.getMemorySize());
+        for (int n=0; n<100000; n++) buckets.take(hash("key"+n,1));
+        assertEquals(4*1024*16,buckets.getMemorySize());
+    }
+
+    @Test
+    public void hashDependsOnTheSeed()
+    {  byte[] data="alice".getBytes();
+        assertEquals(TokenBucketSketch.hash(data,0,5,7),TokenBucketSketch.hash("xalicex".getBytes(),1,5,7));
+        assertTrue(TokenBucketSketch.hash(data,0,5,7)!=TokenBucketSketch.hash(data,0,5,8));
+    }
+}